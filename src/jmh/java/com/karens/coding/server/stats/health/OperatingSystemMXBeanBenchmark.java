@@ -0,0 +1,58 @@
+package com.karens.coding.server.stats.health;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One attribute read through the reflective {@link ServerStatistics#callOperatingSystemMXBeanMethod}
+ * and through the {@link OperatingSystemMXBeanAccessor}.
+ * On Java 9 and later the reflective path needs
+ * --add-opens jdk.management/com.sun.management.internal=ALL-UNNAMED
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatingSystemMXBeanBenchmark {
+
+	@Param({ "COMMITTED_VIRTUAL_MEMORY_SIZE", "TOTAL_SWAP_SPACE_SIZE", "FREE_SWAP_SPACE_SIZE", "PROCESS_CPU_TIME", "FREE_PHYSICAL_MEMORY_SIZE",
+			"TOTAL_PHYSICAL_MEMORY_SIZE", "SYSTEM_CPU_LOAD", "PROCESS_CPU_LOAD" })
+	private OperatingSystemAttribute attribute;
+
+	private ServerStatistics statistics;
+	private OperatingSystemMXBean osBean;
+	private OperatingSystemMXBeanAccessor accessor;
+
+	@Setup
+	public void setUp() {
+		statistics = new ServerStatistics(false);
+		osBean = ManagementFactory.getOperatingSystemMXBean();
+		accessor = OperatingSystemMXBeanAccessor.getInstance();
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public Object reflection() {
+		return statistics.callOperatingSystemMXBeanMethod(osBean, attribute.getMethodName());
+	}
+
+	@Benchmark
+	public double accessor() {
+		return attribute.isDouble() ? accessor.readDouble(attribute) : accessor.readLong(attribute);
+	}
+}
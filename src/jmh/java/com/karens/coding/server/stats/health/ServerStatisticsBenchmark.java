@@ -0,0 +1,30 @@
+package com.karens.coding.server.stats.health;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full measurement, as taken by the {@link StatisticsSampler} on every sample.
+ * Without /proc the time includes the 100 ms sleep of {@link ServerStatistics#calculateSystemCpuUsage()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerStatisticsBenchmark {
+
+	@Benchmark
+	public ServerStatistics init() {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.init();
+		return statistics;
+	}
+}
@@ -0,0 +1,93 @@
+package com.karens.coding.server.stats.history;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of a day of synthetic one second samples by the {@link GorillaEncoder} and
+ * {@link GorillaDecoder}, in nanoseconds per point: a constant, a slowly moving memory figure and a
+ * noisy cpu load. The encoded size in bits per point is printed by the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GorillaCodecBenchmark {
+
+	private static final int POINTS = 86400;
+
+	@Param({ "constant", "memory", "load" })
+	private String series;
+
+	private long[] timestamps;
+	private long[] longs;
+	private double[] doubles;
+	private byte[] block;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		timestamps = new long[POINTS];
+		longs = new long[POINTS];
+		doubles = new double[POINTS];
+		long timestamp = 1500000000000l;
+		long free = 8l << 30;
+		double cpu = 0.2;
+		for (int index = 0; index < POINTS; index++) {
+			timestamp += 1000 + random.nextInt(3);
+			free += (random.nextInt(17) - 8) * 4096;
+			cpu = Math.max(0, Math.min(1, cpu + (random.nextDouble() - 0.5) / 50));
+			timestamps[index] = timestamp;
+			longs[index] = "constant".equals(series) ? 500l << 30 : free;
+			doubles[index] = cpu;
+		}
+		block = encode().toByteArray();
+		System.out.println(String.format("%n%s: %d bytes, %.2f bits/point", series, block.length, block.length * 8.0 / POINTS));
+	}
+
+	private GorillaEncoder encode() {
+		boolean fractional = "load".equals(series);
+		GorillaEncoder encoder = new GorillaEncoder(fractional, POINTS);
+		for (int index = 0; index < POINTS; index++) {
+			if (fractional) {
+				encoder.appendDouble(timestamps[index], doubles[index]);
+			}
+			else {
+				encoder.appendLong(timestamps[index], longs[index]);
+			}
+		}
+		return encoder;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int encoding() {
+		return encode().getEncodedSize();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long decoding() {
+		long sum = 0;
+		GorillaDecoder decoder = new GorillaDecoder(block);
+		while (decoder.next()) {
+			sum += decoder.getTimestamp() ^ decoder.getRaw();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,69 @@
+package com.karens.coding.server.stats.openmetrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of labelled series: the reused {@link OpenMetricsWriter} and String concatenation into a
+ * StringBuilder. Run with -prof gc to compare the allocations per scrape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenMetricsBenchmark {
+
+	private static final byte[] NAME = OpenMetricsWriter.ascii("serverstats_filestore_usable_bytes");
+	private static final byte[] MOUNT = OpenMetricsWriter.ascii("mount");
+
+	@Param({ "1000" })
+	private int series;
+
+	private String[] mounts;
+	private double[] values;
+	private OpenMetricsWriter writer;
+
+	@Setup
+	public void setUp() {
+		mounts = new String[series];
+		values = new double[series];
+		for (int index = 0; index < series; index++) {
+			mounts[index] = "/mnt/volume" + index;
+			values[index] = index * 1234567.891;
+		}
+		writer = new OpenMetricsWriter(1024);
+	}
+
+	@Benchmark
+	public int writer() {
+		writer.reset();
+		for (int index = 0; index < series; index++) {
+			writer.sample(NAME).label(MOUNT, mounts[index]).value(values[index]);
+		}
+		writer.eof();
+		return writer.size();
+	}
+
+	@Benchmark
+	public byte[] stringBuilder() {
+		StringBuilder builder = new StringBuilder();
+		for (int index = 0; index < series; index++) {
+			builder.append("serverstats_filestore_usable_bytes{mount=\"" + mounts[index] + "\"} " + values[index] + "\n");
+		}
+		builder.append("# EOF\n");
+		return builder.toString().getBytes();
+	}
+}
@@ -0,0 +1,61 @@
+package com.karens.coding.server.stats.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Serialization of the statistics response: {@link RestResponse#toJson()}, which builds an ObjectMapper on every call,
+ * and the shared ObjectMapper configured as Spring MVC does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private RestResponse response;
+	private ObjectMapper springObjectMapper;
+
+	@Setup
+	public void setUp() {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setFreeSpace(266345619456l);
+		statistics.setTotalSpace(270553174016l);
+		statistics.setUsableSpace(85816795136l);
+		statistics.setSystemCpuUsage(0.25);
+		statistics.setJvmCpuUsage(0.01);
+		response = new RestResponse();
+		response.setMessage("Success");
+		response.setStatusCode(200);
+		response.setResult(new StatisticsSnapshot(1, System.currentTimeMillis(), statistics));
+		springObjectMapper = Jackson2ObjectMapperBuilder.json().build();
+	}
+
+	@Benchmark
+	public String restResponseToJson() {
+		return response.toJson();
+	}
+
+	@Benchmark
+	public byte[] springObjectMapper() throws JsonProcessingException {
+		return springObjectMapper.writeValueAsBytes(response);
+	}
+}
@@ -0,0 +1,37 @@
+package com.karens.coding.server.stats.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of a byte count to the unit asked for by a request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteConvertorBenchmark {
+
+	@Param({ "b", "kb", "mb", "gb" })
+	private String unit;
+
+	/** As the metric record holds it */
+	private long bytes = 270553174016l;
+
+	@Benchmark
+	public double convertBytesByType() {
+		return ByteConvertor.convertBytesByType(bytes, unit);
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Locale;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -18,6 +19,9 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 import org.springframework.web.servlet.i18n.SessionLocaleResolver;
 
+import com.karens.coding.server.stats.latency.LatencyInterceptor;
+import com.karens.coding.server.stats.latency.LatencyRecorder;
+
 /**
  * 
  *
@@ -32,6 +36,9 @@ public class Application extends WebMvcConfigurerAdapter {
 	@SuppressWarnings("unused")
 	private static final Logger logger = LogManager.getLogger(Application.class);
 	
+	@Autowired
+	private LatencyRecorder latencyRecorder;
+	
 	public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
     }
@@ -61,6 +68,15 @@ public class Application extends WebMvcConfigurerAdapter {
         return lci;
     }
  
+    /**
+     * Creates and gets the LatencyInterceptor
+     * @return LatencyInterceptor
+     */
+    @Bean
+    public LatencyInterceptor latencyInterceptor() {
+        return new LatencyInterceptor(latencyRecorder);
+    }
+ 
     /**
      * Adds Spring MVC lifecycle interceptors for pre- and post-processing of controller method invocations. 
      * Interceptors can be registered to apply to all requests or be limited to a subset of URL patterns.
@@ -68,6 +84,7 @@ public class Application extends WebMvcConfigurerAdapter {
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(localeChangeInterceptor());
+        registry.addInterceptor(latencyInterceptor());
     }
     
     
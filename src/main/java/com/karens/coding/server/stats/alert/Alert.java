@@ -0,0 +1,92 @@
+package com.karens.coding.server.stats.alert;
+
+/**
+ * Immutable state of one {@link AlertRule}, either as a transition handed to the {@link AlertSink}s or
+ * as the current state of the rule.
+ * @author karen
+ *
+ */
+public final class Alert {
+
+	private final String name;
+	private final String expression;
+	private final AlertState state;
+
+	/** Value compared to the threshold, a fraction for a percentage */
+	private final double value;
+
+	private final double threshold;
+
+	/** Timestamp of the sample the value comes from, in milliseconds since the epoch */
+	private final long timestamp;
+
+	/** Timestamp of the sample that entered the state, -1 if the rule never fired */
+	private final long since;
+
+	public Alert(String name, String expression, AlertState state, double value, double threshold, long timestamp, long since) {
+		this.name = name;
+		this.expression = expression;
+		this.state = state;
+		this.value = value;
+		this.threshold = threshold;
+		this.timestamp = timestamp;
+		this.since = since;
+	}
+
+	/**
+	 * @return the name of the rule
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the expression of the rule
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return the state
+	 */
+	public AlertState getState() {
+		return state;
+	}
+
+	/**
+	 * @return the value
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return the timestamp
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the since
+	 */
+	public long getSince() {
+		return since;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Alert " + name + " " + state + ": " + expression + ", value " + value;
+	}
+}
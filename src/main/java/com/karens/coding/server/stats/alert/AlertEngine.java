@@ -0,0 +1,169 @@
+package com.karens.coding.server.stats.alert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.MetricRecord;
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Evaluates the {@link AlertRule}s on every sample. The rules are compiled once when the application
+ * starts, each keeps its aggregate in a {@link SlidingWindow} updated with the new value only, so a sample
+ * costs the same whatever the width of the windows. A rule fires once serverstats.alerts.consecutive samples in a
+ * row breach its threshold and resolves once as many in a row do not, so a value hovering around the threshold
+ * does not flap; only these transitions go to the {@link AlertNotifier}, since the first sample of the row.
+ * @author karen
+ *
+ */
+@Service("AlertEngine")
+public class AlertEngine implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(AlertEngine.class);
+
+	/** Semicolon separated name=expression of the rules, no alerting if empty */
+	@Value("${serverstats.alerts.rules:}")
+	private String ruleList = "";
+
+	/** Samples in a row that must breach, or not, before a rule fires, or resolves */
+	@Value("${serverstats.alerts.consecutive:3}")
+	private int consecutive = 3;
+
+	@Autowired
+	private AlertNotifier notifier;
+
+	private final List<Evaluator> evaluators = new ArrayList<Evaluator>();
+
+	@PostConstruct
+	public void start() {
+		for (String entry : ruleList.split(";")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			int separator = entry.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Rule " + entry + " is not name=expression");
+			}
+			evaluators.add(new Evaluator(AlertRule.parse(entry.substring(0, separator).trim(), entry.substring(separator + 1))));
+		}
+		if (!evaluators.isEmpty()) {
+			logger.info("Evaluating " + evaluators.size() + " alert rules on every sample");
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		MetricRecord record = snapshot.getStatistics().getRecord();
+		for (Evaluator evaluator : evaluators) {
+			evaluator.evaluate(snapshot.getSampleTimestamp(), record);
+		}
+	}
+
+	/**
+	 * @return the current state of every rule
+	 */
+	public List<Alert> getAlerts() {
+		List<Alert> alerts = new ArrayList<Alert>(evaluators.size());
+		for (Evaluator evaluator : evaluators) {
+			alerts.add(evaluator.getAlert());
+		}
+		return alerts;
+	}
+
+	/**
+	 * @return the compiled rules
+	 */
+	public List<AlertRule> getRules() {
+		List<AlertRule> rules = new ArrayList<AlertRule>(evaluators.size());
+		for (Evaluator evaluator : evaluators) {
+			rules.add(evaluator.rule);
+		}
+		return rules;
+	}
+
+	/**
+	 * @param ruleList the ruleList to set
+	 */
+	public void setRuleList(String ruleList) {
+		this.ruleList = ruleList;
+	}
+
+	/**
+	 * @param consecutive the consecutive to set
+	 */
+	public void setConsecutive(int consecutive) {
+		this.consecutive = consecutive;
+	}
+
+	/**
+	 * @param notifier the notifier to set
+	 */
+	public void setNotifier(AlertNotifier notifier) {
+		this.notifier = notifier;
+	}
+
+	/**
+	 * State of one rule, updated by the sampling thread only
+	 */
+	private final class Evaluator {
+		private final AlertRule rule;
+		private final SlidingWindow window;
+
+		/** Latest state, replaced on every transition */
+		private volatile Alert alert;
+
+		/** Latest aggregated value */
+		private volatile double value = Double.NaN;
+		private volatile long timestamp = -1l;
+
+		/** Samples in a row disagreeing with the state, and the time of the first */
+		private int streak;
+		private long streakSince;
+
+		Evaluator(AlertRule rule) {
+			this.rule = rule;
+			this.window = rule.newWindow();
+			this.alert = new Alert(rule.getName(), rule.getExpression(), AlertState.INACTIVE, Double.NaN, rule.getThreshold(), -1l, -1l);
+		}
+
+		void evaluate(long sampleTimestamp, MetricRecord record) {
+			double sampled = rule.valueOf(record);
+			if (Double.isNaN(sampled)) {
+				return;
+			}
+			window.add(sampleTimestamp, sampled);
+			value = window.value();
+			timestamp = sampleTimestamp;
+			boolean firing = alert.getState() == AlertState.FIRING;
+			if (rule.isBreached(value) == firing) {
+				streak = 0;
+				return;
+			}
+			if (streak++ == 0) {
+				streakSince = sampleTimestamp;
+			}
+			if (streak >= consecutive) {
+				streak = 0;
+				alert = new Alert(rule.getName(), rule.getExpression(), firing ? AlertState.RESOLVED : AlertState.FIRING, value, rule.getThreshold(),
+						sampleTimestamp, streakSince);
+				notifier.publish(alert);
+			}
+		}
+
+		Alert getAlert() {
+			Alert transition = alert;
+			return new Alert(transition.getName(), transition.getExpression(), transition.getState(), value, transition.getThreshold(), timestamp,
+					transition.getSince());
+		}
+	}
+}
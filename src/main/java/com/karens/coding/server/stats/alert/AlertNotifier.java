@@ -0,0 +1,185 @@
+package com.karens.coding.server.stats.alert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands the alert transitions to the {@link AlertSink}s in batches. Alerts are queued without blocking the
+ * sampling thread, a notifier thread sends them once batchSize alerts are waiting or interval milliseconds have
+ * passed since the first one. When the queue is full (sinks too slow) new alerts are dropped and counted.
+ * @author karen
+ *
+ */
+@Service("AlertNotifier")
+public class AlertNotifier {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(AlertNotifier.class);
+
+	/** Longest wait in milliseconds before the notifier thread checks whether it is closing */
+	private static final long WAKE_UP = 100;
+
+	/** Number of alerts that triggers a batch */
+	@Value("${serverstats.alerts.batch.size:50}")
+	private int batchSize = 50;
+
+	/** Milliseconds after which waiting alerts are sent anyway */
+	@Value("${serverstats.alerts.batch.interval:1000}")
+	private long interval = 1000l;
+
+	/** Number of alerts kept while the sinks do not keep up */
+	@Value("${serverstats.alerts.queue.capacity:1000}")
+	private int capacity = 1000;
+
+	@Autowired(required = false)
+	private List<AlertSink> sinks = Collections.emptyList();
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private BlockingQueue<Alert> queue;
+	private Thread thread;
+	private volatile boolean running;
+
+	@PostConstruct
+	public void start() {
+		queue = new ArrayBlockingQueue<Alert>(capacity);
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "server-stats-alert-notifier");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the notifier thread once every queued alert has been sent
+	 */
+	@PreDestroy
+	public void stop() {
+		running = false;
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues an alert, never blocks
+	 * @param alert
+	 */
+	public void publish(Alert alert) {
+		if (!queue.offer(alert)) {
+			if (dropped.incrementAndGet() % 100 == 1) {
+				logger.warn("Alert queue is full, " + dropped.get() + " alerts dropped so far");
+			}
+		}
+	}
+
+	private void drain() {
+		List<Alert> batch = new ArrayList<Alert>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Alert first = queue.poll(WAKE_UP, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.currentTimeMillis() + interval;
+				while (batch.size() < batchSize) {
+					Alert next = queue.poll();
+					if (next == null) {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0 || !running) {
+							break;
+						}
+						next = queue.poll(Math.min(remaining, WAKE_UP), TimeUnit.MILLISECONDS);
+					}
+					if (next != null) {
+						batch.add(next);
+					}
+				}
+			} catch (InterruptedException e) {
+				// closing, whatever is queued is sent below
+				running = false;
+			}
+			send(batch);
+		}
+	}
+
+	private void send(List<Alert> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<Alert> alerts = Collections.unmodifiableList(batch);
+		for (AlertSink sink : sinks) {
+			try {
+				sink.send(alerts);
+			} catch (Exception e) {
+				logger.error("Unable to send " + batch.size() + " alerts to " + sink.getClass().getSimpleName() + " " + e.getMessage());
+			}
+		}
+		sent.addAndGet(batch.size());
+		batch.clear();
+	}
+
+	/**
+	 * @return the number of alerts handed to the sinks so far
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * @return the number of alerts dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @param batchSize the batchSize to set
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param interval the interval to set
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * @param capacity the capacity to set
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param sinks the sinks to set
+	 */
+	public void setSinks(List<AlertSink> sinks) {
+		this.sinks = sinks;
+	}
+}
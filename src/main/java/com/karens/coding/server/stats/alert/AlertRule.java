@@ -0,0 +1,231 @@
+package com.karens.coding.server.stats.alert;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+
+/**
+ * Threshold rule on one {@link Metric}, compiled once from an expression such as
+ * <code>avg(systemCpuLoad, 5m) &gt; 0.9</code> or <code>usableSpace &lt; 5%</code>.
+ * <p>
+ * The metric is either compared as sampled, or aggregated with avg, min or max over a window in
+ * ms, s, m or h. A percentage compares a size to its total (usableSpace to totalSpace, freePhysicalMemorySize
+ * to totalPhysicalMemorySize...), or a load as a fraction.
+ * @author karen
+ *
+ */
+public final class AlertRule {
+
+	private static final Pattern EXPRESSION = Pattern.compile(
+			"\\s*(?:(\\w+)\\s*\\(\\s*(\\w+)\\s*,\\s*(\\d+)\\s*(ms|s|m|h)\\s*\\)|(\\w+))\\s*(>=|<=|>|<)\\s*([-+]?[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?)\\s*(%)?\\s*");
+
+	/** Total of the sizes that may be compared as a percentage */
+	private static final Map<Metric, Metric> TOTALS = new EnumMap<Metric, Metric>(Metric.class);
+
+	static {
+		TOTALS.put(Metric.FREE_SPACE, Metric.TOTAL_SPACE);
+		TOTALS.put(Metric.USABLE_SPACE, Metric.TOTAL_SPACE);
+		TOTALS.put(Metric.FREE_PHYSICAL_MEMORY_SIZE, Metric.TOTAL_PHYSICAL_MEMORY_SIZE);
+		TOTALS.put(Metric.FREE_SWAP_SPACE_SIZE, Metric.TOTAL_SWAP_SPACE_SIZE);
+	}
+
+	private final String name;
+	private final String expression;
+	private final Metric metric;
+
+	/** Metric the value is divided by, or null */
+	private final Metric total;
+
+	private final SlidingWindow.Aggregation aggregation;
+
+	/** Window of the aggregation in milliseconds */
+	private final long window;
+
+	private final Comparison comparison;
+	private final double threshold;
+
+	private AlertRule(String name, String expression, Metric metric, Metric total, SlidingWindow.Aggregation aggregation, long window,
+			Comparison comparison, double threshold) {
+		this.name = name;
+		this.expression = expression;
+		this.metric = metric;
+		this.total = total;
+		this.aggregation = aggregation;
+		this.window = window;
+		this.comparison = comparison;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @param name name of the rule
+	 * @param expression
+	 * @return AlertRule
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public static AlertRule parse(String name, String expression) {
+		Matcher matcher = EXPRESSION.matcher(expression);
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Rule " + name + " is not metric, or avg|min|max(metric, window), compared to a number: " + expression);
+		}
+		SlidingWindow.Aggregation aggregation = SlidingWindow.Aggregation.LAST;
+		long window = 0l;
+		String metricName = matcher.group(5);
+		if (metricName == null) {
+			metricName = matcher.group(2);
+			try {
+				aggregation = SlidingWindow.Aggregation.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				aggregation = SlidingWindow.Aggregation.LAST;
+			}
+			if (aggregation == SlidingWindow.Aggregation.LAST) {
+				throw new IllegalArgumentException("Rule " + name + " aggregates with " + matcher.group(1) + ", not avg, min or max");
+			}
+			window = toMillis(Long.parseLong(matcher.group(3)), matcher.group(4));
+		}
+		Metric metric = Metric.forName(metricName);
+		if (metric == null) {
+			throw new IllegalArgumentException("Rule " + name + " checks unknown metric " + metricName);
+		}
+		double threshold = Double.parseDouble(matcher.group(7));
+		Metric total = null;
+		if (matcher.group(8) != null) {
+			threshold = threshold / 100.0;
+			if (!metric.isFractional()) {
+				total = TOTALS.get(metric);
+				if (total == null) {
+					throw new IllegalArgumentException("Rule " + name + " compares " + metricName + " to a percentage, but it has no total");
+				}
+			}
+		}
+		return new AlertRule(name, expression.trim(), metric, total, aggregation, window, Comparison.forSymbol(matcher.group(6)), threshold);
+	}
+
+	private static long toMillis(long amount, String unit) {
+		if ("h".equals(unit)) {
+			return amount * 3600000l;
+		}
+		if ("m".equals(unit)) {
+			return amount * 60000l;
+		}
+		if ("s".equals(unit)) {
+			return amount * 1000l;
+		}
+		return amount;
+	}
+
+	/**
+	 * @param record
+	 * @return the value compared by the rule, NaN if the metric or its total was not collected
+	 */
+	double valueOf(MetricRecord record) {
+		if (!record.has(metric)) {
+			return Double.NaN;
+		}
+		double value = metric.isFractional() ? record.getDouble(metric) : record.getLong(metric);
+		if (total != null) {
+			if (!record.has(total) || record.getLong(total) <= 0) {
+				return Double.NaN;
+			}
+			value = value / record.getLong(total);
+		}
+		return value;
+	}
+
+	/**
+	 * @return a new empty window holding the state of the rule
+	 */
+	SlidingWindow newWindow() {
+		return new SlidingWindow(aggregation, window);
+	}
+
+	/**
+	 * @param value aggregated value
+	 * @return true if the value breaches the threshold
+	 */
+	boolean isBreached(double value) {
+		return comparison.test(value, threshold);
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return the metric
+	 */
+	public Metric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * @return the window in milliseconds, 0 if the metric is not aggregated
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return the threshold, a fraction for a percentage
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name + ": " + expression;
+	}
+
+	/**
+	 * Comparison of the value to the threshold
+	 */
+	enum Comparison {
+		GREATER(">"), GREATER_OR_EQUAL(">="), LESS("<"), LESS_OR_EQUAL("<=");
+
+		private final String symbol;
+
+		private Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+
+		boolean test(double value, double threshold) {
+			switch (this) {
+			case GREATER:
+				return value > threshold;
+			case GREATER_OR_EQUAL:
+				return value >= threshold;
+			case LESS:
+				return value < threshold;
+			default:
+				return value <= threshold;
+			}
+		}
+
+		static Comparison forSymbol(String symbol) {
+			for (Comparison comparison : values()) {
+				if (comparison.symbol.equals(symbol)) {
+					return comparison;
+				}
+			}
+			throw new IllegalArgumentException("Unknown comparison " + symbol);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.karens.coding.server.stats.alert;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the alerts, every sink bean receives the batches of the {@link AlertNotifier}.
+ * Called on the notifier thread, never on the sampling thread.
+ * @author karen
+ *
+ */
+public interface AlertSink {
+
+	/**
+	 * @param alerts the transitions of the batch, oldest first
+	 * @throws IOException
+	 */
+	void send(List<Alert> alerts) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.karens.coding.server.stats.alert;
+
+/**
+ * State of an {@link AlertRule}
+ * @author karen
+ *
+ */
+public enum AlertState {
+
+	/** The threshold has not been breached since the rules were loaded */
+	INACTIVE,
+
+	/** The threshold is breached */
+	FIRING,
+
+	/** The threshold was breached and is no longer */
+	RESOLVED
+}
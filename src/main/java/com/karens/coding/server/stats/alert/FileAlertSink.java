@@ -0,0 +1,60 @@
+package com.karens.coding.server.stats.alert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Appends every alert to a file as one line of JSON, the file is opened once per batch
+ * @author karen
+ *
+ */
+@Service("FileAlertSink")
+public class FileAlertSink implements AlertSink {
+
+	/** File the alerts are appended to, nothing is written if empty */
+	@Value("${serverstats.alerts.file:}")
+	private String file = "";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Override
+	public void send(List<Alert> alerts) throws IOException {
+		if (file.isEmpty()) {
+			return;
+		}
+		OutputStream out = Files.newOutputStream(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		try {
+			for (Alert alert : alerts) {
+				out.write(objectMapper.writeValueAsBytes(alert));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param file the file to set
+	 */
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+}
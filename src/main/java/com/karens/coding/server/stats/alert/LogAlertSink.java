@@ -0,0 +1,31 @@
+package com.karens.coding.server.stats.alert;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+
+/**
+ * Logs every alert, firing alerts as warnings
+ * @author karen
+ *
+ */
+@Service("LogAlertSink")
+public class LogAlertSink implements AlertSink {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(LogAlertSink.class);
+
+	@Override
+	public void send(List<Alert> alerts) {
+		for (Alert alert : alerts) {
+			if (alert.getState() == AlertState.FIRING) {
+				logger.warn(alert);
+			}
+			else {
+				logger.info(alert);
+			}
+		}
+	}
+}
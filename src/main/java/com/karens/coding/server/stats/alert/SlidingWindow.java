@@ -0,0 +1,136 @@
+package com.karens.coding.server.stats.alert;
+
+/**
+ * Aggregate of the values of the last window milliseconds, updated in amortized constant time per value:
+ * the average keeps a running sum, the minimum and maximum a monotonic queue of candidates, so no
+ * value is ever visited more than twice. Values and timestamps are kept in primitive rings that only
+ * grow until they hold one window of samples.
+ * <p>
+ * Not thread safe, only the sampling thread adds values.
+ * @author karen
+ *
+ */
+final class SlidingWindow {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Aggregation aggregation;
+
+	/** Width of the window in milliseconds, 0 keeps the last value only */
+	private final long window;
+
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private double[] values = new double[INITIAL_CAPACITY];
+
+	/** Absolute indices of the oldest value and of the next one */
+	private long head = 0l;
+	private long tail = 0l;
+
+	/** Absolute indices of the values that may become the minimum or maximum, oldest first */
+	private long[] candidates = new long[INITIAL_CAPACITY];
+	private long candidateHead = 0l;
+	private long candidateTail = 0l;
+
+	private double sum = 0.0;
+
+	SlidingWindow(Aggregation aggregation, long window) {
+		this.aggregation = aggregation;
+		this.window = window;
+	}
+
+	/**
+	 * Evicts the values that left the window and adds the new one
+	 * @param timestamp in milliseconds, never older than the previous one
+	 * @param value
+	 */
+	void add(long timestamp, double value) {
+		while (head < tail && timestamps[slot(head)] <= timestamp - window) {
+			if (aggregation == Aggregation.AVG) {
+				sum -= values[slot(head)];
+			}
+			if (candidateHead < candidateTail && candidates[slot(candidateHead)] == head) {
+				candidateHead++;
+			}
+			head++;
+		}
+		if (head == tail) {
+			// drop the rounding errors of the running sum
+			sum = 0.0;
+		}
+		if (tail - head == values.length) {
+			grow();
+		}
+		timestamps[slot(tail)] = timestamp;
+		values[slot(tail)] = value;
+		if (aggregation == Aggregation.AVG) {
+			sum += value;
+		}
+		else if (aggregation == Aggregation.MIN) {
+			while (candidateHead < candidateTail && values[slot(candidates[slot(candidateTail - 1)])] >= value) {
+				candidateTail--;
+			}
+			candidates[slot(candidateTail++)] = tail;
+		}
+		else if (aggregation == Aggregation.MAX) {
+			while (candidateHead < candidateTail && values[slot(candidates[slot(candidateTail - 1)])] <= value) {
+				candidateTail--;
+			}
+			candidates[slot(candidateTail++)] = tail;
+		}
+		tail++;
+	}
+
+	private int slot(long index) {
+		return (int) (index & (values.length - 1));
+	}
+
+	private void grow() {
+		int mask = values.length - 1;
+		long[] newTimestamps = new long[values.length * 2];
+		double[] newValues = new double[values.length * 2];
+		long[] newCandidates = new long[values.length * 2];
+		int newMask = newValues.length - 1;
+		for (long index = head; index < tail; index++) {
+			newTimestamps[(int) (index & newMask)] = timestamps[(int) (index & mask)];
+			newValues[(int) (index & newMask)] = values[(int) (index & mask)];
+		}
+		for (long index = candidateHead; index < candidateTail; index++) {
+			newCandidates[(int) (index & newMask)] = candidates[(int) (index & mask)];
+		}
+		timestamps = newTimestamps;
+		values = newValues;
+		candidates = newCandidates;
+	}
+
+	/**
+	 * @return the aggregate of the values in the window, NaN if empty
+	 */
+	double value() {
+		if (head == tail) {
+			return Double.NaN;
+		}
+		switch (aggregation) {
+		case AVG:
+			return sum / (tail - head);
+		case MIN:
+		case MAX:
+			return values[slot(candidates[slot(candidateHead)])];
+		default:
+			return values[slot(tail - 1)];
+		}
+	}
+
+	/**
+	 * @return the number of values in the window
+	 */
+	int size() {
+		return (int) (tail - head);
+	}
+
+	/**
+	 * Aggregation of the values of a window
+	 */
+	enum Aggregation {
+		LAST, AVG, MIN, MAX
+	}
+}
@@ -0,0 +1,62 @@
+package com.karens.coding.server.stats.config;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+
+import com.karens.coding.server.stats.mybatis.StatisticsSampleWriter;
+
+/**
+ * Writes every sample to the serverstats database through MyBatis.
+ * Only active with serverstats.persistence.enabled=true, the application otherwise runs without a database.
+ */
+@Configuration
+@ConditionalOnProperty(name = "serverstats.persistence.enabled", havingValue = "true")
+public class PersistenceConfig {
+
+	@Value("${spring.datasource.url}")
+	private String url;
+
+	@Value("${spring.datasource.username:root}")
+	private String username;
+
+	@Value("${spring.datasource.password:}")
+	private String password;
+
+	@Value("${spring.datasource.driverClassName:com.mysql.jdbc.Driver}")
+	private String driverClassName;
+
+	@Bean
+	public DataSource dataSource() {
+		return DataSourceBuilder.create()
+				.url(url)
+				.username(username)
+				.password(password)
+				.driverClassName(driverClassName)
+				.build();
+	}
+
+	@Bean
+	public SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+		SqlSessionFactoryBean sessionFactory = new SqlSessionFactoryBean();
+		sessionFactory.setDataSource(dataSource);
+		sessionFactory.setConfigLocation(new ClassPathResource("SqlMapConfig.xml"));
+		return sessionFactory.getObject();
+	}
+
+	@Bean(destroyMethod = "close")
+	public StatisticsSampleWriter statisticsSampleWriter(SqlSessionFactory sqlSessionFactory,
+			@Value("${serverstats.server.id:0}") long serverId,
+			@Value("${serverstats.persistence.batch-size:100}") int batchSize,
+			@Value("${serverstats.persistence.flush-interval:5000}") long flushInterval,
+			@Value("${serverstats.persistence.queue-capacity:10000}") int queueCapacity) {
+		return new StatisticsSampleWriter(sqlSessionFactory, serverId, batchSize, flushInterval, queueCapacity);
+	}
+}
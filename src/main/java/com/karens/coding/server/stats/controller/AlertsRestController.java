@@ -0,0 +1,57 @@
+package com.karens.coding.server.stats.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.alert.Alert;
+import com.karens.coding.server.stats.alert.AlertEngine;
+import com.karens.coding.server.stats.alert.AlertState;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("AlertsRestController")
+@Validated
+public class AlertsRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(AlertsRestController.class);
+
+	@Autowired
+	private AlertEngine alertEngine;
+
+	/**
+	 * Returns the state of the alert rules
+	 * @param firing true to return the firing alerts only
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/alerts", produces = "application/json")
+	public RestResponse getAlerts(@RequestParam(value = "firing", required = false, defaultValue = "false") boolean firing) {
+		RestResponse ajaxResponse = new RestResponse();
+
+		List<Alert> alerts = alertEngine.getAlerts();
+		if (firing) {
+			List<Alert> firingAlerts = new ArrayList<Alert>();
+			for (Alert alert : alerts) {
+				if (alert.getState() == AlertState.FIRING) {
+					firingAlerts.add(alert);
+				}
+			}
+			alerts = firingAlerts;
+		}
+		ajaxResponse.setResult(alerts);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
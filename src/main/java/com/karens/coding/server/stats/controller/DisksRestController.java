@@ -0,0 +1,46 @@
+package com.karens.coding.server.stats.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.disk.DiskIoCollector;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("DisksRestController")
+@Validated
+public class DisksRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(DisksRestController.class);
+
+	@Autowired
+	private DiskIoCollector diskIoCollector;
+
+	/**
+	 * Returns the IOPS, throughput, await and utilization of each block device between the last two samples,
+	 * with the mount points on it. The history of each figure is kept as disk.[device].[metric]
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/disks", produces = "application/json")
+	public RestResponse getDisks() {
+		RestResponse ajaxResponse = new RestResponse();
+
+		if (!diskIoCollector.isEnabled()) {
+			ajaxResponse.setMessage("Block devices are not tracked");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(diskIoCollector.getDevices());
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
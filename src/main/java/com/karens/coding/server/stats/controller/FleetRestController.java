@@ -0,0 +1,91 @@
+package com.karens.coding.server.stats.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.fleet.AgentStatus;
+import com.karens.coding.server.stats.fleet.FleetAggregator;
+import com.karens.coding.server.stats.push.PushReceiver;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("FleetRestController")
+@Validated
+public class FleetRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(FleetRestController.class);
+
+	@Autowired
+	private FleetAggregator fleetAggregator;
+
+	@Autowired
+	private PushReceiver pushReceiver;
+
+	/**
+	 * Returns the latest statistics of every polled agent, keyed by serverId
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/fleet/statistics", produces = "application/json")
+	public RestResponse getFleetStatistics() {
+		RestResponse ajaxResponse = new RestResponse();
+
+		if (!fleetAggregator.isEnabled()) {
+			ajaxResponse.setMessage("No agents configured in serverstats.fleet.agents");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(fleetAggregator.getFleet());
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+
+	/**
+	 * Returns the latest statistics of one agent
+	 * @param serverId
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/fleet/statistics/{serverId}", produces = "application/json")
+	public RestResponse getAgentStatistics(@PathVariable("serverId") long serverId) {
+		RestResponse ajaxResponse = new RestResponse();
+
+		AgentStatus status = fleetAggregator.getAgent(serverId);
+		if (status == null) {
+			ajaxResponse.setMessage("Unknown server " + serverId);
+			ajaxResponse.setStatusCode(404);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(status);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+
+	/**
+	 * Returns the latest sample pushed by every agent in push mode
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/fleet/pushed", produces = "application/json")
+	public RestResponse getPushedStatistics() {
+		RestResponse ajaxResponse = new RestResponse();
+
+		if (!pushReceiver.isEnabled()) {
+			ajaxResponse.setMessage("No port configured in serverstats.push.receiver.port");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(pushReceiver.getServers());
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
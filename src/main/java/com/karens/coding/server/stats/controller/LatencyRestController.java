@@ -0,0 +1,39 @@
+package com.karens.coding.server.stats.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.latency.LatencyRecorder;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("LatencyRestController")
+@Validated
+public class LatencyRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(LatencyRestController.class);
+
+	@Autowired
+	private LatencyRecorder latencyRecorder;
+
+	/**
+	 * Returns the latency percentiles in microseconds and the throughput of every endpoint of this service
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/self/latency", produces = "application/json")
+	public RestResponse getLatency() {
+		RestResponse ajaxResponse = new RestResponse();
+		ajaxResponse.setResult(latencyRecorder.getStatistics());
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
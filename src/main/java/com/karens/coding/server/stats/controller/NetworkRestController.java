@@ -0,0 +1,46 @@
+package com.karens.coding.server.stats.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.network.NetworkCollector;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("NetworkRestController")
+@Validated
+public class NetworkRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(NetworkRestController.class);
+
+	@Autowired
+	private NetworkCollector networkCollector;
+
+	/**
+	 * Returns the throughput of each network interface between the last two samples.
+	 * The history of each rate is kept as network.[interface].[counter]PerSecond
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/network", produces = "application/json")
+	public RestResponse getNetwork() {
+		RestResponse ajaxResponse = new RestResponse();
+
+		if (!networkCollector.isEnabled()) {
+			ajaxResponse.setMessage("Network interfaces are not tracked");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(networkCollector.getInterfaces());
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
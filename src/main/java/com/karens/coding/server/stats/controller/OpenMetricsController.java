@@ -0,0 +1,50 @@
+package com.karens.coding.server.stats.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.openmetrics.OpenMetricsExporter;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("OpenMetricsController")
+@Validated
+public class OpenMetricsController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(OpenMetricsController.class);
+
+	/** Content type of the scrapers that do not ask for OpenMetrics, the body is compatible */
+	private static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	@Autowired
+	private OpenMetricsExporter openMetricsExporter;
+
+	/**
+	 * Writes the statistics in the OpenMetrics text format, from a copy of the buffer of the exporter
+	 * @param accept
+	 * @param response
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET)
+	public void getMetrics(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept, HttpServletResponse response)
+			throws IOException {
+		boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+		response.setContentType(openMetrics ? OpenMetricsExporter.CONTENT_TYPE : TEXT_CONTENT_TYPE);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+		openMetricsExporter.writeTo(response.getOutputStream());
+	}
+}
@@ -0,0 +1,65 @@
+package com.karens.coding.server.stats.controller;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.processes.ProcessCollector;
+import com.karens.coding.server.stats.processes.ProcessSort;
+import com.karens.coding.server.stats.processes.ProcessUsage;
+import com.karens.coding.server.stats.rest.RestResponse;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("ProcessesRestController")
+@Validated
+public class ProcessesRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(ProcessesRestController.class);
+
+	@Autowired
+	private ProcessCollector processCollector;
+
+	/**
+	 * Returns the processes of the server using the most of a resource at the latest scan
+	 * @param sort cpu, rss or threads
+	 * @param n number of processes, at most serverstats.processes.top.max
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/processes/top", produces = "application/json")
+	public RestResponse getTopProcesses(@RequestParam(value = "sort", required = false, defaultValue = "cpu") String sort,
+			@RequestParam(value = "n", required = false, defaultValue = "10") int n) {
+		RestResponse ajaxResponse = new RestResponse();
+
+		ProcessSort order = ProcessSort.forName(sort);
+		if (order == null) {
+			ajaxResponse.setMessage("Unknown sort " + sort + ", expected cpu, rss or threads");
+			ajaxResponse.setStatusCode(400);
+			return ajaxResponse;
+		}
+		if (!processCollector.isEnabled()) {
+			ajaxResponse.setMessage("Processes are not tracked");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		if (processCollector.getSampleTimestamp() < 0) {
+			ajaxResponse.setMessage("No processes scanned yet");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		List<ProcessUsage> top = processCollector.getTop(order, Math.min(n, processCollector.getMax()));
+		ajaxResponse.setResult(top);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
@@ -1,14 +1,42 @@
 package com.karens.coding.server.stats.controller;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.karens.coding.server.stats.form.SeriesSelector;
+import com.karens.coding.server.stats.gc.GarbageCollectionMonitor;
+import com.karens.coding.server.stats.gc.GarbageCollectionStatistics;
 import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsCollector;
+import com.karens.coding.server.stats.health.StatisticsSampler;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.history.MetricSeries;
+import com.karens.coding.server.stats.query.SeriesResult;
+import com.karens.coding.server.stats.query.StatisticsQueryService;
+import com.karens.coding.server.stats.rest.FieldProjection;
 import com.karens.coding.server.stats.rest.RestResponse;
+import com.karens.coding.server.stats.rest.SerializedSnapshot;
+import com.karens.coding.server.stats.rest.SnapshotResponseCache;
 
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -17,21 +45,211 @@ import com.karens.coding.server.stats.rest.RestResponse;
 public class ServerStatisticsRestController {
 
 	/** Logger */
-	@SuppressWarnings("unused")
 	private static final Logger logger = LogManager.getLogger(ServerStatisticsRestController.class);
 
+	@Autowired
+	private StatisticsSampler statisticsSampler;
+	
+	@Autowired
+	private SnapshotResponseCache snapshotResponseCache;
+	
+	@Autowired
+	private FieldProjection fieldProjection;
+	
+	@Autowired
+	private MetricHistory metricHistory;
+	
+	@Autowired
+	private GarbageCollectionMonitor garbageCollectionMonitor;
 	
+	@Autowired
+	private StatisticsQueryService statisticsQueryService;
+	
+	/**
+	 * Returns the latest snapshot published by the sampler, serialized once per sample. A client sending the
+	 * ETag of the latest snapshot in If-None-Match gets a 304 without a body. The response may be cached for one
+	 * sampler interval, the Age header tells how much of it has already elapsed.
+	 * <p>
+	 * With fields, only the listed fields and groups (cpu, memory, disk) are written. They are taken from the
+	 * latest snapshot, unless the sampler does not run their collectors: those are run on the request thread.
+	 * @param fields comma separated fields and groups, all fields if absent, a 400 if it lists none
+	 * @param ifNoneMatch entity tags the client already has
+	 * @return the serialized RestResponse
+	 */
 	@RequestMapping(value = "/rest/server/statistics", produces = "application/json")
-	public RestResponse getServerDiskUsage() {
+	public ResponseEntity<?> getServerDiskUsage(@RequestParam(value = "fields", required = false) String fields,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		if (fields != null) {
+			return getProjectedStatistics(fields);
+		}
+		SerializedSnapshot snapshot = snapshotResponseCache.getLatest();
+		if (snapshot == null) {
+			RestResponse ajaxResponse = new RestResponse();
+			ajaxResponse.setMessage("No statistics sampled yet");
+			ajaxResponse.setStatusCode(503);
+			return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(ajaxResponse);
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag(snapshot.getEtag());
+		headers.setCacheControl(CacheControl.maxAge(cacheSeconds(), TimeUnit.SECONDS)
+				.cachePublic().getHeaderValue());
+		headers.set(HttpHeaders.AGE, Long.toString(snapshot.getSampleAge() / 1000));
+		if (matches(ifNoneMatch, snapshot.getEtag())) {
+			return new ResponseEntity<Object>(headers, HttpStatus.NOT_MODIFIED);
+		}
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		headers.setContentLength(snapshot.getBody().length);
+		return new ResponseEntity<byte[]>(snapshot.getBody(), headers, HttpStatus.OK);
+	}
+	
+	private ResponseEntity<?> getProjectedStatistics(String fields) {
+		RestResponse ajaxResponse = new RestResponse();
+
+		Set<String> projection;
+		try {
+			projection = StatisticsCollector.resolveFields(fields);
+		} catch (IllegalArgumentException e) {
+			ajaxResponse.setMessage(e.getMessage());
+			ajaxResponse.setStatusCode(400);
+			return ResponseEntity.ok(ajaxResponse);
+		}
+		Set<StatisticsCollector> collectors = StatisticsCollector.collectorsOf(projection);
+		StatisticsSnapshot snapshot = statisticsSampler.getLatest();
+		if (snapshot == null || !snapshot.getStatistics().getCollectors().containsAll(collectors)) {
+			// sequence 0, the statistics were not published by the sampler
+			snapshot = new StatisticsSnapshot(0l, System.currentTimeMillis(), new ServerStatistics(collectors));
+		}
+		ajaxResponse.setResult(snapshot);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		byte[] body;
+		try {
+			body = fieldProjection.write(ajaxResponse, projection);
+		} catch (JsonProcessingException e) {
+			logger.error("Unable to serialize statistics fields " + e.getMessage());
+			ajaxResponse.setResult(null);
+			ajaxResponse.setMessage("Unable to serialize statistics");
+			ajaxResponse.setStatusCode(500);
+			return ResponseEntity.ok(ajaxResponse);
+		}
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+				.cacheControl(snapshot.getSequence() > 0 ? CacheControl.maxAge(cacheSeconds(), TimeUnit.SECONDS).cachePublic() : CacheControl.noStore())
+				.body(body);
+	}
+	
+	/**
+	 * @return the seconds a response may be cached, one sampler interval
+	 */
+	private long cacheSeconds() {
+		return Math.max(1l, (statisticsSampler.getInterval() + 999) / 1000);
+	}
+	
+	/**
+	 * Weak comparison of If-None-Match, as required by RFC 7232
+	 * @param ifNoneMatch header value, may be null
+	 * @param etag quoted entity tag
+	 * @return true if the header lists the tag or is *
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the recorded samples of one metric, or their minute or hour rollups
+	 * @param metric name of the metric, as in the statistics JSON
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @param resolution coarsest acceptable resolution in milliseconds, picks the rollup tier
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/statistics/history", produces = "application/json")
+	public RestResponse getServerStatisticsHistory(@RequestParam("metric") String metric,
+			@RequestParam(value = "from", required = false) Long from,
+			@RequestParam(value = "to", required = false) Long to,
+			@RequestParam(value = "resolution", required = false) Long resolution) {
 		RestResponse ajaxResponse = new RestResponse();
 
-		ServerStatistics serverUsage = new ServerStatistics();
-		ajaxResponse.setResult(serverUsage);
+		MetricSeries series = metricHistory.query(metric, from != null ? from : 0l, to != null ? to : Long.MAX_VALUE, resolution);
+		if (series == null) {
+			ajaxResponse.setMessage("Unknown metric " + metric + ", available metrics are " + metricHistory.getMetricNames());
+			ajaxResponse.setStatusCode(404);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(series);
 		ajaxResponse.setMessage("Success");
 		ajaxResponse.setStatusCode(200);
 		return ajaxResponse;
 	}
 	
+	/**
+	 * Returns the history of several series at once, of this server or of the fleet agents. Selectors of the
+	 * same series with overlapping ranges share one read, independent reads run in parallel.
+	 * @param selectors serverId (this server if absent), metric, from, to and resolution of each series
+	 * @return RestResponse, with one result per selector in the same order
+	 * @throws InterruptedException
+	 */
+	@RequestMapping(value = "/rest/server/statistics/query", method = RequestMethod.POST, consumes = "application/json", produces = "application/json")
+	public RestResponse queryServerStatistics(@RequestBody List<SeriesSelector> selectors) throws InterruptedException {
+		RestResponse ajaxResponse = new RestResponse();
+
+		List<SeriesResult> results;
+		try {
+			results = statisticsQueryService.query(selectors);
+		} catch (IllegalArgumentException e) {
+			ajaxResponse.setMessage(e.getMessage());
+			ajaxResponse.setStatusCode(400);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(results);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
 	
+	/**
+	 * Returns the garbage collection pauses, the memory pools and the allocation rate of the latest sample
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/statistics/gc", produces = "application/json")
+	public RestResponse getGarbageCollectionStatistics() {
+		RestResponse ajaxResponse = new RestResponse();
+
+		GarbageCollectionStatistics statistics = garbageCollectionMonitor.getLatest();
+		if (statistics == null) {
+			ajaxResponse.setMessage("No statistics sampled yet");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		ajaxResponse.setResult(statistics);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+	
+	/**
+	 * @param statisticsSampler the statisticsSampler to set
+	 */
+	public void setStatisticsSampler(StatisticsSampler statisticsSampler) {
+		this.statisticsSampler = statisticsSampler;
+	}
+	
+	/**
+	 * @param snapshotResponseCache the snapshotResponseCache to set
+	 */
+	public void setSnapshotResponseCache(SnapshotResponseCache snapshotResponseCache) {
+		this.snapshotResponseCache = snapshotResponseCache;
+	}
 	
 }
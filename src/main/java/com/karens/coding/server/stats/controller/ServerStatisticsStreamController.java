@@ -0,0 +1,33 @@
+package com.karens.coding.server.stats.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.karens.coding.server.stats.stream.StatisticsBroadcaster;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("ServerStatisticsStreamController")
+public class ServerStatisticsStreamController {
+
+	@Autowired
+	private StatisticsBroadcaster statisticsBroadcaster;
+
+	/**
+	 * Streams every new snapshot as a Server-Sent Event named "statistics", instead of polling /rest/server/statistics
+	 * @return SseEmitter, or 503 while too many subscribers are stalled
+	 */
+	@RequestMapping(value = "/rest/server/statistics/stream", method = RequestMethod.GET, produces = "text/event-stream")
+	public ResponseEntity<SseEmitter> streamServerStatistics() {
+		SseEmitter emitter = statisticsBroadcaster.subscribe();
+		if (emitter == null) {
+			return new ResponseEntity<SseEmitter>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return new ResponseEntity<SseEmitter>(emitter, HttpStatus.OK);
+	}
+}
@@ -0,0 +1,56 @@
+package com.karens.coding.server.stats.controller;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.karens.coding.server.stats.rest.RestResponse;
+import com.karens.coding.server.stats.threads.ThreadCpuCollector;
+import com.karens.coding.server.stats.threads.ThreadCpuUsage;
+
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController("ThreadsRestController")
+@Validated
+public class ThreadsRestController {
+
+	/** Logger */
+	@SuppressWarnings("unused")
+	private static final Logger logger = LogManager.getLogger(ThreadsRestController.class);
+
+	@Autowired
+	private ThreadCpuCollector threadCpuCollector;
+
+	/**
+	 * Returns the threads that used the most CPU between the last two samples, with a stack excerpt
+	 * @param n number of threads, at most serverstats.threads.top.max
+	 * @return RestResponse
+	 */
+	@RequestMapping(value = "/rest/server/threads/top", produces = "application/json")
+	public RestResponse getTopThreads(@RequestParam(value = "n", required = false, defaultValue = "10") int n) {
+		RestResponse ajaxResponse = new RestResponse();
+
+		if (!threadCpuCollector.isEnabled()) {
+			ajaxResponse.setMessage("Thread CPU time is not tracked");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		if (threadCpuCollector.getSampleTimestamp() < 0) {
+			ajaxResponse.setMessage("No thread CPU sampled yet");
+			ajaxResponse.setStatusCode(503);
+			return ajaxResponse;
+		}
+		List<ThreadCpuUsage> top = threadCpuCollector.getTop(Math.min(n, threadCpuCollector.getMax()));
+		ajaxResponse.setResult(top);
+		ajaxResponse.setMessage("Success");
+		ajaxResponse.setStatusCode(200);
+		return ajaxResponse;
+	}
+}
@@ -0,0 +1,262 @@
+package com.karens.coding.server.stats.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.proc.DiskMetric;
+import com.karens.coding.server.stats.proc.DiskStatistics;
+
+/**
+ * Samples the block devices from /proc/diskstats on every sample, and records their IOPS, throughput, await and
+ * utilization in the {@link MetricHistory} as disk.[device].[metric], rolled up with the other metrics.
+ * Devices are mapped to their mount points by the major and minor numbers listed in /proc/self/mountinfo, which
+ * unlike the file stores never stats a mount; the mapping is refreshed every serverstats.diskstats.mounts.interval,
+ * not on every sample.
+ * The series of a device are dropped from the history when it disappears.
+ * @author karen
+ *
+ */
+@Service("DiskIoCollector")
+public class DiskIoCollector implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(DiskIoCollector.class);
+
+	/** Sample the block devices on every sample */
+	@Value("${serverstats.diskstats.enabled:true}")
+	private boolean enabled = true;
+
+	/** Regular expression of the device names not sampled */
+	@Value("${serverstats.diskstats.exclude:(loop|ram|zram)[0-9]+}")
+	private String exclude = "(loop|ram|zram)[0-9]+";
+
+	/** Milliseconds between two refreshes of the mount points of the devices */
+	@Value("${serverstats.diskstats.mounts.interval:60000}")
+	private long mountsInterval = 60000l;
+
+	/** The /proc tree read */
+	private File root = new File("/proc");
+
+	@Autowired
+	private MetricHistory history;
+
+	private DiskStatistics statistics;
+
+	/** Mount points by major:minor device numbers, replaced whole on every refresh */
+	private volatile Map<String, List<String>> mounts = Collections.emptyMap();
+	private long mountsNanos = 0l;
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			statistics = new DiskStatistics(root, exclude);
+		} catch (IOException e) {
+			logger.warn("Unable to read " + root + "/diskstats, block devices are not tracked " + e.getMessage());
+			enabled = false;
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (enabled) {
+			long nanos = System.nanoTime();
+			if (mountsNanos == 0l || nanos - mountsNanos >= TimeUnit.MILLISECONDS.toNanos(mountsInterval)) {
+				mountsNanos = nanos;
+				try {
+					mounts = mountsByDevice(new File(root, "self/mountinfo"));
+				} catch (IOException e) {
+					logger.error("Unable to read the mount points of the block devices " + e.getMessage());
+				}
+			}
+			sample(snapshot.getSampleTimestamp(), nanos);
+		}
+	}
+
+	/**
+	 * Reads the counters, records the figures of the live devices and drops the series of the removed ones
+	 * @param timestamp in milliseconds since the epoch
+	 * @param nanos monotonic time of the sample
+	 */
+	public void sample(long timestamp, long nanos) {
+		try {
+			statistics.sample(nanos);
+		} catch (IOException e) {
+			logger.error("Unable to read the block devices " + e.getMessage());
+			return;
+		}
+		for (String metric : statistics.getEvictedMetricNames()) {
+			history.remove(metric);
+		}
+		int devices = statistics.getDeviceCount();
+		for (int index = 0; index < devices; index++) {
+			if (!statistics.isLive(index)) {
+				continue;
+			}
+			for (DiskMetric metric : DiskMetric.values()) {
+				double value = statistics.getMetric(index, metric);
+				if (!Double.isNaN(value)) {
+					history.record(statistics.getMetricName(index, metric), timestamp, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param mountinfo a /proc/self/mountinfo file
+	 * @return the mount points, by major:minor numbers of their device as listed in /proc/diskstats
+	 * @throws IOException
+	 */
+	static Map<String, List<String>> mountsByDevice(File mountinfo) throws IOException {
+		Map<String, List<String>> devices = new HashMap<String, List<String>>();
+		for (String line : Files.readAllLines(mountinfo.toPath(), StandardCharsets.UTF_8)) {
+			// mount id, parent id, major:minor, root in the file system, mount point, then the options
+			String[] fields = line.split(" ", 6);
+			if (fields.length < 6) {
+				continue;
+			}
+			List<String> mounts = devices.get(fields[2]);
+			if (mounts == null) {
+				mounts = new ArrayList<String>();
+				devices.put(fields[2], mounts);
+			}
+			mounts.add(unescape(fields[4]));
+		}
+		return devices;
+	}
+
+	/**
+	 * @param path a path of /proc/self/mountinfo
+	 * @return the path with its octal escapes decoded, such as \040 for a space
+	 */
+	static String unescape(String path) {
+		if (path.indexOf('\\') < 0) {
+			return path;
+		}
+		StringBuilder result = new StringBuilder(path.length());
+		for (int index = 0; index < path.length(); index++) {
+			char c = path.charAt(index);
+			if (c == '\\' && index + 3 < path.length() && isOctal(path, index + 1, index + 4)) {
+				result.append((char) Integer.parseInt(path.substring(index + 1, index + 4), 8));
+				index += 3;
+			}
+			else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	private static boolean isOctal(String text, int from, int to) {
+		for (int index = from; index < to; index++) {
+			if (text.charAt(index) < '0' || text.charAt(index) > '7') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the live devices with their figures at the last sample and their mount points
+	 */
+	public List<DiskIoUsage> getDevices() {
+		List<DiskIoUsage> result = new ArrayList<DiskIoUsage>();
+		if (statistics == null) {
+			return result;
+		}
+		Map<String, List<String>> mounted = mounts;
+		int devices = statistics.getDeviceCount();
+		for (int index = 0; index < devices; index++) {
+			if (!statistics.isLive(index)) {
+				continue;
+			}
+			String device = statistics.getDeviceName(index);
+			Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+			for (DiskMetric metric : DiskMetric.values()) {
+				double value = statistics.getMetric(index, metric);
+				metrics.put(metric.getName(), Double.isNaN(value) ? null : value);
+			}
+			List<String> deviceMounts = mounted.get(statistics.getDeviceNumber(index));
+			result.add(new DiskIoUsage(device, deviceMounts != null ? deviceMounts : Collections.<String>emptyList(), metrics));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the devices read on every sample, by slot without allocating, null when disabled
+	 */
+	public DiskStatistics getStatistics() {
+		return enabled ? statistics : null;
+	}
+
+	/**
+	 * @return the enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled the enabled to set
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param exclude the exclude to set, a regular expression of device names
+	 */
+	public void setExclude(String exclude) {
+		this.exclude = exclude;
+	}
+
+	/**
+	 * @param mountsInterval the mountsInterval to set, in milliseconds
+	 */
+	public void setMountsInterval(long mountsInterval) {
+		this.mountsInterval = mountsInterval;
+	}
+
+	/**
+	 * @param mounts the mount points by major:minor device numbers to set
+	 */
+	public void setMounts(Map<String, List<String>> mounts) {
+		this.mounts = mounts;
+	}
+
+	/**
+	 * @param root the root to set, a /proc tree
+	 */
+	public void setRoot(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param history the history to set
+	 */
+	public void setHistory(MetricHistory history) {
+		this.history = history;
+	}
+}
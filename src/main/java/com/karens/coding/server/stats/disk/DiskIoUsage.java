@@ -0,0 +1,48 @@
+package com.karens.coding.server.stats.disk;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * I/O of one block device between the last two samples of the {@link DiskIoCollector}
+ * @author karen
+ *
+ */
+public class DiskIoUsage {
+
+	/** Device name, such as sda1 */
+	private final String device;
+
+	/** Mount points of the file stores on the device, empty for a whole disk or an unmounted device */
+	private final List<String> mounts;
+
+	/** Each figure by name such as readsPerSecond, null until the second sample */
+	private final Map<String, Double> metrics;
+
+	public DiskIoUsage(String device, List<String> mounts, Map<String, Double> metrics) {
+		this.device = device;
+		this.mounts = mounts;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the device
+	 */
+	public String getDevice() {
+		return device;
+	}
+
+	/**
+	 * @return the mounts
+	 */
+	public List<String> getMounts() {
+		return mounts;
+	}
+
+	/**
+	 * @return the metrics
+	 */
+	public Map<String, Double> getMetrics() {
+		return metrics;
+	}
+}
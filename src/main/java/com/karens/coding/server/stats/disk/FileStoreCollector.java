@@ -0,0 +1,211 @@
+package com.karens.coding.server.stats.disk;
+
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Probes the space of every mounted file store in parallel, each probe on its own daemon thread. The
+ * probes started by one collection share a deadline; a mount that does not answer in time, like a stale
+ * NFS mount, reports its last good values flagged as stale. A mount keeps at most one probe in flight: while
+ * it hangs, later collections do not wait for it nor start another thread for it.
+ * <p>
+ * Listing the mounts stats them too, so the listing runs on a probe thread under the same deadline. While it
+ * hangs, the mounts of the last listing are probed and reported.
+ * @author karen
+ *
+ */
+public class FileStoreCollector {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(FileStoreCollector.class);
+
+	/** Lists the file stores of the default file system, iterating them stats every mount */
+	private static final Callable<List<FileStore>> DEFAULT_STORES = new Callable<List<FileStore>>() {
+		@Override
+		public List<FileStore> call() {
+			List<FileStore> stores = new ArrayList<FileStore>();
+			for (FileStore store : FileSystems.getDefault().getFileStores()) {
+				stores.add(store);
+			}
+			return stores;
+		}
+	};
+
+	/** Milliseconds the probes of one collection may take */
+	private volatile long timeout;
+
+	/** State of each mount, by mount point, only touched under the lock of the collector */
+	private final Map<String, Mount> mounts = new HashMap<String, Mount>();
+
+	/** Listing in flight and last listing of the mounts, only touched under the lock of the collector */
+	private Future<List<FileStore>> listing;
+	/** Deadline of the collection that started the listing, later collections do not wait for it */
+	private long listingDeadline;
+	private List<FileStore> stores = Collections.emptyList();
+
+	private final ExecutorService executor;
+
+	private static class InstanceHolder {
+		static final FileStoreCollector INSTANCE = new FileStoreCollector(2000l);
+	}
+
+	/**
+	 * @return the collector shared by all the statistics
+	 */
+	public static FileStoreCollector getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/**
+	 * @param timeout milliseconds the probes of one collection may take
+	 */
+	public FileStoreCollector(long timeout) {
+		this.timeout = timeout;
+		final AtomicInteger count = new AtomicInteger();
+		// unbounded, but there is never more than one thread per mount
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "server-stats-disk-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Probes the file stores of the default file system
+	 * @return the usage by mount point
+	 */
+	public Map<String, FileStoreUsage> collect() {
+		return collect(DEFAULT_STORES);
+	}
+
+	/**
+	 * @param lister lists the mounted file stores, mounts no longer listed are forgotten
+	 * @return the usage by mount point, in the order of the stores
+	 */
+	synchronized Map<String, FileStoreUsage> collect(Callable<List<FileStore>> lister) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		if (listing == null) {
+			listing = executor.submit(lister);
+			listingDeadline = deadline;
+		}
+		try {
+			stores = listing.get(Math.max(0l, listingDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			listing = null;
+		} catch (TimeoutException e) {
+			// a mount hangs the listing, the next collections will pick up the result
+		} catch (ExecutionException e) {
+			logger.error("Unable to list the file stores " + e.getCause().getMessage());
+			listing = null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		Map<String, Mount> listed = new LinkedHashMap<String, Mount>();
+		for (FileStore store : stores) {
+			String mount = mountOf(store);
+			Mount state = mounts.get(mount);
+			if (state == null) {
+				state = new Mount(mount, store);
+			}
+			if (state.pending == null) {
+				state.probe(executor, deadline);
+			}
+			listed.put(mount, state);
+		}
+		mounts.keySet().retainAll(listed.keySet());
+		mounts.putAll(listed);
+
+		Map<String, FileStoreUsage> usages = new LinkedHashMap<String, FileStoreUsage>();
+		for (Mount state : listed.values()) {
+			usages.put(state.mount, state.await());
+		}
+		return usages;
+	}
+
+	/**
+	 * @param store
+	 * @return the mount point, from the "mount (name)" form of the Unix file stores
+	 */
+	static String mountOf(FileStore store) {
+		String description = store.toString();
+		int index = description.lastIndexOf(" (" + store.name() + ")");
+		return index > 0 ? description.substring(0, index) : description;
+	}
+
+	/**
+	 * @param timeout the timeout to set, in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Last probe and last good usage of one mount
+	 */
+	private static final class Mount {
+		final String mount;
+		final FileStore store;
+		Future<FileStoreUsage> pending;
+		/** Deadline of the collection that started the pending probe, later collections do not wait for it */
+		long deadline;
+		FileStoreUsage last;
+
+		Mount(String mount, FileStore store) {
+			this.mount = mount;
+			this.store = store;
+			this.last = new FileStoreUsage(mount, store.name(), store.type(), -1l, -1l, -1l, -1l, true);
+		}
+
+		void probe(ExecutorService executor, long deadline) {
+			this.deadline = deadline;
+			pending = executor.submit(new Callable<FileStoreUsage>() {
+				@Override
+				public FileStoreUsage call() throws Exception {
+					long totalSpace = store.getTotalSpace();
+					long usableSpace = store.getUsableSpace();
+					long freeSpace = store.getUnallocatedSpace();
+					return new FileStoreUsage(mount, store.name(), store.type(), totalSpace, usableSpace, freeSpace, System.currentTimeMillis(), false);
+				}
+			});
+		}
+
+		FileStoreUsage await() {
+			try {
+				last = pending.get(Math.max(0l, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				pending = null;
+				return last;
+			} catch (TimeoutException e) {
+				// still probing, the next collections will pick up the result
+				return last.asStale();
+			} catch (ExecutionException e) {
+				logger.error("Unable to get file store usage of " + mount + " " + e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return last.asStale();
+			}
+			pending = null;
+			return last.asStale();
+		}
+	}
+}
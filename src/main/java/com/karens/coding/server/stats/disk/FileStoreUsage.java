@@ -0,0 +1,116 @@
+package com.karens.coding.server.stats.disk;
+
+/**
+ * Space of one mounted file store, as last probed by the {@link FileStoreCollector}
+ * @author karen
+ *
+ */
+public final class FileStoreUsage {
+
+	/** Mount point */
+	private final String mount;
+
+	/** Name of the file store, usually the device */
+	private final String name;
+
+	/** File system type */
+	private final String type;
+
+	/** Size of the file store in bytes, -1 if it was never probed */
+	private final long totalSpace;
+
+	/** Bytes available to this JVM, -1 if it was never probed */
+	private final long usableSpace;
+
+	/** Unallocated bytes, -1 if it was never probed */
+	private final long freeSpace;
+
+	/** Wall clock time of the last successful probe, in milliseconds since the epoch, -1 if none */
+	private final long sampleTimestamp;
+
+	/** True if the last probe failed or did not answer in time, the values are those of an older probe */
+	private final boolean stale;
+
+	public FileStoreUsage(String mount, String name, String type, long totalSpace, long usableSpace, long freeSpace, long sampleTimestamp, boolean stale) {
+		this.mount = mount;
+		this.name = name;
+		this.type = type;
+		this.totalSpace = totalSpace;
+		this.usableSpace = usableSpace;
+		this.freeSpace = freeSpace;
+		this.sampleTimestamp = sampleTimestamp;
+		this.stale = stale;
+	}
+
+	/**
+	 * @return the same values, flagged as stale
+	 */
+	FileStoreUsage asStale() {
+		return stale ? this : new FileStoreUsage(mount, name, type, totalSpace, usableSpace, freeSpace, sampleTimestamp, true);
+	}
+
+	/**
+	 * @return the mount
+	 */
+	public String getMount() {
+		return mount;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return the totalSpace
+	 */
+	public long getTotalSpace() {
+		return totalSpace;
+	}
+
+	/**
+	 * @return the usableSpace
+	 */
+	public long getUsableSpace() {
+		return usableSpace;
+	}
+
+	/**
+	 * @return the freeSpace
+	 */
+	public long getFreeSpace() {
+		return freeSpace;
+	}
+
+	/**
+	 * @return the sampleTimestamp
+	 */
+	public long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @return true if the values are not those of the latest probe
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "FileStoreUsage [mount=" + mount + ", name=" + name + ", type=" + type + ", totalSpace=" + totalSpace + ", usableSpace=" + usableSpace
+				+ ", freeSpace=" + freeSpace + ", stale=" + stale + "]";
+	}
+}
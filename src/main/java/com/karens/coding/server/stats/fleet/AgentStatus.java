@@ -0,0 +1,99 @@
+package com.karens.coding.server.stats.fleet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Latest known state of one polled agent, as merged into the {@link FleetView}
+ * @author karen
+ *
+ */
+public final class AgentStatus {
+
+	/** Id of the server the agent runs on */
+	private final long serverId;
+
+	/** Base URL of the agent */
+	private final String url;
+
+	/** True if the last poll succeeded */
+	private final boolean up;
+
+	/** Reason of the last failed poll, or null */
+	private final String error;
+
+	/** Wall clock time of the last poll, in milliseconds since the epoch, -1 if never polled */
+	private final long polledTimestamp;
+
+	/** Milliseconds the last poll took, -1 if it failed */
+	private final long latency;
+
+	/** Statistics of the last successful poll, as sent by the agent, or null */
+	private final JsonNode statistics;
+
+	public AgentStatus(long serverId, String url, boolean up, String error, long polledTimestamp, long latency, JsonNode statistics) {
+		this.serverId = serverId;
+		this.url = url;
+		this.up = up;
+		this.error = error;
+		this.polledTimestamp = polledTimestamp;
+		this.latency = latency;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return the serverId
+	 */
+	public long getServerId() {
+		return serverId;
+	}
+
+	/**
+	 * @return the url
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return true if the last poll succeeded
+	 */
+	public boolean isUp() {
+		return up;
+	}
+
+	/**
+	 * @return the error
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * @return the polledTimestamp
+	 */
+	public long getPolledTimestamp() {
+		return polledTimestamp;
+	}
+
+	/**
+	 * @return the latency in milliseconds
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the statistics, kept from an older poll when the agent is down
+	 */
+	public JsonNode getStatistics() {
+		return statistics;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "AgentStatus [serverId=" + serverId + ", url=" + url + ", up=" + up + ", error=" + error + ", latency=" + latency + "]";
+	}
+}
@@ -0,0 +1,444 @@
+package com.karens.coding.server.stats.fleet;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Polls the statistics of the configured agents and merges them into a {@link FleetView} keyed by serverId.
+ * <p>
+ * Every interval, one request per agent goes out on a non-blocking HTTP client: a few I/O threads serve
+ * every connection, and each agent keeps its connection alive between polls. An agent has at most one request in
+ * flight, the whole fleet at most serverstats.fleet.requests.max, the requests sent with {@link #get} included; a round that cannot get a slot before the next
+ * one starts skips the remaining agents. A request is cancelled after serverstats.fleet.timeout and the agent
+ * reported down with its last statistics. The polls send the ETag of the last response, an agent that has not
+ * sampled since answers 304 without a body.
+ * @author karen
+ *
+ */
+@Service("FleetAggregator")
+public class FleetAggregator {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(FleetAggregator.class);
+
+	/** Path of the statistics on the agents */
+	public static final String STATISTICS_PATH = "/rest/server/statistics";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/** Comma separated serverId=url of the agents, no polling if empty */
+	@Value("${serverstats.fleet.agents:}")
+	private String agentList = "";
+
+	/** Milliseconds between two polls of the fleet */
+	@Value("${serverstats.fleet.interval:1000}")
+	private long interval = 1000l;
+
+	/** Milliseconds one agent may take to answer */
+	@Value("${serverstats.fleet.timeout:800}")
+	private long timeout = 800l;
+
+	/** Maximum number of requests in flight over the whole fleet */
+	@Value("${serverstats.fleet.requests.max:64}")
+	private int maxRequests = 64;
+
+	/** Agents by serverId, in configuration order */
+	private final Map<Long, Agent> agents = new LinkedHashMap<Long, Agent>();
+
+	private final Map<Long, AgentStatus> statuses = new ConcurrentHashMap<Long, AgentStatus>();
+
+	/** Agents left out of a round because no request slot was free in time */
+	private final AtomicLong skipped = new AtomicLong();
+
+	private Semaphore requests;
+
+	private CloseableHttpAsyncClient client;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		for (String entry : agentList.split(",")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			int separator = entry.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Agent " + entry + " is not serverId=url");
+			}
+			long serverId = Long.parseLong(entry.substring(0, separator).trim());
+			String url = entry.substring(separator + 1).trim();
+			if (url.endsWith("/")) {
+				url = url.substring(0, url.length() - 1);
+			}
+			validate(entry, url);
+			agents.put(serverId, new Agent(serverId, url));
+			statuses.put(serverId, new AgentStatus(serverId, url, false, "Not polled yet", -1l, -1l, null));
+		}
+		if (agents.isEmpty()) {
+			return;
+		}
+		requests = new Semaphore(maxRequests);
+		final AtomicInteger count = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "server-stats-fleet-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		int timeoutMillis = (int) timeout;
+		client = HttpAsyncClients.custom()
+				.setThreadFactory(threadFactory)
+				// the reactor checks the socket timeouts once per select interval
+				.setDefaultIOReactorConfig(IOReactorConfig.custom().setSelectInterval(Math.max(10l, Math.min(1000l, timeout / 4))).build())
+				.setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(timeoutMillis).setSocketTimeout(timeoutMillis)
+						.setConnectionRequestTimeout(timeoutMillis).build())
+				// one kept-alive connection per agent, several agents may share a host and port
+				.setMaxConnPerRoute(agents.size())
+				.setMaxConnTotal(agents.size())
+				.build();
+		client.start();
+		executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					poll();
+				} catch (Exception e) {
+					logger.error("Unable to poll the fleet " + e.getMessage());
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		logger.info("Polling " + agents.size() + " agents every " + interval + " ms");
+	}
+
+	/**
+	 * Checks once that the requests of an agent can be built, so that a poll never fails on its url
+	 * @param entry serverId=url, for the message
+	 * @param url without trailing slash
+	 * @throws IllegalArgumentException if the url is not an absolute http or https url
+	 */
+	private static void validate(String entry, String url) {
+		URI uri;
+		try {
+			uri = URI.create(url + STATISTICS_PATH);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Agent " + entry + " has an invalid url " + e.getMessage());
+		}
+		if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+			throw new IllegalArgumentException("Agent " + entry + " is not an http or https url with a host");
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (client != null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				logger.error("Unable to close the fleet client " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Sends one request to every agent without one in flight, and cancels the requests older than the timeout
+	 * @return counted down as each agent of the round is done, skipped agents included
+	 * @throws InterruptedException
+	 */
+	public CountDownLatch poll() throws InterruptedException {
+		long now = System.nanoTime();
+		long deadline = now + TimeUnit.MILLISECONDS.toNanos(interval);
+		CountDownLatch done = new CountDownLatch(agents.size());
+		for (Agent agent : agents.values()) {
+			if (!agent.polling.compareAndSet(false, true)) {
+				agent.cancelIfExpired(now);
+				done.countDown();
+				continue;
+			}
+			if (!requests.tryAcquire(Math.max(0l, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				agent.polling.set(false);
+				skipped.incrementAndGet();
+				done.countDown();
+				continue;
+			}
+			agent.send(done);
+		}
+		return done;
+	}
+
+	/**
+	 * Sends a request to an agent on the polling client, outside of the rounds. It shares the connections,
+	 * timeouts and request slots of the polls: without a free slot the request fails right away.
+	 * @param serverId
+	 * @param path path and query string on the agent, starting with /
+	 * @param callback
+	 * @return the pending request, or null if the agent is not configured
+	 */
+	public Future<HttpResponse> get(long serverId, String path, final FutureCallback<HttpResponse> callback) {
+		Agent agent = agents.get(serverId);
+		if (agent == null || client == null) {
+			return null;
+		}
+		if (!requests.tryAcquire()) {
+			BasicFuture<HttpResponse> busy = new BasicFuture<HttpResponse>(callback);
+			busy.failed(new IOException("All " + maxRequests + " requests to the fleet are in flight"));
+			return busy;
+		}
+		FutureCallback<HttpResponse> release = new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse response) {
+				requests.release();
+				callback.completed(response);
+			}
+
+			@Override
+			public void failed(Exception e) {
+				requests.release();
+				callback.failed(e);
+			}
+
+			@Override
+			public void cancelled() {
+				requests.release();
+				callback.cancelled();
+			}
+		};
+		try {
+			return client.execute(new HttpGet(agent.url + path), release);
+		} catch (RuntimeException e) {
+			// such as a client already closed, the callback will not be called
+			requests.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the latest status of every agent, sorted by serverId
+	 */
+	public FleetView getFleet() {
+		List<AgentStatus> view = new ArrayList<AgentStatus>(statuses.values());
+		Collections.sort(view, new Comparator<AgentStatus>() {
+			@Override
+			public int compare(AgentStatus first, AgentStatus second) {
+				return Long.compare(first.getServerId(), second.getServerId());
+			}
+		});
+		int up = 0;
+		for (AgentStatus status : view) {
+			if (status.isUp()) {
+				up++;
+			}
+		}
+		return new FleetView(System.currentTimeMillis(), up, view);
+	}
+
+	/**
+	 * @param serverId
+	 * @return the latest status of the agent, or null if it is not configured
+	 */
+	public AgentStatus getAgent(long serverId) {
+		return statuses.get(serverId);
+	}
+
+	/**
+	 * @return true if agents are configured
+	 */
+	public boolean isEnabled() {
+		return client != null;
+	}
+
+	/**
+	 * @return the number of agents left out of a round for want of a request slot
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * @param agentList the agentList to set
+	 */
+	public void setAgentList(String agentList) {
+		this.agentList = agentList;
+	}
+
+	/**
+	 * @param interval the interval to set
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * @param timeout the timeout to set
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param maxRequests the maxRequests to set
+	 */
+	public void setMaxRequests(int maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	/**
+	 * Polling state of one agent. The fields are only touched by the thread handling its single request in flight.
+	 */
+	private final class Agent implements FutureCallback<HttpResponse> {
+		final long serverId;
+		final String url;
+		final AtomicBoolean polling = new AtomicBoolean();
+		volatile Future<HttpResponse> pending;
+		volatile CountDownLatch done;
+		volatile long started;
+		volatile String etag;
+		volatile JsonNode statistics;
+
+		Agent(long serverId, String url) {
+			this.serverId = serverId;
+			this.url = url;
+		}
+
+		void send(CountDownLatch done) {
+			this.done = done;
+			started = System.nanoTime();
+			try {
+				HttpGet get = new HttpGet(url + STATISTICS_PATH);
+				if (etag != null && statistics != null) {
+					get.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+				}
+				pending = client.execute(get, this);
+			} catch (RuntimeException e) {
+				// such as a client already closed, the callback will not be called
+				down("Unable to send the request " + e.getMessage());
+				finish();
+			}
+		}
+
+		void cancelIfExpired(long now) {
+			Future<HttpResponse> request = pending;
+			if (request != null && now - started > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+				request.cancel(true);
+			}
+		}
+
+		@Override
+		public void completed(HttpResponse response) {
+			try {
+				int status = response.getStatusLine().getStatusCode();
+				if (status == HttpStatus.SC_NOT_MODIFIED) {
+					up(statistics);
+				}
+				else if (status != HttpStatus.SC_OK) {
+					EntityUtils.consumeQuietly(response.getEntity());
+					down("HTTP " + status);
+				}
+				else {
+					JsonNode body = objectMapper.readTree(response.getEntity().getContent());
+					if (body.path("statusCode").asInt() != 200 || !body.has("result")) {
+						down("Agent answered " + body.path("statusCode").asInt() + " " + body.path("message").asText());
+					}
+					else {
+						etag = response.containsHeader(HttpHeaders.ETAG) ? response.getFirstHeader(HttpHeaders.ETAG).getValue() : null;
+						statistics = body.get("result");
+						up(statistics);
+					}
+				}
+			} catch (Exception e) {
+				down("Unable to read statistics " + e.getMessage());
+			} finally {
+				finish();
+			}
+		}
+
+		@Override
+		public void failed(Exception e) {
+			if (e instanceof SocketTimeoutException) {
+				down("No answer within " + timeout + " ms");
+			}
+			else {
+				down(e.getClass().getSimpleName() + " " + e.getMessage());
+			}
+			finish();
+		}
+
+		@Override
+		public void cancelled() {
+			down("No answer within " + timeout + " ms");
+			finish();
+		}
+
+		private void up(JsonNode statistics) {
+			long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			statuses.put(serverId, new AgentStatus(serverId, url, true, null, System.currentTimeMillis(), latency, statistics));
+		}
+
+		private void down(String error) {
+			statuses.put(serverId, new AgentStatus(serverId, url, false, error, System.currentTimeMillis(), -1l, statistics));
+		}
+
+		private void finish() {
+			pending = null;
+			requests.release();
+			polling.set(false);
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.karens.coding.server.stats.fleet;
+
+import java.util.List;
+
+/**
+ * Statistics of every polled agent, sorted by serverId
+ * @author karen
+ *
+ */
+public final class FleetView {
+
+	/** Wall clock time the view was taken, in milliseconds since the epoch */
+	private final long timestamp;
+
+	/** Number of agents whose last poll succeeded */
+	private final int up;
+
+	private final List<AgentStatus> agents;
+
+	public FleetView(long timestamp, int up, List<AgentStatus> agents) {
+		this.timestamp = timestamp;
+		this.up = up;
+		this.agents = agents;
+	}
+
+	/**
+	 * @return the timestamp
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the number of agents up
+	 */
+	public int getUp() {
+		return up;
+	}
+
+	/**
+	 * @return the number of agents down
+	 */
+	public int getDown() {
+		return agents.size() - up;
+	}
+
+	/**
+	 * @return the agents
+	 */
+	public List<AgentStatus> getAgents() {
+		return agents;
+	}
+}
@@ -0,0 +1,75 @@
+package com.karens.coding.server.stats.form;
+
+/**
+ * One series of a batch query: a metric of a server over a time range
+ * @author karen
+ *
+ */
+public class SeriesSelector {
+
+	/** Server the series is read from, this server if null */
+	private Long serverId;
+
+	/** Name of the metric, as in the statistics JSON */
+	private String metric;
+
+	/** Inclusive, in milliseconds since the epoch, from the oldest sample if null */
+	private Long from;
+
+	/** Inclusive, in milliseconds since the epoch, up to the latest sample if null */
+	private Long to;
+
+	/** Coarsest acceptable resolution in milliseconds, picks the rollup tier */
+	private Long resolution;
+
+	public SeriesSelector() {
+	}
+
+	public SeriesSelector(Long serverId, String metric, Long from, Long to, Long resolution) {
+		this.serverId = serverId;
+		this.metric = metric;
+		this.from = from;
+		this.to = to;
+		this.resolution = resolution;
+	}
+
+	public Long getServerId() {
+		return serverId;
+	}
+
+	public void setServerId(Long serverId) {
+		this.serverId = serverId;
+	}
+
+	public String getMetric() {
+		return metric;
+	}
+
+	public void setMetric(String metric) {
+		this.metric = metric;
+	}
+
+	public Long getFrom() {
+		return from;
+	}
+
+	public void setFrom(Long from) {
+		this.from = from;
+	}
+
+	public Long getTo() {
+		return to;
+	}
+
+	public void setTo(Long to) {
+		this.to = to;
+	}
+
+	public Long getResolution() {
+		return resolution;
+	}
+
+	public void setResolution(Long resolution) {
+		this.resolution = resolution;
+	}
+}
@@ -0,0 +1,234 @@
+package com.karens.coding.server.stats.gc;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.utils.LogHistogram;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * Records every garbage collection reported by the GarbageCollectorMXBean notifications: the pause
+ * goes into a histogram, the usage of each memory pool before and after the collection into primitive
+ * counters indexed by pool. The pools and collectors are resolved once, the listener only looks them up
+ * by name in small arrays and updates atomics.
+ * <p>
+ * On every sample, the allocation rate is the growth of the heap plus what the collections reclaimed since the previous sample.
+ * @author karen
+ *
+ */
+@Service("GarbageCollectionMonitor")
+public class GarbageCollectionMonitor implements NotificationListener, StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(GarbageCollectionMonitor.class);
+
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+
+	/** Names by index, to match the notifications without building keys */
+	private final String[] collectorNames;
+	private final String[] poolNames;
+	private final boolean[] heapPools;
+
+	/** Pause times in milliseconds */
+	private final LogHistogram pauses = new LogHistogram();
+
+	private final AtomicLongArray collectorCounts;
+	private final AtomicLongArray collectorTimes;
+	private final AtomicLongArray usedBeforeGc;
+	private final AtomicLongArray usedAfterGc;
+	private final AtomicLongArray reclaimedByPool;
+
+	/** Bytes freed in the heap pools by all collections */
+	private final AtomicLong reclaimed = new AtomicLong();
+
+	private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+	/** Heap usage and reclaimed bytes at the previous sample, only touched by the sampling thread */
+	private long previousHeapUsed = -1l;
+	private long previousReclaimed = 0l;
+	private long previousNanos = 0l;
+	private long allocated = 0l;
+
+	private final AtomicReference<GarbageCollectionStatistics> latest = new AtomicReference<GarbageCollectionStatistics>();
+
+	public GarbageCollectionMonitor() {
+		collectorNames = new String[collectors.size()];
+		for (int index = 0; index < collectorNames.length; index++) {
+			collectorNames[index] = collectors.get(index).getName();
+		}
+		poolNames = new String[pools.size()];
+		heapPools = new boolean[pools.size()];
+		for (int index = 0; index < poolNames.length; index++) {
+			poolNames[index] = pools.get(index).getName();
+			heapPools[index] = pools.get(index).getType() == MemoryType.HEAP;
+		}
+		collectorCounts = new AtomicLongArray(collectorNames.length);
+		collectorTimes = new AtomicLongArray(collectorNames.length);
+		usedBeforeGc = new AtomicLongArray(poolNames.length);
+		usedAfterGc = new AtomicLongArray(poolNames.length);
+		reclaimedByPool = new AtomicLongArray(poolNames.length);
+		for (int index = 0; index < poolNames.length; index++) {
+			usedBeforeGc.set(index, -1l);
+			usedAfterGc.set(index, -1l);
+		}
+	}
+
+	@PostConstruct
+	public void start() {
+		for (GarbageCollectorMXBean collector : collectors) {
+			if (collector instanceof NotificationEmitter) {
+				NotificationEmitter emitter = (NotificationEmitter) collector;
+				emitter.addNotificationListener(this, null, null);
+				emitters.add(emitter);
+			}
+		}
+		if (emitters.isEmpty()) {
+			logger.warn("No garbage collector emits notifications, pauses are not recorded");
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		for (NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(this);
+			} catch (ListenerNotFoundException e) {
+				// already removed
+			}
+		}
+		emitters.clear();
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+		GcInfo gcInfo = info.getGcInfo();
+		record(info.getGcName(), gcInfo.getDuration(), gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+	}
+
+	/**
+	 * Records one collection
+	 * @param gcName name of the collector
+	 * @param duration in milliseconds
+	 * @param before usage by pool name before the collection
+	 * @param after usage by pool name after the collection
+	 */
+	void record(String gcName, long duration, Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+		pauses.record(duration);
+		int collector = indexOf(collectorNames, gcName);
+		if (collector >= 0) {
+			collectorCounts.incrementAndGet(collector);
+			collectorTimes.addAndGet(collector, duration);
+		}
+		long freed = 0;
+		for (int pool = 0; pool < poolNames.length; pool++) {
+			MemoryUsage usageBefore = before.get(poolNames[pool]);
+			MemoryUsage usageAfter = after.get(poolNames[pool]);
+			if (usageBefore == null || usageAfter == null) {
+				continue;
+			}
+			long delta = usageBefore.getUsed() - usageAfter.getUsed();
+			usedBeforeGc.set(pool, usageBefore.getUsed());
+			usedAfterGc.set(pool, usageAfter.getUsed());
+			if (delta > 0) {
+				reclaimedByPool.addAndGet(pool, delta);
+			}
+			if (heapPools[pool]) {
+				// promotions move bytes between heap pools, only the net change is freed
+				freed += delta;
+			}
+		}
+		if (freed > 0) {
+			reclaimed.addAndGet(freed);
+		}
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int index = 0; index < names.length; index++) {
+			if (names[index].equals(name)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		sample(snapshot.getSampleTimestamp());
+	}
+
+	/**
+	 * Computes the allocation rate since the previous sample and publishes the statistics
+	 * @param timestamp in milliseconds since the epoch
+	 */
+	public void sample(long timestamp) {
+		long nanos = System.nanoTime();
+		List<GarbageCollectionStatistics.PoolUsage> poolUsages = new ArrayList<GarbageCollectionStatistics.PoolUsage>(poolNames.length);
+		long heapUsed = 0;
+		for (int pool = 0; pool < poolNames.length; pool++) {
+			MemoryPoolMXBean bean = pools.get(pool);
+			MemoryUsage usage = bean.getUsage();
+			if (usage == null) {
+				// the pool is no longer valid
+				continue;
+			}
+			if (heapPools[pool]) {
+				heapUsed += usage.getUsed();
+			}
+			poolUsages.add(new GarbageCollectionStatistics.PoolUsage(poolNames[pool], heapPools[pool], usage.getUsed(), usage.getCommitted(),
+					usage.getMax(), usedBeforeGc.get(pool), usedAfterGc.get(pool), reclaimedByPool.get(pool)));
+		}
+		long totalReclaimed = reclaimed.get();
+		double allocationRate = -1.0;
+		if (previousHeapUsed >= 0 && nanos > previousNanos) {
+			long allocatedSince = Math.max(0l, heapUsed - previousHeapUsed + totalReclaimed - previousReclaimed);
+			allocated += allocatedSince;
+			allocationRate = allocatedSince * 1000000000.0 / (nanos - previousNanos);
+		}
+		previousHeapUsed = heapUsed;
+		previousReclaimed = totalReclaimed;
+		previousNanos = nanos;
+
+		List<GarbageCollectionStatistics.CollectorUsage> collectorUsages = new ArrayList<GarbageCollectionStatistics.CollectorUsage>(collectorNames.length);
+		for (int collector = 0; collector < collectorNames.length; collector++) {
+			collectorUsages.add(new GarbageCollectionStatistics.CollectorUsage(collectorNames[collector], collectorCounts.get(collector),
+					collectorTimes.get(collector)));
+		}
+		latest.set(new GarbageCollectionStatistics(timestamp, allocationRate, allocated, heapUsed, pauses.snapshot(), collectorUsages, poolUsages));
+	}
+
+	/**
+	 * @return the statistics of the latest sample, or null if nothing has been sampled yet
+	 */
+	public GarbageCollectionStatistics getLatest() {
+		return latest.get();
+	}
+}
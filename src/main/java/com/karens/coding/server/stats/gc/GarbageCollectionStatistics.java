@@ -0,0 +1,209 @@
+package com.karens.coding.server.stats.gc;
+
+import java.util.List;
+
+import com.karens.coding.server.stats.utils.LogHistogram;
+
+/**
+ * Immutable view of the garbage collections and memory pools at one sample of the {@link GarbageCollectionMonitor}
+ * @author karen
+ *
+ */
+public final class GarbageCollectionStatistics {
+
+	/** Wall clock time of the sample, in milliseconds since the epoch */
+	private final long sampleTimestamp;
+
+	/** Bytes allocated per second since the previous sample, negative on the first sample */
+	private final double allocationRate;
+
+	/** Bytes allocated since the first sample */
+	private final long allocatedBytes;
+
+	/** Bytes used in the heap pools */
+	private final long heapUsed;
+
+	/** Pause times of every collection in milliseconds */
+	private final LogHistogram.Snapshot pauses;
+
+	private final List<CollectorUsage> collectors;
+
+	private final List<PoolUsage> pools;
+
+	public GarbageCollectionStatistics(long sampleTimestamp, double allocationRate, long allocatedBytes, long heapUsed, LogHistogram.Snapshot pauses,
+			List<CollectorUsage> collectors, List<PoolUsage> pools) {
+		this.sampleTimestamp = sampleTimestamp;
+		this.allocationRate = allocationRate;
+		this.allocatedBytes = allocatedBytes;
+		this.heapUsed = heapUsed;
+		this.pauses = pauses;
+		this.collectors = collectors;
+		this.pools = pools;
+	}
+
+	/**
+	 * @return the sampleTimestamp
+	 */
+	public long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @return the allocationRate in bytes per second
+	 */
+	public double getAllocationRate() {
+		return allocationRate;
+	}
+
+	/**
+	 * @return the allocatedBytes
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the heapUsed
+	 */
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/**
+	 * @return the pauses
+	 */
+	public LogHistogram.Snapshot getPauses() {
+		return pauses;
+	}
+
+	/**
+	 * @return the collectors
+	 */
+	public List<CollectorUsage> getCollectors() {
+		return collectors;
+	}
+
+	/**
+	 * @return the pools
+	 */
+	public List<PoolUsage> getPools() {
+		return pools;
+	}
+
+	/**
+	 * Collections of one garbage collector
+	 */
+	public static final class CollectorUsage {
+		private final String name;
+		private final long count;
+		private final long time;
+
+		public CollectorUsage(String name, long count, long time) {
+			this.name = name;
+			this.count = count;
+			this.time = time;
+		}
+
+		/**
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of collections
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the accumulated pause time in milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	/**
+	 * Usage of one memory pool, now and around its last collection
+	 */
+	public static final class PoolUsage {
+		private final String name;
+		private final boolean heap;
+		private final long used;
+		private final long committed;
+		private final long max;
+		private final long usedBeforeGc;
+		private final long usedAfterGc;
+		private final long reclaimed;
+
+		public PoolUsage(String name, boolean heap, long used, long committed, long max, long usedBeforeGc, long usedAfterGc, long reclaimed) {
+			this.name = name;
+			this.heap = heap;
+			this.used = used;
+			this.committed = committed;
+			this.max = max;
+			this.usedBeforeGc = usedBeforeGc;
+			this.usedAfterGc = usedAfterGc;
+			this.reclaimed = reclaimed;
+		}
+
+		/**
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true for a heap pool
+		 */
+		public boolean isHeap() {
+			return heap;
+		}
+
+		/**
+		 * @return the used bytes
+		 */
+		public long getUsed() {
+			return used;
+		}
+
+		/**
+		 * @return the committed bytes
+		 */
+		public long getCommitted() {
+			return committed;
+		}
+
+		/**
+		 * @return the max bytes, -1 if undefined
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the used bytes before the last collection, -1 if never collected
+		 */
+		public long getUsedBeforeGc() {
+			return usedBeforeGc;
+		}
+
+		/**
+		 * @return the used bytes after the last collection, -1 if never collected
+		 */
+		public long getUsedAfterGc() {
+			return usedAfterGc;
+		}
+
+		/**
+		 * @return the bytes freed in this pool by all collections
+		 */
+		public long getReclaimed() {
+			return reclaimed;
+		}
+	}
+}
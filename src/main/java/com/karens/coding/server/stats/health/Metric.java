@@ -0,0 +1,94 @@
+package com.karens.coding.server.stats.health;
+
+/**
+ * Numeric fields of {@link ServerStatistics} that are kept as time series.
+ * The name is the JSON field name of the statistic.
+ * @author karen
+ *
+ */
+public enum Metric {
+
+	FREE_SPACE("freeSpace", false),
+	TOTAL_SPACE("totalSpace", false),
+	USABLE_SPACE("usableSpace", false),
+	SYSTEM_CPU_USAGE("systemCpuUsage", true),
+	JVM_CPU_USAGE("jvmCpuUsage", true),
+	COMMITTED_VIRTUAL_MEMORY_SIZE("committedVirtualMemorySize", false),
+	TOTAL_SWAP_SPACE_SIZE("totalSwapSpaceSize", false),
+	FREE_SWAP_SPACE_SIZE("freeSwapSpaceSize", false),
+	PROCESS_CPU_TIME("processCpuTime", false),
+	FREE_PHYSICAL_MEMORY_SIZE("freePhysicalMemorySize", false),
+	TOTAL_PHYSICAL_MEMORY_SIZE("totalPhysicalMemorySize", false),
+	SYSTEM_CPU_LOAD("systemCpuLoad", true),
+	PROCESS_CPU_LOAD("processCpuLoad", true);
+
+	/** Name of the statistic, as serialized in JSON */
+	private final String name;
+
+	/** True for fractional values, false for counters and sizes */
+	private final boolean fractional;
+
+	/** Index in the long or double slots of a {@link MetricRecord} */
+	private int slot;
+
+	/** Number of long metrics */
+	public static final int LONG_SLOTS;
+
+	/** Number of double metrics */
+	public static final int DOUBLE_SLOTS;
+
+	/** Hash of the metric names in slot order, stored with the persisted and transmitted samples */
+	public static final int SCHEMA_HASH;
+
+	static {
+		int longs = 0;
+		int doubles = 0;
+		StringBuilder names = new StringBuilder();
+		for (Metric metric : values()) {
+			metric.slot = metric.fractional ? doubles++ : longs++;
+			names.append(metric.name).append(',');
+		}
+		LONG_SLOTS = longs;
+		DOUBLE_SLOTS = doubles;
+		SCHEMA_HASH = names.toString().hashCode();
+	}
+
+	private Metric(String name, boolean fractional) {
+		this.name = name;
+		this.fractional = fractional;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the metric is a double, false if it is a long
+	 */
+	public boolean isFractional() {
+		return fractional;
+	}
+
+	/**
+	 * @return the index of the metric among the metrics of the same kind, long or double
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * @param name
+	 * @return the metric with the given JSON name, or null
+	 */
+	public static Metric forName(String name) {
+		for (Metric metric : values()) {
+			if (metric.name.equals(name)) {
+				return metric;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,124 @@
+package com.karens.coding.server.stats.health;
+
+import java.util.Arrays;
+
+/**
+ * Flat primitive values of the {@link Metric}s of one sample: longs and doubles in two arrays indexed
+ * by {@link Metric#getSlot()}, with a bit per metric telling whether the value was collected. Filling a
+ * record allocates nothing; it must not be modified once the snapshot holding it has been published.
+ * @author karen
+ *
+ */
+public final class MetricRecord {
+
+	private final long[] longs = new long[Metric.LONG_SLOTS];
+
+	private final double[] doubles = new double[Metric.DOUBLE_SLOTS];
+
+	/** Bit per metric ordinal, set when the value was collected */
+	private long present = 0l;
+
+	/**
+	 * @param metric
+	 * @return true if the value of the metric was collected
+	 */
+	public boolean has(Metric metric) {
+		return (present & (1l << metric.ordinal())) != 0;
+	}
+
+	/**
+	 * @param metric a long metric
+	 * @return the value, 0 if it was not collected
+	 */
+	public long getLong(Metric metric) {
+		return longs[longSlot(metric)];
+	}
+
+	/**
+	 * @param metric a double metric
+	 * @return the value, 0.0 if it was not collected
+	 */
+	public double getDouble(Metric metric) {
+		return doubles[doubleSlot(metric)];
+	}
+
+	/**
+	 * @param metric a long metric
+	 * @param value
+	 */
+	public void setLong(Metric metric, long value) {
+		longs[longSlot(metric)] = value;
+		present |= 1l << metric.ordinal();
+	}
+
+	/**
+	 * @param metric a double metric
+	 * @param value
+	 */
+	public void setDouble(Metric metric, double value) {
+		doubles[doubleSlot(metric)] = value;
+		present |= 1l << metric.ordinal();
+	}
+
+	/**
+	 * Marks the value as not collected
+	 * @param metric
+	 */
+	public void remove(Metric metric) {
+		present &= ~(1l << metric.ordinal());
+		if (metric.isFractional()) {
+			doubles[metric.getSlot()] = 0.0;
+		}
+		else {
+			longs[metric.getSlot()] = 0l;
+		}
+	}
+
+	/**
+	 * Marks every value as not collected
+	 */
+	public void clear() {
+		Arrays.fill(longs, 0l);
+		Arrays.fill(doubles, 0.0);
+		present = 0l;
+	}
+
+	/**
+	 * @param other the record to copy the values of
+	 */
+	public void copyFrom(MetricRecord other) {
+		System.arraycopy(other.longs, 0, longs, 0, longs.length);
+		System.arraycopy(other.doubles, 0, doubles, 0, doubles.length);
+		present = other.present;
+	}
+
+	/**
+	 * @param metric
+	 * @return the value as raw bits, the bits of the double for a fractional metric
+	 */
+	public long getRaw(Metric metric) {
+		return metric.isFractional() ? Double.doubleToRawLongBits(doubles[metric.getSlot()]) : longs[metric.getSlot()];
+	}
+
+	private static int longSlot(Metric metric) {
+		if (metric.isFractional()) {
+			throw new IllegalArgumentException(metric.getName() + " is not a long metric");
+		}
+		return metric.getSlot();
+	}
+
+	private static int doubleSlot(Metric metric) {
+		if (!metric.isFractional()) {
+			throw new IllegalArgumentException(metric.getName() + " is not a double metric");
+		}
+		return metric.getSlot();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MetricRecord [longs=" + Arrays.toString(longs) + ", doubles=" + Arrays.toString(doubles) + ", present=" + Long.toBinaryString(present) + "]";
+	}
+}
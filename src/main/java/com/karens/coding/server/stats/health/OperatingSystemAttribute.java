@@ -0,0 +1,52 @@
+package com.karens.coding.server.stats.health;
+
+/**
+ * Attributes read from the platform OperatingSystemMXBean, with the getter backing them and their primitive type
+ * @author karen
+ *
+ */
+public enum OperatingSystemAttribute {
+
+	COMMITTED_VIRTUAL_MEMORY_SIZE("getCommittedVirtualMemorySize", long.class),
+	TOTAL_SWAP_SPACE_SIZE("getTotalSwapSpaceSize", long.class),
+	FREE_SWAP_SPACE_SIZE("getFreeSwapSpaceSize", long.class),
+	PROCESS_CPU_TIME("getProcessCpuTime", long.class),
+	FREE_PHYSICAL_MEMORY_SIZE("getFreePhysicalMemorySize", long.class),
+	TOTAL_PHYSICAL_MEMORY_SIZE("getTotalPhysicalMemorySize", long.class),
+	AVAILABLE_PROCESSORS("getAvailableProcessors", long.class),
+	SYSTEM_CPU_LOAD("getSystemCpuLoad", double.class),
+	PROCESS_CPU_LOAD("getProcessCpuLoad", double.class),
+	SYSTEM_LOAD_AVERAGE("getSystemLoadAverage", double.class);
+
+	/** Name of the MXBean getter */
+	private final String methodName;
+
+	/** Primitive type the attribute is read as, long or double */
+	private final Class<?> type;
+
+	private OperatingSystemAttribute(String methodName, Class<?> type) {
+		this.methodName = methodName;
+		this.type = type;
+	}
+
+	/**
+	 * @return the methodName
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return true if the attribute is read with {@link OperatingSystemMXBeanAccessor#readDouble}
+	 */
+	public boolean isDouble() {
+		return type == double.class;
+	}
+}
@@ -0,0 +1,243 @@
+package com.karens.coding.server.stats.health;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads {@link OperatingSystemAttribute}s without reflection on the read path.
+ * Every attribute is resolved once into a typed supplier: a direct call when the bean is a
+ * com.sun.management.OperatingSystemMXBean, otherwise a MethodHandle bound to the bean.
+ * Attributes that cannot be resolved are reported by {@link #getUnsupportedAttributes()}
+ * and read as -1 (long) or NaN (double).
+ * @author karen
+ *
+ */
+public final class OperatingSystemMXBeanAccessor {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(OperatingSystemMXBeanAccessor.class);
+
+	/** Name of the HotSpot specific interface, only touched when it is on the classpath */
+	private static final String SUN_OPERATING_SYSTEM_MXBEAN = "com.sun.management.OperatingSystemMXBean";
+
+	/** Accessor for the platform bean, resolved on first use */
+	private static class PlatformHolder {
+		static final OperatingSystemMXBeanAccessor INSTANCE = create(ManagementFactory.getOperatingSystemMXBean());
+	}
+
+	/** Long readers indexed by attribute ordinal, null when unsupported or not a long */
+	private final LongSupplier[] longReaders = new LongSupplier[OperatingSystemAttribute.values().length];
+
+	/** Double readers indexed by attribute ordinal, null when unsupported or not a double */
+	private final DoubleSupplier[] doubleReaders = new DoubleSupplier[OperatingSystemAttribute.values().length];
+
+	private final Set<OperatingSystemAttribute> unsupported;
+
+	private OperatingSystemMXBeanAccessor(OperatingSystemMXBean osBean) {
+		if (isSunOperatingSystemMXBean(osBean)) {
+			SunReaders.resolve(osBean, longReaders, doubleReaders);
+		}
+		for (OperatingSystemAttribute attribute : OperatingSystemAttribute.values()) {
+			if (!isSupported(attribute)) {
+				resolveWithMethodHandle(osBean, attribute);
+			}
+		}
+		Set<OperatingSystemAttribute> missing = EnumSet.noneOf(OperatingSystemAttribute.class);
+		for (OperatingSystemAttribute attribute : OperatingSystemAttribute.values()) {
+			if (!isSupported(attribute)) {
+				missing.add(attribute);
+			}
+		}
+		unsupported = Collections.unmodifiableSet(missing);
+		if (!unsupported.isEmpty()) {
+			logger.warn("OperatingSystemMXBean " + osBean.getClass().getName() + " does not support " + unsupported);
+		}
+	}
+
+	/**
+	 * @return the accessor for the platform OperatingSystemMXBean
+	 */
+	public static OperatingSystemMXBeanAccessor getInstance() {
+		return PlatformHolder.INSTANCE;
+	}
+
+	/**
+	 * Resolves every attribute of the given bean
+	 * @param osBean
+	 * @return OperatingSystemMXBeanAccessor
+	 */
+	public static OperatingSystemMXBeanAccessor create(OperatingSystemMXBean osBean) {
+		return new OperatingSystemMXBeanAccessor(osBean);
+	}
+
+	/**
+	 * @param attribute
+	 * @return true if the attribute could be resolved on this bean
+	 */
+	public boolean isSupported(OperatingSystemAttribute attribute) {
+		return attribute.isDouble() ? doubleReaders[attribute.ordinal()] != null : longReaders[attribute.ordinal()] != null;
+	}
+
+	/**
+	 * @return the attributes that could not be resolved on this bean
+	 */
+	public Set<OperatingSystemAttribute> getUnsupportedAttributes() {
+		return unsupported;
+	}
+
+	/**
+	 * @param attribute a long attribute
+	 * @return the value, or -1 if the attribute is not supported
+	 */
+	public long readLong(OperatingSystemAttribute attribute) {
+		LongSupplier reader = longReaders[attribute.ordinal()];
+		return reader != null ? reader.getAsLong() : -1l;
+	}
+
+	/**
+	 * @param attribute a double attribute
+	 * @return the value, or NaN if the attribute is not supported
+	 */
+	public double readDouble(OperatingSystemAttribute attribute) {
+		DoubleSupplier reader = doubleReaders[attribute.ordinal()];
+		return reader != null ? reader.getAsDouble() : Double.NaN;
+	}
+
+	private static boolean isSunOperatingSystemMXBean(OperatingSystemMXBean osBean) {
+		try {
+			return Class.forName(SUN_OPERATING_SYSTEM_MXBEAN).isInstance(osBean);
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Looks the getter up on the public interfaces of the bean, the implementation class
+	 * itself is usually not accessible.
+	 */
+	private void resolveWithMethodHandle(OperatingSystemMXBean osBean, OperatingSystemAttribute attribute) {
+		for (Class<?> type : publicInterfaces(osBean.getClass())) {
+			try {
+				MethodHandle handle = MethodHandles.publicLookup()
+						.findVirtual(type, attribute.getMethodName(), MethodType.methodType(attribute.getType()))
+						.bindTo(osBean);
+				if (attribute.isDouble()) {
+					doubleReaders[attribute.ordinal()] = new DoubleHandleReader(handle);
+				}
+				else {
+					longReaders[attribute.ordinal()] = new LongHandleReader(handle);
+				}
+				return;
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				// try the next interface
+			}
+		}
+		if (attribute.getType() == long.class) {
+			// int getters such as getAvailableProcessors are widened to long
+			for (Class<?> type : publicInterfaces(osBean.getClass())) {
+				try {
+					MethodHandle handle = MethodHandles.publicLookup()
+							.findVirtual(type, attribute.getMethodName(), MethodType.methodType(int.class))
+							.bindTo(osBean)
+							.asType(MethodType.methodType(long.class));
+					longReaders[attribute.ordinal()] = new LongHandleReader(handle);
+					return;
+				} catch (NoSuchMethodException | IllegalAccessException e) {
+					// try the next interface
+				}
+			}
+		}
+	}
+
+	private static List<Class<?>> publicInterfaces(Class<?> type) {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			collectInterfaces(current, interfaces);
+		}
+		List<Class<?>> result = new ArrayList<Class<?>>();
+		for (Class<?> candidate : interfaces) {
+			if (Modifier.isPublic(candidate.getModifiers())) {
+				result.add(candidate);
+			}
+		}
+		return result;
+	}
+
+	private static void collectInterfaces(Class<?> type, Set<Class<?>> interfaces) {
+		for (Class<?> candidate : type.getInterfaces()) {
+			if (interfaces.add(candidate)) {
+				collectInterfaces(candidate, interfaces);
+			}
+		}
+	}
+
+	private static final class LongHandleReader implements LongSupplier {
+		private final MethodHandle handle;
+
+		LongHandleReader(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public long getAsLong() {
+			try {
+				return (long) handle.invokeExact();
+			} catch (Throwable e) {
+				return -1l;
+			}
+		}
+	}
+
+	private static final class DoubleHandleReader implements DoubleSupplier {
+		private final MethodHandle handle;
+
+		DoubleHandleReader(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public double getAsDouble() {
+			try {
+				return (double) handle.invokeExact();
+			} catch (Throwable e) {
+				return Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Direct calls on the HotSpot interface. Kept in its own class so that
+	 * com.sun.management is only loaded when the running JVM provides it.
+	 */
+	private static final class SunReaders {
+
+		static void resolve(OperatingSystemMXBean osBean, LongSupplier[] longReaders, DoubleSupplier[] doubleReaders) {
+			final com.sun.management.OperatingSystemMXBean sunBean = (com.sun.management.OperatingSystemMXBean) osBean;
+			longReaders[OperatingSystemAttribute.COMMITTED_VIRTUAL_MEMORY_SIZE.ordinal()] = sunBean::getCommittedVirtualMemorySize;
+			longReaders[OperatingSystemAttribute.TOTAL_SWAP_SPACE_SIZE.ordinal()] = sunBean::getTotalSwapSpaceSize;
+			longReaders[OperatingSystemAttribute.FREE_SWAP_SPACE_SIZE.ordinal()] = sunBean::getFreeSwapSpaceSize;
+			longReaders[OperatingSystemAttribute.PROCESS_CPU_TIME.ordinal()] = sunBean::getProcessCpuTime;
+			longReaders[OperatingSystemAttribute.FREE_PHYSICAL_MEMORY_SIZE.ordinal()] = sunBean::getFreePhysicalMemorySize;
+			longReaders[OperatingSystemAttribute.TOTAL_PHYSICAL_MEMORY_SIZE.ordinal()] = sunBean::getTotalPhysicalMemorySize;
+			longReaders[OperatingSystemAttribute.AVAILABLE_PROCESSORS.ordinal()] = sunBean::getAvailableProcessors;
+			doubleReaders[OperatingSystemAttribute.SYSTEM_CPU_LOAD.ordinal()] = sunBean::getSystemCpuLoad;
+			doubleReaders[OperatingSystemAttribute.PROCESS_CPU_LOAD.ordinal()] = sunBean::getProcessCpuLoad;
+			doubleReaders[OperatingSystemAttribute.SYSTEM_LOAD_AVERAGE.ordinal()] = sunBean::getSystemLoadAverage;
+		}
+	}
+}
@@ -1,133 +1,177 @@
 package com.karens.coding.server.stats.health;
 
 import java.io.File;
-import java.io.IOException;
 import java.lang.management.*;
 import java.lang.reflect.Method;
-import java.nio.file.FileStore;
-import java.nio.file.FileSystems;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Map;
-
-import javax.management.MBeanServerConnection;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.karens.coding.server.stats.disk.FileStoreCollector;
+import com.karens.coding.server.stats.disk.FileStoreUsage;
+import com.karens.coding.server.stats.proc.ProcStatistics;
 import com.karens.coding.server.stats.utils.ByteConvertor;
 import java.lang.management.OperatingSystemMXBean;
 
 /**
  * Provides data and statistics about the current operating system
+ * <p>
+ * The numeric statistics are kept as primitives in a {@link MetricRecord}. The getters adapt them to the
+ * JSON shape: boxed values, null when not collected, and the space in KB, MB and GB converted when serialized.
  * @author karen
  *
  */
+@JsonPropertyOrder({ "freeSpace", "totalSpace", "usableSpace", "freeSpaceAsKilobytes", "totalSpaceAsKilobytes", "usableSpaceAsKilobytes",
+		"freeSpaceAsMegabytes", "totalSpaceAsMegabytes", "usableSpaceAsMegabytes", "freeSpaceAsGigabytes", "totalSpaceAsGigabytes",
+		"usableSpaceAsGigabytes", "systemCpuUsage", "jvmCpuUsage", "processCpuUsage", "committedVirtualMemorySize", "totalSwapSpaceSize",
+		"freeSwapSpaceSize", "processCpuTime", "freePhysicalMemorySize", "totalPhysicalMemorySize", "systemCpuLoad", "processCpuLoad",
+		"coreCpuLoads", "store" })
 public class ServerStatistics {
 	
 	/** Logger */
 	private static final Logger logger = LogManager.getLogger(ServerStatistics.class);
 	
-	/** Free space for the current working directory in bytes */
-	private Long freeSpace = 0l;
-	
-	/** Total space for the current working directory in bytes */
-	private Long totalSpace = 0l;
-	
-	/** Usable space for the current working directory in bytes */
-	private Long usableSpace = 0l;
-	
-	// Converted values for json conversions
-	
-	/** Free space for the current working directory in KB */
-	private Double freeSpaceAsKilobytes = 0.0;
-	/** Total space for the current working directory in KB */
-	private Double totalSpaceAsKilobytes = 0.0;
-	/** Usable space for the current working directory in KB */
-	private Double usableSpaceAsKilobytes = 0.0;
-	
-	/** Free space for the current working directory in MB */
-	private Double freeSpaceAsMegabytes = 0.0;
-	/** Total space for the current working directory in MB */
-	private Double totalSpaceAsMegabytes = 0.0;
-	/** Usable space for the current working directory in MB */
-	private Double usableSpaceAsMegabytes = 0.0;
-	
-	/** Free space for the current working directory in GB */
-	private Double freeSpaceAsGigabytes = 0.0;
-	/** Total space for the current working directory in GB */
-	private Double totalSpaceAsGigabytes = 0.0;
-	/** Usable space for the current working directory in GB */
-	private Double usableSpaceAsGigabytes = 0.0;
-	
-	/** System CPU usage */
-	private Double systemCpuUsage = 0.0;
-	/** JVM CPU usage */
-	private Double jvmCpuUsage = 0.0;
-	/** Process CPU usage */
-	private Double processCpuUsage = 0.0;
-	
-	/** The amount of virtual memory that is guaranteed to be available to the running process in bytes, or -1 if this operation is not supported */
-	private Long committedVirtualMemorySize;
-	  
-	/** The total amount of swap space in bytes. */
-	private Long totalSwapSpaceSize;
-	  
-	/** The amount of free swap space in bytes */
-	private Long freeSwapSpaceSize;
-	  
-	/** The CPU time used by the process on which the Java virtual machine is running in nanoseconds. */
-	private Long processCpuTime;
-	  
-	/** The amount of free physical memory in bytes. */
-	private Long freePhysicalMemorySize;
-	  
-	/** The total amount of physical memory in bytes. */
-	private Long totalPhysicalMemorySize;
-	  
-	/** The "recent cpu usage" for the whole system. This value is a double in the [0.0,1.0] interval. */
-	private Double systemCpuLoad;
-	  
-	/** The "recent cpu usage" for the Java Virtual Machine process. This value is a double in the [0.0,1.0] interval */
-	private Double processCpuLoad;
-	
-	/** Map of FileStore name to FileStore object */
-	private Map<String, FileStore> store = new HashMap<String, FileStore>();
+	/** Values of the metrics, indexed by {@link Metric#getSlot()} */
+	private final MetricRecord record = new MetricRecord();
+	
+	/** Process CPU usage, never measured */
+	private double processCpuUsage = 0.0;
+	
+	/** The "recent cpu usage" of each core in the [0.0,1.0] interval, only read from /proc */
+	private double[] coreCpuLoads;
+	
+	/** Space of every mounted file store, by mount point */
+	private Map<String, FileStoreUsage> store = Collections.emptyMap();
+	
+	/** Collectors that filled these statistics, the fields of the others are null */
+	private Set<StatisticsCollector> collectors = EnumSet.noneOf(StatisticsCollector.class);
 	
 	
 	public ServerStatistics() {
 		init();
 	}
 	
+	/**
+	 * @param collectors the collectors to run, the fields of the others are null
+	 */
+	public ServerStatistics(Set<StatisticsCollector> collectors) {
+		init(collectors);
+	}
+	
+	/**
+	 * @param sample false to create empty statistics, filled through the setters
+	 */
+	public ServerStatistics(boolean sample) {
+		if (sample) {
+			init();
+		}
+	}
+	
 	public void init() {
-		getFileSystemStatistics();
-		getOperatingSystemStatistics();
+		init(EnumSet.allOf(StatisticsCollector.class));
+	}
+	
+	/**
+	 * @param collectors the collectors to run
+	 */
+	public void init(Set<StatisticsCollector> collectors) {
+		if (collectors.contains(StatisticsCollector.OPERATING_SYSTEM)) {
+			// first, the cpu usage reuses the /proc sample
+			getOperatingSystemStatistics();
+			getCpuUsageStatistics();
+		}
+		if (collectors.contains(StatisticsCollector.DISK)) {
+			getFileSystemStatistics();
+		}
+		if (collectors.contains(StatisticsCollector.FILE_STORES)) {
+			getFileStoreStatistics();
+		}
+		this.collectors.addAll(collectors);
 	}
 
 	protected void getOperatingSystemStatistics() {
+		ProcStatistics proc = ProcStatistics.getInstance();
+		if (proc != null && getProcStatistics(proc)) {
+			return;
+		}
 		try {
-			OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+			OperatingSystemMXBeanAccessor accessor = OperatingSystemMXBeanAccessor.getInstance();
 			
-			committedVirtualMemorySize = (Long) callOperatingSystemMXBeanMethod(osBean,"getCommittedVirtualMemorySize");
+			readLong(accessor, OperatingSystemAttribute.COMMITTED_VIRTUAL_MEMORY_SIZE, Metric.COMMITTED_VIRTUAL_MEMORY_SIZE);
 			  
-			totalSwapSpaceSize = (Long) callOperatingSystemMXBeanMethod(osBean,"getTotalSwapSpaceSize");
+			readLong(accessor, OperatingSystemAttribute.TOTAL_SWAP_SPACE_SIZE, Metric.TOTAL_SWAP_SPACE_SIZE);
 			  
-			freeSwapSpaceSize = (Long) callOperatingSystemMXBeanMethod(osBean,"getFreeSwapSpaceSize");
+			readLong(accessor, OperatingSystemAttribute.FREE_SWAP_SPACE_SIZE, Metric.FREE_SWAP_SPACE_SIZE);
 			  
-			processCpuTime = (Long) callOperatingSystemMXBeanMethod(osBean,"getProcessCpuTime");
+			readLong(accessor, OperatingSystemAttribute.PROCESS_CPU_TIME, Metric.PROCESS_CPU_TIME);
 			  
-			freePhysicalMemorySize = (Long) callOperatingSystemMXBeanMethod(osBean,"getFreePhysicalMemorySize");
+			readLong(accessor, OperatingSystemAttribute.FREE_PHYSICAL_MEMORY_SIZE, Metric.FREE_PHYSICAL_MEMORY_SIZE);
 			  
-			totalPhysicalMemorySize = (Long) callOperatingSystemMXBeanMethod(osBean,"getTotalPhysicalMemorySize");
+			readLong(accessor, OperatingSystemAttribute.TOTAL_PHYSICAL_MEMORY_SIZE, Metric.TOTAL_PHYSICAL_MEMORY_SIZE);
 			  
-			systemCpuLoad = (Double) callOperatingSystemMXBeanMethod(osBean,"getSystemCpuLoad");
+			readDouble(accessor, OperatingSystemAttribute.SYSTEM_CPU_LOAD, Metric.SYSTEM_CPU_LOAD);
 			  
-			processCpuLoad = (Double) callOperatingSystemMXBeanMethod(osBean,"getProcessCpuLoad");
+			readDouble(accessor, OperatingSystemAttribute.PROCESS_CPU_LOAD, Metric.PROCESS_CPU_LOAD);
 			
 		} catch (Exception e) {
 			logger.error("Unable to get server statistics " + e.getMessage());
 		}
 	}
 	
+	/**
+	 * Reads the operating system statistics of the latest /proc sample, with per-core loads and without sleeping.
+	 * Only the {@link StatisticsSampler} samples the shared instance, so the loads are measured between two of its
+	 * samples whatever the requests building statistics in between.
+	 * @return false if /proc has not been sampled
+	 */
+	protected boolean getProcStatistics(ProcStatistics proc) {
+		if (!proc.isSampled()) {
+			return false;
+		}
+		record.setLong(Metric.COMMITTED_VIRTUAL_MEMORY_SIZE, proc.getProcessVirtualSize());
+		record.setLong(Metric.TOTAL_SWAP_SPACE_SIZE, proc.getSwapTotal());
+		record.setLong(Metric.FREE_SWAP_SPACE_SIZE, proc.getSwapFree());
+		record.setLong(Metric.PROCESS_CPU_TIME, proc.getProcessCpuTime());
+		record.setLong(Metric.FREE_PHYSICAL_MEMORY_SIZE, proc.getMemFree());
+		record.setLong(Metric.TOTAL_PHYSICAL_MEMORY_SIZE, proc.getMemTotal());
+		record.setDouble(Metric.SYSTEM_CPU_LOAD, proc.getSystemCpuLoad());
+		if (!Double.isNaN(proc.getProcessCpuLoad())) {
+			record.setDouble(Metric.PROCESS_CPU_LOAD, proc.getProcessCpuLoad());
+		}
+		coreCpuLoads = proc.getCoreCpuLoads();
+		return true;
+	}
+	
+	/**
+	 * Copies the attribute, left out if the OperatingSystemMXBean does not support it
+	 */
+	private void readLong(OperatingSystemMXBeanAccessor accessor, OperatingSystemAttribute attribute, Metric metric) {
+		if (accessor.isSupported(attribute)) {
+			record.setLong(metric, accessor.readLong(attribute));
+		}
+	}
+	
+	/**
+	 * Copies the attribute, left out if the OperatingSystemMXBean does not support it
+	 */
+	private void readDouble(OperatingSystemMXBeanAccessor accessor, OperatingSystemAttribute attribute, Metric metric) {
+		if (accessor.isSupported(attribute)) {
+			record.setDouble(metric, accessor.readDouble(attribute));
+		}
+	}
+	
+	/**
+	 * Reads an attribute through reflection on every call.
+	 * @deprecated resolves the method on every read, use {@link OperatingSystemMXBeanAccessor} instead
+	 */
+	@Deprecated
 	protected Object callOperatingSystemMXBeanMethod(OperatingSystemMXBean osBean, String methodName) {
 		Object result = null;
 		try {
@@ -145,37 +189,37 @@ public class ServerStatistics {
 	protected void getFileSystemStatistics() {
 		try {
 			File file = new File(".");
-			freeSpace = file.getFreeSpace();
-			totalSpace = file.getTotalSpace();
-			usableSpace = file.getUsableSpace();
-			
-			
-			freeSpaceAsKilobytes = ByteConvertor.convertBytesToKilobytes(freeSpace);
-			totalSpaceAsKilobytes = ByteConvertor.convertBytesToKilobytes(totalSpace);
-			usableSpaceAsKilobytes = ByteConvertor.convertBytesToKilobytes(usableSpace);
-			
-			freeSpaceAsMegabytes = ByteConvertor.convertBytesToMegabytes(freeSpace);
-			totalSpaceAsMegabytes = ByteConvertor.convertBytesToMegabytes(totalSpace);
-			usableSpaceAsMegabytes = ByteConvertor.convertBytesToMegabytes(usableSpace);
-			
-			freeSpaceAsGigabytes = ByteConvertor.convertBytesToGigabytes(freeSpace);
-			totalSpaceAsGigabytes = ByteConvertor.convertBytesToGigabytes(totalSpace);
-			usableSpaceAsGigabytes = ByteConvertor.convertBytesToGigabytes(usableSpace);
-			
-			systemCpuUsage = calculateSystemCpuUsage();
-			jvmCpuUsage = calculateJvmCpuUsage();
-			
-			for (FileStore fileStore : FileSystems.getDefault().getFileStores()) {
-				String key = fileStore.name();
-				store.put(key, fileStore);
-			}
+			record.setLong(Metric.FREE_SPACE, file.getFreeSpace());
+			record.setLong(Metric.TOTAL_SPACE, file.getTotalSpace());
+			record.setLong(Metric.USABLE_SPACE, file.getUsableSpace());
+		} catch (Exception e) {
+			logger.error("Unable to get server statistics " + e.getMessage());
+		}
+	}
+	
+	protected void getCpuUsageStatistics() {
+		try {
+			record.setDouble(Metric.SYSTEM_CPU_USAGE, calculateSystemCpuUsage());
+			record.setDouble(Metric.JVM_CPU_USAGE, calculateJvmCpuUsage());
+		} catch (Exception e) {
+			logger.error("Unable to get server statistics " + e.getMessage());
+		}
+	}
+	
+	protected void getFileStoreStatistics() {
+		try {
+			// probed in parallel, a hanging mount reports its last values as stale instead of blocking
+			store = FileStoreCollector.getInstance().collect();
 		} catch (Exception e) {
 			logger.error("Unable to get server statistics " + e.getMessage());
 		}
 	}
 	
 	public double calculateSystemCpuUsage() {
-		OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+		if (ProcStatistics.getInstance() != null) {
+			// tick deltas between two samples, no warm-up needed
+			return ProcStatistics.getInstance().getSystemCpuLoad();
+		}
 		try {
 			Thread.currentThread().sleep(100);
 		} catch (InterruptedException e) {
@@ -183,46 +227,37 @@ public class ServerStatistics {
 			e.printStackTrace();
 		}
 		// What % load the overall system is at, from 0.0-1.0
-		Double cpuload = (Double) callOperatingSystemMXBeanMethod(osBean, "getSystemCpuLoad");
+		double cpuload = OperatingSystemMXBeanAccessor.getInstance().readDouble(OperatingSystemAttribute.SYSTEM_CPU_LOAD);
 		//logger.debug("System CPU " + cpuload);
 		return cpuload;
 	}
 	
 	public double calculateJvmCpuUsage() {
-		OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean( OperatingSystemMXBean.class);
+		if (ProcStatistics.getInstance() != null) {
+			// negative until two samples were taken, like the OperatingSystemMXBean
+			double load = ProcStatistics.getInstance().getProcessCpuLoad();
+			return Double.isNaN(load) ? -1.0 : load;
+		}
 		// What % CPU load this current JVM is taking, from 0.0-1.0
 		//logger.debug("Jvm CPU " + osBean.getProcessCpuLoad());
 		
-		return (double) callOperatingSystemMXBeanMethod(osBean, "getProcessCpuLoad");
+		return OperatingSystemMXBeanAccessor.getInstance().readDouble(OperatingSystemAttribute.PROCESS_CPU_LOAD);
 	}
 	
 	public long calculateCpuUsageForProcess() {
-		MBeanServerConnection mbsc = ManagementFactory.getPlatformMBeanServer();
-		long nanoBefore = 0;
-		long cpuBefore = 0;
-		long cpuAfter = 0;
-		long nanoAfter = 0;
-		OperatingSystemMXBean osMBean;
+		OperatingSystemMXBeanAccessor accessor = OperatingSystemMXBeanAccessor.getInstance();
+		long nanoBefore = System.nanoTime();
+		long cpuBefore = accessor.readLong(OperatingSystemAttribute.PROCESS_CPU_TIME);
+
+		// Call an expensive task, or sleep if you are monitoring a remote process
 		try {
-			osMBean = ManagementFactory.newPlatformMXBeanProxy(
-					mbsc, 
-					ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME, OperatingSystemMXBean.class);
-			nanoBefore = System.nanoTime();
-			cpuBefore = (long) callOperatingSystemMXBeanMethod(osMBean, "getProcessCpuTime");
-
-			// Call an expensive task, or sleep if you are monitoring a remote process
-			try {
-				Thread.currentThread().sleep(100);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			cpuAfter = (long) callOperatingSystemMXBeanMethod(osMBean, "getProcessCpuTime");
-			nanoAfter = System.nanoTime();
-		} catch (IOException e) {
+			Thread.currentThread().sleep(100);
+		} catch (InterruptedException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		long cpuAfter = accessor.readLong(OperatingSystemAttribute.PROCESS_CPU_TIME);
+		long nanoAfter = System.nanoTime();
 
 		long percent = 0l;
 		if (nanoAfter > nanoBefore) {
@@ -233,278 +268,308 @@ public class ServerStatistics {
 	}
 
 	/**
-	 * @return the freeSpace
+	 * @return the freeSpace, null if not collected
 	 */
 	public Long getFreeSpace() {
-		return freeSpace;
+		return getLong(Metric.FREE_SPACE);
 	}
 	
 	/**
 	 * @param freeSpace the freeSpace to set
 	 */
-	public void setFreeSpace(Long freeSpace) {
-		this.freeSpace = freeSpace;
+	public void setFreeSpace(long freeSpace) {
+		record.setLong(Metric.FREE_SPACE, freeSpace);
 	}
 
 	/**
-	 * @return the totalSpace
+	 * @return the totalSpace, null if not collected
 	 */
 	public Long getTotalSpace() {
-		return totalSpace;
+		return getLong(Metric.TOTAL_SPACE);
 	}
-
+	
 	/**
 	 * @param totalSpace the totalSpace to set
 	 */
-	public void setTotalSpace(Long totalSpace) {
-		this.totalSpace = totalSpace;
+	public void setTotalSpace(long totalSpace) {
+		record.setLong(Metric.TOTAL_SPACE, totalSpace);
 	}
 
 	/**
-	 * @return the usableSpace
+	 * @return the usableSpace, null if not collected
 	 */
 	public Long getUsableSpace() {
-		return usableSpace;
+		return getLong(Metric.USABLE_SPACE);
 	}
 	
 	/**
 	 * @param usableSpace the usableSpace to set
 	 */
-	public void setUsableSpace(Long usableSpace) {
-		this.usableSpace = usableSpace;
+	public void setUsableSpace(long usableSpace) {
+		record.setLong(Metric.USABLE_SPACE, usableSpace);
 	}
 
 	/**
-	 * @return the freeSpaceAsKilobytes
+	 * @return the freeSpaceAsKilobytes, converted from the bytes
 	 */
 	public Double getFreeSpaceAsKilobytes() {
-		return freeSpaceAsKilobytes;
+		return record.has(Metric.FREE_SPACE) ? ByteConvertor.convertBytesToKilobytes(record.getLong(Metric.FREE_SPACE)) : null;
 	}
 
 	/**
-	 * @param freeSpaceAsKilobytes the freeSpaceAsKilobytes to set
+	 * @return the totalSpaceAsKilobytes, converted from the bytes
 	 */
-	public void setFreeSpaceAsKilobytes(Double freeSpaceAsKilobytes) {
-		this.freeSpaceAsKilobytes = freeSpaceAsKilobytes;
+	public Double getTotalSpaceAsKilobytes() {
+		return record.has(Metric.TOTAL_SPACE) ? ByteConvertor.convertBytesToKilobytes(record.getLong(Metric.TOTAL_SPACE)) : null;
 	}
 
 	/**
-	 * @return the totalSpaceAsKilobytes
+	 * @return the usableSpaceAsKilobytes, converted from the bytes
 	 */
-	public Double getTotalSpaceAsKilobytes() {
-		return totalSpaceAsKilobytes;
+	public Double getUsableSpaceAsKilobytes() {
+		return record.has(Metric.USABLE_SPACE) ? ByteConvertor.convertBytesToKilobytes(record.getLong(Metric.USABLE_SPACE)) : null;
 	}
 
 	/**
-	 * @param totalSpaceAsKilobytes the totalSpaceAsKilobytes to set
+	 * @return the freeSpaceAsMegabytes, converted from the bytes
 	 */
-	public void setTotalSpaceAsKilobytes(Double totalSpaceAsKilobytes) {
-		this.totalSpaceAsKilobytes = totalSpaceAsKilobytes;
+	public Double getFreeSpaceAsMegabytes() {
+		return record.has(Metric.FREE_SPACE) ? ByteConvertor.convertBytesToMegabytes(record.getLong(Metric.FREE_SPACE)) : null;
 	}
 
 	/**
-	 * @return the usableSpaceAsKilobytes
+	 * @return the totalSpaceAsMegabytes, converted from the bytes
 	 */
-	public Double getUsableSpaceAsKilobytes() {
-		return usableSpaceAsKilobytes;
+	public Double getTotalSpaceAsMegabytes() {
+		return record.has(Metric.TOTAL_SPACE) ? ByteConvertor.convertBytesToMegabytes(record.getLong(Metric.TOTAL_SPACE)) : null;
 	}
 
 	/**
-	 * @param usableSpaceAsKilobytes the usableSpaceAsKilobytes to set
+	 * @return the usableSpaceAsMegabytes, converted from the bytes
 	 */
-	public void setUsableSpaceAsKilobytes(Double usableSpaceAsKilobytes) {
-		this.usableSpaceAsKilobytes = usableSpaceAsKilobytes;
+	public Double getUsableSpaceAsMegabytes() {
+		return record.has(Metric.USABLE_SPACE) ? ByteConvertor.convertBytesToMegabytes(record.getLong(Metric.USABLE_SPACE)) : null;
 	}
 
 	/**
-	 * @return the freeSpaceAsMegabytes
+	 * @return the freeSpaceAsGigabytes, converted from the bytes
 	 */
-	public Double getFreeSpaceAsMegabytes() {
-		return freeSpaceAsMegabytes;
+	public Double getFreeSpaceAsGigabytes() {
+		return record.has(Metric.FREE_SPACE) ? ByteConvertor.convertBytesToGigabytes(record.getLong(Metric.FREE_SPACE)) : null;
 	}
 
 	/**
-	 * @param freeSpaceAsMegabytes the freeSpaceAsMegabytes to set
+	 * @return the totalSpaceAsGigabytes, converted from the bytes
 	 */
-	public void setFreeSpaceAsMegabytes(Double freeSpaceAsMegabytes) {
-		this.freeSpaceAsMegabytes = freeSpaceAsMegabytes;
+	public Double getTotalSpaceAsGigabytes() {
+		return record.has(Metric.TOTAL_SPACE) ? ByteConvertor.convertBytesToGigabytes(record.getLong(Metric.TOTAL_SPACE)) : null;
 	}
 
 	/**
-	 * @return the totalSpaceAsMegabytes
+	 * @return the usableSpaceAsGigabytes, converted from the bytes
 	 */
-	public Double getTotalSpaceAsMegabytes() {
-		return totalSpaceAsMegabytes;
+	public Double getUsableSpaceAsGigabytes() {
+		return record.has(Metric.USABLE_SPACE) ? ByteConvertor.convertBytesToGigabytes(record.getLong(Metric.USABLE_SPACE)) : null;
 	}
 
 	/**
-	 * @param totalSpaceAsMegabytes the totalSpaceAsMegabytes to set
+	 * @return the systemCpuUsage, null if not collected
 	 */
-	public void setTotalSpaceAsMegabytes(Double totalSpaceAsMegabytes) {
-		this.totalSpaceAsMegabytes = totalSpaceAsMegabytes;
+	public Double getSystemCpuUsage() {
+		return getDouble(Metric.SYSTEM_CPU_USAGE);
 	}
-
+	
 	/**
-	 * @return the usableSpaceAsMegabytes
+	 * @param systemCpuUsage the systemCpuUsage to set
 	 */
-	public Double getUsableSpaceAsMegabytes() {
-		return usableSpaceAsMegabytes;
+	public void setSystemCpuUsage(double systemCpuUsage) {
+		record.setDouble(Metric.SYSTEM_CPU_USAGE, systemCpuUsage);
 	}
 
 	/**
-	 * @param usableSpaceAsMegabytes the usableSpaceAsMegabytes to set
+	 * @return the jvmCpuUsage, null if not collected
 	 */
-	public void setUsableSpaceAsMegabytes(Double usableSpaceAsMegabytes) {
-		this.usableSpaceAsMegabytes = usableSpaceAsMegabytes;
+	public Double getJvmCpuUsage() {
+		return getDouble(Metric.JVM_CPU_USAGE);
 	}
-
+	
 	/**
-	 * @return the freeSpaceAsGigabytes
+	 * @param jvmCpuUsage the jvmCpuUsage to set
 	 */
-	public Double getFreeSpaceAsGigabytes() {
-		return freeSpaceAsGigabytes;
+	public void setJvmCpuUsage(double jvmCpuUsage) {
+		record.setDouble(Metric.JVM_CPU_USAGE, jvmCpuUsage);
 	}
 
 	/**
-	 * @param freeSpaceAsGigabytes the freeSpaceAsGigabytes to set
+	 * @return the processCpuUsage
 	 */
-	public void setFreeSpaceAsGigabytes(Double freeSpaceAsGigabytes) {
-		this.freeSpaceAsGigabytes = freeSpaceAsGigabytes;
+	public Double getProcessCpuUsage() {
+		return processCpuUsage;
 	}
 
 	/**
-	 * @return the totalSpaceAsGigabytes
+	 * @param processCpuUsage the processCpuUsage to set
 	 */
-	public Double getTotalSpaceAsGigabytes() {
-		return totalSpaceAsGigabytes;
+	public void setProcessCpuUsage(double processCpuUsage) {
+		this.processCpuUsage = processCpuUsage;
 	}
 
 	/**
-	 * @param totalSpaceAsGigabytes the totalSpaceAsGigabytes to set
+	 * @return the committedVirtualMemorySize, null if not collected
 	 */
-	public void setTotalSpaceAsGigabytes(Double totalSpaceAsGigabytes) {
-		this.totalSpaceAsGigabytes = totalSpaceAsGigabytes;
+	public Long getCommittedVirtualMemorySize() {
+		return getLong(Metric.COMMITTED_VIRTUAL_MEMORY_SIZE);
 	}
-
+	
 	/**
-	 * @return the usableSpaceAsGigabytes
+	 * @param committedVirtualMemorySize the committedVirtualMemorySize to set
 	 */
-	public Double getUsableSpaceAsGigabytes() {
-		return usableSpaceAsGigabytes;
+	public void setCommittedVirtualMemorySize(long committedVirtualMemorySize) {
+		record.setLong(Metric.COMMITTED_VIRTUAL_MEMORY_SIZE, committedVirtualMemorySize);
 	}
 
 	/**
-	 * @param usableSpaceAsGigabytes the usableSpaceAsGigabytes to set
+	 * @return the totalSwapSpaceSize, null if not collected
 	 */
-	public void setUsableSpaceAsGigabytes(Double usableSpaceAsGigabytes) {
-		this.usableSpaceAsGigabytes = usableSpaceAsGigabytes;
+	public Long getTotalSwapSpaceSize() {
+		return getLong(Metric.TOTAL_SWAP_SPACE_SIZE);
 	}
-
+	
 	/**
-	 * @return the systemCpuUsage
+	 * @param totalSwapSpaceSize the totalSwapSpaceSize to set
 	 */
-	public Double getSystemCpuUsage() {
-		return systemCpuUsage;
+	public void setTotalSwapSpaceSize(long totalSwapSpaceSize) {
+		record.setLong(Metric.TOTAL_SWAP_SPACE_SIZE, totalSwapSpaceSize);
 	}
 
 	/**
-	 * @param systemCpuUsage the systemCpuUsage to set
+	 * @return the freeSwapSpaceSize, null if not collected
 	 */
-	public void setSystemCpuUsage(Double systemCpuUsage) {
-		this.systemCpuUsage = systemCpuUsage;
+	public Long getFreeSwapSpaceSize() {
+		return getLong(Metric.FREE_SWAP_SPACE_SIZE);
 	}
-
+	
 	/**
-	 * @return the jvmCpuUsage
+	 * @param freeSwapSpaceSize the freeSwapSpaceSize to set
 	 */
-	public Double getJvmCpuUsage() {
-		return jvmCpuUsage;
+	public void setFreeSwapSpaceSize(long freeSwapSpaceSize) {
+		record.setLong(Metric.FREE_SWAP_SPACE_SIZE, freeSwapSpaceSize);
 	}
 
 	/**
-	 * @param jvmCpuUsage the jvmCpuUsage to set
+	 * @return the processCpuTime, null if not collected
 	 */
-	public void setJvmCpuUsage(Double jvmCpuUsage) {
-		this.jvmCpuUsage = jvmCpuUsage;
+	public Long getProcessCpuTime() {
+		return getLong(Metric.PROCESS_CPU_TIME);
 	}
-
+	
 	/**
-	 * @return the processCpuUsage
+	 * @param processCpuTime the processCpuTime to set
 	 */
-	public Double getProcessCpuUsage() {
-		return processCpuUsage;
+	public void setProcessCpuTime(long processCpuTime) {
+		record.setLong(Metric.PROCESS_CPU_TIME, processCpuTime);
 	}
 
 	/**
-	 * @param processCpuUsage the processCpuUsage to set
+	 * @return the freePhysicalMemorySize, null if not collected
 	 */
-	public void setProcessCpuUsage(Double processCpuUsage) {
-		this.processCpuUsage = processCpuUsage;
+	public Long getFreePhysicalMemorySize() {
+		return getLong(Metric.FREE_PHYSICAL_MEMORY_SIZE);
 	}
 	
-	
+	/**
+	 * @param freePhysicalMemorySize the freePhysicalMemorySize to set
+	 */
+	public void setFreePhysicalMemorySize(long freePhysicalMemorySize) {
+		record.setLong(Metric.FREE_PHYSICAL_MEMORY_SIZE, freePhysicalMemorySize);
+	}
 
 	/**
-	 * @return the committedVirtualMemorySize
+	 * @return the totalPhysicalMemorySize, null if not collected
 	 */
-	public Long getCommittedVirtualMemorySize() {
-		return committedVirtualMemorySize;
+	public Long getTotalPhysicalMemorySize() {
+		return getLong(Metric.TOTAL_PHYSICAL_MEMORY_SIZE);
+	}
+	
+	/**
+	 * @param totalPhysicalMemorySize the totalPhysicalMemorySize to set
+	 */
+	public void setTotalPhysicalMemorySize(long totalPhysicalMemorySize) {
+		record.setLong(Metric.TOTAL_PHYSICAL_MEMORY_SIZE, totalPhysicalMemorySize);
 	}
 
 	/**
-	 * @return the totalSwapSpaceSize
+	 * @return the systemCpuLoad, null if not collected
 	 */
-	public Long getTotalSwapSpaceSize() {
-		return totalSwapSpaceSize;
+	public Double getSystemCpuLoad() {
+		return getDouble(Metric.SYSTEM_CPU_LOAD);
+	}
+	
+	/**
+	 * @param systemCpuLoad the systemCpuLoad to set
+	 */
+	public void setSystemCpuLoad(double systemCpuLoad) {
+		record.setDouble(Metric.SYSTEM_CPU_LOAD, systemCpuLoad);
 	}
 
 	/**
-	 * @return the freeSwapSpaceSize
+	 * @return the processCpuLoad, null if not collected
 	 */
-	public Long getFreeSwapSpaceSize() {
-		return freeSwapSpaceSize;
+	public Double getProcessCpuLoad() {
+		return getDouble(Metric.PROCESS_CPU_LOAD);
+	}
+	
+	/**
+	 * @param processCpuLoad the processCpuLoad to set
+	 */
+	public void setProcessCpuLoad(double processCpuLoad) {
+		record.setDouble(Metric.PROCESS_CPU_LOAD, processCpuLoad);
 	}
 
 	/**
-	 * @return the processCpuTime
+	 * @return the coreCpuLoads
 	 */
-	public Long getProcessCpuTime() {
-		return processCpuTime;
+	public double[] getCoreCpuLoads() {
+		return coreCpuLoads;
 	}
 
 	/**
-	 * @return the freePhysicalMemorySize
+	 * @return the store
 	 */
-	public Long getFreePhysicalMemorySize() {
-		return freePhysicalMemorySize;
+	public Map<String, FileStoreUsage> getStore() {
+		return store;
 	}
 
 	/**
-	 * @return the totalPhysicalMemorySize
+	 * @return the collectors that filled these statistics
 	 */
-	public Long getTotalPhysicalMemorySize() {
-		return totalPhysicalMemorySize;
+	@JsonIgnore
+	public Set<StatisticsCollector> getCollectors() {
+		return collectors;
 	}
 
 	/**
-	 * @return the systemCpuLoad
+	 * @return the primitive values of the metrics
 	 */
-	public Double getSystemCpuLoad() {
-		return systemCpuLoad;
+	@JsonIgnore
+	public MetricRecord getRecord() {
+		return record;
 	}
 
 	/**
-	 * @return the processCpuLoad
+	 * @param metric a long metric
+	 * @return the boxed value, null if not collected
 	 */
-	public Double getProcessCpuLoad() {
-		return processCpuLoad;
+	private Long getLong(Metric metric) {
+		return record.has(metric) ? Long.valueOf(record.getLong(metric)) : null;
 	}
 
 	/**
-	 * @return the store
+	 * @param metric a double metric
+	 * @return the boxed value, null if not collected
 	 */
-	public Map<String, FileStore> getStore() {
-		return store;
+	private Double getDouble(Metric metric) {
+		return record.has(metric) ? Double.valueOf(record.getDouble(metric)) : null;
 	}
 
 	/* (non-Javadoc)
@@ -512,16 +577,7 @@ public class ServerStatistics {
 	 */
 	@Override
 	public String toString() {
-		return "ServerStatistics [freeSpace=" + freeSpace + ", totalSpace=" + totalSpace + ", usableSpace=" + usableSpace + ", freeSpaceAsKilobytes=" + freeSpaceAsKilobytes
-				+ ", totalSpaceAsKilobytes=" + totalSpaceAsKilobytes + ", usableSpaceAsKilobytes=" + usableSpaceAsKilobytes + ", freeSpaceAsMegabytes=" + freeSpaceAsMegabytes
-				+ ", totalSpaceAsMegabytes=" + totalSpaceAsMegabytes + ", usableSpaceAsMegabytes=" + usableSpaceAsMegabytes + ", freeSpaceAsGigabytes=" + freeSpaceAsGigabytes
-				+ ", totalSpaceAsGigabytes=" + totalSpaceAsGigabytes + ", usableSpaceAsGigabytes=" + usableSpaceAsGigabytes + ", systemCpuUsage=" + systemCpuUsage
-				+ ", jvmCpuUsage=" + jvmCpuUsage + ", processCpuUsage=" + processCpuUsage + ", committedVirtualMemorySize=" + committedVirtualMemorySize + ", totalSwapSpaceSize="
-				+ totalSwapSpaceSize + ", freeSwapSpaceSize=" + freeSwapSpaceSize + ", processCpuTime=" + processCpuTime + ", freePhysicalMemorySize=" + freePhysicalMemorySize
-				+ ", totalPhysicalMemorySize=" + totalPhysicalMemorySize + ", systemCpuLoad=" + systemCpuLoad + ", processCpuLoad=" + processCpuLoad + ", store=" + store + "]";
+		return "ServerStatistics [record=" + record + ", processCpuUsage=" + processCpuUsage + ", coreCpuLoads=" + Arrays.toString(coreCpuLoads)
+				+ ", store=" + store + "]";
 	}
-
-	
-
-	
 }
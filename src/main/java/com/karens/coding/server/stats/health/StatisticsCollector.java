@@ -0,0 +1,159 @@
+package com.karens.coding.server.stats.health;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the sources that fill {@link ServerStatistics}, with the JSON fields each of them provides.
+ * Fields can be requested by name or by group, only the collectors owning them need to run.
+ * @author karen
+ *
+ */
+public enum StatisticsCollector {
+
+	/** CPU and memory, one read of /proc or of the OperatingSystemMXBean */
+	OPERATING_SYSTEM("operatingSystem", "systemCpuUsage", "jvmCpuUsage", "processCpuUsage", "systemCpuLoad", "processCpuLoad", "coreCpuLoads",
+			"processCpuTime", "committedVirtualMemorySize", "totalSwapSpaceSize", "freeSwapSpaceSize", "freePhysicalMemorySize",
+			"totalPhysicalMemorySize"),
+
+	/** Space of the file system holding the working directory, with its conversions */
+	DISK("disk", "freeSpace", "totalSpace", "usableSpace", "freeSpaceAsKilobytes", "totalSpaceAsKilobytes", "usableSpaceAsKilobytes",
+			"freeSpaceAsMegabytes", "totalSpaceAsMegabytes", "usableSpaceAsMegabytes", "freeSpaceAsGigabytes", "totalSpaceAsGigabytes",
+			"usableSpaceAsGigabytes"),
+
+	/** Every mounted file store */
+	FILE_STORES("fileStores", "store");
+
+	/** Groups of fields, by group name */
+	private static final Map<String, List<String>> GROUPS = new LinkedHashMap<String, List<String>>();
+
+	static {
+		GROUPS.put("cpu", Arrays.asList("systemCpuUsage", "jvmCpuUsage", "processCpuUsage", "systemCpuLoad", "processCpuLoad", "coreCpuLoads",
+				"processCpuTime"));
+		GROUPS.put("memory", Arrays.asList("committedVirtualMemorySize", "totalSwapSpaceSize", "freeSwapSpaceSize", "freePhysicalMemorySize",
+				"totalPhysicalMemorySize"));
+		GROUPS.put("disk", Arrays.asList("freeSpace", "totalSpace", "usableSpace", "freeSpaceAsKilobytes", "totalSpaceAsKilobytes",
+				"usableSpaceAsKilobytes", "freeSpaceAsMegabytes", "totalSpaceAsMegabytes", "usableSpaceAsMegabytes", "freeSpaceAsGigabytes",
+				"totalSpaceAsGigabytes", "usableSpaceAsGigabytes"));
+	}
+
+	/** Name of the collector, as configured */
+	private final String name;
+
+	/** JSON fields filled by the collector */
+	private final List<String> fields;
+
+	private StatisticsCollector(String name, String... fields) {
+		this.name = name;
+		this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the fields
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @param field JSON name of a statistic
+	 * @return the collector filling the field, or null
+	 */
+	public static StatisticsCollector forField(String field) {
+		for (StatisticsCollector collector : values()) {
+			if (collector.fields.contains(field)) {
+				return collector;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param name
+	 * @return the collector with the given name, or null
+	 */
+	public static StatisticsCollector forName(String name) {
+		for (StatisticsCollector collector : values()) {
+			if (collector.name.equals(name)) {
+				return collector;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a comma separated list of collector names
+	 * @param names
+	 * @return the collectors
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public static Set<StatisticsCollector> parse(String names) {
+		Set<StatisticsCollector> collectors = EnumSet.noneOf(StatisticsCollector.class);
+		for (String name : names.split(",")) {
+			if (name.trim().isEmpty()) {
+				continue;
+			}
+			StatisticsCollector collector = forName(name.trim());
+			if (collector == null) {
+				throw new IllegalArgumentException("Unknown collector " + name.trim());
+			}
+			collectors.add(collector);
+		}
+		return collectors;
+	}
+
+	/**
+	 * Expands a comma separated list of fields and groups
+	 * @param fields e.g. "systemCpuLoad,disk"
+	 * @return the JSON fields, in request order
+	 * @throws IllegalArgumentException for an unknown field or group, or when no field is listed
+	 */
+	public static Set<String> resolveFields(String fields) {
+		Set<String> resolved = new LinkedHashSet<String>();
+		for (String field : fields.split(",")) {
+			field = field.trim();
+			if (field.isEmpty()) {
+				continue;
+			}
+			List<String> group = GROUPS.get(field);
+			if (group != null) {
+				resolved.addAll(group);
+			}
+			else if (forField(field) != null) {
+				resolved.add(field);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown field " + field + ", available groups are " + GROUPS.keySet());
+			}
+		}
+		if (resolved.isEmpty()) {
+			throw new IllegalArgumentException("No field requested, available groups are " + GROUPS.keySet());
+		}
+		return resolved;
+	}
+
+	/**
+	 * @param fields JSON fields
+	 * @return the collectors needed to fill them
+	 */
+	public static Set<StatisticsCollector> collectorsOf(Set<String> fields) {
+		Set<StatisticsCollector> collectors = EnumSet.noneOf(StatisticsCollector.class);
+		for (String field : fields) {
+			collectors.add(forField(field));
+		}
+		return collectors;
+	}
+}
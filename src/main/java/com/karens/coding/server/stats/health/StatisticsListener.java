@@ -0,0 +1,15 @@
+package com.karens.coding.server.stats.health;
+
+/**
+ * Receives every snapshot published by the {@link StatisticsSampler}.
+ * Called on the sampling thread, implementations must return quickly.
+ * @author karen
+ *
+ */
+public interface StatisticsListener {
+
+	/**
+	 * @param snapshot the snapshot that has just been published
+	 */
+	void onSnapshot(StatisticsSnapshot snapshot);
+}
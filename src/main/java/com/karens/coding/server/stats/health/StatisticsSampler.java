@@ -0,0 +1,173 @@
+package com.karens.coding.server.stats.health;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.disk.FileStoreCollector;
+import com.karens.coding.server.stats.proc.ProcStatistics;
+
+/**
+ * Samples the server statistics on a background thread and publishes the latest
+ * sample as an immutable {@link StatisticsSnapshot}, so readers never pay for a measurement.
+ * @author karen
+ *
+ */
+@Service("StatisticsSampler")
+public class StatisticsSampler {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(StatisticsSampler.class);
+
+	/** Interval between two samples in milliseconds */
+	@Value("${serverstats.sampler.interval:1000}")
+	private long interval = 1000l;
+
+	/** Comma separated names of the {@link StatisticsCollector}s run on every sample */
+	@Value("${serverstats.sampler.collectors:operatingSystem,disk,fileStores}")
+	private String collectorNames = "operatingSystem,disk,fileStores";
+
+	/** Milliseconds the probes of the mounted file stores may take on each sample */
+	@Value("${serverstats.disk.timeout:2000}")
+	private long diskTimeout = 2000l;
+
+	/** Collectors run on every sample, the others are only run for the requests asking for their fields */
+	private Set<StatisticsCollector> collectors;
+
+	/** Listeners notified of every published snapshot */
+	@Autowired(required = false)
+	private List<StatisticsListener> listeners = Collections.emptyList();
+
+	/** The latest published snapshot */
+	private final AtomicReference<StatisticsSnapshot> latest = new AtomicReference<StatisticsSnapshot>();
+
+	/** Sequence number of the last sample, only touched by the sampling thread */
+	private long sequence = 0l;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Takes the first sample synchronously, so the snapshot is never empty once
+	 * the application is up, and schedules the following ones.
+	 */
+	@PostConstruct
+	public void start() {
+		collectors = StatisticsCollector.parse(collectorNames);
+		FileStoreCollector.getInstance().setTimeout(diskTimeout);
+		sample();
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "server-stats-sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		logger.info("Sampling server statistics every " + interval + " ms");
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Takes one sample and publishes it. Exceptions are logged and swallowed,
+	 * otherwise the scheduled executor would silently stop sampling.
+	 */
+	protected void sample() {
+		try {
+			long timestamp = System.currentTimeMillis();
+			ProcStatistics proc = ProcStatistics.getInstance();
+			if (proc != null && collectors.contains(StatisticsCollector.OPERATING_SYSTEM)) {
+				// the only thread sampling /proc, the statistics read this sample
+				try {
+					proc.sample();
+				} catch (IOException e) {
+					logger.error("Unable to read /proc statistics " + e.getMessage());
+				}
+			}
+			ServerStatistics statistics = new ServerStatistics(collectors);
+			StatisticsSnapshot snapshot = new StatisticsSnapshot(++sequence, timestamp, statistics);
+			latest.set(snapshot);
+			publish(snapshot);
+		} catch (Exception e) {
+			logger.error("Unable to sample server statistics " + e.getMessage());
+		}
+	}
+
+	private void publish(StatisticsSnapshot snapshot) {
+		for (StatisticsListener listener : listeners) {
+			try {
+				listener.onSnapshot(snapshot);
+			} catch (Exception e) {
+				logger.error("Statistics listener " + listener.getClass().getSimpleName() + " failed " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return the latest snapshot, or null if nothing has been sampled yet
+	 */
+	public StatisticsSnapshot getLatest() {
+		return latest.get();
+	}
+
+	/**
+	 * @param listeners the listeners to set
+	 */
+	public void setListeners(List<StatisticsListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	/**
+	 * @return the collectors run on every sample
+	 */
+	public Set<StatisticsCollector> getCollectors() {
+		return collectors;
+	}
+
+	/**
+	 * @param collectorNames the collectorNames to set
+	 */
+	public void setCollectorNames(String collectorNames) {
+		this.collectorNames = collectorNames;
+	}
+
+	/**
+	 * @return the interval
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @param interval the interval to set
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+}
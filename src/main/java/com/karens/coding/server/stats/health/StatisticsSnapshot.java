@@ -0,0 +1,64 @@
+package com.karens.coding.server.stats.health;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+/**
+ * Immutable view of one sample taken by the {@link StatisticsSampler}.
+ * The wrapped statistics are never modified once the snapshot has been published.
+ * @author karen
+ *
+ */
+public final class StatisticsSnapshot {
+
+	/** Monotonic sequence number of the sample, starting at 1 */
+	private final long sequence;
+
+	/** Wall clock time the sample was taken, in milliseconds since the epoch */
+	private final long sampleTimestamp;
+
+	/** The sampled statistics */
+	private final ServerStatistics statistics;
+
+	public StatisticsSnapshot(long sequence, long sampleTimestamp, ServerStatistics statistics) {
+		this.sequence = sequence;
+		this.sampleTimestamp = sampleTimestamp;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the sampleTimestamp
+	 */
+	public long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @return the age of the sample in milliseconds
+	 */
+	public long getSampleAge() {
+		return Math.max(0l, System.currentTimeMillis() - sampleTimestamp);
+	}
+
+	/**
+	 * @return the statistics
+	 */
+	@JsonUnwrapped
+	public ServerStatistics getStatistics() {
+		return statistics;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "StatisticsSnapshot [sequence=" + sequence + ", sampleTimestamp=" + sampleTimestamp + ", statistics=" + statistics + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package com.karens.coding.server.stats.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bit strings of a {@link BitWriter} from a region of a buffer, with absolute gets only
+ * so that one buffer, typically a mapped file, can be shared by concurrent readers.
+ * @author karen
+ *
+ */
+public final class BitReader {
+
+	private final ByteBuffer buffer;
+	private final int offset;
+
+	/** Number of bits read */
+	private long position = 0;
+
+	/**
+	 * @param buffer
+	 * @param offset index of the first byte of the bit string
+	 */
+	public BitReader(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+	}
+
+	/**
+	 * @return the next bit
+	 */
+	public boolean readBit() {
+		int index = offset + (int) (position >>> 3);
+		int bit = (buffer.get(index) >>> (7 - (int) (position & 7))) & 1;
+		position++;
+		return bit == 1;
+	}
+
+	/**
+	 * @param count number of bits, 1 to 64
+	 * @return the bits as the low bits of a long
+	 */
+	public long readBits(int count) {
+		long value = 0;
+		while (count > 0) {
+			int index = offset + (int) (position >>> 3);
+			int available = 8 - (int) (position & 7);
+			int take = Math.min(available, count);
+			int bits = ((buffer.get(index) & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+			value = (value << take) | bits;
+			count -= take;
+			position += take;
+		}
+		return value;
+	}
+
+	/**
+	 * @return a varint written by {@link BitWriter#writeVarLong}
+	 */
+	public long readVarLong() {
+		long zigZag = 0;
+		int shift = 0;
+		long group;
+		do {
+			group = readBits(8);
+			zigZag |= (group & 0x7F) << shift;
+			shift += 7;
+		} while ((group & 0x80) != 0);
+		return (zigZag >>> 1) ^ -(zigZag & 1);
+	}
+
+	/**
+	 * @return the number of bits read
+	 */
+	public long getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,86 @@
+package com.karens.coding.server.stats.history;
+
+import java.util.Arrays;
+
+/**
+ * Appends bit strings, most significant bit first, to a growing byte array
+ * @author karen
+ *
+ */
+public final class BitWriter {
+
+	private byte[] buffer;
+
+	/** Number of bits written */
+	private long position = 0;
+
+	public BitWriter(int initialCapacity) {
+		this.buffer = new byte[Math.max(16, initialCapacity)];
+	}
+
+	/**
+	 * @param bit
+	 */
+	public void writeBit(boolean bit) {
+		writeBits(bit ? 1l : 0l, 1);
+	}
+
+	/**
+	 * Writes the low bits of a value
+	 * @param value
+	 * @param count number of bits, 1 to 64
+	 */
+	public void writeBits(long value, int count) {
+		ensureCapacity(count);
+		while (count > 0) {
+			int index = (int) (position >>> 3);
+			int free = 8 - (int) (position & 7);
+			int take = Math.min(free, count);
+			int bits = (int) (value >>> (count - take)) & ((1 << take) - 1);
+			buffer[index] |= bits << (free - take);
+			count -= take;
+			position += take;
+		}
+	}
+
+	/**
+	 * Writes a zig-zag encoded varint in groups of 8 bits, 7 payload bits and a continuation bit
+	 * @param value
+	 */
+	public void writeVarLong(long value) {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7Fl) != 0) {
+			writeBits((zigZag & 0x7F) | 0x80, 8);
+			zigZag >>>= 7;
+		}
+		writeBits(zigZag, 8);
+	}
+
+	private void ensureCapacity(int bits) {
+		long needed = (position + bits + 7) >>> 3;
+		if (needed > buffer.length) {
+			buffer = Arrays.copyOf(buffer, (int) Math.max(needed, buffer.length * 2l));
+		}
+	}
+
+	/**
+	 * @return the number of bits written
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the number of bytes holding the written bits
+	 */
+	public int getSizeInBytes() {
+		return (int) ((position + 7) >>> 3);
+	}
+
+	/**
+	 * @return the backing array, valid up to {@link #getSizeInBytes()}
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+}
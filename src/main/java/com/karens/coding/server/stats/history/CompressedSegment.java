@@ -0,0 +1,181 @@
+package com.karens.coding.server.stats.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.karens.coding.server.stats.health.Metric;
+
+/**
+ * Sealed segment holding one {@link GorillaEncoder} block per metric instead of fixed width records.
+ * Written once from a full {@link Segment}, then mapped read-only and decoded straight from the mapping.
+ * <p>
+ * Layout: magic, version, slots, schema and record count ints, first and last timestamp longs,
+ * one block offset int per slot, then the blocks.
+ * @author karen
+ *
+ */
+public final class CompressedSegment implements HistorySegment {
+
+	/** "SGOR" */
+	private static final int MAGIC = 0x53474F52;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final long firstTimestamp;
+	private final long lastTimestamp;
+	private final int[] offsets;
+
+	private CompressedSegment(File file, MappedByteBuffer buffer, int slots) {
+		this.file = file;
+		this.buffer = buffer;
+		this.size = buffer.getInt(16);
+		this.firstTimestamp = buffer.getLong(20);
+		this.lastTimestamp = buffer.getLong(28);
+		this.offsets = new int[slots];
+		for (int slot = 0; slot < slots; slot++) {
+			offsets[slot] = buffer.getInt(HEADER_SIZE + slot * 4);
+		}
+	}
+
+	/**
+	 * Encodes every metric of a segment into a new file. The file is written under a temporary
+	 * name and renamed once complete, so an interrupted compaction leaves the source as the only copy.
+	 * @param source
+	 * @param schema metrics of the slots of the source
+	 * @param schemaHash
+	 * @param target
+	 * @return the compressed segment, mapped
+	 * @throws IOException
+	 */
+	public static CompressedSegment compact(final Segment source, Metric[] schema, int schemaHash, File target) throws IOException {
+		int records = source.size();
+		GorillaEncoder[] encoders = new GorillaEncoder[schema.length];
+		int length = HEADER_SIZE + schema.length * 4;
+		for (int slot = 0; slot < schema.length; slot++) {
+			final GorillaEncoder encoder = new GorillaEncoder(schema[slot].isFractional(), records);
+			final boolean fractional = schema[slot].isFractional();
+			source.scan(slot, Long.MIN_VALUE, Long.MAX_VALUE, new PointVisitor() {
+				@Override
+				public void visit(long timestamp, long value) {
+					if (fractional) {
+						encoder.appendDouble(timestamp, Double.longBitsToDouble(value));
+					}
+					else {
+						encoder.appendLong(timestamp, value);
+					}
+				}
+			});
+			encoders[slot] = encoder;
+			length += encoder.getEncodedSize();
+		}
+
+		ByteBuffer content = ByteBuffer.allocate(length);
+		content.putInt(MAGIC).putInt(VERSION).putInt(schema.length).putInt(schemaHash).putInt(records);
+		content.putLong(source.getFirstTimestamp()).putLong(source.getLastTimestamp());
+		int offset = HEADER_SIZE + schema.length * 4;
+		for (GorillaEncoder encoder : encoders) {
+			content.putInt(offset);
+			offset += encoder.getEncodedSize();
+		}
+		for (GorillaEncoder encoder : encoders) {
+			encoder.writeTo(content);
+		}
+		content.flip();
+
+		File temporary = new File(target.getPath() + ".tmp");
+		RandomAccessFile randomAccessFile = new RandomAccessFile(temporary, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			FileChannel channel = randomAccessFile.getChannel();
+			while (content.hasRemaining()) {
+				channel.write(content);
+			}
+			channel.force(true);
+		} finally {
+			randomAccessFile.close();
+		}
+		if (!temporary.renameTo(target)) {
+			throw new IOException("Unable to rename " + temporary + " to " + target);
+		}
+		return open(target, schema.length, schemaHash);
+	}
+
+	/**
+	 * Maps a compressed segment read-only, reading nothing but its header
+	 * @param file
+	 * @param slots expected number of slots
+	 * @param schemaHash expected schema hash
+	 * @return CompressedSegment
+	 * @throws IOException if the file is not a compressed segment of this schema
+	 */
+	public static CompressedSegment open(File file, int slots, int schemaHash) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			if (randomAccessFile.length() < HEADER_SIZE + slots * 4) {
+				throw new IOException(file + " is truncated");
+			}
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		} finally {
+			randomAccessFile.close();
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not a compressed segment file");
+		}
+		if (buffer.getInt(8) != slots || buffer.getInt(12) != schemaHash) {
+			throw new IOException(file + " was written with another metric schema");
+		}
+		return new CompressedSegment(file, buffer, slots);
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long getFirstTimestamp() {
+		return size == 0 ? Long.MAX_VALUE : firstTimestamp;
+	}
+
+	@Override
+	public long getLastTimestamp() {
+		return size == 0 ? Long.MIN_VALUE : lastTimestamp;
+	}
+
+	/**
+	 * @return the size of the file in bytes
+	 */
+	public int getSizeInBytes() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public void scan(int slot, long from, long to, PointVisitor visitor) {
+		if (size == 0 || from > lastTimestamp || to < firstTimestamp) {
+			return;
+		}
+		GorillaDecoder decoder = new GorillaDecoder(buffer, offsets[slot]);
+		while (decoder.next()) {
+			long timestamp = decoder.getTimestamp();
+			if (timestamp > to) {
+				return;
+			}
+			if (timestamp >= from) {
+				visitor.visit(timestamp, decoder.getRaw());
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.karens.coding.server.stats.history;
+
+/**
+ * Ring of double samples, such as loads in the [0.0,1.0] interval
+ * @author karen
+ *
+ */
+public class DoubleRingBuffer extends RingBuffer {
+
+	private final double[] values;
+
+	public DoubleRingBuffer(int capacity) {
+		super(capacity);
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 */
+	public synchronized void append(long timestamp, double value) {
+		values[claim(timestamp)] = value;
+	}
+
+	@Override
+	protected double valueAt(int physical) {
+		return values[physical];
+	}
+}
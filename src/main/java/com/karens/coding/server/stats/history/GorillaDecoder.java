@@ -0,0 +1,151 @@
+package com.karens.coding.server.stats.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming decoder of a block written by {@link GorillaEncoder}. Decodes straight from the buffer,
+ * which may be a mapped file, one point per call to {@link #next()}.
+ * @author karen
+ *
+ */
+public final class GorillaDecoder {
+
+	private final boolean fractional;
+	private final int count;
+	private final BitReader reader;
+	private int read = 0;
+
+	private long timestamp;
+	private long delta;
+
+	/** Current long value, or raw bits of the current double */
+	private long value;
+	private int leading;
+	private int trailing;
+
+	/**
+	 * @param buffer
+	 * @param offset index of the first byte of the block
+	 */
+	public GorillaDecoder(ByteBuffer buffer, int offset) {
+		byte type = buffer.get(offset);
+		if (type != GorillaEncoder.TYPE_LONG && type != GorillaEncoder.TYPE_DOUBLE) {
+			throw new IllegalArgumentException("Not a series block, type " + type);
+		}
+		this.fractional = type == GorillaEncoder.TYPE_DOUBLE;
+		this.count = buffer.getInt(offset + 1);
+		this.reader = new BitReader(buffer, offset + GorillaEncoder.HEADER_SIZE);
+	}
+
+	/**
+	 * @param block an encoded block
+	 */
+	public GorillaDecoder(byte[] block) {
+		this(ByteBuffer.wrap(block), 0);
+	}
+
+	/**
+	 * Decodes the next point
+	 * @return false once every point has been read
+	 */
+	public boolean next() {
+		if (read == count) {
+			return false;
+		}
+		if (read == 0) {
+			timestamp = reader.readBits(64);
+			value = reader.readBits(64);
+		}
+		else {
+			nextTimestamp();
+			if (fractional) {
+				nextXor();
+			}
+			else if (reader.readBit()) {
+				value += reader.readVarLong();
+			}
+		}
+		read++;
+		return true;
+	}
+
+	private void nextTimestamp() {
+		long deltaOfDelta;
+		if (!reader.readBit()) {
+			deltaOfDelta = 0;
+		}
+		else if (!reader.readBit()) {
+			deltaOfDelta = signed(reader.readBits(7), 7);
+		}
+		else if (!reader.readBit()) {
+			deltaOfDelta = signed(reader.readBits(9), 9);
+		}
+		else if (!reader.readBit()) {
+			deltaOfDelta = signed(reader.readBits(12), 12);
+		}
+		else {
+			deltaOfDelta = reader.readBits(64);
+		}
+		delta += deltaOfDelta;
+		timestamp += delta;
+	}
+
+	private static long signed(long bits, int width) {
+		return (bits << (64 - width)) >> (64 - width);
+	}
+
+	private void nextXor() {
+		if (!reader.readBit()) {
+			return;
+		}
+		if (reader.readBit()) {
+			leading = (int) reader.readBits(5);
+			int meaningful = (int) reader.readBits(6) + 1;
+			trailing = 64 - leading - meaningful;
+		}
+		int meaningful = 64 - leading - trailing;
+		value ^= reader.readBits(meaningful) << trailing;
+	}
+
+	/**
+	 * @return true for a series of doubles
+	 */
+	public boolean isFractional() {
+		return fractional;
+	}
+
+	/**
+	 * @return the number of points in the block
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the timestamp of the current point
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the value of the current point of a long series
+	 */
+	public long getLong() {
+		return value;
+	}
+
+	/**
+	 * @return the value of the current point of a double series
+	 */
+	public double getDouble() {
+		return Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * @return the long value, or the raw bits of the double value, of the current point
+	 */
+	public long getRaw() {
+		return value;
+	}
+}
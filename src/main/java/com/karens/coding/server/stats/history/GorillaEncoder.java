@@ -0,0 +1,178 @@
+package com.karens.coding.server.stats.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming encoder of one series in the Gorilla style: delta-of-delta timestamps, XOR encoded doubles
+ * and zig-zag varint deltas for longs. Slowly moving series mostly cost a bit or two per timestamp
+ * and a few bits per value.
+ * <p>
+ * Block layout: one type byte, the number of points as an int, then the bit string.
+ * <ul>
+ * <li>timestamps: the first in 64 bits, then the delta of delta in '0', '10'+7, '110'+9, '1110'+12 or '1111'+64 bits</li>
+ * <li>doubles: the first in 64 bits, then '0' when unchanged, '10'+meaningful bits when the XOR with the previous
+ * value fits in the previous window, or '11'+5 bits leading zeros+6 bits length+meaningful bits</li>
+ * <li>longs: the first in 64 bits, then '0' when unchanged or '1'+the difference with the previous value as a zig-zag varint</li>
+ * </ul>
+ * @author karen
+ *
+ */
+public final class GorillaEncoder {
+
+	static final byte TYPE_LONG = 1;
+	static final byte TYPE_DOUBLE = 2;
+
+	/** Size of the type and count header */
+	public static final int HEADER_SIZE = 5;
+
+	private final boolean fractional;
+	private final BitWriter writer;
+	private int count = 0;
+
+	private long previousTimestamp;
+	private long previousDelta;
+
+	/** Previous long value, or raw bits of the previous double */
+	private long previousValue;
+	private int previousLeading = -1;
+	private int previousTrailing;
+
+	/**
+	 * @param fractional true for a series of doubles, false for longs
+	 * @param expectedPoints used to size the buffer
+	 */
+	public GorillaEncoder(boolean fractional, int expectedPoints) {
+		this.fractional = fractional;
+		this.writer = new BitWriter(expectedPoints * 2 + 16);
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 */
+	public void appendLong(long timestamp, long value) {
+		if (fractional) {
+			throw new IllegalStateException("Encoder of a double series");
+		}
+		appendTimestamp(timestamp);
+		if (count == 0) {
+			writer.writeBits(value, 64);
+		}
+		else if (value == previousValue) {
+			writer.writeBit(false);
+		}
+		else {
+			writer.writeBit(true);
+			writer.writeVarLong(value - previousValue);
+		}
+		previousValue = value;
+		count++;
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 */
+	public void appendDouble(long timestamp, double value) {
+		if (!fractional) {
+			throw new IllegalStateException("Encoder of a long series");
+		}
+		appendTimestamp(timestamp);
+		long bits = Double.doubleToRawLongBits(value);
+		if (count == 0) {
+			writer.writeBits(bits, 64);
+		}
+		else {
+			appendXor(bits ^ previousValue);
+		}
+		previousValue = bits;
+		count++;
+	}
+
+	private void appendTimestamp(long timestamp) {
+		if (count == 0) {
+			writer.writeBits(timestamp, 64);
+		}
+		else {
+			long delta = timestamp - previousTimestamp;
+			long deltaOfDelta = delta - previousDelta;
+			if (deltaOfDelta == 0) {
+				writer.writeBit(false);
+			}
+			else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+				writer.writeBits(0x2, 2);
+				writer.writeBits(deltaOfDelta, 7);
+			}
+			else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+				writer.writeBits(0x6, 3);
+				writer.writeBits(deltaOfDelta, 9);
+			}
+			else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+				writer.writeBits(0xE, 4);
+				writer.writeBits(deltaOfDelta, 12);
+			}
+			else {
+				writer.writeBits(0xF, 4);
+				writer.writeBits(deltaOfDelta, 64);
+			}
+			previousDelta = delta;
+		}
+		previousTimestamp = timestamp;
+	}
+
+	private void appendXor(long xor) {
+		if (xor == 0) {
+			writer.writeBit(false);
+			return;
+		}
+		writer.writeBit(true);
+		int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+			writer.writeBit(false);
+			writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+		}
+		else {
+			int meaningful = 64 - leading - trailing;
+			writer.writeBit(true);
+			writer.writeBits(leading, 5);
+			writer.writeBits(meaningful - 1, 6);
+			writer.writeBits(xor >>> trailing, meaningful);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+	/**
+	 * @return the number of points appended
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the size of the encoded block in bytes
+	 */
+	public int getEncodedSize() {
+		return HEADER_SIZE + writer.getSizeInBytes();
+	}
+
+	/**
+	 * Writes the encoded block at the position of the buffer
+	 * @param buffer
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put(fractional ? TYPE_DOUBLE : TYPE_LONG);
+		buffer.putInt(count);
+		buffer.put(writer.getBuffer(), 0, writer.getSizeInBytes());
+	}
+
+	/**
+	 * @return the encoded block
+	 */
+	public byte[] toByteArray() {
+		ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+}
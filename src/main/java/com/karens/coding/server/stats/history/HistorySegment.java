@@ -0,0 +1,52 @@
+package com.karens.coding.server.stats.history;
+
+import java.io.File;
+
+/**
+ * A file of the {@link SegmentStore}, either the mapped {@link Segment} being written or a sealed {@link CompressedSegment}
+ * @author karen
+ *
+ */
+public interface HistorySegment {
+
+	/**
+	 * @return the file
+	 */
+	File getFile();
+
+	/**
+	 * @return the number of records
+	 */
+	int size();
+
+	/**
+	 * @return the timestamp of the first record, or Long.MAX_VALUE if empty
+	 */
+	long getFirstTimestamp();
+
+	/**
+	 * @return the timestamp of the last record, or Long.MIN_VALUE if empty
+	 */
+	long getLastTimestamp();
+
+	/**
+	 * Visits the available values of one metric with from &lt;= timestamp &lt;= to, oldest first
+	 * @param slot index of the metric
+	 * @param from
+	 * @param to
+	 * @param visitor
+	 */
+	void scan(int slot, long from, long to, PointVisitor visitor);
+
+	/**
+	 * Receives the points of {@link HistorySegment#scan}
+	 */
+	interface PointVisitor {
+
+		/**
+		 * @param timestamp in milliseconds since the epoch
+		 * @param value the long value, or the raw bits of the double value
+		 */
+		void visit(long timestamp, long value);
+	}
+}
@@ -0,0 +1,29 @@
+package com.karens.coding.server.stats.history;
+
+/**
+ * Ring of long samples, such as sizes in bytes
+ * @author karen
+ *
+ */
+public class LongRingBuffer extends RingBuffer {
+
+	private final long[] values;
+
+	public LongRingBuffer(int capacity) {
+		super(capacity);
+		this.values = new long[capacity];
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 */
+	public synchronized void append(long timestamp, long value) {
+		values[claim(timestamp)] = value;
+	}
+
+	@Override
+	protected double valueAt(int physical) {
+		return values[physical];
+	}
+}
@@ -0,0 +1,316 @@
+package com.karens.coding.server.stats.history;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * In-memory history of every sampled metric. Each metric has a fixed capacity ring of raw samples
+ * and one ring of buckets per {@link RollupTier}; every sample is folded into the buckets as it arrives.
+ * Recording a sample allocates nothing once the rings of the metric exist.
+ * The rings are refilled from the {@link SegmentStore} on startup, which also serves raw
+ * queries reaching further back than the raw ring.
+ * @author karen
+ *
+ */
+@Service("MetricHistory")
+public class MetricHistory implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(MetricHistory.class);
+
+	/** Number of raw samples kept per metric */
+	@Value("${serverstats.history.capacity:3600}")
+	private int capacity = 3600;
+
+	/** Number of one minute buckets kept per metric */
+	@Value("${serverstats.history.minute.capacity:1440}")
+	private int minuteCapacity = 1440;
+
+	/** Number of one hour buckets kept per metric */
+	@Value("${serverstats.history.hour.capacity:720}")
+	private int hourCapacity = 720;
+
+	/** Rings of each metric, by metric name */
+	private final ConcurrentMap<String, Tiers> metrics = new ConcurrentHashMap<String, Tiers>();
+
+	@Autowired(required = false)
+	private SegmentStore segmentStore;
+
+	/**
+	 * Refills the rings with the records of the segments that are still within the hour tier
+	 */
+	@PostConstruct
+	public void recover() {
+		if (segmentStore == null || !segmentStore.isEnabled()) {
+			return;
+		}
+		long from = System.currentTimeMillis() - hourCapacity * RollupTier.HOUR.getResolution();
+		final int[] replayed = new int[1];
+		for (final Metric metric : SegmentStore.getSchema()) {
+			segmentStore.replay(metric, from, Long.MAX_VALUE, new HistorySegment.PointVisitor() {
+				@Override
+				public void visit(long timestamp, long value) {
+					if (metric.isFractional()) {
+						record(metric.getName(), timestamp, Double.longBitsToDouble(value));
+					}
+					else {
+						record(metric.getName(), timestamp, value);
+					}
+					replayed[0]++;
+				}
+			});
+		}
+		logger.info("Replayed " + replayed[0] + " values from the history segments");
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		long timestamp = snapshot.getSampleTimestamp();
+		MetricRecord values = snapshot.getStatistics().getRecord();
+		for (Metric metric : Metric.values()) {
+			if (!values.has(metric)) {
+				continue;
+			}
+			if (metric.isFractional()) {
+				record(metric.getName(), timestamp, values.getDouble(metric));
+			}
+			else {
+				record(metric.getName(), timestamp, values.getLong(metric));
+			}
+		}
+	}
+
+	/**
+	 * @param metric name of the metric
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 * @throws IllegalArgumentException if the metric was recorded as a double
+	 */
+	public void record(String metric, long timestamp, long value) {
+		Tiers tiers = metrics.get(metric);
+		if (tiers == null) {
+			tiers = register(metric, new LongRingBuffer(capacity));
+		}
+		if (!(tiers.raw instanceof LongRingBuffer)) {
+			throw new IllegalArgumentException("Metric " + metric + " is recorded as a double, not as a long");
+		}
+		((LongRingBuffer) tiers.raw).append(timestamp, value);
+		tiers.fold(timestamp, value);
+	}
+
+	/**
+	 * @param metric name of the metric
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 * @throws IllegalArgumentException if the metric was recorded as a long
+	 */
+	public void record(String metric, long timestamp, double value) {
+		Tiers tiers = metrics.get(metric);
+		if (tiers == null) {
+			tiers = register(metric, new DoubleRingBuffer(capacity));
+		}
+		if (!(tiers.raw instanceof DoubleRingBuffer)) {
+			throw new IllegalArgumentException("Metric " + metric + " is recorded as a long, not as a double");
+		}
+		((DoubleRingBuffer) tiers.raw).append(timestamp, value);
+		tiers.fold(timestamp, value);
+	}
+
+	private Tiers register(String metric, RingBuffer raw) {
+		RollupRingBuffer[] rollups = new RollupRingBuffer[RollupTier.values().length];
+		rollups[RollupTier.MINUTE.ordinal()] = new RollupRingBuffer(RollupTier.MINUTE, minuteCapacity);
+		rollups[RollupTier.HOUR.ordinal()] = new RollupRingBuffer(RollupTier.HOUR, hourCapacity);
+		Tiers tiers = new Tiers(raw, rollups);
+		Tiers existing = metrics.putIfAbsent(metric, tiers);
+		return existing != null ? existing : tiers;
+	}
+
+	/**
+	 * Queries the finest tier still covering the start of the range
+	 * @param metric name of the metric
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return the samples in the range, or null if the metric has never been recorded
+	 */
+	public MetricSeries query(String metric, long from, long to) {
+		return query(metric, from, to, null);
+	}
+
+	/**
+	 * Queries the coarsest tier whose resolution is not coarser than the requested one.
+	 * Without a resolution the finest tier that still covers the start of the range is used.
+	 * @param metric name of the metric
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @param resolution requested resolution in milliseconds, or null
+	 * @return the samples or buckets in the range, or null if the metric has never been recorded
+	 */
+	public MetricSeries query(String metric, long from, long to, Long resolution) {
+		Tiers tiers = metrics.get(metric);
+		if (tiers == null) {
+			return null;
+		}
+		RingBuffer selected = tiers.select(from, resolution);
+		if (selected == tiers.raw && reachesBeyond(selected, from)) {
+			Metric stored = Metric.forName(metric);
+			if (stored != null) {
+				return segmentStore.query(stored, from, to);
+			}
+		}
+		return selected.query(metric, from, to);
+	}
+
+	/**
+	 * @param metric name of the metric
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param resolution requested resolution in milliseconds, or null
+	 * @return the resolution of the tier a query would read, 0 for the raw samples, -1 if the metric has never been recorded
+	 */
+	public long resolutionOf(String metric, long from, Long resolution) {
+		Tiers tiers = metrics.get(metric);
+		if (tiers == null) {
+			return -1l;
+		}
+		RingBuffer selected = tiers.select(from, resolution);
+		return selected instanceof RollupRingBuffer ? ((RollupRingBuffer) selected).getTier().getResolution() : 0l;
+	}
+
+	/**
+	 * @return true if the segments hold raw samples older than the raw ring, back to from
+	 */
+	private boolean reachesBeyond(RingBuffer raw, long from) {
+		if (segmentStore == null || !segmentStore.isEnabled()) {
+			return false;
+		}
+		long oldest = raw.getOldestTimestamp();
+		return from < oldest && segmentStore.getOldestTimestamp() < oldest;
+	}
+
+	/**
+	 * Drops the samples and rollups of a metric no longer recorded, such as the rate of a network interface removed
+	 * @param metric name of the metric
+	 * @return true if the metric was recorded
+	 */
+	public boolean remove(String metric) {
+		return metrics.remove(metric) != null;
+	}
+
+	/**
+	 * @return the names of the recorded metrics, sorted
+	 */
+	public Set<String> getMetricNames() {
+		return new TreeSet<String>(metrics.keySet());
+	}
+
+	/**
+	 * @param segmentStore the segmentStore to set
+	 */
+	public void setSegmentStore(SegmentStore segmentStore) {
+		this.segmentStore = segmentStore;
+	}
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param capacity the capacity to set
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the minuteCapacity
+	 */
+	public int getMinuteCapacity() {
+		return minuteCapacity;
+	}
+
+	/**
+	 * @param minuteCapacity the minuteCapacity to set
+	 */
+	public void setMinuteCapacity(int minuteCapacity) {
+		this.minuteCapacity = minuteCapacity;
+	}
+
+	/**
+	 * @return the hourCapacity
+	 */
+	public int getHourCapacity() {
+		return hourCapacity;
+	}
+
+	/**
+	 * @param hourCapacity the hourCapacity to set
+	 */
+	public void setHourCapacity(int hourCapacity) {
+		this.hourCapacity = hourCapacity;
+	}
+
+	/**
+	 * Raw ring and rollup rings of one metric
+	 */
+	private static final class Tiers {
+		final RingBuffer raw;
+		/** Indexed by RollupTier ordinal, finest first */
+		final RollupRingBuffer[] rollups;
+
+		Tiers(RingBuffer raw, RollupRingBuffer[] rollups) {
+			this.raw = raw;
+			this.rollups = rollups;
+		}
+
+		void fold(long timestamp, double value) {
+			for (RollupRingBuffer rollup : rollups) {
+				rollup.fold(timestamp, value);
+			}
+		}
+
+		RingBuffer select(long from, Long resolution) {
+			if (resolution != null) {
+				RingBuffer selected = raw;
+				for (RollupRingBuffer rollup : rollups) {
+					if (rollup.getTier().getResolution() <= resolution) {
+						selected = rollup;
+					}
+				}
+				return selected;
+			}
+			if (covers(raw, from)) {
+				return raw;
+			}
+			for (RollupRingBuffer rollup : rollups) {
+				if (covers(rollup, from)) {
+					return rollup;
+				}
+			}
+			return rollups[rollups.length - 1];
+		}
+
+		/**
+		 * A ring that has not wrapped around yet still holds everything ever recorded
+		 */
+		private static boolean covers(RingBuffer ring, long from) {
+			return ring.size() < ring.getCapacity() || ring.getOldestTimestamp() <= from;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.karens.coding.server.stats.history;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Result of a history query: the samples or buckets of one metric in a time range, oldest first.
+ * Raw samples have a resolution of 0 and no min, max or counts; for rollup buckets
+ * the timestamp is the start of the bucket and the value is the average.
+ * @author karen
+ *
+ */
+@JsonInclude(Include.NON_NULL)
+public class MetricSeries {
+
+	/** Name of the metric */
+	private final String metric;
+
+	/** Width of a bucket in milliseconds, 0 for raw samples */
+	private final long resolution;
+
+	/** Sample or bucket timestamps in milliseconds since the epoch */
+	private final long[] timestamps;
+
+	/** Sample values or bucket averages, parallel to the timestamps */
+	private final double[] values;
+
+	/** Bucket minimums, null for raw samples */
+	private final double[] min;
+
+	/** Bucket maximums, null for raw samples */
+	private final double[] max;
+
+	/** Number of samples per bucket, null for raw samples */
+	private final long[] counts;
+
+	public MetricSeries(String metric, long[] timestamps, double[] values) {
+		this(metric, 0l, timestamps, values, null, null, null);
+	}
+
+	public MetricSeries(String metric, long resolution, long[] timestamps, double[] values, double[] min, double[] max, long[] counts) {
+		this.metric = metric;
+		this.resolution = resolution;
+		this.timestamps = timestamps;
+		this.values = values;
+		this.min = min;
+		this.max = max;
+		this.counts = counts;
+	}
+
+	/**
+	 * @return the metric
+	 */
+	public String getMetric() {
+		return metric;
+	}
+
+	/**
+	 * @return the resolution
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return the timestamps
+	 */
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+
+	/**
+	 * @return the values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the min
+	 */
+	public double[] getMin() {
+		return min;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public double[] getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the counts
+	 */
+	public long[] getCounts() {
+		return counts;
+	}
+
+	/**
+	 * @return the number of samples or buckets
+	 */
+	public int getCount() {
+		return timestamps.length;
+	}
+
+	/**
+	 * Range of a wider read, with the same bounds as a query of the range: a bucket starting before from is kept if it holds from
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return the samples or buckets in the range, this series if it has no other
+	 */
+	public MetricSeries slice(long from, long to) {
+		long start = resolution > 0 ? from - Math.floorMod(from, resolution) : from;
+		int first = bound(start, false);
+		int last = Math.max(first, bound(to, true));
+		if (first == 0 && last == timestamps.length) {
+			return this;
+		}
+		return new MetricSeries(metric, resolution, Arrays.copyOfRange(timestamps, first, last), Arrays.copyOfRange(values, first, last),
+				min == null ? null : Arrays.copyOfRange(min, first, last), max == null ? null : Arrays.copyOfRange(max, first, last),
+				counts == null ? null : Arrays.copyOfRange(counts, first, last));
+	}
+
+	/**
+	 * @return the index of the first timestamp not below the given one, or above it if inclusive
+	 */
+	private int bound(long timestamp, boolean inclusive) {
+		int low = 0;
+		int high = timestamps.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[middle] < timestamp || (inclusive && timestamps[middle] == timestamp)) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
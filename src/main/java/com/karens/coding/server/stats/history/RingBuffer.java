@@ -0,0 +1,152 @@
+package com.karens.coding.server.stats.history;
+
+/**
+ * Fixed capacity ring of samples ordered by timestamp. Timestamps live in a primitive array
+ * next to the primitive value array of the subclass, so appending a sample allocates nothing.
+ * Once full, every append overwrites the oldest sample.
+ * @author karen
+ *
+ */
+public abstract class RingBuffer {
+
+	/** Timestamps in milliseconds since the epoch, parallel to the values of the subclass */
+	protected final long[] timestamps;
+
+	/** Physical index of the next write */
+	private int head = 0;
+
+	/** Number of samples currently held */
+	private int size = 0;
+
+	protected RingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.timestamps = new long[capacity];
+	}
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return timestamps.length;
+	}
+
+	/**
+	 * @return the number of samples currently held
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the oldest timestamp held, or Long.MAX_VALUE if the ring is empty
+	 */
+	public synchronized long getOldestTimestamp() {
+		return size == 0 ? Long.MAX_VALUE : timestamps[physical(0)];
+	}
+
+	/**
+	 * @return the newest timestamp held, or Long.MIN_VALUE if the ring is empty
+	 */
+	public synchronized long getNewestTimestamp() {
+		return size == 0 ? Long.MIN_VALUE : timestamps[physical(size - 1)];
+	}
+
+	/**
+	 * Reserves the slot for a new sample. A timestamp older than the newest one
+	 * (wall clock stepped back) is clamped so that the ring stays sorted.
+	 * @param timestamp
+	 * @return the physical index to write the value to
+	 */
+	protected int claim(long timestamp) {
+		if (size > 0) {
+			timestamp = Math.max(timestamp, timestamps[physical(size - 1)]);
+		}
+		int slot = head;
+		timestamps[slot] = timestamp;
+		head = head + 1 == timestamps.length ? 0 : head + 1;
+		if (size < timestamps.length) {
+			size++;
+		}
+		return slot;
+	}
+
+	/**
+	 * @param logical index from the oldest sample, 0 based
+	 * @return the index in the backing arrays
+	 */
+	protected int physical(int logical) {
+		int index = head - size + logical;
+		if (index < 0) {
+			index += timestamps.length;
+		}
+		else if (index >= timestamps.length) {
+			index -= timestamps.length;
+		}
+		return index;
+	}
+
+	/**
+	 * @return the logical index of the first sample with a timestamp &gt;= from
+	 */
+	protected int lowerBound(long from) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[physical(middle)] < from) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the logical index of the first sample with a timestamp &gt; to
+	 */
+	protected int upperBound(long to) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[physical(middle)] <= to) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param physical index in the backing arrays
+	 * @return the value stored at that index, widened to a double
+	 */
+	protected abstract double valueAt(int physical);
+
+	/**
+	 * Copies the samples with from &lt;= timestamp &lt;= to
+	 * @param metric name reported in the series
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return MetricSeries
+	 */
+	public synchronized MetricSeries query(String metric, long from, long to) {
+		int first = lowerBound(from);
+		int last = upperBound(to);
+		int count = Math.max(0, last - first);
+		long[] resultTimestamps = new long[count];
+		double[] resultValues = new double[count];
+		for (int i = 0; i < count; i++) {
+			int index = physical(first + i);
+			resultTimestamps[i] = timestamps[index];
+			resultValues[i] = valueAt(index);
+		}
+		return new MetricSeries(metric, resultTimestamps, resultValues);
+	}
+}
@@ -0,0 +1,96 @@
+package com.karens.coding.server.stats.history;
+
+/**
+ * Ring of fixed width buckets holding min, max, sum and count of the samples folded into them.
+ * The timestamp of a bucket is its start. Samples are folded incrementally as they arrive,
+ * only the newest bucket is ever updated.
+ * @author karen
+ *
+ */
+public class RollupRingBuffer extends RingBuffer {
+
+	private final RollupTier tier;
+
+	private final double[] min;
+	private final double[] max;
+	private final double[] sum;
+	private final long[] count;
+
+	/** Physical index of the newest bucket, -1 while empty */
+	private int newest = -1;
+
+	public RollupRingBuffer(RollupTier tier, int capacity) {
+		super(capacity);
+		this.tier = tier;
+		this.min = new double[capacity];
+		this.max = new double[capacity];
+		this.sum = new double[capacity];
+		this.count = new long[capacity];
+	}
+
+	/**
+	 * @return the tier
+	 */
+	public RollupTier getTier() {
+		return tier;
+	}
+
+	/**
+	 * Folds one sample into its bucket, opening a new bucket when the sample starts one
+	 * @param timestamp in milliseconds since the epoch
+	 * @param value
+	 */
+	public synchronized void fold(long timestamp, double value) {
+		long bucket = tier.bucketStart(timestamp);
+		if (newest < 0 || bucket > timestamps[newest]) {
+			newest = claim(bucket);
+			min[newest] = value;
+			max[newest] = value;
+			sum[newest] = value;
+			count[newest] = 1;
+			return;
+		}
+		// samples older than the newest bucket (clock stepped back) are folded into it
+		if (value < min[newest]) {
+			min[newest] = value;
+		}
+		if (value > max[newest]) {
+			max[newest] = value;
+		}
+		sum[newest] += value;
+		count[newest]++;
+	}
+
+	@Override
+	protected double valueAt(int physical) {
+		return sum[physical] / count[physical];
+	}
+
+	/**
+	 * Copies the buckets starting between from and to, with their aggregates
+	 * @param metric name reported in the series
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return MetricSeries
+	 */
+	@Override
+	public synchronized MetricSeries query(String metric, long from, long to) {
+		int first = lowerBound(tier.bucketStart(from));
+		int last = upperBound(to);
+		int length = Math.max(0, last - first);
+		long[] resultTimestamps = new long[length];
+		double[] resultAverages = new double[length];
+		double[] resultMin = new double[length];
+		double[] resultMax = new double[length];
+		long[] resultCounts = new long[length];
+		for (int i = 0; i < length; i++) {
+			int index = physical(first + i);
+			resultTimestamps[i] = timestamps[index];
+			resultAverages[i] = valueAt(index);
+			resultMin[i] = min[index];
+			resultMax[i] = max[index];
+			resultCounts[i] = count[index];
+		}
+		return new MetricSeries(metric, tier.getResolution(), resultTimestamps, resultAverages, resultMin, resultMax, resultCounts);
+	}
+}
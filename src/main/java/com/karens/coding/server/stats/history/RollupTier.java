@@ -0,0 +1,34 @@
+package com.karens.coding.server.stats.history;
+
+/**
+ * Aggregation tiers kept next to the raw samples, finest first
+ * @author karen
+ *
+ */
+public enum RollupTier {
+
+	MINUTE(60000l),
+	HOUR(3600000l);
+
+	/** Width of one bucket in milliseconds */
+	private final long resolution;
+
+	private RollupTier(long resolution) {
+		this.resolution = resolution;
+	}
+
+	/**
+	 * @return the resolution
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @return the start of the bucket the timestamp falls in
+	 */
+	public long bucketStart(long timestamp) {
+		return timestamp - Math.floorMod(timestamp, resolution);
+	}
+}
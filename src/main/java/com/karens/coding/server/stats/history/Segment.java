@@ -0,0 +1,275 @@
+package com.karens.coding.server.stats.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only file of fixed width records, memory-mapped in full when created or opened.
+ * A record is a timestamp, a bitmap of the slots holding a value, then one 8 byte slot per metric,
+ * holding the long value or the raw bits of the double value. Presence is kept apart from the values,
+ * so every long and every double bit pattern can be stored. The header keeps the number of committed records, written after
+ * the record itself, so reopening a segment only reads its header.
+ * <p>
+ * Single writer, any number of readers: readers only look at records below the committed count.
+ * @author karen
+ *
+ */
+public final class Segment implements HistorySegment {
+
+	/** "SSEG" */
+	private static final int MAGIC = 0x53534547;
+	private static final int VERSION = 2;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int SLOTS_OFFSET = 8;
+	private static final int CAPACITY_OFFSET = 12;
+	private static final int SCHEMA_OFFSET = 16;
+	private static final int COUNT_OFFSET = 20;
+	private static final int HEADER_SIZE = 64;
+
+	/** Number of slots the presence bitmap of a record can describe */
+	public static final int MAX_SLOTS = 64;
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final int slots;
+	private final int capacity;
+	private final int recordSize;
+
+	/** Number of committed records */
+	private volatile int size;
+
+	private Segment(File file, MappedByteBuffer buffer, int slots, int capacity, int size) {
+		this.file = file;
+		this.buffer = buffer;
+		this.slots = slots;
+		this.capacity = capacity;
+		this.recordSize = recordSize(slots);
+		this.size = size;
+	}
+
+	/**
+	 * Creates and maps a new segment file
+	 * @param file
+	 * @param slots number of value slots per record
+	 * @param capacity number of records
+	 * @param schema hash identifying the meaning of the slots
+	 * @return Segment
+	 * @throws IOException
+	 */
+	public static Segment create(File file, int slots, int capacity, int schema) throws IOException {
+		if (slots > MAX_SLOTS) {
+			throw new IllegalArgumentException("A segment holds at most " + MAX_SLOTS + " slots, not " + slots);
+		}
+		long length = HEADER_SIZE + (long) capacity * recordSize(slots);
+		MappedByteBuffer buffer = map(file, length);
+		buffer.putInt(MAGIC_OFFSET, MAGIC);
+		buffer.putInt(VERSION_OFFSET, VERSION);
+		buffer.putInt(SLOTS_OFFSET, slots);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(SCHEMA_OFFSET, schema);
+		buffer.putInt(COUNT_OFFSET, 0);
+		return new Segment(file, buffer, slots, capacity, 0);
+	}
+
+	/**
+	 * Maps an existing segment file, reading nothing but its header
+	 * @param file
+	 * @param slots expected number of value slots per record
+	 * @param schema expected schema hash
+	 * @return Segment
+	 * @throws IOException if the file is not a segment of this schema
+	 */
+	public static Segment open(File file, int slots, int schema) throws IOException {
+		MappedByteBuffer buffer = map(file, file.length());
+		if (file.length() < HEADER_SIZE || buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+			throw new IOException(file + " is not a segment file");
+		}
+		if (buffer.getInt(SLOTS_OFFSET) != slots || buffer.getInt(SCHEMA_OFFSET) != schema) {
+			throw new IOException(file + " was written with another metric schema");
+		}
+		int capacity = buffer.getInt(CAPACITY_OFFSET);
+		int size = buffer.getInt(COUNT_OFFSET);
+		if (size < 0 || size > capacity || file.length() < HEADER_SIZE + (long) capacity * recordSize(slots)) {
+			throw new IOException(file + " is truncated");
+		}
+		return new Segment(file, buffer, slots, capacity, size);
+	}
+
+	private static int recordSize(int slots) {
+		return 8 * (2 + slots);
+	}
+
+	private static MappedByteBuffer map(File file, long length) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			if (randomAccessFile.length() < length) {
+				randomAccessFile.setLength(length);
+			}
+			// the mapping stays valid once the channel is closed
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Writes a record and commits it
+	 * @param timestamp in milliseconds since the epoch
+	 * @param present bit i set if slot i holds a value
+	 * @param values one slot per metric, ignored for the slots without a value
+	 */
+	public void append(long timestamp, long present, long[] values) {
+		int record = size;
+		if (record >= capacity) {
+			throw new IllegalStateException(file + " is full");
+		}
+		int offset = offset(record);
+		buffer.putLong(offset, timestamp);
+		buffer.putLong(offset + 8, present);
+		for (int slot = 0; slot < slots; slot++) {
+			buffer.putLong(offset + 16 + slot * 8, values[slot]);
+		}
+		buffer.putInt(COUNT_OFFSET, record + 1);
+		size = record + 1;
+	}
+
+	/**
+	 * Flushes the written pages to the storage device
+	 */
+	public void force() {
+		buffer.force();
+	}
+
+	private int offset(int record) {
+		return HEADER_SIZE + record * recordSize;
+	}
+
+	/**
+	 * @return the number of committed records
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if no more record can be appended
+	 */
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	/**
+	 * @return the capacity in records
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the file
+	 */
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param record index of a committed record
+	 * @return its timestamp
+	 */
+	public long timestamp(int record) {
+		return buffer.getLong(offset(record));
+	}
+
+	/**
+	 * @param record index of a committed record
+	 * @param slot index of the metric
+	 * @return true if the slot holds a value
+	 */
+	public boolean isPresent(int record, int slot) {
+		return (buffer.getLong(offset(record) + 8) & (1l << slot)) != 0;
+	}
+
+	/**
+	 * @param record index of a committed record
+	 * @param slot index of the metric
+	 * @return the raw slot value
+	 */
+	public long value(int record, int slot) {
+		return buffer.getLong(offset(record) + 16 + slot * 8);
+	}
+
+	/**
+	 * @return the timestamp of the first record, or Long.MAX_VALUE if empty
+	 */
+	@Override
+	public long getFirstTimestamp() {
+		return size == 0 ? Long.MAX_VALUE : timestamp(0);
+	}
+
+	/**
+	 * @return the timestamp of the last committed record, or Long.MIN_VALUE if empty
+	 */
+	@Override
+	public long getLastTimestamp() {
+		int committed = size;
+		return committed == 0 ? Long.MIN_VALUE : timestamp(committed - 1);
+	}
+
+	/**
+	 * @param committed number of records to search
+	 * @param from
+	 * @return the index of the first record with a timestamp &gt;= from
+	 */
+	public int lowerBound(int committed, long from) {
+		int low = 0;
+		int high = committed;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamp(middle) < from) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param committed number of records to search
+	 * @param to
+	 * @return the index of the first record with a timestamp &gt; to
+	 */
+	public int upperBound(int committed, long to) {
+		int low = 0;
+		int high = committed;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamp(middle) <= to) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public void scan(int slot, long from, long to, PointVisitor visitor) {
+		int committed = size;
+		int last = upperBound(committed, to);
+		for (int record = lowerBound(committed, from); record < last; record++) {
+			if (isPresent(record, slot)) {
+				visitor.visit(timestamp(record), value(record, slot));
+			}
+		}
+	}
+}
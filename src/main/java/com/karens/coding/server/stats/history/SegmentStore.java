@@ -0,0 +1,419 @@
+package com.karens.coding.server.stats.history;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * On-disk history of every {@link Metric}, in memory-mapped append-only {@link Segment} files.
+ * Each sample is written as one fixed width record through the mapping, full segments are
+ * replaced by a new one and the oldest are deleted beyond the retention.
+ * On startup the existing segments are mapped again, only their headers are read.
+ * <p>
+ * When compression is enabled, a full segment is sealed into a {@link CompressedSegment}
+ * of {@link GorillaEncoder} blocks and the fixed width file is deleted. The compaction runs on
+ * a background thread, the sampling thread only hands it the full segment, which stays queryable
+ * until the compressed copy replaces it.
+ * Disabled when no directory is configured.
+ * @author karen
+ *
+ */
+@Service("SegmentStore")
+public class SegmentStore implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(SegmentStore.class);
+
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".dat";
+	private static final String COMPRESSED_SUFFIX = ".gor";
+
+	/** Metrics stored in the slots of a record, by slot index */
+	private static final Metric[] SCHEMA = Metric.values();
+
+	/** Directory of the segment files, empty to disable the store */
+	@Value("${serverstats.segments.directory:}")
+	private String directory = "";
+
+	/** Number of records per segment file */
+	@Value("${serverstats.segments.records:86400}")
+	private int records = 86400;
+
+	/** Number of segment files kept */
+	@Value("${serverstats.segments.retention:30}")
+	private int retention = 30;
+
+	/** Seal full segments into compressed files */
+	@Value("${serverstats.segments.compress:true}")
+	private boolean compress = true;
+
+	/** Mapped segments, oldest first, the last one may be the one written to */
+	private final List<HistorySegment> segments = new CopyOnWriteArrayList<HistorySegment>();
+
+	/** Segment being written, null until the first append */
+	private Segment current;
+
+	/** Slot values of the record being written, only touched by the sampling thread */
+	private final long[] values = new long[SCHEMA.length];
+
+	/** Single thread sealing the full segments, null when compression is disabled */
+	private ExecutorService compactor;
+
+	/**
+	 * Maps the segments found in the directory
+	 */
+	@PostConstruct
+	public void recover() {
+		if (!isEnabled()) {
+			logger.info("No segment directory configured, metric history is kept in memory only");
+			return;
+		}
+		File folder = new File(directory);
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			logger.error("Unable to create segment directory " + folder.getAbsolutePath());
+			directory = "";
+			return;
+		}
+		File[] files = folder.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(PREFIX) && (name.endsWith(SUFFIX) || name.endsWith(COMPRESSED_SUFFIX));
+			}
+		});
+		// names embed a zero padded timestamp, so name order is time order
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.getName().endsWith(SUFFIX) && compressedFile(file).exists()) {
+				// the compaction completed but the source was not deleted
+				if (!file.delete()) {
+					logger.warn("Unable to delete compacted segment " + file.getName());
+				}
+				continue;
+			}
+			try {
+				if (file.getName().endsWith(COMPRESSED_SUFFIX)) {
+					segments.add(CompressedSegment.open(file, SCHEMA.length, Metric.SCHEMA_HASH));
+					continue;
+				}
+				Segment segment = Segment.open(file, SCHEMA.length, Metric.SCHEMA_HASH);
+				if (segment.size() > 0) {
+					segments.add(segment);
+					current = segment;
+				}
+			} catch (IOException e) {
+				logger.warn("Skipping segment " + file.getName() + " " + e.getMessage());
+			}
+		}
+		if (compress) {
+			compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "server-stats-segments");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			// segments left behind by a previous run, all but the one still written to
+			for (HistorySegment segment : segments) {
+				if (segment instanceof Segment && (segment != current || current.isFull())) {
+					compact((Segment) segment);
+				}
+			}
+		}
+		logger.info("Recovered " + segments.size() + " history segments from " + folder.getAbsolutePath());
+	}
+
+	/**
+	 * Stops accepting segments to seal, the queued ones are sealed before the thread ends,
+	 * or on the next start if the JVM exits first
+	 */
+	@PreDestroy
+	public void stop() {
+		if (compactor != null) {
+			compactor.shutdown();
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (!isEnabled()) {
+			return;
+		}
+		MetricRecord record = snapshot.getStatistics().getRecord();
+		long present = 0l;
+		for (int slot = 0; slot < SCHEMA.length; slot++) {
+			Metric metric = SCHEMA[slot];
+			if (record.has(metric)) {
+				present |= 1l << slot;
+				values[slot] = record.getRaw(metric);
+			}
+		}
+		try {
+			append(snapshot.getSampleTimestamp(), present, values);
+		} catch (IOException e) {
+			logger.error("Unable to write history segment " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param timestamp in milliseconds since the epoch
+	 * @param present bit i set if slot i holds a value
+	 * @param values one slot per metric
+	 * @throws IOException if a new segment cannot be created
+	 */
+	void append(long timestamp, long present, long[] values) throws IOException {
+		if (current != null) {
+			// keep records sorted when the wall clock steps back
+			timestamp = Math.max(timestamp, current.getLastTimestamp());
+		}
+		if (current == null || current.isFull()) {
+			Segment full = current;
+			File file = new File(directory, String.format("%s%019d%s", PREFIX, timestamp, SUFFIX));
+			current = Segment.create(file, SCHEMA.length, records, Metric.SCHEMA_HASH);
+			segments.add(current);
+			if (full != null && compactor != null) {
+				compact(full);
+			}
+			expire();
+		}
+		current.append(timestamp, present, values);
+	}
+
+	/**
+	 * Queues a full segment for sealing on the compaction thread
+	 */
+	private void compact(final Segment segment) {
+		compactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				seal(segment);
+			}
+		});
+	}
+
+	/**
+	 * Waits until the segments queued so far are sealed
+	 * @throws Exception
+	 */
+	void awaitCompaction() throws Exception {
+		if (compactor != null) {
+			compactor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// queued behind the compactions
+				}
+			}).get(1, TimeUnit.MINUTES);
+		}
+	}
+
+	/**
+	 * Replaces a full segment by its compressed copy. Readers keep the mapped source
+	 * until the list holds the copy, a failure leaves the source in place.
+	 */
+	private void seal(Segment segment) {
+		if (!segments.contains(segment)) {
+			// already sealed or expired
+			return;
+		}
+		try {
+			File target = compressedFile(segment.getFile());
+			CompressedSegment compressed = CompressedSegment.compact(segment, SCHEMA, Metric.SCHEMA_HASH, target);
+			synchronized (segments) {
+				int index = segments.indexOf(segment);
+				if (index < 0) {
+					// expired while it was compacted
+					if (!target.delete()) {
+						logger.warn("Unable to delete expired segment " + target);
+					}
+					return;
+				}
+				segments.set(index, compressed);
+			}
+			if (!segment.getFile().delete()) {
+				logger.warn("Unable to delete compacted segment " + segment.getFile());
+			}
+			logger.debug("Compressed " + segment.getFile().getName() + " to " + compressed.getSizeInBytes() + " bytes");
+		} catch (IOException e) {
+			logger.error("Unable to compress history segment " + segment.getFile().getName() + " " + e.getMessage());
+		}
+	}
+
+	private static File compressedFile(File file) {
+		String name = file.getName();
+		return new File(file.getParentFile(), name.substring(0, name.length() - SUFFIX.length()) + COMPRESSED_SUFFIX);
+	}
+
+	private void expire() {
+		while (segments.size() > retention) {
+			HistorySegment oldest;
+			// not while the compaction thread swaps a sealed segment in
+			synchronized (segments) {
+				oldest = segments.remove(0);
+			}
+			// the mapping is released by the garbage collector, unlinking the file is safe meanwhile
+			if (!oldest.getFile().delete()) {
+				logger.warn("Unable to delete expired segment " + oldest.getFile());
+			}
+		}
+	}
+
+	/**
+	 * Reads the samples of a metric straight from the mapped segments
+	 * @param metric
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return MetricSeries
+	 */
+	public MetricSeries query(Metric metric, long from, long to) {
+		SeriesCollector collector = new SeriesCollector(metric.isFractional());
+		replay(metric, from, to, collector);
+		return new MetricSeries(metric.getName(), collector.getTimestamps(), collector.getValues());
+	}
+
+	/**
+	 * Visits the available values of a metric with from &lt;= timestamp &lt;= to, oldest first
+	 * @param metric
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @param visitor receives the long value, or the raw bits of the double value
+	 */
+	public void replay(Metric metric, long from, long to, HistorySegment.PointVisitor visitor) {
+		int slot = metric.ordinal();
+		for (HistorySegment segment : segments) {
+			if (segment.size() == 0 || segment.getFirstTimestamp() > to || segment.getLastTimestamp() < from) {
+				continue;
+			}
+			segment.scan(slot, from, to, visitor);
+		}
+	}
+
+	/**
+	 * Collects visited points into growing primitive arrays
+	 */
+	private static final class SeriesCollector implements HistorySegment.PointVisitor {
+		private final boolean fractional;
+		private long[] timestamps = new long[64];
+		private double[] values = new double[64];
+		private int count = 0;
+
+		SeriesCollector(boolean fractional) {
+			this.fractional = fractional;
+		}
+
+		@Override
+		public void visit(long timestamp, long value) {
+			if (count == timestamps.length) {
+				timestamps = Arrays.copyOf(timestamps, count * 2);
+				values = Arrays.copyOf(values, count * 2);
+			}
+			timestamps[count] = timestamp;
+			values[count] = fractional ? Double.longBitsToDouble(value) : value;
+			count++;
+		}
+
+		long[] getTimestamps() {
+			return Arrays.copyOf(timestamps, count);
+		}
+
+		double[] getValues() {
+			return Arrays.copyOf(values, count);
+		}
+	}
+
+	/**
+	 * @return the timestamp of the oldest stored record, or Long.MAX_VALUE if there is none
+	 */
+	public long getOldestTimestamp() {
+		return segments.isEmpty() ? Long.MAX_VALUE : segments.get(0).getFirstTimestamp();
+	}
+
+	/**
+	 * @return the metrics stored in the record slots, by slot index
+	 */
+	public static Metric[] getSchema() {
+		return SCHEMA.clone();
+	}
+
+	/**
+	 * @return true if a segment directory is configured
+	 */
+	public boolean isEnabled() {
+		return directory != null && !directory.isEmpty();
+	}
+
+	/**
+	 * @return the directory
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory the directory to set
+	 */
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the records
+	 */
+	public int getRecords() {
+		return records;
+	}
+
+	/**
+	 * @param records the records to set
+	 */
+	public void setRecords(int records) {
+		this.records = records;
+	}
+
+	/**
+	 * @return the compress
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+
+	/**
+	 * @param compress the compress to set
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 * @return the retention
+	 */
+	public int getRetention() {
+		return retention;
+	}
+
+	/**
+	 * @param retention the retention to set
+	 */
+	public void setRetention(int retention) {
+		this.retention = retention;
+	}
+}
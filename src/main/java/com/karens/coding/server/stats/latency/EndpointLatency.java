@@ -0,0 +1,65 @@
+package com.karens.coding.server.stats.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.karens.coding.server.stats.utils.LogHistogram;
+
+/**
+ * Latency and throughput of one endpoint, recorded without locks
+ * @author karen
+ *
+ */
+public final class EndpointLatency {
+
+	private final String endpoint;
+
+	/** Latencies in microseconds */
+	private final LogHistogram histogram = new LogHistogram();
+	private final ThroughputCounter throughput = new ThroughputCounter();
+	private final AtomicLong errors = new AtomicLong();
+
+	public EndpointLatency(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @param startNanos System.nanoTime() when the request was received
+	 * @param endNanos System.nanoTime() when the response was completed
+	 * @param error true if the request failed
+	 */
+	public void record(long startNanos, long endNanos, boolean error) {
+		histogram.record((endNanos - startNanos) / 1000);
+		throughput.increment(endNanos);
+		if (error) {
+			errors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the endpoint
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the histogram of the latencies in microseconds
+	 */
+	public LogHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return the throughput
+	 */
+	public ThroughputCounter getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * @return the number of failed requests
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+}
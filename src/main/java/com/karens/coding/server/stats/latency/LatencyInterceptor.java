@@ -0,0 +1,59 @@
+package com.karens.coding.server.stats.latency;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Records the latency of every request into the {@link LatencyRecorder}, by HTTP method and URL pattern of the handler.
+ * The start time is kept in a per-thread holder instead of a request attribute, so nothing is allocated per request.
+ * Asynchronous requests such as the event stream are not recorded: they last as long as the client stays connected.
+ * @author karen
+ *
+ */
+public class LatencyInterceptor extends HandlerInterceptorAdapter {
+
+	/** Pattern of requests that matched no handler */
+	public static final String UNMAPPED = "unmapped";
+
+	private final LatencyRecorder latencyRecorder;
+
+	/** Start of the request on the current thread, 0 when not recorded */
+	private final ThreadLocal<long[]> start = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	public LatencyInterceptor(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		start.get()[0] = request.getDispatcherType() == DispatcherType.REQUEST ? System.nanoTime() : 0l;
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		start.get()[0] = 0l;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		long[] holder = start.get();
+		long startNanos = holder[0];
+		if (startNanos == 0l) {
+			return;
+		}
+		holder[0] = 0l;
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		latencyRecorder.record(request.getMethod(), pattern != null ? pattern.toString() : UNMAPPED, startNanos, System.nanoTime(),
+				ex != null || response.getStatus() >= 500);
+	}
+}
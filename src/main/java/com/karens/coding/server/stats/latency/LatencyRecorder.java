@@ -0,0 +1,97 @@
+package com.karens.coding.server.stats.latency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+/**
+ * Latency histograms of the endpoints of this service, by endpoint.
+ * The map is only written the first time an endpoint is seen, afterwards recording is a lock-free lookup and a few atomic increments.
+ * Methods unknown to HTTP and requests that matched no handler all go to the single {@link #OTHER} endpoint,
+ * so clients cannot grow the map, nor the endpoints exported on /metrics, with made up methods or paths.
+ * @author karen
+ *
+ */
+@Service("LatencyRecorder")
+public class LatencyRecorder {
+
+	/** Endpoint of the requests with an unknown method or no handler */
+	public static final String OTHER = "OTHER";
+
+	/** Latencies by URL pattern by HTTP method, looked up with the strings of the request, without building a key */
+	private final ConcurrentMap<String, ConcurrentMap<String, EndpointLatency>> endpoints = new ConcurrentHashMap<String, ConcurrentMap<String, EndpointLatency>>();
+
+	/**
+	 * @param method HTTP method
+	 * @param pattern URL pattern of the handler
+	 * @return the latency of the endpoint, created on first use
+	 */
+	public EndpointLatency getEndpoint(String method, String pattern) {
+		HttpMethod resolved = HttpMethod.resolve(method);
+		if (resolved == null || LatencyInterceptor.UNMAPPED.equals(pattern)) {
+			method = OTHER;
+			pattern = OTHER;
+		}
+		else {
+			method = resolved.name();
+		}
+		ConcurrentMap<String, EndpointLatency> patterns = endpoints.get(method);
+		if (patterns == null) {
+			ConcurrentMap<String, EndpointLatency> created = new ConcurrentHashMap<String, EndpointLatency>();
+			patterns = endpoints.putIfAbsent(method, created);
+			if (patterns == null) {
+				patterns = created;
+			}
+		}
+		EndpointLatency latency = patterns.get(pattern);
+		if (latency == null) {
+			EndpointLatency created = new EndpointLatency(method == OTHER ? OTHER : method + " " + pattern);
+			latency = patterns.putIfAbsent(pattern, created);
+			if (latency == null) {
+				latency = created;
+			}
+		}
+		return latency;
+	}
+
+	/**
+	 * @param method HTTP method
+	 * @param pattern URL pattern of the handler
+	 * @param startNanos System.nanoTime() when the request was received
+	 * @param endNanos System.nanoTime() when the response was completed
+	 * @param error true if the request failed
+	 */
+	public void record(String method, String pattern, long startNanos, long endNanos, boolean error) {
+		getEndpoint(method, pattern).record(startNanos, endNanos, error);
+	}
+
+	/**
+	 * @return the latency of every endpoint seen so far
+	 */
+	public List<EndpointLatency> getEndpoints() {
+		List<EndpointLatency> latencies = new ArrayList<EndpointLatency>();
+		for (ConcurrentMap<String, EndpointLatency> patterns : endpoints.values()) {
+			latencies.addAll(patterns.values());
+		}
+		return latencies;
+	}
+
+	/**
+	 * @return the percentiles and throughput of every endpoint
+	 */
+	public List<LatencyStatistics> getStatistics() {
+		long now = System.nanoTime();
+		List<LatencyStatistics> statistics = new ArrayList<LatencyStatistics>();
+		for (ConcurrentMap<String, EndpointLatency> patterns : endpoints.values()) {
+			for (EndpointLatency latency : patterns.values()) {
+				statistics.add(new LatencyStatistics(latency.getEndpoint(), latency.getErrors(), latency.getThroughput().getRate(now),
+						latency.getHistogram().snapshot()));
+			}
+		}
+		return statistics;
+	}
+}
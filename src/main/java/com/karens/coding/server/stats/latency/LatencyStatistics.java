@@ -0,0 +1,58 @@
+package com.karens.coding.server.stats.latency;
+
+import com.karens.coding.server.stats.utils.LogHistogram;
+
+/**
+ * Latency percentiles and throughput of one endpoint at the time it was asked for
+ * @author karen
+ *
+ */
+public final class LatencyStatistics {
+
+	/** Method and URL pattern of the endpoint */
+	private final String endpoint;
+
+	/** Number of requests completed with a server error or an exception */
+	private final long errors;
+
+	/** Requests per second over the last minute */
+	private final double throughput;
+
+	/** Latencies in microseconds */
+	private final LogHistogram.Snapshot latency;
+
+	public LatencyStatistics(String endpoint, long errors, double throughput, LogHistogram.Snapshot latency) {
+		this.endpoint = endpoint;
+		this.errors = errors;
+		this.throughput = throughput;
+		this.latency = latency;
+	}
+
+	/**
+	 * @return the endpoint
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the errors
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the throughput in requests per second
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * @return the latency in microseconds
+	 */
+	public LogHistogram.Snapshot getLatency() {
+		return latency;
+	}
+}
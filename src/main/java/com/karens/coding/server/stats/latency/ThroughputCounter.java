@@ -0,0 +1,88 @@
+package com.karens.coding.server.stats.latency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free count of events per second over the last minute, in a ring of one slot per second.
+ * Each slot packs the second it counts and its count into one long, so the first event of a second
+ * claims the slot and discards the count of that second a minute earlier in a single compare-and-set,
+ * an increment can never land between the claim and the reset.
+ * @author karen
+ *
+ */
+public final class ThroughputCounter {
+
+	/** Number of seconds kept */
+	public static final int WINDOW = 60;
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/** Count in the low bits of a slot, saturated rather than carried into the second */
+	private static final long COUNT_MASK = 0xffffffffl;
+
+	/** Second since creation plus one in the high 32 bits, 0 for a slot never claimed, and the count in the low 32 bits */
+	private final AtomicLongArray slots = new AtomicLongArray(WINDOW);
+
+	/** Second the counter was created, the window is shorter until it is full */
+	private final long created = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+
+	/**
+	 * Counts one event
+	 * @param nanos System.nanoTime() of the event
+	 */
+	public void increment(long nanos) {
+		long second = Math.floorDiv(nanos, NANOS_PER_SECOND);
+		if (second < created) {
+			return;
+		}
+		int slot = (int) Math.floorMod(second, (long) WINDOW);
+		long claim = (second - created + 1) << 32;
+		while (true) {
+			long packed = slots.get(slot);
+			long claimed = packed & ~COUNT_MASK;
+			if (claimed == claim) {
+				if ((packed & COUNT_MASK) == COUNT_MASK || slots.compareAndSet(slot, packed, packed + 1)) {
+					return;
+				}
+			}
+			else if (Long.compareUnsigned(claimed, claim) > 0) {
+				// a slow event of a second already evicted
+				return;
+			}
+			else if (slots.compareAndSet(slot, packed, claim | 1)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param nanos System.nanoTime() now
+	 * @return the events per second over the complete seconds of the window
+	 */
+	public double getRate(long nanos) {
+		long current = Math.floorDiv(nanos, NANOS_PER_SECOND);
+		long complete = Math.max(1l, Math.min(WINDOW - 1, current - created));
+		return (double) getCount(nanos) / complete;
+	}
+
+	/**
+	 * @param nanos System.nanoTime() now
+	 * @return the number of events over the complete seconds of the window
+	 */
+	public long getCount(long nanos) {
+		long current = Math.floorDiv(nanos, NANOS_PER_SECOND);
+		long total = 0;
+		for (int slot = 0; slot < WINDOW; slot++) {
+			long packed = slots.get(slot);
+			if (packed == 0) {
+				continue;
+			}
+			long second = (packed >>> 32) - 1 + created;
+			if (second < current && second >= current - (WINDOW - 1)) {
+				total += packed & COUNT_MASK;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,157 @@
+package com.karens.coding.server.stats.mybatis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.mybatis.domain.StatisticsSample;
+import com.karens.coding.server.stats.mybatis.mapper.StatisticsSampleMapper;
+
+/**
+ * Persists snapshots in batches. Snapshots are queued without blocking the sampling thread,
+ * a writer thread flushes them with a BATCH executor once batchSize samples are waiting or
+ * flushInterval milliseconds have passed since the first one. When the queue is full
+ * (database down or too slow) new samples are dropped and counted.
+ * @author karen
+ *
+ */
+public class StatisticsSampleWriter implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(StatisticsSampleWriter.class);
+
+	/** Longest wait in milliseconds before the writer thread checks whether it is closing */
+	private static final long WAKE_UP = 100;
+
+	private final SqlSessionFactory sqlSessionFactory;
+	private final long serverId;
+	private final int batchSize;
+	private final long flushInterval;
+	private final BlockingQueue<StatisticsSample> queue;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * @param sqlSessionFactory
+	 * @param serverId id stored with every sample
+	 * @param batchSize number of samples that triggers a flush
+	 * @param flushInterval milliseconds after which waiting samples are flushed anyway
+	 * @param queueCapacity number of samples kept while the database does not keep up
+	 */
+	public StatisticsSampleWriter(SqlSessionFactory sqlSessionFactory, long serverId, int batchSize, long flushInterval, int queueCapacity) {
+		this.sqlSessionFactory = sqlSessionFactory;
+		this.serverId = serverId;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.queue = new ArrayBlockingQueue<StatisticsSample>(queueCapacity);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "server-stats-sample-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (!queue.offer(StatisticsSample.fromSnapshot(serverId, snapshot))) {
+			if (dropped.incrementAndGet() % 100 == 1) {
+				logger.warn("Statistics sample queue is full, " + dropped.get() + " samples dropped so far");
+			}
+		}
+	}
+
+	private void drain() {
+		List<StatisticsSample> batch = new ArrayList<StatisticsSample>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				StatisticsSample first = queue.poll(WAKE_UP, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.currentTimeMillis() + flushInterval;
+				while (batch.size() < batchSize) {
+					StatisticsSample next = queue.poll();
+					if (next == null) {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0 || !running) {
+							break;
+						}
+						next = queue.poll(Math.min(remaining, WAKE_UP), TimeUnit.MILLISECONDS);
+					}
+					if (next != null) {
+						batch.add(next);
+					}
+				}
+			} catch (InterruptedException e) {
+				// closing, whatever is queued is flushed below
+				running = false;
+			}
+			flush(batch);
+		}
+	}
+
+	private void flush(List<StatisticsSample> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false);
+		try {
+			StatisticsSampleMapper mapper = session.getMapper(StatisticsSampleMapper.class);
+			for (StatisticsSample sample : batch) {
+				mapper.insert(sample);
+			}
+			session.flushStatements();
+			session.commit();
+			written.addAndGet(batch.size());
+		} catch (Exception e) {
+			session.rollback();
+			dropped.addAndGet(batch.size());
+			logger.error("Unable to persist " + batch.size() + " statistics samples " + e.getMessage());
+		} finally {
+			session.close();
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Stops the writer thread once every queued sample has been flushed
+	 * @throws InterruptedException
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		thread.join();
+	}
+
+	/**
+	 * @return the number of samples persisted so far
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * @return the number of samples dropped because the queue was full or the batch failed
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,319 @@
+package com.karens.coding.server.stats.mybatis.domain;
+
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * One persisted statistics sample, a row of the statistics_sample table
+ * @author karen
+ *
+ */
+public class StatisticsSample {
+
+	/** Generated key */
+	private Long id;
+
+	/** Server the sample was taken on */
+	private long serverId = 0;
+
+	/** Sequence number of the sample on its server */
+	private long sequence;
+
+	/** Time the sample was taken, in milliseconds since the epoch */
+	private long sampleTimestamp;
+
+	private Long freeSpace;
+
+	private Long totalSpace;
+
+	private Long usableSpace;
+
+	private Double systemCpuUsage;
+
+	private Double jvmCpuUsage;
+
+	private Long committedVirtualMemorySize;
+
+	private Long totalSwapSpaceSize;
+
+	private Long freeSwapSpaceSize;
+
+	private Long processCpuTime;
+
+	private Long freePhysicalMemorySize;
+
+	private Long totalPhysicalMemorySize;
+
+	private Double systemCpuLoad;
+
+	private Double processCpuLoad;
+
+	public StatisticsSample() {
+	}
+
+	/**
+	 * Copies the numeric statistics of a snapshot
+	 * @param serverId
+	 * @param snapshot
+	 * @return StatisticsSample
+	 */
+	public static StatisticsSample fromSnapshot(long serverId, StatisticsSnapshot snapshot) {
+		ServerStatistics statistics = snapshot.getStatistics();
+		StatisticsSample sample = new StatisticsSample();
+		sample.serverId = serverId;
+		sample.sequence = snapshot.getSequence();
+		sample.sampleTimestamp = snapshot.getSampleTimestamp();
+		sample.freeSpace = statistics.getFreeSpace();
+		sample.totalSpace = statistics.getTotalSpace();
+		sample.usableSpace = statistics.getUsableSpace();
+		sample.systemCpuUsage = statistics.getSystemCpuUsage();
+		sample.jvmCpuUsage = statistics.getJvmCpuUsage();
+		sample.committedVirtualMemorySize = statistics.getCommittedVirtualMemorySize();
+		sample.totalSwapSpaceSize = statistics.getTotalSwapSpaceSize();
+		sample.freeSwapSpaceSize = statistics.getFreeSwapSpaceSize();
+		sample.processCpuTime = statistics.getProcessCpuTime();
+		sample.freePhysicalMemorySize = statistics.getFreePhysicalMemorySize();
+		sample.totalPhysicalMemorySize = statistics.getTotalPhysicalMemorySize();
+		sample.systemCpuLoad = statistics.getSystemCpuLoad();
+		sample.processCpuLoad = statistics.getProcessCpuLoad();
+		return sample;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * @param id the id to set
+	 */
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the serverId
+	 */
+	public long getServerId() {
+		return serverId;
+	}
+
+	/**
+	 * @param serverId the serverId to set
+	 */
+	public void setServerId(long serverId) {
+		this.serverId = serverId;
+	}
+
+	/**
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @param sequence the sequence to set
+	 */
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return the sampleTimestamp
+	 */
+	public long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @param sampleTimestamp the sampleTimestamp to set
+	 */
+	public void setSampleTimestamp(long sampleTimestamp) {
+		this.sampleTimestamp = sampleTimestamp;
+	}
+
+	/**
+	 * @return the freeSpace
+	 */
+	public Long getFreeSpace() {
+		return freeSpace;
+	}
+
+	/**
+	 * @param freeSpace the freeSpace to set
+	 */
+	public void setFreeSpace(Long freeSpace) {
+		this.freeSpace = freeSpace;
+	}
+
+	/**
+	 * @return the totalSpace
+	 */
+	public Long getTotalSpace() {
+		return totalSpace;
+	}
+
+	/**
+	 * @param totalSpace the totalSpace to set
+	 */
+	public void setTotalSpace(Long totalSpace) {
+		this.totalSpace = totalSpace;
+	}
+
+	/**
+	 * @return the usableSpace
+	 */
+	public Long getUsableSpace() {
+		return usableSpace;
+	}
+
+	/**
+	 * @param usableSpace the usableSpace to set
+	 */
+	public void setUsableSpace(Long usableSpace) {
+		this.usableSpace = usableSpace;
+	}
+
+	/**
+	 * @return the systemCpuUsage
+	 */
+	public Double getSystemCpuUsage() {
+		return systemCpuUsage;
+	}
+
+	/**
+	 * @param systemCpuUsage the systemCpuUsage to set
+	 */
+	public void setSystemCpuUsage(Double systemCpuUsage) {
+		this.systemCpuUsage = systemCpuUsage;
+	}
+
+	/**
+	 * @return the jvmCpuUsage
+	 */
+	public Double getJvmCpuUsage() {
+		return jvmCpuUsage;
+	}
+
+	/**
+	 * @param jvmCpuUsage the jvmCpuUsage to set
+	 */
+	public void setJvmCpuUsage(Double jvmCpuUsage) {
+		this.jvmCpuUsage = jvmCpuUsage;
+	}
+
+	/**
+	 * @return the committedVirtualMemorySize
+	 */
+	public Long getCommittedVirtualMemorySize() {
+		return committedVirtualMemorySize;
+	}
+
+	/**
+	 * @param committedVirtualMemorySize the committedVirtualMemorySize to set
+	 */
+	public void setCommittedVirtualMemorySize(Long committedVirtualMemorySize) {
+		this.committedVirtualMemorySize = committedVirtualMemorySize;
+	}
+
+	/**
+	 * @return the totalSwapSpaceSize
+	 */
+	public Long getTotalSwapSpaceSize() {
+		return totalSwapSpaceSize;
+	}
+
+	/**
+	 * @param totalSwapSpaceSize the totalSwapSpaceSize to set
+	 */
+	public void setTotalSwapSpaceSize(Long totalSwapSpaceSize) {
+		this.totalSwapSpaceSize = totalSwapSpaceSize;
+	}
+
+	/**
+	 * @return the freeSwapSpaceSize
+	 */
+	public Long getFreeSwapSpaceSize() {
+		return freeSwapSpaceSize;
+	}
+
+	/**
+	 * @param freeSwapSpaceSize the freeSwapSpaceSize to set
+	 */
+	public void setFreeSwapSpaceSize(Long freeSwapSpaceSize) {
+		this.freeSwapSpaceSize = freeSwapSpaceSize;
+	}
+
+	/**
+	 * @return the processCpuTime
+	 */
+	public Long getProcessCpuTime() {
+		return processCpuTime;
+	}
+
+	/**
+	 * @param processCpuTime the processCpuTime to set
+	 */
+	public void setProcessCpuTime(Long processCpuTime) {
+		this.processCpuTime = processCpuTime;
+	}
+
+	/**
+	 * @return the freePhysicalMemorySize
+	 */
+	public Long getFreePhysicalMemorySize() {
+		return freePhysicalMemorySize;
+	}
+
+	/**
+	 * @param freePhysicalMemorySize the freePhysicalMemorySize to set
+	 */
+	public void setFreePhysicalMemorySize(Long freePhysicalMemorySize) {
+		this.freePhysicalMemorySize = freePhysicalMemorySize;
+	}
+
+	/**
+	 * @return the totalPhysicalMemorySize
+	 */
+	public Long getTotalPhysicalMemorySize() {
+		return totalPhysicalMemorySize;
+	}
+
+	/**
+	 * @param totalPhysicalMemorySize the totalPhysicalMemorySize to set
+	 */
+	public void setTotalPhysicalMemorySize(Long totalPhysicalMemorySize) {
+		this.totalPhysicalMemorySize = totalPhysicalMemorySize;
+	}
+
+	/**
+	 * @return the systemCpuLoad
+	 */
+	public Double getSystemCpuLoad() {
+		return systemCpuLoad;
+	}
+
+	/**
+	 * @param systemCpuLoad the systemCpuLoad to set
+	 */
+	public void setSystemCpuLoad(Double systemCpuLoad) {
+		this.systemCpuLoad = systemCpuLoad;
+	}
+
+	/**
+	 * @return the processCpuLoad
+	 */
+	public Double getProcessCpuLoad() {
+		return processCpuLoad;
+	}
+
+	/**
+	 * @param processCpuLoad the processCpuLoad to set
+	 */
+	public void setProcessCpuLoad(Double processCpuLoad) {
+		this.processCpuLoad = processCpuLoad;
+	}
+}
@@ -0,0 +1,29 @@
+package com.karens.coding.server.stats.mybatis.mapper;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import com.karens.coding.server.stats.mybatis.domain.StatisticsSample;
+
+/**
+ * Mapper of the statistics_sample table, statements are in mybatis/mapper/StatisticsSampleMapper.xml
+ * @author karen
+ *
+ */
+public interface StatisticsSampleMapper {
+
+	/**
+	 * @param sample
+	 * @return the number of inserted rows, not meaningful with a batch executor
+	 */
+	int insert(StatisticsSample sample);
+
+	/**
+	 * @param serverId
+	 * @param from inclusive, in milliseconds since the epoch
+	 * @param to inclusive, in milliseconds since the epoch
+	 * @return the samples of the server in the range, oldest first
+	 */
+	List<StatisticsSample> selectByServerBetween(@Param("serverId") long serverId, @Param("from") long from, @Param("to") long to);
+}
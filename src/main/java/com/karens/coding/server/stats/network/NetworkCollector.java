@@ -0,0 +1,155 @@
+package com.karens.coding.server.stats.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.proc.NetworkCounter;
+import com.karens.coding.server.stats.proc.NetworkStatistics;
+
+/**
+ * Samples the network interfaces from /proc/net/dev on every sample, and records their rates in the
+ * {@link MetricHistory} as network.[interface].[counter]PerSecond, next to the other metrics and rolled up with them.
+ * The series of an interface are dropped from the history when it disappears.
+ * @author karen
+ *
+ */
+@Service("NetworkCollector")
+public class NetworkCollector implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(NetworkCollector.class);
+
+	/** Sample the network interfaces on every sample */
+	@Value("${serverstats.network.enabled:true}")
+	private boolean enabled = true;
+
+	/** The /proc tree read */
+	private File root = new File("/proc");
+
+	@Autowired
+	private MetricHistory history;
+
+	private NetworkStatistics statistics;
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			statistics = new NetworkStatistics(root);
+		} catch (IOException e) {
+			logger.warn("Unable to read " + root + "/net/dev, network interfaces are not tracked " + e.getMessage());
+			enabled = false;
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (enabled) {
+			sample(snapshot.getSampleTimestamp(), System.nanoTime());
+		}
+	}
+
+	/**
+	 * Reads the counters, records the rates of the live interfaces and drops the series of the removed ones
+	 * @param timestamp in milliseconds since the epoch
+	 * @param nanos monotonic time of the sample
+	 */
+	public void sample(long timestamp, long nanos) {
+		try {
+			statistics.sample(nanos);
+		} catch (IOException e) {
+			logger.error("Unable to read the network interfaces " + e.getMessage());
+			return;
+		}
+		for (String metric : statistics.getEvictedMetricNames()) {
+			history.remove(metric);
+		}
+		int interfaces = statistics.getInterfaceCount();
+		for (int index = 0; index < interfaces; index++) {
+			if (!statistics.isLive(index)) {
+				continue;
+			}
+			for (NetworkCounter counter : NetworkCounter.values()) {
+				double rate = statistics.getRate(index, counter);
+				if (!Double.isNaN(rate)) {
+					history.record(statistics.getMetricName(index, counter), timestamp, rate);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the live interfaces with their rates at the last sample
+	 */
+	public List<NetworkInterfaceUsage> getInterfaces() {
+		List<NetworkInterfaceUsage> result = new ArrayList<NetworkInterfaceUsage>();
+		if (statistics == null) {
+			return result;
+		}
+		int interfaces = statistics.getInterfaceCount();
+		for (int index = 0; index < interfaces; index++) {
+			if (!statistics.isLive(index)) {
+				continue;
+			}
+			Map<String, Double> rates = new LinkedHashMap<String, Double>();
+			for (NetworkCounter counter : NetworkCounter.values()) {
+				double rate = statistics.getRate(index, counter);
+				rates.put(counter.getName(), Double.isNaN(rate) ? null : rate);
+			}
+			result.add(new NetworkInterfaceUsage(statistics.getInterfaceName(index), rates));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the interfaces read on every sample, by slot without allocating, null when disabled
+	 */
+	public NetworkStatistics getStatistics() {
+		return enabled ? statistics : null;
+	}
+
+	/**
+	 * @return the enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled the enabled to set
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param root the root to set, a /proc tree
+	 */
+	public void setRoot(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param history the history to set
+	 */
+	public void setHistory(MetricHistory history) {
+		this.history = history;
+	}
+}
@@ -0,0 +1,36 @@
+package com.karens.coding.server.stats.network;
+
+import java.util.Map;
+
+/**
+ * Throughput of one network interface between the last two samples of the {@link NetworkCollector}
+ * @author karen
+ *
+ */
+public class NetworkInterfaceUsage {
+
+	/** Interface name, such as eth0 */
+	private final String name;
+
+	/** Rate per second of each counter, by counter name such as receivedBytes, null until the second sample */
+	private final Map<String, Double> rates;
+
+	public NetworkInterfaceUsage(String name, Map<String, Double> rates) {
+		this.name = name;
+		this.rates = rates;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the rates
+	 */
+	public Map<String, Double> getRates() {
+		return rates;
+	}
+}
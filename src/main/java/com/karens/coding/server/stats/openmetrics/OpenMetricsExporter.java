@@ -0,0 +1,621 @@
+package com.karens.coding.server.stats.openmetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.alert.Alert;
+import com.karens.coding.server.stats.alert.AlertEngine;
+import com.karens.coding.server.stats.alert.AlertState;
+import com.karens.coding.server.stats.disk.DiskIoCollector;
+import com.karens.coding.server.stats.disk.FileStoreUsage;
+import com.karens.coding.server.stats.gc.GarbageCollectionMonitor;
+import com.karens.coding.server.stats.gc.GarbageCollectionStatistics;
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+import com.karens.coding.server.stats.health.StatisticsSampler;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.latency.EndpointLatency;
+import com.karens.coding.server.stats.latency.LatencyRecorder;
+import com.karens.coding.server.stats.network.NetworkCollector;
+import com.karens.coding.server.stats.proc.DiskMetric;
+import com.karens.coding.server.stats.proc.DiskStatistics;
+import com.karens.coding.server.stats.proc.NetworkCounter;
+import com.karens.coding.server.stats.proc.NetworkStatistics;
+import com.karens.coding.server.stats.processes.ProcessCollector;
+import com.karens.coding.server.stats.processes.ProcessSort;
+import com.karens.coding.server.stats.processes.ProcessUsage;
+import com.karens.coding.server.stats.push.PushReceiver;
+import com.karens.coding.server.stats.push.PushedServer;
+import com.karens.coding.server.stats.threads.ThreadCpuCollector;
+import com.karens.coding.server.stats.threads.ThreadCpuUsage;
+import com.karens.coding.server.stats.utils.LogHistogram;
+
+/**
+ * Renders the latest statistics in the OpenMetrics text format: every {@link Metric} of the latest snapshot,
+ * followed by the samples pushed by the other servers with a server_id label, the cores, the file stores,
+ * the garbage collections, the endpoint latencies, the alerts, the hottest threads, the top processes,
+ * the network interfaces and the block devices.
+ * <p>
+ * Scrapes are serialized and render into one reused {@link OpenMetricsWriter}; the names and help are encoded once,
+ * the pushed samples copied into reused records and the interfaces and devices read from their statistics, so a
+ * scrape only allocates the iterators of a few collections, the lists returned by the other collectors and the copy
+ * written to the client.
+ * @author karen
+ *
+ */
+@Service("OpenMetricsExporter")
+public class OpenMetricsExporter {
+
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final String PREFIX = "serverstats_";
+
+	/** The values of the enums, values() copying them on every call */
+	private static final Metric[] METRICS = Metric.values();
+	private static final NetworkCounter[] NETWORK_COUNTERS = NetworkCounter.values();
+	private static final DiskMetric[] DISK_METRICS = DiskMetric.values();
+
+	/** Family names and help of the metrics, by ordinal */
+	private static final byte[][] METRIC_NAMES = new byte[Metric.values().length][];
+	private static final byte[][] METRIC_TYPES = new byte[Metric.values().length][];
+	private static final byte[][] METRIC_HELP = new byte[Metric.values().length][];
+
+	/** Factor from the sampled unit to the base unit of OpenMetrics */
+	private static final double[] METRIC_SCALES = new double[Metric.values().length];
+
+	static {
+		for (Metric metric : Metric.values()) {
+			StringBuilder name = new StringBuilder(PREFIX).append(snakeCase(metric.getName()));
+			METRIC_TYPES[metric.ordinal()] = OpenMetricsWriter.GAUGE;
+			METRIC_SCALES[metric.ordinal()] = 1.0;
+			if (metric == Metric.PROCESS_CPU_TIME) {
+				// sampled in nanoseconds
+				name.append("_seconds");
+				METRIC_TYPES[metric.ordinal()] = OpenMetricsWriter.COUNTER;
+				METRIC_SCALES[metric.ordinal()] = 1e-9;
+			}
+			else if (metric.isFractional()) {
+				name.append("_ratio");
+			}
+			else {
+				name.append("_bytes");
+			}
+			METRIC_NAMES[metric.ordinal()] = OpenMetricsWriter.ascii(name.toString());
+			METRIC_HELP[metric.ordinal()] = OpenMetricsWriter.ascii("Statistic " + metric.getName() + " of the server");
+		}
+	}
+
+	private static final byte[] SERVER_ID = OpenMetricsWriter.ascii("server_id");
+	private static final byte[] CORE = OpenMetricsWriter.ascii("core");
+	private static final byte[] MOUNT = OpenMetricsWriter.ascii("mount");
+	private static final byte[] TYPE = OpenMetricsWriter.ascii("type");
+	private static final byte[] GC = OpenMetricsWriter.ascii("gc");
+	private static final byte[] POOL = OpenMetricsWriter.ascii("pool");
+	private static final byte[] AREA = OpenMetricsWriter.ascii("area");
+	private static final byte[] HEAP = OpenMetricsWriter.ascii("heap");
+	private static final byte[] NONHEAP = OpenMetricsWriter.ascii("nonheap");
+	private static final byte[] ENDPOINT = OpenMetricsWriter.ascii("endpoint");
+	private static final byte[] QUANTILE = OpenMetricsWriter.ascii("quantile");
+	private static final byte[] NAME = OpenMetricsWriter.ascii("name");
+	private static final byte[] THREAD = OpenMetricsWriter.ascii("thread");
+	private static final byte[] ID = OpenMetricsWriter.ascii("id");
+	private static final byte[] PID = OpenMetricsWriter.ascii("pid");
+	private static final byte[] INTERFACE = OpenMetricsWriter.ascii("interface");
+	private static final byte[] DEVICE = OpenMetricsWriter.ascii("device");
+	private static final byte[] COUNT = OpenMetricsWriter.ascii("_count");
+	private static final byte[] SUM = OpenMetricsWriter.ascii("_sum");
+
+	private static final byte[] SAMPLE_TIMESTAMP = OpenMetricsWriter.ascii(PREFIX + "sample_timestamp_seconds");
+	private static final byte[] CORE_LOAD = OpenMetricsWriter.ascii(PREFIX + "core_cpu_load_ratio");
+	private static final byte[] STORE_TOTAL = OpenMetricsWriter.ascii(PREFIX + "filestore_total_bytes");
+	private static final byte[] STORE_USABLE = OpenMetricsWriter.ascii(PREFIX + "filestore_usable_bytes");
+	private static final byte[] STORE_FREE = OpenMetricsWriter.ascii(PREFIX + "filestore_free_bytes");
+	private static final byte[] STORE_STALE = OpenMetricsWriter.ascii(PREFIX + "filestore_stale");
+	private static final byte[] GC_COLLECTIONS = OpenMetricsWriter.ascii(PREFIX + "gc_collections");
+	private static final byte[] GC_TIME = OpenMetricsWriter.ascii(PREFIX + "gc_collection_seconds");
+	private static final byte[] GC_PAUSE = OpenMetricsWriter.ascii(PREFIX + "gc_pause_seconds");
+	private static final byte[] GC_ALLOCATED = OpenMetricsWriter.ascii(PREFIX + "gc_allocated_bytes");
+	private static final byte[] POOL_USED = OpenMetricsWriter.ascii(PREFIX + "memory_pool_used_bytes");
+	private static final byte[] POOL_COMMITTED = OpenMetricsWriter.ascii(PREFIX + "memory_pool_committed_bytes");
+	private static final byte[] HTTP_LATENCY = OpenMetricsWriter.ascii(PREFIX + "http_request_seconds");
+	private static final byte[] HTTP_ERRORS = OpenMetricsWriter.ascii(PREFIX + "http_request_errors");
+	private static final byte[] ALERT_FIRING = OpenMetricsWriter.ascii(PREFIX + "alert_firing");
+	private static final byte[] THREADS = OpenMetricsWriter.ascii(PREFIX + "threads");
+	private static final byte[] THREAD_CPU = OpenMetricsWriter.ascii(PREFIX + "thread_cpu_ratio");
+	private static final byte[] PROCESSES = OpenMetricsWriter.ascii(PREFIX + "processes");
+	private static final byte[] PROCESS_CPU = OpenMetricsWriter.ascii(PREFIX + "process_cpu_ratio");
+	private static final byte[] PROCESS_RESIDENT = OpenMetricsWriter.ascii(PREFIX + "process_resident_bytes");
+
+	/** Help of the families above */
+	private static final byte[] SAMPLE_TIMESTAMP_HELP = OpenMetricsWriter.ascii("Time of the latest sample");
+	private static final byte[] CORE_LOAD_HELP = OpenMetricsWriter.ascii("CPU load of each core");
+	private static final byte[] STORE_TOTAL_HELP = OpenMetricsWriter.ascii("Size of the file store");
+	private static final byte[] STORE_USABLE_HELP = OpenMetricsWriter.ascii("Bytes of the file store available to this JVM");
+	private static final byte[] STORE_FREE_HELP = OpenMetricsWriter.ascii("Unallocated bytes of the file store");
+	private static final byte[] STORE_STALE_HELP = OpenMetricsWriter.ascii("1 if the file store did not answer in time and its last usage is reported");
+	private static final byte[] GC_COLLECTIONS_HELP = OpenMetricsWriter.ascii("Collections of each garbage collector");
+	private static final byte[] GC_TIME_HELP = OpenMetricsWriter.ascii("Time spent by each garbage collector");
+	private static final byte[] GC_PAUSE_HELP = OpenMetricsWriter.ascii("Pauses of the garbage collections");
+	private static final byte[] GC_ALLOCATED_HELP = OpenMetricsWriter.ascii("Bytes allocated in the heap since the first sample");
+	private static final byte[] POOL_USED_HELP = OpenMetricsWriter.ascii("Used bytes of each memory pool");
+	private static final byte[] POOL_COMMITTED_HELP = OpenMetricsWriter.ascii("Committed bytes of each memory pool");
+	private static final byte[] HTTP_LATENCY_HELP = OpenMetricsWriter.ascii("Latency of the requests of each endpoint");
+	private static final byte[] HTTP_ERRORS_HELP = OpenMetricsWriter.ascii("Failed requests of each endpoint");
+	private static final byte[] ALERT_FIRING_HELP = OpenMetricsWriter.ascii("1 while the alert rule is firing");
+	private static final byte[] THREADS_HELP = OpenMetricsWriter.ascii("Live threads of the JVM");
+	private static final byte[] THREAD_CPU_HELP = OpenMetricsWriter.ascii("Share of one core used by each of the hottest threads");
+	private static final byte[] PROCESSES_HELP = OpenMetricsWriter.ascii("Live processes of the server");
+	private static final byte[] PROCESS_CPU_HELP = OpenMetricsWriter.ascii("Share of one core used by each of the busiest processes");
+	private static final byte[] PROCESS_RESIDENT_HELP = OpenMetricsWriter.ascii("Resident set size of each of the largest processes");
+
+	/** Family names and help of the network counters and disk figures, by ordinal */
+	private static final byte[][] NETWORK_NAMES = new byte[NetworkCounter.values().length][];
+	private static final byte[][] NETWORK_HELP = new byte[NetworkCounter.values().length][];
+	private static final byte[][] DISK_NAMES = new byte[DiskMetric.values().length][];
+	private static final byte[][] DISK_HELP = new byte[DiskMetric.values().length][];
+
+	/** Factor from the unit of the disk figures to the base unit of OpenMetrics */
+	private static final double[] DISK_SCALES = new double[DiskMetric.values().length];
+
+	static {
+		for (NetworkCounter counter : NetworkCounter.values()) {
+			NETWORK_NAMES[counter.ordinal()] = OpenMetricsWriter.ascii(PREFIX + "network_" + snakeCase(counter.getName()) + "_per_second");
+			NETWORK_HELP[counter.ordinal()] = OpenMetricsWriter.ascii("Rate of " + counter.getName() + " of each network interface");
+		}
+		for (DiskMetric metric : DiskMetric.values()) {
+			String name = PREFIX + "disk_" + snakeCase(metric.getName());
+			DISK_SCALES[metric.ordinal()] = 1.0;
+			if (metric == DiskMetric.AWAIT) {
+				// computed in milliseconds
+				name += "_seconds";
+				DISK_SCALES[metric.ordinal()] = 1e-3;
+			}
+			else if (metric == DiskMetric.UTILIZATION) {
+				name += "_ratio";
+			}
+			DISK_NAMES[metric.ordinal()] = OpenMetricsWriter.ascii(name);
+			DISK_HELP[metric.ordinal()] = OpenMetricsWriter.ascii("Figure " + metric.getName() + " of each block device");
+		}
+	}
+
+	/** Percentiles of the summaries, and their quantile labels */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final byte[][] QUANTILES = { OpenMetricsWriter.ascii("0.5"), OpenMetricsWriter.ascii("0.9"), OpenMetricsWriter.ascii("0.99"),
+			OpenMetricsWriter.ascii("0.999") };
+
+	@Autowired
+	private StatisticsSampler statisticsSampler;
+
+	@Autowired(required = false)
+	private GarbageCollectionMonitor garbageCollectionMonitor;
+
+	@Autowired(required = false)
+	private LatencyRecorder latencyRecorder;
+
+	@Autowired(required = false)
+	private PushReceiver pushReceiver;
+
+	@Autowired(required = false)
+	private AlertEngine alertEngine;
+
+	@Autowired(required = false)
+	private ThreadCpuCollector threadCpuCollector;
+
+	@Autowired(required = false)
+	private ProcessCollector processCollector;
+
+	@Autowired(required = false)
+	private NetworkCollector networkCollector;
+
+	@Autowired(required = false)
+	private DiskIoCollector diskIoCollector;
+
+	/** Number of hottest threads and of top processes exposed */
+	@Value("${serverstats.openmetrics.top:10}")
+	private int top = 10;
+
+	private final OpenMetricsWriter writer = new OpenMetricsWriter(64 * 1024);
+
+	/** Latest samples of the pushed servers, copied once per scrape */
+	private MetricRecord[] pushed = new MetricRecord[0];
+	private long[] pushedIds = new long[0];
+	private int pushedCount = 0;
+
+	private final long[] percentiles = new long[PERCENTILES.length];
+
+	/**
+	 * Renders the exposition and writes it to the stream. The copy is written outside the lock, so a client reading
+	 * slowly does not hold up the other scrapes.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		byte[] exposition;
+		synchronized (this) {
+			write();
+			exposition = writer.toByteArray();
+		}
+		out.write(exposition);
+	}
+
+	/**
+	 * @return the exposition, for tests and debugging
+	 */
+	public synchronized String render() {
+		write();
+		return writer.toString();
+	}
+
+	private void write() {
+		writer.reset();
+		StatisticsSnapshot snapshot = statisticsSampler.getLatest();
+		copyPushed();
+		if (snapshot != null) {
+			writer.family(SAMPLE_TIMESTAMP, OpenMetricsWriter.GAUGE, SAMPLE_TIMESTAMP_HELP);
+			writer.sample(SAMPLE_TIMESTAMP).value(snapshot.getSampleTimestamp() / 1000.0);
+		}
+		MetricRecord record = snapshot == null ? null : snapshot.getStatistics().getRecord();
+		for (Metric metric : METRICS) {
+			writeMetric(metric, record);
+		}
+		if (snapshot != null) {
+			writeCores(snapshot.getStatistics().getCoreCpuLoads());
+			writeStores(snapshot.getStatistics().getStore());
+		}
+		if (garbageCollectionMonitor != null) {
+			writeGarbageCollections(garbageCollectionMonitor.getLatest());
+		}
+		if (latencyRecorder != null) {
+			writeLatencies(latencyRecorder.getEndpoints());
+		}
+		if (alertEngine != null) {
+			writeAlerts(alertEngine.getAlerts());
+		}
+		if (threadCpuCollector != null && threadCpuCollector.isEnabled()) {
+			writeThreads(threadCpuCollector.getThreadCount(), threadCpuCollector.getTop(top));
+		}
+		if (processCollector != null && processCollector.isEnabled()) {
+			writeProcesses(processCollector.getProcessCount(), processCollector.getTop(ProcessSort.CPU, top),
+					processCollector.getTop(ProcessSort.RSS, top));
+		}
+		if (networkCollector != null && networkCollector.getStatistics() != null) {
+			writeInterfaces(networkCollector.getStatistics());
+		}
+		if (diskIoCollector != null && diskIoCollector.getStatistics() != null) {
+			writeDevices(diskIoCollector.getStatistics());
+		}
+		writer.eof();
+	}
+
+	private void copyPushed() {
+		pushedCount = 0;
+		if (pushReceiver == null || !pushReceiver.isEnabled()) {
+			return;
+		}
+		for (PushedServer server : pushReceiver.getServerView()) {
+			if (pushedCount == pushed.length) {
+				MetricRecord[] grown = new MetricRecord[pushed.length * 2 + 4];
+				System.arraycopy(pushed, 0, grown, 0, pushed.length);
+				for (int index = pushed.length; index < grown.length; index++) {
+					grown[index] = new MetricRecord();
+				}
+				long[] grownIds = new long[grown.length];
+				System.arraycopy(pushedIds, 0, grownIds, 0, pushedIds.length);
+				pushed = grown;
+				pushedIds = grownIds;
+			}
+			server.copyRecord(pushed[pushedCount]);
+			pushedIds[pushedCount++] = server.getServerId();
+		}
+	}
+
+	private void writeMetric(Metric metric, MetricRecord record) {
+		byte[] name = METRIC_NAMES[metric.ordinal()];
+		boolean counter = METRIC_TYPES[metric.ordinal()] == OpenMetricsWriter.COUNTER;
+		boolean started = false;
+		for (int index = -1; index < pushedCount; index++) {
+			MetricRecord values = index < 0 ? record : pushed[index];
+			if (values == null || !values.has(metric)) {
+				continue;
+			}
+			if (!started) {
+				writer.family(name, METRIC_TYPES[metric.ordinal()], METRIC_HELP[metric.ordinal()]);
+				started = true;
+			}
+			if (counter) {
+				writer.total(name);
+			}
+			else {
+				writer.sample(name);
+			}
+			if (index >= 0) {
+				writer.label(SERVER_ID, pushedIds[index]);
+			}
+			if (metric.isFractional()) {
+				writer.value(values.getDouble(metric) * METRIC_SCALES[metric.ordinal()]);
+			}
+			else if (METRIC_SCALES[metric.ordinal()] != 1.0) {
+				writer.value(values.getLong(metric) * METRIC_SCALES[metric.ordinal()]);
+			}
+			else {
+				writer.value(values.getLong(metric));
+			}
+		}
+	}
+
+	private void writeCores(double[] loads) {
+		if (loads == null || loads.length == 0) {
+			return;
+		}
+		writer.family(CORE_LOAD, OpenMetricsWriter.GAUGE, CORE_LOAD_HELP);
+		for (int core = 0; core < loads.length; core++) {
+			writer.sample(CORE_LOAD).label(CORE, core).value(loads[core]);
+		}
+	}
+
+	private void writeStores(Map<String, FileStoreUsage> stores) {
+		if (stores == null || stores.isEmpty()) {
+			return;
+		}
+		writer.family(STORE_TOTAL, OpenMetricsWriter.GAUGE, STORE_TOTAL_HELP);
+		for (FileStoreUsage usage : stores.values()) {
+			writer.sample(STORE_TOTAL).label(MOUNT, usage.getMount()).label(TYPE, usage.getType()).value(usage.getTotalSpace());
+		}
+		writer.family(STORE_USABLE, OpenMetricsWriter.GAUGE, STORE_USABLE_HELP);
+		for (FileStoreUsage usage : stores.values()) {
+			writer.sample(STORE_USABLE).label(MOUNT, usage.getMount()).label(TYPE, usage.getType()).value(usage.getUsableSpace());
+		}
+		writer.family(STORE_FREE, OpenMetricsWriter.GAUGE, STORE_FREE_HELP);
+		for (FileStoreUsage usage : stores.values()) {
+			writer.sample(STORE_FREE).label(MOUNT, usage.getMount()).label(TYPE, usage.getType()).value(usage.getFreeSpace());
+		}
+		writer.family(STORE_STALE, OpenMetricsWriter.GAUGE, STORE_STALE_HELP);
+		for (FileStoreUsage usage : stores.values()) {
+			writer.sample(STORE_STALE).label(MOUNT, usage.getMount()).label(TYPE, usage.getType()).value(usage.isStale() ? 1l : 0l);
+		}
+	}
+
+	private void writeGarbageCollections(GarbageCollectionStatistics statistics) {
+		if (statistics == null) {
+			return;
+		}
+		List<GarbageCollectionStatistics.CollectorUsage> collectors = statistics.getCollectors();
+		writer.family(GC_COLLECTIONS, OpenMetricsWriter.COUNTER, GC_COLLECTIONS_HELP);
+		for (int index = 0; index < collectors.size(); index++) {
+			writer.total(GC_COLLECTIONS).label(GC, collectors.get(index).getName()).value(collectors.get(index).getCount());
+		}
+		writer.family(GC_TIME, OpenMetricsWriter.COUNTER, GC_TIME_HELP);
+		for (int index = 0; index < collectors.size(); index++) {
+			writer.total(GC_TIME).label(GC, collectors.get(index).getName()).value(collectors.get(index).getTime() / 1000.0);
+		}
+		LogHistogram.Snapshot pauses = statistics.getPauses();
+		writer.family(GC_PAUSE, OpenMetricsWriter.SUMMARY, GC_PAUSE_HELP);
+		for (int index = 0; index < PERCENTILES.length; index++) {
+			writer.sample(GC_PAUSE).label(QUANTILE, QUANTILES[index]).value(pauses.getPercentile(PERCENTILES[index]) / 1000.0);
+		}
+		writer.sample(GC_PAUSE, COUNT).value(pauses.getCount());
+		writer.sample(GC_PAUSE, SUM).value(pauses.getSum() / 1000.0);
+		writer.family(GC_ALLOCATED, OpenMetricsWriter.COUNTER, GC_ALLOCATED_HELP);
+		writer.total(GC_ALLOCATED).value(statistics.getAllocatedBytes());
+
+		List<GarbageCollectionStatistics.PoolUsage> pools = statistics.getPools();
+		writer.family(POOL_USED, OpenMetricsWriter.GAUGE, POOL_USED_HELP);
+		for (int index = 0; index < pools.size(); index++) {
+			GarbageCollectionStatistics.PoolUsage pool = pools.get(index);
+			writer.sample(POOL_USED).label(POOL, pool.getName()).label(AREA, pool.isHeap() ? HEAP : NONHEAP).value(pool.getUsed());
+		}
+		writer.family(POOL_COMMITTED, OpenMetricsWriter.GAUGE, POOL_COMMITTED_HELP);
+		for (int index = 0; index < pools.size(); index++) {
+			GarbageCollectionStatistics.PoolUsage pool = pools.get(index);
+			writer.sample(POOL_COMMITTED).label(POOL, pool.getName()).label(AREA, pool.isHeap() ? HEAP : NONHEAP).value(pool.getCommitted());
+		}
+	}
+
+	private void writeLatencies(List<EndpointLatency> endpoints) {
+		if (endpoints.isEmpty()) {
+			return;
+		}
+		writer.family(HTTP_LATENCY, OpenMetricsWriter.SUMMARY, HTTP_LATENCY_HELP);
+		for (int endpoint = 0; endpoint < endpoints.size(); endpoint++) {
+			EndpointLatency latency = endpoints.get(endpoint);
+			LogHistogram histogram = latency.getHistogram();
+			// read the count first, the percentiles may include a few more requests
+			long count = histogram.getCount();
+			long sum = histogram.getSum();
+			histogram.percentiles(PERCENTILES, percentiles);
+			for (int index = 0; index < PERCENTILES.length; index++) {
+				writer.sample(HTTP_LATENCY).label(ENDPOINT, latency.getEndpoint()).label(QUANTILE, QUANTILES[index]).value(percentiles[index] / 1e6);
+			}
+			writer.sample(HTTP_LATENCY, COUNT).label(ENDPOINT, latency.getEndpoint()).value(count);
+			writer.sample(HTTP_LATENCY, SUM).label(ENDPOINT, latency.getEndpoint()).value(sum / 1e6);
+		}
+		writer.family(HTTP_ERRORS, OpenMetricsWriter.COUNTER, HTTP_ERRORS_HELP);
+		for (int endpoint = 0; endpoint < endpoints.size(); endpoint++) {
+			writer.total(HTTP_ERRORS).label(ENDPOINT, endpoints.get(endpoint).getEndpoint()).value(endpoints.get(endpoint).getErrors());
+		}
+	}
+
+	private void writeAlerts(List<Alert> alerts) {
+		if (alerts.isEmpty()) {
+			return;
+		}
+		writer.family(ALERT_FIRING, OpenMetricsWriter.GAUGE, ALERT_FIRING_HELP);
+		for (int index = 0; index < alerts.size(); index++) {
+			writer.sample(ALERT_FIRING).label(NAME, alerts.get(index).getName()).value(alerts.get(index).getState() == AlertState.FIRING ? 1l : 0l);
+		}
+	}
+
+	private void writeThreads(int count, List<ThreadCpuUsage> threads) {
+		if (count < 0) {
+			return;
+		}
+		writer.family(THREADS, OpenMetricsWriter.GAUGE, THREADS_HELP);
+		writer.sample(THREADS).value(count);
+		if (threads.isEmpty()) {
+			return;
+		}
+		writer.family(THREAD_CPU, OpenMetricsWriter.GAUGE, THREAD_CPU_HELP);
+		for (int index = 0; index < threads.size(); index++) {
+			ThreadCpuUsage thread = threads.get(index);
+			writer.sample(THREAD_CPU).label(THREAD, thread.getName()).label(ID, thread.getId()).value(thread.getCpuUsage());
+		}
+	}
+
+	private void writeProcesses(int count, List<ProcessUsage> byCpu, List<ProcessUsage> byResident) {
+		if (count < 0) {
+			return;
+		}
+		writer.family(PROCESSES, OpenMetricsWriter.GAUGE, PROCESSES_HELP);
+		writer.sample(PROCESSES).value(count);
+		if (!byCpu.isEmpty()) {
+			writer.family(PROCESS_CPU, OpenMetricsWriter.GAUGE, PROCESS_CPU_HELP);
+			for (int index = 0; index < byCpu.size(); index++) {
+				ProcessUsage process = byCpu.get(index);
+				writer.sample(PROCESS_CPU).label(PID, process.getPid()).label(NAME, process.getName()).value(process.getCpuUsage());
+			}
+		}
+		if (!byResident.isEmpty()) {
+			writer.family(PROCESS_RESIDENT, OpenMetricsWriter.GAUGE, PROCESS_RESIDENT_HELP);
+			for (int index = 0; index < byResident.size(); index++) {
+				ProcessUsage process = byResident.get(index);
+				writer.sample(PROCESS_RESIDENT).label(PID, process.getPid()).label(NAME, process.getName()).value(process.getResidentSize());
+			}
+		}
+	}
+
+	private void writeInterfaces(NetworkStatistics statistics) {
+		// read under the lock of the statistics, a sample in between could move the interfaces
+		synchronized (statistics) {
+			int interfaces = statistics.getInterfaceCount();
+			for (NetworkCounter counter : NETWORK_COUNTERS) {
+				boolean started = false;
+				for (int index = 0; index < interfaces; index++) {
+					double rate = statistics.getRate(index, counter);
+					if (!statistics.isLive(index) || Double.isNaN(rate)) {
+						// no rate before the second sample of the interface
+						continue;
+					}
+					if (!started) {
+						writer.family(NETWORK_NAMES[counter.ordinal()], OpenMetricsWriter.GAUGE, NETWORK_HELP[counter.ordinal()]);
+						started = true;
+					}
+					writer.sample(NETWORK_NAMES[counter.ordinal()]).label(INTERFACE, statistics.getInterfaceName(index)).value(rate);
+				}
+			}
+		}
+	}
+
+	private void writeDevices(DiskStatistics statistics) {
+		synchronized (statistics) {
+			int devices = statistics.getDeviceCount();
+			for (DiskMetric metric : DISK_METRICS) {
+				boolean started = false;
+				for (int index = 0; index < devices; index++) {
+					double value = statistics.getMetric(index, metric);
+					if (!statistics.isLive(index) || Double.isNaN(value)) {
+						// no figure before the second sample of the device
+						continue;
+					}
+					if (!started) {
+						writer.family(DISK_NAMES[metric.ordinal()], OpenMetricsWriter.GAUGE, DISK_HELP[metric.ordinal()]);
+						started = true;
+					}
+					writer.sample(DISK_NAMES[metric.ordinal()]).label(DEVICE, statistics.getDeviceName(index)).value(value * DISK_SCALES[metric.ordinal()]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param name a camel case name, such as receivedBytes
+	 * @return the name in snake case, such as received_bytes
+	 */
+	private static String snakeCase(String name) {
+		StringBuilder result = new StringBuilder();
+		for (char c : name.toCharArray()) {
+			if (Character.isUpperCase(c)) {
+				result.append('_').append(Character.toLowerCase(c));
+			}
+			else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param statisticsSampler the statisticsSampler to set
+	 */
+	public void setStatisticsSampler(StatisticsSampler statisticsSampler) {
+		this.statisticsSampler = statisticsSampler;
+	}
+
+	/**
+	 * @param garbageCollectionMonitor the garbageCollectionMonitor to set
+	 */
+	public void setGarbageCollectionMonitor(GarbageCollectionMonitor garbageCollectionMonitor) {
+		this.garbageCollectionMonitor = garbageCollectionMonitor;
+	}
+
+	/**
+	 * @param latencyRecorder the latencyRecorder to set
+	 */
+	public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	/**
+	 * @param pushReceiver the pushReceiver to set
+	 */
+	public void setPushReceiver(PushReceiver pushReceiver) {
+		this.pushReceiver = pushReceiver;
+	}
+
+	/**
+	 * @param alertEngine the alertEngine to set
+	 */
+	public void setAlertEngine(AlertEngine alertEngine) {
+		this.alertEngine = alertEngine;
+	}
+
+	/**
+	 * @param threadCpuCollector the threadCpuCollector to set
+	 */
+	public void setThreadCpuCollector(ThreadCpuCollector threadCpuCollector) {
+		this.threadCpuCollector = threadCpuCollector;
+	}
+
+	/**
+	 * @param processCollector the processCollector to set
+	 */
+	public void setProcessCollector(ProcessCollector processCollector) {
+		this.processCollector = processCollector;
+	}
+
+	/**
+	 * @param networkCollector the networkCollector to set
+	 */
+	public void setNetworkCollector(NetworkCollector networkCollector) {
+		this.networkCollector = networkCollector;
+	}
+
+	/**
+	 * @param diskIoCollector the diskIoCollector to set
+	 */
+	public void setDiskIoCollector(DiskIoCollector diskIoCollector) {
+		this.diskIoCollector = diskIoCollector;
+	}
+
+	/**
+	 * @param top the top to set
+	 */
+	public void setTop(int top) {
+		this.top = top;
+	}
+}
@@ -0,0 +1,374 @@
+package com.karens.coding.server.stats.openmetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the OpenMetrics text format into one reused byte buffer. Names are written from byte arrays
+ * encoded once, label values are encoded char by char and numbers are formatted by hand, so rendering
+ * a scrape allocates nothing once the buffer has grown to the size of the exposition.
+ * <p>
+ * Doubles are written with 15 significant digits, all a double holds reliably.
+ * Not thread safe.
+ * @author karen
+ *
+ */
+public final class OpenMetricsWriter {
+
+	public static final byte[] GAUGE = ascii("gauge");
+	public static final byte[] COUNTER = ascii("counter");
+	public static final byte[] SUMMARY = ascii("summary");
+
+	private static final byte[] TYPE = ascii("# TYPE ");
+	private static final byte[] HELP = ascii("# HELP ");
+	private static final byte[] EOF = ascii("# EOF\n");
+	private static final byte[] TOTAL = ascii("_total");
+	private static final byte[] NAN = ascii("NaN");
+	private static final byte[] POSITIVE_INFINITY = ascii("+Inf");
+	private static final byte[] NEGATIVE_INFINITY = ascii("-Inf");
+	private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+	/** Significant digits of the doubles */
+	private static final int DIGITS = 15;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1l;
+		for (int exponent = 1; exponent < POWERS_OF_TEN.length; exponent++) {
+			POWERS_OF_TEN[exponent] = POWERS_OF_TEN[exponent - 1] * 10;
+		}
+	}
+
+	private byte[] buffer;
+	private int size = 0;
+
+	/** True once the first label of the current sample has been written */
+	private boolean labels = false;
+
+	/**
+	 * @param capacity initial size of the buffer, doubled whenever it is full
+	 */
+	public OpenMetricsWriter(int capacity) {
+		this.buffer = new byte[Math.max(16, capacity)];
+	}
+
+	/**
+	 * @param name
+	 * @return the bytes of a name or label key, encoded once
+	 */
+	public static byte[] ascii(String name) {
+		return name.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Forgets what was written, keeping the buffer
+	 */
+	public void reset() {
+		size = 0;
+		labels = false;
+	}
+
+	/**
+	 * Starts a metric family
+	 * @param name name of the family, without the _total of the counters
+	 * @param type GAUGE, COUNTER or SUMMARY
+	 * @param help description of the family
+	 * @return this
+	 */
+	public OpenMetricsWriter family(byte[] name, byte[] type, byte[] help) {
+		write(TYPE);
+		write(name);
+		write((byte) ' ');
+		write(type);
+		write((byte) '\n');
+		write(HELP);
+		write(name);
+		write((byte) ' ');
+		write(help);
+		write((byte) '\n');
+		return this;
+	}
+
+	/**
+	 * Starts a sample
+	 * @param name
+	 * @return this
+	 */
+	public OpenMetricsWriter sample(byte[] name) {
+		write(name);
+		labels = false;
+		return this;
+	}
+
+	/**
+	 * Starts a sample of a counter, named after its family with the _total suffix
+	 * @param name name of the family
+	 * @return this
+	 */
+	public OpenMetricsWriter total(byte[] name) {
+		write(name);
+		write(TOTAL);
+		labels = false;
+		return this;
+	}
+
+	/**
+	 * Starts a sample named after its family with a suffix, such as _count or _sum
+	 * @param name name of the family
+	 * @param suffix
+	 * @return this
+	 */
+	public OpenMetricsWriter sample(byte[] name, byte[] suffix) {
+		write(name);
+		write(suffix);
+		labels = false;
+		return this;
+	}
+
+	/**
+	 * @param key
+	 * @param value escaped and encoded in UTF-8
+	 * @return this
+	 */
+	public OpenMetricsWriter label(byte[] key, String value) {
+		startLabel(key);
+		for (int index = 0; index < value.length(); index++) {
+			char c = value.charAt(index);
+			if (c == '\\' || c == '"') {
+				write((byte) '\\');
+				write((byte) c);
+			}
+			else if (c == '\n') {
+				write((byte) '\\');
+				write((byte) 'n');
+			}
+			else if (c < 0x80) {
+				write((byte) c);
+			}
+			else if (c < 0x800) {
+				write((byte) (0xC0 | (c >> 6)));
+				write((byte) (0x80 | (c & 0x3F)));
+			}
+			else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++index));
+				write((byte) (0xF0 | (codePoint >> 18)));
+				write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				write((byte) (0x80 | (codePoint & 0x3F)));
+			}
+			else if (Character.isSurrogate(c)) {
+				write((byte) '?');
+			}
+			else {
+				write((byte) (0xE0 | (c >> 12)));
+				write((byte) (0x80 | ((c >> 6) & 0x3F)));
+				write((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+		write((byte) '"');
+		return this;
+	}
+
+	/**
+	 * @param key
+	 * @param value written in decimal
+	 * @return this
+	 */
+	public OpenMetricsWriter label(byte[] key, long value) {
+		startLabel(key);
+		writeLong(value);
+		write((byte) '"');
+		return this;
+	}
+
+	/**
+	 * @param key
+	 * @param value already escaped
+	 * @return this
+	 */
+	public OpenMetricsWriter label(byte[] key, byte[] value) {
+		startLabel(key);
+		write(value);
+		write((byte) '"');
+		return this;
+	}
+
+	private void startLabel(byte[] key) {
+		write(labels ? (byte) ',' : (byte) '{');
+		labels = true;
+		write(key);
+		write((byte) '=');
+		write((byte) '"');
+	}
+
+	/**
+	 * Ends the sample
+	 * @param value
+	 */
+	public void value(long value) {
+		endLabels();
+		writeLong(value);
+		write((byte) '\n');
+	}
+
+	/**
+	 * Ends the sample
+	 * @param value
+	 */
+	public void value(double value) {
+		endLabels();
+		writeDouble(value);
+		write((byte) '\n');
+	}
+
+	private void endLabels() {
+		if (labels) {
+			write((byte) '}');
+			labels = false;
+		}
+		write((byte) ' ');
+	}
+
+	/**
+	 * Ends the exposition
+	 */
+	public void eof() {
+		write(EOF);
+	}
+
+	private void writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			write(MIN_LONG);
+			return;
+		}
+		if (value < 0) {
+			write((byte) '-');
+			value = -value;
+		}
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+			digits++;
+		}
+		ensure(digits);
+		for (int index = size + digits - 1; index >= size; index--) {
+			buffer[index] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		size += digits;
+	}
+
+	private void writeDouble(double value) {
+		if (Double.isNaN(value)) {
+			write(NAN);
+			return;
+		}
+		if (Double.isInfinite(value)) {
+			write(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+			return;
+		}
+		if (value == (long) value && Math.abs(value) < 1e15) {
+			writeLong((long) value);
+			return;
+		}
+		if (value < 0) {
+			write((byte) '-');
+			value = -value;
+		}
+		int exponent = (int) Math.floor(Math.log10(value));
+		if (exponent >= -3 && exponent < 15) {
+			writeFixed(value, exponent);
+			return;
+		}
+		// scientific notation, the mantissa in [1,10)
+		double mantissa = value / Math.pow(10, exponent);
+		if (mantissa >= 10) {
+			mantissa /= 10;
+			exponent++;
+		}
+		else if (mantissa < 1) {
+			mantissa *= 10;
+			exponent--;
+		}
+		writeFixed(mantissa, 0);
+		write((byte) 'e');
+		writeLong(exponent);
+	}
+
+	/**
+	 * @param value positive
+	 * @param exponent of the highest digit of the value
+	 */
+	private void writeFixed(double value, int exponent) {
+		int decimals = Math.max(0, DIGITS - 1 - exponent);
+		long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+		long integer = scaled / POWERS_OF_TEN[decimals];
+		long fraction = scaled % POWERS_OF_TEN[decimals];
+		writeLong(integer);
+		if (fraction == 0) {
+			return;
+		}
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			decimals--;
+		}
+		write((byte) '.');
+		ensure(decimals);
+		for (int index = size + decimals - 1; index >= size; index--) {
+			buffer[index] = (byte) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		size += decimals;
+	}
+
+	private void write(byte b) {
+		ensure(1);
+		buffer[size++] = b;
+	}
+
+	private void write(byte[] bytes) {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, size, bytes.length);
+		size += bytes.length;
+	}
+
+	private void ensure(int length) {
+		if (size + length > buffer.length) {
+			byte[] grown = new byte[Math.max(buffer.length * 2, size + length)];
+			System.arraycopy(buffer, 0, grown, 0, size);
+			buffer = grown;
+		}
+	}
+
+	/**
+	 * @param out receives the bytes written since the last reset
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buffer, 0, size);
+	}
+
+	/**
+	 * @return a copy of the bytes written since the last reset
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	/**
+	 * @return the number of bytes written since the last reset
+	 */
+	public int size() {
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return new String(buffer, 0, size, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,32 @@
+package com.karens.coding.server.stats.proc;
+
+/**
+ * Figures of a block device computed by {@link DiskStatistics} from the deltas of its /proc/diskstats counters
+ * @author karen
+ *
+ */
+public enum DiskMetric {
+	/** Read requests completed per second */
+	READS_PER_SECOND("readsPerSecond"),
+	/** Write requests completed per second */
+	WRITES_PER_SECOND("writesPerSecond"),
+	READ_BYTES_PER_SECOND("readBytesPerSecond"),
+	WRITTEN_BYTES_PER_SECOND("writtenBytesPerSecond"),
+	/** Average time of the completed requests in milliseconds, from queued to done */
+	AWAIT("await"),
+	/** Share of the time the device had requests in flight, in the [0.0,1.0] interval */
+	UTILIZATION("utilization");
+
+	private final String name;
+
+	private DiskMetric(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,261 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * I/O of the block devices, from the counters of /proc/diskstats.
+ * The file stays open and is parsed in place; the counters of each device are kept in primitive arrays,
+ * indexed by the slot of the device in a {@link NameTable}. The metric names of a device are built once,
+ * when it appears, and devices whose name matches the excluded pattern are skipped without being parsed.
+ * <p>
+ * Figures are computed from the counter deltas of two consecutive samples, a device has none on its first sample
+ * or when a counter went backwards. A device missing from a sample, such as a detached volume, is dropped, its slot
+ * is reused and the names of its metrics are listed by {@link #getEvictedMetricNames()} until the next sample.
+ * @author karen
+ *
+ */
+public final class DiskStatistics {
+
+	/** Unit of the sector counters, whatever the sector size of the device */
+	public static final long SECTOR_SIZE = 512l;
+
+	/** Counters kept per device, in the order of their columns */
+	private static final int READS = 0;
+	private static final int SECTORS_READ = 1;
+	private static final int READ_MILLIS = 2;
+	private static final int WRITES = 3;
+	private static final int SECTORS_WRITTEN = 4;
+	private static final int WRITE_MILLIS = 5;
+	private static final int IO_MILLIS = 6;
+	private static final int COUNTERS = 7;
+
+	/** Counter of each column after the device name, -1 for the columns that are not kept */
+	private static final int[] COLUMNS = { READS, -1, SECTORS_READ, READ_MILLIS, WRITES, -1, SECTORS_WRITTEN, WRITE_MILLIS, -1, IO_MILLIS };
+
+	private static final int METRICS = DiskMetric.values().length;
+
+	private final ProcFile diskstats;
+
+	/** Device names matching it are ignored, null to keep every device */
+	private final Pattern excluded;
+
+	/** Slots of the devices */
+	private final NameTable devices = new NameTable();
+	private boolean[] ignored = new boolean[0];
+	/** Major number in the high 32 bits and minor number in the low 32 bits of each device slot */
+	private long[] numbers = new long[0];
+
+	/** COUNTERS counters and METRICS metrics and metric names per device slot */
+	private long[] counters = new long[0];
+	private double[] metrics = new double[0];
+	private String[] metricNames = new String[0];
+
+	/** Metric names of the devices dropped by the last sample */
+	private final List<String> evicted = new ArrayList<String>();
+
+	private long previousNanos = 0l;
+
+	/**
+	 * Opens /proc/diskstats of a /proc tree
+	 * @param root the /proc directory, or a copy of it
+	 * @param excluded regular expression of the device names to ignore, such as loop devices, null or empty for none
+	 * @throws IOException if the file cannot be opened
+	 */
+	public DiskStatistics(File root, String excluded) throws IOException {
+		diskstats = new ProcFile(new File(root, "diskstats"), 16384);
+		this.excluded = excluded == null || excluded.trim().isEmpty() ? null : Pattern.compile(excluded.trim());
+	}
+
+	/**
+	 * Reads the counters of every device, updates the figures and drops the devices no longer listed
+	 * @param nanos monotonic time of the sample, such as System.nanoTime()
+	 * @throws IOException
+	 */
+	public synchronized void sample(long nanos) throws IOException {
+		diskstats.read();
+		double millis = previousNanos == 0l ? 0.0 : (nanos - previousNanos) / 1e6;
+		previousNanos = nanos;
+		devices.startSample();
+		evicted.clear();
+		int line = 0;
+		while (diskstats.hasRemaining()) {
+			long major = diskstats.nextLong();
+			long minor = diskstats.nextLong();
+			diskstats.skipSeparators();
+			int nameStart = diskstats.position();
+			diskstats.skipField();
+			int nameEnd = diskstats.position();
+			if (nameEnd > nameStart) {
+				int slot = slotOf(nameStart, nameEnd, line);
+				numbers[slot] = major << 32 | minor;
+				// excluded devices are kept listed, or they would take a new slot on every sample
+				boolean listed = devices.see(slot);
+				if (!ignored[slot]) {
+					read(slot, millis, listed && millis > 0);
+				}
+			}
+			diskstats.nextLine();
+			line++;
+		}
+		for (int slot = 0; slot < devices.getCapacity(); slot++) {
+			if (devices.evictIfMissing(slot)) {
+				for (int index = slot * METRICS; index < (slot + 1) * METRICS; index++) {
+					if (!ignored[slot]) {
+						evicted.add(metricNames[index]);
+					}
+					metricNames[index] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the slot of the device named by the bytes, with its metric names
+	 */
+	private int slotOf(int nameStart, int nameEnd, int line) {
+		int slot = devices.find(diskstats, nameStart, nameEnd, line);
+		int capacity = devices.getCapacity();
+		if (capacity > ignored.length) {
+			ignored = Arrays.copyOf(ignored, capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+			counters = Arrays.copyOf(counters, capacity * COUNTERS);
+			metrics = Arrays.copyOf(metrics, capacity * METRICS);
+			metricNames = Arrays.copyOf(metricNames, capacity * METRICS);
+		}
+		if (metricNames[slot * METRICS] == null) {
+			String name = devices.getName(slot);
+			ignored[slot] = excluded != null && excluded.matcher(name).matches();
+			for (DiskMetric metric : DiskMetric.values()) {
+				metricNames[slot * METRICS + metric.ordinal()] = "disk." + name + "." + metric.getName();
+				metrics[slot * METRICS + metric.ordinal()] = Double.NaN;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @param millis elapsed since the previous sample
+	 * @param measured false for a device new to this sample, its previous counters are unknown
+	 */
+	private void read(int index, double millis, boolean measured) {
+		int base = index * COUNTERS;
+		long reads = 0;
+		long sectorsRead = 0;
+		long readMillis = 0;
+		long writes = 0;
+		long sectorsWritten = 0;
+		long writeMillis = 0;
+		long ioMillis = 0;
+		for (int column = 0; column < COLUMNS.length; column++) {
+			long value = diskstats.nextLong();
+			int counter = COLUMNS[column];
+			if (counter < 0) {
+				continue;
+			}
+			long delta = value - counters[base + counter];
+			if (delta < 0) {
+				measured = false;
+			}
+			counters[base + counter] = value;
+			switch (counter) {
+			case READS:
+				reads = delta;
+				break;
+			case SECTORS_READ:
+				sectorsRead = delta;
+				break;
+			case READ_MILLIS:
+				readMillis = delta;
+				break;
+			case WRITES:
+				writes = delta;
+				break;
+			case SECTORS_WRITTEN:
+				sectorsWritten = delta;
+				break;
+			case WRITE_MILLIS:
+				writeMillis = delta;
+				break;
+			default:
+				ioMillis = delta;
+				break;
+			}
+		}
+		int slot = index * METRICS;
+		if (!measured) {
+			Arrays.fill(metrics, slot, slot + METRICS, Double.NaN);
+			return;
+		}
+		double seconds = millis / 1000;
+		metrics[slot + DiskMetric.READS_PER_SECOND.ordinal()] = reads / seconds;
+		metrics[slot + DiskMetric.WRITES_PER_SECOND.ordinal()] = writes / seconds;
+		metrics[slot + DiskMetric.READ_BYTES_PER_SECOND.ordinal()] = sectorsRead * SECTOR_SIZE / seconds;
+		metrics[slot + DiskMetric.WRITTEN_BYTES_PER_SECOND.ordinal()] = sectorsWritten * SECTOR_SIZE / seconds;
+		long requests = reads + writes;
+		metrics[slot + DiskMetric.AWAIT.ordinal()] = requests > 0 ? (double) (readMillis + writeMillis) / requests : 0.0;
+		metrics[slot + DiskMetric.UTILIZATION.ordinal()] = Math.min(1.0, ioMillis / millis);
+	}
+
+	/**
+	 * @return the number of device slots, live or free, the indexes of the other getters are below it
+	 */
+	public synchronized int getDeviceCount() {
+		return devices.getCapacity();
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @return its name, such as sda1, or null for a free slot
+	 */
+	public synchronized String getDeviceName(int index) {
+		return devices.getName(index);
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @return its major and minor numbers, such as 8:1, as listed by /proc/self/mountinfo
+	 */
+	public synchronized String getDeviceNumber(int index) {
+		return (numbers[index] >>> 32) + ":" + (numbers[index] & 0xffffffffl);
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @return true if the last sample listed it and it is not excluded
+	 */
+	public synchronized boolean isLive(int index) {
+		return devices.isLive(index) && !ignored[index];
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @param metric
+	 * @return the figure between the last two samples, NaN if unknown
+	 */
+	public synchronized double getMetric(int index, DiskMetric metric) {
+		return metrics[index * METRICS + metric.ordinal()];
+	}
+
+	/**
+	 * @param index slot of the device
+	 * @param metric
+	 * @return the name of the history metric of the figure, such as disk.sda1.readBytesPerSecond
+	 */
+	public synchronized String getMetricName(int index, DiskMetric metric) {
+		return metricNames[index * METRICS + metric.ordinal()];
+	}
+
+	/**
+	 * @return the metric names of the devices the last sample no longer listed, excluded devices left out
+	 */
+	public synchronized List<String> getEvictedMetricNames() {
+		return evicted.isEmpty() ? Collections.<String>emptyList() : new ArrayList<String>(evicted);
+	}
+}
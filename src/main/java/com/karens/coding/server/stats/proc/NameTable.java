@@ -0,0 +1,118 @@
+package com.karens.coding.server.stats.proc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Names listed by a /proc file, such as network interfaces or block devices, each bound to a slot: the index
+ * of its entries in the primitive arrays of the owner. Names are matched against the bytes of the file in place,
+ * so a sample allocates nothing once every name listed has a slot.
+ * <p>
+ * A name missing from a sample is evicted and its slot reused by the next new name, the number of slots
+ * stays bounded by the number of names listed at once.
+ * <p>
+ * Not thread safe, guarded by its owner.
+ * @author karen
+ *
+ */
+final class NameTable {
+
+	/** Slots, index below {@link #capacity}, a free slot has a null name */
+	private int capacity = 0;
+	private byte[][] bytes = new byte[0][];
+	private String[] names = new String[0];
+	/** Number of the last sample listing the name of each slot, -1 for a name not listed yet */
+	private long[] seenAt = new long[0];
+
+	private long samples = 0l;
+
+	/**
+	 * Starts a sample, the names it does not list are evicted by {@link #evictIfMissing(int)}
+	 */
+	void startSample() {
+		samples++;
+	}
+
+	/**
+	 * @param file the file at the line listing the name
+	 * @param from inclusive index of the name in the file
+	 * @param to exclusive index of the name in the file
+	 * @param line number of the line, the files list their names in the same order on every sample
+	 * @return the slot of the name, bound to a free or new slot if the name is not known
+	 */
+	int find(ProcFile file, int from, int to, int line) {
+		if (line < capacity && bytes[line] != null && file.matches(from, to, bytes[line])) {
+			return line;
+		}
+		int free = -1;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (bytes[slot] == null) {
+				if (free < 0) {
+					free = slot;
+				}
+			}
+			else if (file.matches(from, to, bytes[slot])) {
+				return slot;
+			}
+		}
+		if (free < 0) {
+			free = capacity++;
+			bytes = Arrays.copyOf(bytes, capacity);
+			names = Arrays.copyOf(names, capacity);
+			seenAt = Arrays.copyOf(seenAt, capacity);
+		}
+		String name = file.text(from, to);
+		bytes[free] = name.getBytes(StandardCharsets.UTF_8);
+		names[free] = name;
+		seenAt[free] = -1l;
+		return free;
+	}
+
+	/**
+	 * Marks the name of a slot as listed by the current sample
+	 * @param slot
+	 * @return true if the previous sample listed it too, so that its counters can be compared
+	 */
+	boolean see(int slot) {
+		boolean listed = seenAt[slot] == samples - 1;
+		seenAt[slot] = samples;
+		return listed;
+	}
+
+	/**
+	 * Frees a slot whose name the current sample did not list
+	 * @param slot
+	 * @return true if the slot held a name and was freed
+	 */
+	boolean evictIfMissing(int slot) {
+		if (bytes[slot] == null || seenAt[slot] == samples) {
+			return false;
+		}
+		bytes[slot] = null;
+		names[slot] = null;
+		return true;
+	}
+
+	/**
+	 * @return the number of slots, bound or free, the owner sizes its arrays after it
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param slot
+	 * @return the name bound to the slot, null for a free slot
+	 */
+	String getName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @return true if the last sample listed the name of the slot
+	 */
+	boolean isLive(int slot) {
+		return bytes[slot] != null && seenAt[slot] == samples;
+	}
+}
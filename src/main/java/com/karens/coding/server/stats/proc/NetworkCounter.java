@@ -0,0 +1,52 @@
+package com.karens.coding.server.stats.proc;
+
+/**
+ * Counters of a network interface in /proc/net/dev, published as rates per second
+ * @author karen
+ *
+ */
+public enum NetworkCounter {
+	RECEIVED_BYTES("receivedBytes", 0),
+	RECEIVED_PACKETS("receivedPackets", 1),
+	RECEIVE_ERRORS("receiveErrors", 2),
+	RECEIVE_DROPS("receiveDrops", 3),
+	TRANSMITTED_BYTES("transmittedBytes", 8),
+	TRANSMITTED_PACKETS("transmittedPackets", 9),
+	TRANSMIT_ERRORS("transmitErrors", 10),
+	TRANSMIT_DROPS("transmitDrops", 11);
+
+	/** Number of columns of an interface line, receive then transmit */
+	static final int COLUMNS = 16;
+
+	/** Counter of each column, null for the columns that are not read */
+	private static final NetworkCounter[] BY_COLUMN = new NetworkCounter[COLUMNS];
+
+	static {
+		for (NetworkCounter counter : values()) {
+			BY_COLUMN[counter.column] = counter;
+		}
+	}
+
+	private final String name;
+	private final int column;
+
+	private NetworkCounter(String name, int column) {
+		this.name = name;
+		this.column = column;
+	}
+
+	/**
+	 * @param column index of the column after the interface name
+	 * @return the counter of the column, or null
+	 */
+	static NetworkCounter forColumn(int column) {
+		return BY_COLUMN[column];
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,179 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Throughput of the network interfaces, from the counters of /proc/net/dev.
+ * The file stays open and is parsed in place; the counters of each interface are kept in primitive arrays,
+ * indexed by the slot of the interface in a {@link NameTable}. The metric names of an interface are built
+ * once, when it appears.
+ * <p>
+ * Rates are the counter deltas of two consecutive samples, an interface has none on its first sample
+ * or when a counter went backwards, such as a 32 bit counter wrapping around or a device being reset.
+ * An interface missing from a sample is dropped, its slot is reused and the names of its metrics are listed
+ * by {@link #getEvictedMetricNames()} until the next sample.
+ * @author karen
+ *
+ */
+public final class NetworkStatistics {
+
+	private static final int COUNTERS = NetworkCounter.values().length;
+
+	private final ProcFile dev;
+
+	/** Slots of the interfaces */
+	private final NameTable interfaces = new NameTable();
+
+	/** Metric names, counters and rates of the interface slots, COUNTERS entries per slot */
+	private String[] metricNames = new String[0];
+	private long[] counters = new long[0];
+	private double[] rates = new double[0];
+
+	/** Metric names of the interfaces dropped by the last sample */
+	private final List<String> evicted = new ArrayList<String>();
+
+	private long previousNanos = 0l;
+
+	/**
+	 * Opens /proc/net/dev of a /proc tree
+	 * @param root the /proc directory, or a copy of it
+	 * @throws IOException if the file cannot be opened
+	 */
+	public NetworkStatistics(File root) throws IOException {
+		dev = new ProcFile(new File(root, "net/dev"), 4096);
+	}
+
+	/**
+	 * Reads the counters of every interface, updates the rates and drops the interfaces no longer listed
+	 * @param nanos monotonic time of the sample, such as System.nanoTime()
+	 * @throws IOException
+	 */
+	public synchronized void sample(long nanos) throws IOException {
+		dev.read();
+		double seconds = previousNanos == 0l ? 0.0 : (nanos - previousNanos) / 1e9;
+		previousNanos = nanos;
+		interfaces.startSample();
+		evicted.clear();
+		// two header lines
+		dev.nextLine();
+		dev.nextLine();
+		int line = 0;
+		while (dev.hasRemaining()) {
+			dev.skipSeparators();
+			int nameStart = dev.position();
+			dev.skipField();
+			int nameEnd = dev.position();
+			if (nameEnd > nameStart) {
+				read(slotOf(nameStart, nameEnd, line), seconds);
+			}
+			dev.nextLine();
+			line++;
+		}
+		for (int slot = 0; slot < interfaces.getCapacity(); slot++) {
+			if (interfaces.evictIfMissing(slot)) {
+				for (int index = slot * COUNTERS; index < (slot + 1) * COUNTERS; index++) {
+					evicted.add(metricNames[index]);
+					metricNames[index] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the slot of the interface named by the bytes, with its metric names
+	 */
+	private int slotOf(int nameStart, int nameEnd, int line) {
+		int slot = interfaces.find(dev, nameStart, nameEnd, line);
+		if (interfaces.getCapacity() * COUNTERS > metricNames.length) {
+			metricNames = Arrays.copyOf(metricNames, interfaces.getCapacity() * COUNTERS);
+			counters = Arrays.copyOf(counters, interfaces.getCapacity() * COUNTERS);
+			rates = Arrays.copyOf(rates, interfaces.getCapacity() * COUNTERS);
+		}
+		if (metricNames[slot * COUNTERS] == null) {
+			String name = interfaces.getName(slot);
+			for (NetworkCounter counter : NetworkCounter.values()) {
+				metricNames[slot * COUNTERS + counter.ordinal()] = "network." + name + "." + counter.getName() + "PerSecond";
+			}
+		}
+		return slot;
+	}
+
+	private void read(int slot, double seconds) {
+		// an interface new to this sample has no previous counters
+		boolean measured = interfaces.see(slot) && seconds > 0;
+		int base = slot * COUNTERS;
+		for (int column = 0; column < NetworkCounter.COLUMNS; column++) {
+			long value = dev.nextLong();
+			NetworkCounter counter = NetworkCounter.forColumn(column);
+			if (counter == null) {
+				continue;
+			}
+			int entry = base + counter.ordinal();
+			long delta = value - counters[entry];
+			rates[entry] = measured && delta >= 0 ? delta / seconds : Double.NaN;
+			counters[entry] = value;
+		}
+	}
+
+	/**
+	 * @return the number of interface slots, live or free, the indexes of the other getters are below it
+	 */
+	public synchronized int getInterfaceCount() {
+		return interfaces.getCapacity();
+	}
+
+	/**
+	 * @param index slot of the interface
+	 * @return its name, such as eth0, or null for a free slot
+	 */
+	public synchronized String getInterfaceName(int index) {
+		return interfaces.getName(index);
+	}
+
+	/**
+	 * @param index slot of the interface
+	 * @return true if the last sample listed it
+	 */
+	public synchronized boolean isLive(int index) {
+		return interfaces.isLive(index);
+	}
+
+	/**
+	 * @param index slot of the interface
+	 * @param counter
+	 * @return the rate per second between the last two samples, NaN if unknown
+	 */
+	public synchronized double getRate(int index, NetworkCounter counter) {
+		return rates[index * COUNTERS + counter.ordinal()];
+	}
+
+	/**
+	 * @param index slot of the interface
+	 * @param counter
+	 * @return the counter at the last sample
+	 */
+	public synchronized long getCounter(int index, NetworkCounter counter) {
+		return counters[index * COUNTERS + counter.ordinal()];
+	}
+
+	/**
+	 * @param index slot of the interface
+	 * @param counter
+	 * @return the name of the history metric of the rate, such as network.eth0.receivedBytesPerSecond
+	 */
+	public synchronized String getMetricName(int index, NetworkCounter counter) {
+		return metricNames[index * COUNTERS + counter.ordinal()];
+	}
+
+	/**
+	 * @return the metric names of the interfaces the last sample no longer listed
+	 */
+	public synchronized List<String> getEvictedMetricNames() {
+		return evicted.isEmpty() ? Collections.<String>emptyList() : new ArrayList<String>(evicted);
+	}
+}
@@ -0,0 +1,323 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A /proc file kept open and read again from offset 0 into a reused direct buffer,
+ * with a cursor to parse its numbers in place. Reading and parsing allocate nothing
+ * once the buffer is large enough for the file.
+ * <p>
+ * Without a file of its own, the buffer is reused for many files opened and read once each,
+ * such as the stat files of the processes.
+ * <p>
+ * Not thread safe, one reader at a time.
+ * @author karen
+ *
+ */
+public final class ProcFile implements Closeable {
+
+	/** The file kept open, null if every read opens its own */
+	private final File file;
+	private final FileChannel channel;
+	private ByteBuffer buffer;
+
+	/** Cursor of the parser */
+	private int position;
+	private int limit;
+
+	/**
+	 * @param file
+	 * @param initialCapacity size of the buffer in bytes, doubled whenever the file does not fit
+	 * @throws IOException if the file cannot be opened
+	 */
+	public ProcFile(File file, int initialCapacity) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+	}
+
+	/**
+	 * @param initialCapacity size of the buffer in bytes, doubled whenever a file does not fit
+	 */
+	public ProcFile(int initialCapacity) {
+		this.file = null;
+		this.channel = null;
+		this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+	}
+
+	/**
+	 * Reads the whole file and moves the cursor to its first byte.
+	 * /proc files are generated on read, a positional read at 0 returns the current content.
+	 * @throws IOException
+	 * @throws IllegalStateException if this reader has no file of its own, see {@link #read(Path)}
+	 */
+	public void read() throws IOException {
+		if (channel == null) {
+			throw new IllegalStateException("No file kept open, read each file with read(Path)");
+		}
+		read(channel);
+	}
+
+	/**
+	 * Opens a file, reads it whole and closes it
+	 * @param path
+	 * @return false if the file could not be opened or read, such as the files of an exited process
+	 */
+	public boolean read(Path path) {
+		FileChannel opened;
+		try {
+			opened = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return false;
+		}
+		try {
+			read(opened);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				opened.close();
+			} catch (IOException e) {
+				// nothing was written
+			}
+		}
+	}
+
+	private void read(FileChannel channel) throws IOException {
+		while (true) {
+			buffer.clear();
+			long offset = 0;
+			int read;
+			while (buffer.hasRemaining() && (read = channel.read(buffer, offset)) > 0) {
+				offset += read;
+			}
+			if (buffer.hasRemaining()) {
+				break;
+			}
+			// possibly truncated, read again with a larger buffer
+			buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+		}
+		limit = buffer.position();
+		position = 0;
+	}
+
+	/**
+	 * @return true until the cursor reaches the end of the content
+	 */
+	public boolean hasRemaining() {
+		return position < limit;
+	}
+
+	/**
+	 * @param prefix ASCII bytes
+	 * @return true if the content at the cursor starts with the prefix
+	 */
+	public boolean startsWith(byte[] prefix) {
+		if (position + prefix.length > limit) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(position + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the index of the cursor
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * @param from inclusive index
+	 * @param to exclusive index
+	 * @param bytes
+	 * @return true if the range holds exactly these bytes
+	 */
+	public boolean matches(int from, int to, byte[] bytes) {
+		if (to - from != bytes.length || to > limit) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(from + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param from inclusive index
+	 * @param to exclusive index
+	 * @return a hash of the bytes in the range, to tell whether they changed without decoding them
+	 */
+	public int hash(int from, int to) {
+		int hash = 1;
+		for (int index = from; index < to && index < limit; index++) {
+			hash = 31 * hash + buffer.get(index);
+		}
+		return hash;
+	}
+
+	/**
+	 * @param from inclusive index
+	 * @param to exclusive index
+	 * @return the bytes in the range, decoded as UTF-8
+	 */
+	public String text(int from, int to) {
+		byte[] bytes = new byte[Math.max(0, Math.min(to, limit) - from)];
+		for (int index = 0; index < bytes.length; index++) {
+			bytes[index] = buffer.get(from + index);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the byte at the cursor, or -1 at the end of the content
+	 */
+	public int peek() {
+		return position < limit ? buffer.get(position) : -1;
+	}
+
+	/**
+	 * @param count number of bytes to move the cursor by
+	 */
+	public void skip(int count) {
+		position = Math.min(limit, position + count);
+	}
+
+	/**
+	 * Moves the cursor to the first byte of the next line
+	 */
+	public void nextLine() {
+		while (position < limit && buffer.get(position++) != '\n') {
+			// skip
+		}
+	}
+
+	/**
+	 * Moves the cursor past the last occurrence of a byte
+	 * @param value
+	 * @return false if the byte does not occur, the cursor is left unchanged
+	 */
+	public boolean skipPastLast(byte value) {
+		for (int index = limit - 1; index >= position; index--) {
+			if (buffer.get(index) == value) {
+				position = index + 1;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the separators on the current line, then the next field
+	 */
+	public void skipField() {
+		skipSeparators();
+		while (position < limit && !isSeparator(buffer.get(position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * Parses the next integer of the current line, skipping separators and a trailing unit
+	 * @return the value, or -1 if the line has no more field
+	 */
+	public long nextLong() {
+		skipSeparators();
+		if (position >= limit || buffer.get(position) == '\n') {
+			return -1l;
+		}
+		boolean negative = buffer.get(position) == '-';
+		if (negative) {
+			position++;
+		}
+		long value = 0;
+		byte current;
+		while (position < limit && (current = buffer.get(position)) >= '0' && current <= '9') {
+			value = value * 10 + (current - '0');
+			position++;
+		}
+		skipToSeparator();
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the next decimal number of the current line, such as 0.56
+	 * @return the value, or NaN if the line has no more field
+	 */
+	public double nextDouble() {
+		skipSeparators();
+		if (position >= limit || buffer.get(position) == '\n') {
+			return Double.NaN;
+		}
+		boolean negative = buffer.get(position) == '-';
+		if (negative) {
+			position++;
+		}
+		long mantissa = 0;
+		long scale = 1;
+		boolean fraction = false;
+		byte current;
+		while (position < limit && ((current = buffer.get(position)) >= '0' && current <= '9' || current == '.')) {
+			if (current == '.') {
+				fraction = true;
+			}
+			else {
+				mantissa = mantissa * 10 + (current - '0');
+				if (fraction) {
+					scale *= 10;
+				}
+			}
+			position++;
+		}
+		skipToSeparator();
+		double value = (double) mantissa / scale;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skips the separators on the current line
+	 */
+	public void skipSeparators() {
+		while (position < limit && isSeparator(buffer.get(position)) && buffer.get(position) != '\n') {
+			position++;
+		}
+	}
+
+	private void skipToSeparator() {
+		while (position < limit && !isSeparator(buffer.get(position))) {
+			position++;
+		}
+	}
+
+	private static boolean isSeparator(byte value) {
+		return value == ' ' || value == '\t' || value == '\n' || value == ':' || value == '/';
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Linux statistics read from /proc/stat, /proc/meminfo, /proc/loadavg and /proc/self/stat.
+ * The files stay open and are parsed in place, a sample allocates nothing once the per-core arrays are sized.
+ * <p>
+ * CPU utilization is computed from the tick counters of two consecutive samples, so it never sleeps:
+ * the first sample reports the utilization since boot.
+ * @author karen
+ *
+ */
+public final class ProcStatistics {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(ProcStatistics.class);
+
+	/** USER_HZ, the unit of the tick counters, from getconf CLK_TCK or 100 */
+	public static final long TICKS_PER_SECOND = hostConstant("CLK_TCK", 100l);
+
+	/** Size of a memory page, for the resident sets, from getconf PAGESIZE or 4096, arm64 and ppc64 hosts may use 16K or 64K pages */
+	public static final long PAGE_SIZE = hostConstant("PAGESIZE", 4096l);
+
+	private static final byte[] CPU = ascii("cpu");
+	private static final byte[] MEM_TOTAL = ascii("MemTotal:");
+	private static final byte[] MEM_FREE = ascii("MemFree:");
+	private static final byte[] MEM_AVAILABLE = ascii("MemAvailable:");
+	private static final byte[] BUFFERS = ascii("Buffers:");
+	private static final byte[] CACHED = ascii("Cached:");
+	private static final byte[] SWAP_TOTAL = ascii("SwapTotal:");
+	private static final byte[] SWAP_FREE = ascii("SwapFree:");
+
+	/** Collector of the /proc of the running system, null when unavailable */
+	private static class PlatformHolder {
+		static final ProcStatistics INSTANCE = createPlatform();
+	}
+
+	private final ProcFile stat;
+	private final ProcFile meminfo;
+	private final ProcFile loadavg;
+	private final ProcFile selfStat;
+
+	/** Total and idle ticks of the previous sample, aggregate first then one per core */
+	private long[] previousTotal = new long[0];
+	private long[] previousIdle = new long[0];
+
+	/** Utilization in [0.0,1.0], aggregate first then one per core */
+	private double[] utilization = new double[0];
+
+	private int cores;
+
+	/** Aggregate ticks elapsed between the last two samples, for the process utilization */
+	private long elapsedTicks = 0l;
+	private long previousProcessTicks = -1l;
+	private double processUtilization = Double.NaN;
+
+	private long memTotal = -1l;
+	private long memFree = -1l;
+	private long memAvailable = -1l;
+	private long buffers = -1l;
+	private long cached = -1l;
+	private long swapTotal = -1l;
+	private long swapFree = -1l;
+
+	private double loadAverage1 = Double.NaN;
+	private double loadAverage5 = Double.NaN;
+	private double loadAverage15 = Double.NaN;
+	private long runningTasks = -1l;
+	private long totalTasks = -1l;
+
+	private long processUserTicks = -1l;
+	private long processSystemTicks = -1l;
+	private long processVirtualSize = -1l;
+	private long processResidentPages = -1l;
+	private long processThreads = -1l;
+
+	/** True once a sample has been read */
+	private boolean sampled;
+
+	/**
+	 * Opens the files of a /proc tree
+	 * @param root the /proc directory, or a copy of it
+	 * @throws IOException if one of the files cannot be opened
+	 */
+	public ProcStatistics(File root) throws IOException {
+		stat = new ProcFile(new File(root, "stat"), 16384);
+		meminfo = new ProcFile(new File(root, "meminfo"), 4096);
+		loadavg = new ProcFile(new File(root, "loadavg"), 128);
+		selfStat = new ProcFile(new File(root, "self/stat"), 1024);
+	}
+
+	/**
+	 * @return the collector of the running system, or null when /proc is not available
+	 */
+	public static ProcStatistics getInstance() {
+		return PlatformHolder.INSTANCE;
+	}
+
+	private static ProcStatistics createPlatform() {
+		File root = new File("/proc");
+		if (!new File(root, "stat").isFile()) {
+			return null;
+		}
+		try {
+			ProcStatistics statistics = new ProcStatistics(root);
+			statistics.sample();
+			logger.info("Reading operating system statistics from " + root);
+			return statistics;
+		} catch (IOException e) {
+			logger.warn("Unable to read " + root + ", falling back to the OperatingSystemMXBean " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Asks getconf for a system constant, once at startup
+	 * @param name such as PAGESIZE
+	 * @param fallback value when getconf is missing or prints no positive number
+	 * @return the value
+	 */
+	static long hostConstant(String name, long fallback) {
+		try {
+			Process process = new ProcessBuilder("getconf", name).redirectErrorStream(true).start();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			InputStream input = process.getInputStream();
+			try {
+				byte[] buffer = new byte[64];
+				int read;
+				while ((read = input.read(buffer)) > 0) {
+					output.write(buffer, 0, read);
+				}
+			} finally {
+				input.close();
+			}
+			if (!process.waitFor(5, TimeUnit.SECONDS)) {
+				process.destroy();
+				logger.warn("getconf " + name + " did not exit, using " + fallback);
+				return fallback;
+			}
+			long value = Long.parseLong(new String(output.toByteArray(), StandardCharsets.US_ASCII).trim());
+			if (process.exitValue() == 0 && value > 0) {
+				return value;
+			}
+		} catch (IOException | NumberFormatException e) {
+			logger.debug("Unable to run getconf " + name + " " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Unable to read " + name + " from the host, using " + fallback);
+		return fallback;
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Reads every file and updates the statistics
+	 * @throws IOException
+	 */
+	public synchronized void sample() throws IOException {
+		readStat();
+		readMeminfo();
+		readLoadavg();
+		readSelfStat();
+		sampled = true;
+	}
+
+	/**
+	 * @return true once a sample has been read
+	 */
+	public synchronized boolean isSampled() {
+		return sampled;
+	}
+
+	private void readStat() throws IOException {
+		stat.read();
+		int index = 0;
+		while (stat.hasRemaining() && stat.startsWith(CPU)) {
+			stat.skipField();
+			long user = stat.nextLong();
+			long nice = stat.nextLong();
+			long system = stat.nextLong();
+			long idle = stat.nextLong();
+			long iowait = Math.max(0, stat.nextLong());
+			long irq = Math.max(0, stat.nextLong());
+			long softirq = Math.max(0, stat.nextLong());
+			long steal = Math.max(0, stat.nextLong());
+			// guest time is already accounted in user and nice
+			long total = user + nice + system + idle + iowait + irq + softirq + steal;
+			long idleTotal = idle + iowait;
+			if (index == previousTotal.length) {
+				grow(index + 1);
+			}
+			long totalDelta = total - previousTotal[index];
+			long idleDelta = idleTotal - previousIdle[index];
+			if (totalDelta > 0) {
+				utilization[index] = Math.max(0.0, Math.min(1.0, (double) (totalDelta - idleDelta) / totalDelta));
+			}
+			if (index == 0) {
+				// the aggregate counts the ticks of every core
+				elapsedTicks = totalDelta;
+			}
+			previousTotal[index] = total;
+			previousIdle[index] = idleTotal;
+			index++;
+			stat.nextLine();
+		}
+		cores = Math.max(0, index - 1);
+	}
+
+	private void grow(int length) {
+		previousTotal = Arrays.copyOf(previousTotal, length);
+		previousIdle = Arrays.copyOf(previousIdle, length);
+		utilization = Arrays.copyOf(utilization, length);
+	}
+
+	private void readMeminfo() throws IOException {
+		meminfo.read();
+		while (meminfo.hasRemaining()) {
+			if (meminfo.startsWith(MEM_TOTAL)) {
+				meminfo.skip(MEM_TOTAL.length);
+				memTotal = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(MEM_FREE)) {
+				meminfo.skip(MEM_FREE.length);
+				memFree = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(MEM_AVAILABLE)) {
+				meminfo.skip(MEM_AVAILABLE.length);
+				memAvailable = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(BUFFERS)) {
+				meminfo.skip(BUFFERS.length);
+				buffers = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(CACHED)) {
+				meminfo.skip(CACHED.length);
+				cached = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(SWAP_TOTAL)) {
+				meminfo.skip(SWAP_TOTAL.length);
+				swapTotal = meminfo.nextLong() * 1024;
+			}
+			else if (meminfo.startsWith(SWAP_FREE)) {
+				meminfo.skip(SWAP_FREE.length);
+				swapFree = meminfo.nextLong() * 1024;
+			}
+			meminfo.nextLine();
+		}
+	}
+
+	private void readLoadavg() throws IOException {
+		loadavg.read();
+		loadAverage1 = loadavg.nextDouble();
+		loadAverage5 = loadavg.nextDouble();
+		loadAverage15 = loadavg.nextDouble();
+		runningTasks = loadavg.nextLong();
+		totalTasks = loadavg.nextLong();
+	}
+
+	private void readSelfStat() throws IOException {
+		selfStat.read();
+		// the command name may hold spaces and parentheses, fields resume after the last ')'
+		if (!selfStat.skipPastLast((byte) ')')) {
+			return;
+		}
+		// field 3 is the state, utime and stime are fields 14 and 15
+		for (int field = 3; field < 14; field++) {
+			selfStat.skipField();
+		}
+		processUserTicks = selfStat.nextLong();
+		processSystemTicks = selfStat.nextLong();
+		// cutime, cstime, priority, nice
+		for (int field = 16; field < 20; field++) {
+			selfStat.skipField();
+		}
+		processThreads = selfStat.nextLong();
+		// itrealvalue, starttime
+		selfStat.skipField();
+		selfStat.skipField();
+		processVirtualSize = selfStat.nextLong();
+		processResidentPages = selfStat.nextLong();
+
+		long processTicks = processUserTicks + processSystemTicks;
+		if (previousProcessTicks >= 0 && elapsedTicks > 0) {
+			processUtilization = Math.max(0.0, Math.min(1.0, (double) (processTicks - previousProcessTicks) / elapsedTicks));
+		}
+		previousProcessTicks = processTicks;
+	}
+
+	/**
+	 * @return the utilization of all cores in [0.0,1.0]
+	 */
+	public synchronized double getSystemCpuLoad() {
+		return utilization.length > 0 ? utilization[0] : Double.NaN;
+	}
+
+	/**
+	 * @return the utilization of each core in [0.0,1.0]
+	 */
+	public synchronized double[] getCoreCpuLoads() {
+		return Arrays.copyOfRange(utilization, 1, 1 + cores);
+	}
+
+	/**
+	 * @param core index of the core
+	 * @return its utilization in [0.0,1.0]
+	 */
+	public synchronized double getCoreCpuLoad(int core) {
+		return utilization[core + 1];
+	}
+
+	/**
+	 * @return the number of cores listed in /proc/stat
+	 */
+	public synchronized int getCores() {
+		return cores;
+	}
+
+	/**
+	 * @return the share of all cores used by this process in [0.0,1.0], NaN until the second sample
+	 */
+	public synchronized double getProcessCpuLoad() {
+		return processUtilization;
+	}
+
+	/**
+	 * @return the CPU time used by this process in nanoseconds
+	 */
+	public synchronized long getProcessCpuTime() {
+		return processUserTicks < 0 ? -1l : (processUserTicks + processSystemTicks) * (1000000000l / TICKS_PER_SECOND);
+	}
+
+	/**
+	 * @return the virtual memory size of this process in bytes
+	 */
+	public synchronized long getProcessVirtualSize() {
+		return processVirtualSize;
+	}
+
+	/**
+	 * @return the resident set size of this process in bytes
+	 */
+	public synchronized long getProcessResidentSize() {
+		return processResidentPages < 0 ? -1l : processResidentPages * PAGE_SIZE;
+	}
+
+	/**
+	 * @return the number of threads of this process
+	 */
+	public synchronized long getProcessThreads() {
+		return processThreads;
+	}
+
+	/**
+	 * @return the memTotal in bytes
+	 */
+	public synchronized long getMemTotal() {
+		return memTotal;
+	}
+
+	/**
+	 * @return the memFree in bytes
+	 */
+	public synchronized long getMemFree() {
+		return memFree;
+	}
+
+	/**
+	 * @return the memAvailable in bytes
+	 */
+	public synchronized long getMemAvailable() {
+		return memAvailable;
+	}
+
+	/**
+	 * @return the buffers in bytes
+	 */
+	public synchronized long getBuffers() {
+		return buffers;
+	}
+
+	/**
+	 * @return the cached in bytes
+	 */
+	public synchronized long getCached() {
+		return cached;
+	}
+
+	/**
+	 * @return the swapTotal in bytes
+	 */
+	public synchronized long getSwapTotal() {
+		return swapTotal;
+	}
+
+	/**
+	 * @return the swapFree in bytes
+	 */
+	public synchronized long getSwapFree() {
+		return swapFree;
+	}
+
+	/**
+	 * @return the load average over 1 minute
+	 */
+	public synchronized double getLoadAverage1() {
+		return loadAverage1;
+	}
+
+	/**
+	 * @return the load average over 5 minutes
+	 */
+	public synchronized double getLoadAverage5() {
+		return loadAverage5;
+	}
+
+	/**
+	 * @return the load average over 15 minutes
+	 */
+	public synchronized double getLoadAverage15() {
+		return loadAverage15;
+	}
+
+	/**
+	 * @return the number of runnable tasks
+	 */
+	public synchronized long getRunningTasks() {
+		return runningTasks;
+	}
+
+	/**
+	 * @return the number of tasks
+	 */
+	public synchronized long getTotalTasks() {
+		return totalTasks;
+	}
+}
@@ -0,0 +1,152 @@
+package com.karens.coding.server.stats.processes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Scans the processes of the server on every sample with a {@link ProcessTable} and keeps the top processes
+ * of the latest scan, so a request never touches /proc.
+ * @author karen
+ *
+ */
+@Service("ProcessCollector")
+public class ProcessCollector implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(ProcessCollector.class);
+
+	/** Scan the processes on every sample */
+	@Value("${serverstats.processes.enabled:true}")
+	private boolean enabled = true;
+
+	/** Number of processes kept per order */
+	@Value("${serverstats.processes.top.max:50}")
+	private int max = 50;
+
+	/** The /proc tree scanned */
+	private File root = new File("/proc");
+
+	/** Only touched by the sampling thread */
+	private ProcessTable table;
+
+	private final AtomicReference<ProcessTop> latest = new AtomicReference<ProcessTop>();
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		if (!new File(root, "self/stat").isFile()) {
+			logger.warn("No /proc tree at " + root + ", processes are not tracked");
+			enabled = false;
+			return;
+		}
+		table = new ProcessTable(root, max);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (table != null) {
+			try {
+				table.close();
+			} catch (Exception e) {
+				logger.error("Unable to close the process table " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (enabled) {
+			sample(snapshot.getSampleTimestamp());
+		}
+	}
+
+	/**
+	 * Scans the processes and publishes the top ones since the previous scan
+	 * @param timestamp in milliseconds since the epoch
+	 */
+	public void sample(long timestamp) {
+		ProcessTop top = table.scan(timestamp, System.nanoTime());
+		if (top != null) {
+			latest.set(top);
+		}
+	}
+
+	/**
+	 * @param sort order of the processes
+	 * @param n number of processes
+	 * @return the first processes of the latest scan in that order, largest first
+	 */
+	public List<ProcessUsage> getTop(ProcessSort sort, int n) {
+		ProcessTop top = latest.get();
+		if (top == null || n <= 0) {
+			return new ArrayList<ProcessUsage>();
+		}
+		return top.get(sort, n);
+	}
+
+	/**
+	 * @return the number of live processes at the latest scan, or -1 before the second scan
+	 */
+	public int getProcessCount() {
+		ProcessTop top = latest.get();
+		return top != null ? top.getProcessCount() : -1;
+	}
+
+	/**
+	 * @return the timestamp of the latest scan, or -1 before the second scan
+	 */
+	public long getSampleTimestamp() {
+		ProcessTop top = latest.get();
+		return top != null ? top.getTimestamp() : -1l;
+	}
+
+	/**
+	 * @return the enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled the enabled to set
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * @param max the max to set
+	 */
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	/**
+	 * @param root the root to set, a /proc tree
+	 */
+	public void setRoot(File root) {
+		this.root = root;
+	}
+}
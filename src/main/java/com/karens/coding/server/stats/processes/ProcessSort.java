@@ -0,0 +1,38 @@
+package com.karens.coding.server.stats.processes;
+
+/**
+ * Orders of the top processes, each one selected on every scan of the {@link ProcessTable}
+ * @author karen
+ *
+ */
+public enum ProcessSort {
+	CPU("cpu"),
+	RSS("rss"),
+	THREADS("threads");
+
+	private final String name;
+
+	private ProcessSort(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @param name
+	 * @return the order with the given name, or null
+	 */
+	public static ProcessSort forName(String name) {
+		for (ProcessSort sort : values()) {
+			if (sort.name.equalsIgnoreCase(name)) {
+				return sort;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+}
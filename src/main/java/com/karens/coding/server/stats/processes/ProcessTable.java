@@ -0,0 +1,435 @@
+package com.karens.coding.server.stats.processes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+import com.karens.coding.server.stats.proc.ProcFile;
+import com.karens.coding.server.stats.proc.ProcStatistics;
+import com.karens.coding.server.stats.utils.LongLongHashMap;
+
+/**
+ * Table of the processes of a /proc tree, refreshed incrementally.
+ * Every known process owns a slot in parallel primitive arrays, found by pid in two primitive maps swapped on every scan.
+ * A scan rereads only the /proc/[pid]/stat of the known processes into one reused buffer, and a process whose stat
+ * can no longer be read has exited. The /proc directory is only listed again when the last pid handed out by the kernel,
+ * read from /proc/loadavg, has moved: no process can have started otherwise.
+ * <p>
+ * CPU usage is the tick delta of each process over the elapsed time, and names are only decoded when a process
+ * appears or execs. After every scan the first processes of each {@link ProcessSort} are selected with a bounded heap
+ * and published as a {@link ProcessTop}.
+ * <p>
+ * Not thread safe, one scanner at a time.
+ * @author karen
+ *
+ */
+public final class ProcessTable implements Closeable {
+
+	private static final long MISSING = -1l;
+
+	private final File root;
+
+	/** Number of processes kept per order */
+	private final int max;
+
+	/** /proc/loadavg, null if the tree has none and the directory is listed on every scan */
+	private final ProcFile loadavg;
+
+	/** Buffer reused for the stat file of every process */
+	private final ProcFile stat = new ProcFile(1024);
+
+	/** Slot by pid, of the previous and of the current scan */
+	private LongLongHashMap previous = new LongLongHashMap(1024, MISSING);
+	private LongLongHashMap current = new LongLongHashMap(1024, MISSING);
+
+	/** Last pid handed out at the previous scan, -1 before the first one */
+	private long lastPid = -1l;
+	private long previousNanos = 0l;
+	private int scans = 0;
+
+	/** Slots, index below {@link #slots} and used if the process was alive at the last scan */
+	private int slots = 0;
+	private boolean[] used;
+	private int[] seen;
+	private Path[] paths;
+	private long[] pids;
+	private long[] ppids;
+	private long[] startTimes;
+	private long[] ticks;
+	/** Resident sets in pages of {@link ProcStatistics#PAGE_SIZE}, the page size of the host */
+	private long[] residentPages;
+	private long[] virtualSizes;
+	private long[] threads;
+	private byte[] states;
+	private int[] nameHashes;
+	private String[] names;
+	private double[] cpu;
+
+	/** Slots released by exited processes, reused before new ones */
+	private int[] free;
+	private int freeCount = 0;
+
+	/** Min-heap of the processes of one order being selected */
+	private final int[] heapSlots;
+	private final double[] heapKeys;
+
+	/**
+	 * @param root the /proc directory, or a copy of it
+	 * @param max number of processes kept per order
+	 */
+	public ProcessTable(File root, int max) {
+		this.root = root;
+		this.max = max;
+		ProcFile opened = null;
+		try {
+			opened = new ProcFile(new File(root, "loadavg"), 128);
+		} catch (IOException e) {
+			// listed on every scan
+		}
+		this.loadavg = opened;
+		heapSlots = new int[max];
+		heapKeys = new double[max];
+		allocate(256);
+	}
+
+	private void allocate(int capacity) {
+		used = new boolean[capacity];
+		seen = new int[capacity];
+		paths = new Path[capacity];
+		pids = new long[capacity];
+		ppids = new long[capacity];
+		startTimes = new long[capacity];
+		ticks = new long[capacity];
+		residentPages = new long[capacity];
+		virtualSizes = new long[capacity];
+		threads = new long[capacity];
+		states = new byte[capacity];
+		nameHashes = new int[capacity];
+		names = new String[capacity];
+		cpu = new double[capacity];
+		free = new int[capacity];
+	}
+
+	private void grow() {
+		int capacity = used.length * 2;
+		used = Arrays.copyOf(used, capacity);
+		seen = Arrays.copyOf(seen, capacity);
+		paths = Arrays.copyOf(paths, capacity);
+		pids = Arrays.copyOf(pids, capacity);
+		ppids = Arrays.copyOf(ppids, capacity);
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		ticks = Arrays.copyOf(ticks, capacity);
+		residentPages = Arrays.copyOf(residentPages, capacity);
+		virtualSizes = Arrays.copyOf(virtualSizes, capacity);
+		threads = Arrays.copyOf(threads, capacity);
+		states = Arrays.copyOf(states, capacity);
+		nameHashes = Arrays.copyOf(nameHashes, capacity);
+		names = Arrays.copyOf(names, capacity);
+		cpu = Arrays.copyOf(cpu, capacity);
+		free = Arrays.copyOf(free, capacity);
+	}
+
+	/**
+	 * Refreshes the known processes, looks for new ones if pids were handed out, and selects the top processes
+	 * @param timestamp in milliseconds since the epoch
+	 * @param nanos monotonic time of the scan, such as System.nanoTime()
+	 * @return the top processes, or null on the first scan which has no CPU usage yet
+	 */
+	public ProcessTop scan(long timestamp, long nanos) {
+		boolean first = scans == 0;
+		double elapsedTicks = first ? 0.0 : (double) (nanos - previousNanos) * ProcStatistics.TICKS_PER_SECOND / 1000000000l;
+		scans++;
+		current.clear();
+		int count = 0;
+		if (pidsHandedOut()) {
+			count = list(first, elapsedTicks);
+		}
+		else {
+			for (int slot = 0; slot < slots; slot++) {
+				if (used[slot] && refresh(slot, false, elapsedTicks)) {
+					count++;
+				}
+			}
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			if (used[slot] && seen[slot] != scans) {
+				release(slot);
+			}
+		}
+		LongLongHashMap swap = previous;
+		previous = current;
+		current = swap;
+		long elapsed = nanos - previousNanos;
+		previousNanos = nanos;
+		if (first) {
+			return null;
+		}
+		EnumMap<ProcessSort, List<ProcessUsage>> top = new EnumMap<ProcessSort, List<ProcessUsage>>(ProcessSort.class);
+		for (ProcessSort sort : ProcessSort.values()) {
+			top.put(sort, select(sort));
+		}
+		return new ProcessTop(timestamp, elapsed, count, top);
+	}
+
+	/**
+	 * @return true if the last pid handed out moved since the previous scan, or cannot be read
+	 */
+	private boolean pidsHandedOut() {
+		if (loadavg == null) {
+			return true;
+		}
+		try {
+			loadavg.read();
+		} catch (IOException e) {
+			return true;
+		}
+		// 0.20 0.18 0.12 1/80 11206, the last field is the last pid handed out and / separates fields
+		for (int field = 0; field < 5; field++) {
+			loadavg.skipField();
+		}
+		long pid = loadavg.nextLong();
+		boolean moved = pid < 0 || pid != lastPid;
+		lastPid = pid;
+		return moved;
+	}
+
+	/**
+	 * Lists the pid directories, refreshing the known processes and adding the new ones
+	 * @return the number of live processes
+	 */
+	private int list(boolean first, double elapsedTicks) {
+		String[] entries = root.list();
+		if (entries == null) {
+			return 0;
+		}
+		int count = 0;
+		for (String entry : entries) {
+			long pid = parsePid(entry);
+			if (pid < 0) {
+				continue;
+			}
+			int slot = (int) previous.get(pid);
+			boolean added = slot == MISSING;
+			if (added) {
+				slot = acquire(pid, entry);
+			}
+			// a process started since the previous scan used all its ticks within the interval
+			if (refresh(slot, added && !first, elapsedTicks)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the pid named by a directory entry, or -1 if not a number
+	 */
+	private static long parsePid(String entry) {
+		long pid = 0;
+		for (int index = 0; index < entry.length(); index++) {
+			char digit = entry.charAt(index);
+			if (digit < '0' || digit > '9') {
+				return -1l;
+			}
+			pid = pid * 10 + (digit - '0');
+		}
+		return entry.isEmpty() ? -1l : pid;
+	}
+
+	private int acquire(long pid, String entry) {
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		}
+		else {
+			if (slots == used.length) {
+				grow();
+			}
+			slot = slots++;
+		}
+		used[slot] = true;
+		seen[slot] = 0;
+		pids[slot] = pid;
+		paths[slot] = new File(new File(root, entry), "stat").toPath();
+		names[slot] = null;
+		startTimes[slot] = MISSING;
+		ticks[slot] = 0l;
+		return slot;
+	}
+
+	private void release(int slot) {
+		used[slot] = false;
+		paths[slot] = null;
+		names[slot] = null;
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * Rereads the stat of a process
+	 * @param started true if the process started since the previous scan
+	 * @return false if the process exited
+	 */
+	private boolean refresh(int slot, boolean started, double elapsedTicks) {
+		if (!stat.read(paths[slot])) {
+			return false;
+		}
+		// 11206 (bash) S 11205 ..., the name may hold spaces and parentheses
+		stat.nextLong();
+		int nameStart = stat.position() + 2;
+		if (!stat.skipPastLast((byte) ')')) {
+			return false;
+		}
+		int nameEnd = stat.position() - 1;
+		stat.skip(1);
+		states[slot] = (byte) stat.peek();
+		stat.skipField();
+		ppids[slot] = stat.nextLong();
+		// pgrp to cmajflt, then utime and stime are fields 14 and 15
+		for (int field = 5; field < 14; field++) {
+			stat.skipField();
+		}
+		long total = stat.nextLong() + stat.nextLong();
+		// cutime, cstime, priority, nice
+		for (int field = 16; field < 20; field++) {
+			stat.skipField();
+		}
+		threads[slot] = stat.nextLong();
+		// itrealvalue
+		stat.skipField();
+		long startTime = stat.nextLong();
+		virtualSizes[slot] = stat.nextLong();
+		residentPages[slot] = stat.nextLong();
+
+		boolean reused = startTimes[slot] != MISSING && startTimes[slot] != startTime;
+		if (reused) {
+			// the pid was handed out again, to a process started since the previous scan
+			started = true;
+			names[slot] = null;
+		}
+		int nameHash = stat.hash(nameStart, nameEnd);
+		if (names[slot] == null || nameHashes[slot] != nameHash) {
+			names[slot] = stat.text(nameStart, nameEnd);
+			nameHashes[slot] = nameHash;
+		}
+		long before;
+		if (started) {
+			before = 0l;
+		}
+		else if (startTimes[slot] == MISSING) {
+			// found by the first scan, no interval yet
+			before = total;
+		}
+		else {
+			before = ticks[slot];
+		}
+		cpu[slot] = elapsedTicks > 0 ? Math.max(0l, total - before) / elapsedTicks : 0.0;
+		ticks[slot] = total;
+		startTimes[slot] = startTime;
+		seen[slot] = scans;
+		current.put(pids[slot], slot);
+		return true;
+	}
+
+	private double key(ProcessSort sort, int slot) {
+		switch (sort) {
+		case CPU:
+			return cpu[slot];
+		case RSS:
+			return residentPages[slot];
+		default:
+			return threads[slot];
+		}
+	}
+
+	/**
+	 * @return the first processes in the given order, largest first
+	 */
+	private List<ProcessUsage> select(ProcessSort sort) {
+		int count = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (used[slot]) {
+				count = offer(count, slot, key(sort, slot));
+			}
+		}
+		ProcessUsage[] sorted = new ProcessUsage[count];
+		for (int index = count - 1; index >= 0; index--) {
+			sorted[index] = usage(heapSlots[0]);
+			heapSlots[0] = heapSlots[index];
+			heapKeys[0] = heapKeys[index];
+			siftDown(0, index);
+		}
+		return Arrays.asList(sorted);
+	}
+
+	private ProcessUsage usage(int slot) {
+		return new ProcessUsage(pids[slot], ppids[slot], names[slot], String.valueOf((char) states[slot]),
+				ticks[slot] * 1000l / ProcStatistics.TICKS_PER_SECOND, cpu[slot], residentPages[slot] * ProcStatistics.PAGE_SIZE,
+				virtualSizes[slot], threads[slot]);
+	}
+
+	/**
+	 * Adds a process to the heap, replacing the smallest one when full
+	 * @return the new number of processes in the heap
+	 */
+	private int offer(int count, int slot, double key) {
+		if (count < max) {
+			int index = count;
+			heapSlots[index] = slot;
+			heapKeys[index] = key;
+			// sift up
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (heapKeys[parent] <= heapKeys[index]) {
+					break;
+				}
+				swap(parent, index);
+				index = parent;
+			}
+			return count + 1;
+		}
+		if (count == 0 || key <= heapKeys[0]) {
+			return count;
+		}
+		heapSlots[0] = slot;
+		heapKeys[0] = key;
+		siftDown(0, count);
+		return count;
+	}
+
+	private void siftDown(int index, int count) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= count) {
+				return;
+			}
+			if (child + 1 < count && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (heapKeys[index] <= heapKeys[child]) {
+				return;
+			}
+			swap(index, child);
+			index = child;
+		}
+	}
+
+	private void swap(int first, int second) {
+		int slot = heapSlots[first];
+		double key = heapKeys[first];
+		heapSlots[first] = heapSlots[second];
+		heapKeys[first] = heapKeys[second];
+		heapSlots[second] = slot;
+		heapKeys[second] = key;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (loadavg != null) {
+			loadavg.close();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.karens.coding.server.stats.processes;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top processes of one scan for each {@link ProcessSort}, immutable once published
+ * @author karen
+ *
+ */
+public final class ProcessTop {
+
+	private final long timestamp;
+	private final long elapsed;
+	private final int processCount;
+	private final Map<ProcessSort, List<ProcessUsage>> top;
+
+	ProcessTop(long timestamp, long elapsed, int processCount, EnumMap<ProcessSort, List<ProcessUsage>> top) {
+		this.timestamp = timestamp;
+		this.elapsed = elapsed;
+		this.processCount = processCount;
+		this.top = top;
+	}
+
+	/**
+	 * @param sort
+	 * @param n number of processes
+	 * @return the first processes in that order, a copy
+	 */
+	public List<ProcessUsage> get(ProcessSort sort, int n) {
+		List<ProcessUsage> sorted = top.get(sort);
+		return new ArrayList<ProcessUsage>(sorted.subList(0, Math.max(0, Math.min(n, sorted.size()))));
+	}
+
+	/**
+	 * @return the timestamp of the scan in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the nanoseconds elapsed since the previous scan
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * @return the number of live processes
+	 */
+	public int getProcessCount() {
+		return processCount;
+	}
+}
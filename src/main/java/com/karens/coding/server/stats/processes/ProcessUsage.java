@@ -0,0 +1,112 @@
+package com.karens.coding.server.stats.processes;
+
+/**
+ * Resources of one process at a scan of the {@link ProcessTable}
+ * @author karen
+ *
+ */
+public class ProcessUsage {
+
+	/** Process id */
+	private final long pid;
+
+	/** Parent process id */
+	private final long ppid;
+
+	/** Command name, as shown by ps -o comm */
+	private final String name;
+
+	/** State letter, such as R running or S sleeping */
+	private final String state;
+
+	/** User and system CPU time since the process started in milliseconds */
+	private final long cpuTime;
+
+	/** Share of one core used since the previous scan, above 1.0 for a process running on several cores */
+	private final double cpuUsage;
+
+	/** Resident set size in bytes */
+	private final long residentSize;
+
+	/** Virtual memory size in bytes */
+	private final long virtualSize;
+
+	/** Number of threads */
+	private final long threads;
+
+	public ProcessUsage(long pid, long ppid, String name, String state, long cpuTime, double cpuUsage, long residentSize, long virtualSize,
+			long threads) {
+		this.pid = pid;
+		this.ppid = ppid;
+		this.name = name;
+		this.state = state;
+		this.cpuTime = cpuTime;
+		this.cpuUsage = cpuUsage;
+		this.residentSize = residentSize;
+		this.virtualSize = virtualSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * @return the pid
+	 */
+	public long getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return the ppid
+	 */
+	public long getPpid() {
+		return ppid;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the state
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * @return the cpuTime in milliseconds
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @return the cpuUsage
+	 */
+	public double getCpuUsage() {
+		return cpuUsage;
+	}
+
+	/**
+	 * @return the residentSize in bytes
+	 */
+	public long getResidentSize() {
+		return residentSize;
+	}
+
+	/**
+	 * @return the virtualSize in bytes
+	 */
+	public long getVirtualSize() {
+		return virtualSize;
+	}
+
+	/**
+	 * @return the threads
+	 */
+	public long getThreads() {
+		return threads;
+	}
+}
@@ -0,0 +1,430 @@
+package com.karens.coding.server.stats.push;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Pushes the samples of this server to a {@link PushReceiver} in {@link PushProtocol} frames.
+ * <p>
+ * Every snapshot is encoded once into a ring of fixed-size slots; when the ring is full, the oldest sample
+ * is dropped. A single thread owns a non-blocking socket channel: it sends a frame once
+ * serverstats.push.batch.size samples are buffered or the oldest has waited serverstats.push.batch.delay, and
+ * reconnects with an exponential backoff when the receiver is unreachable. Samples leave the ring only once
+ * their frame has been written completely, a frame cut by a disconnection is sent again.
+ * @author karen
+ *
+ */
+@Service("PushAgent")
+public class PushAgent implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(PushAgent.class);
+
+	/** host:port of the receiver, no push if empty */
+	@Value("${serverstats.push.target:}")
+	private String target = "";
+
+	/** Id of this server, sent with every frame */
+	@Value("${serverstats.server.id:0}")
+	private long serverId = 0l;
+
+	/** Samples buffered before a frame is sent */
+	@Value("${serverstats.push.batch.size:10}")
+	private int batchSize = 10;
+
+	/** Milliseconds the oldest buffered sample may wait before a frame is sent anyway */
+	@Value("${serverstats.push.batch.delay:10000}")
+	private long batchDelay = 10000l;
+
+	/** Samples kept while the receiver is unreachable */
+	@Value("${serverstats.push.buffer.capacity:3600}")
+	private int capacity = 3600;
+
+	/** Milliseconds before the first reconnection, doubled on every failure */
+	@Value("${serverstats.push.backoff.min:100}")
+	private long minBackoff = 100l;
+
+	/** Milliseconds between two reconnections at most */
+	@Value("${serverstats.push.backoff.max:30000}")
+	private long maxBackoff = 30000l;
+
+	/** Encoded samples, slot of the absolute index modulo the capacity */
+	private ByteBuffer ring;
+
+	/** Absolute index of the oldest buffered sample, guarded by the ring */
+	private long head = 0l;
+
+	/** Absolute index of the next sample, guarded by the ring */
+	private long tail = 0l;
+
+	/** Time the oldest unsent sample was buffered, guarded by the ring */
+	private long oldestNanos = 0l;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong sentSamples = new AtomicLong();
+	private final AtomicLong sentFrames = new AtomicLong();
+	private final AtomicLong connections = new AtomicLong();
+
+	private InetSocketAddress address;
+	private Selector selector;
+	private Thread thread;
+	private volatile boolean running;
+	private volatile boolean connected;
+
+	/** Only touched by the push thread */
+	private SocketChannel channel;
+	private ByteBuffer frame;
+	private final ByteBuffer discard = ByteBuffer.allocate(256);
+	/** Absolute index after the last sample of the frame being written, 0 if none */
+	private long frameEnd = 0l;
+	private long backoff;
+	private long nextAttempt = 0l;
+
+	@PostConstruct
+	public void start() throws IOException {
+		if (target == null || target.trim().isEmpty()) {
+			return;
+		}
+		int separator = target.lastIndexOf(':');
+		if (separator <= 0) {
+			throw new IllegalArgumentException("Push target " + target + " is not host:port");
+		}
+		address = new InetSocketAddress(target.substring(0, separator).trim(), Integer.parseInt(target.substring(separator + 1).trim()));
+		ring = ByteBuffer.allocate(capacity * PushProtocol.SAMPLE_SIZE);
+		frame = ByteBuffer.allocateDirect(PushProtocol.LENGTH_SIZE + PushProtocol.HEADER_SIZE
+				+ Math.min(capacity, PushProtocol.MAX_SAMPLES) * PushProtocol.SAMPLE_SIZE);
+		backoff = minBackoff;
+		selector = Selector.open();
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "server-stats-push");
+		thread.setDaemon(true);
+		thread.start();
+		logger.info("Pushing samples of server " + serverId + " to " + address);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (ring == null) {
+			return;
+		}
+		boolean full;
+		synchronized (ring) {
+			if (tail - head == capacity) {
+				head++;
+				dropped.incrementAndGet();
+			}
+			if (tail == head) {
+				oldestNanos = System.nanoTime();
+			}
+			ring.position((int) (tail % capacity) * PushProtocol.SAMPLE_SIZE);
+			PushProtocol.writeSample(ring, snapshot.getSequence(), snapshot.getSampleTimestamp(), snapshot.getStatistics().getRecord());
+			tail++;
+			full = tail - head >= batchSize;
+		}
+		if (full) {
+			selector.wakeup();
+		}
+	}
+
+	private void loop() {
+		while (running) {
+			try {
+				long now = System.nanoTime();
+				if (channel == null && now - nextAttempt >= 0) {
+					connect();
+				}
+				if (connected) {
+					write(now);
+				}
+				selector.select(Math.max(1l, Math.min(1000l, TimeUnit.NANOSECONDS.toMillis(nextWakeup(System.nanoTime())))));
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isConnectable()) {
+						finishConnect();
+					}
+					else if (key.isReadable()) {
+						discard.clear();
+						if (channel.read(discard) < 0) {
+							throw new IOException("Connection closed by the receiver");
+						}
+					}
+				}
+			} catch (IOException e) {
+				disconnect(e);
+			} catch (RuntimeException e) {
+				// such as a CancelledKeyException, the thread must keep running to reconnect
+				logger.error("Unexpected failure pushing to " + address + " " + e);
+				disconnect(e);
+			}
+		}
+		close();
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// stopping
+		}
+	}
+
+	private void connect() throws IOException {
+		if (address.isUnresolved()) {
+			// resolved again on every attempt, the receiver may move
+			address = new InetSocketAddress(address.getHostString(), address.getPort());
+			if (address.isUnresolved()) {
+				throw new IOException("Unable to resolve " + address.getHostString());
+			}
+		}
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		if (channel.connect(address)) {
+			connected();
+		}
+		else {
+			channel.register(selector, SelectionKey.OP_CONNECT);
+		}
+	}
+
+	private void finishConnect() throws IOException {
+		if (channel.finishConnect()) {
+			connected();
+		}
+	}
+
+	private void connected() throws IOException {
+		channel.register(selector, SelectionKey.OP_READ);
+		connected = true;
+		backoff = minBackoff;
+		connections.incrementAndGet();
+		logger.info("Connected to " + address);
+	}
+
+	/**
+	 * Starts a frame if one is due, and writes as much of the current frame as the socket accepts
+	 */
+	private void write(long now) throws IOException {
+		if (frameEnd == 0l && !fillFrame(now)) {
+			return;
+		}
+		channel.write(frame);
+		SelectionKey key = channel.keyFor(selector);
+		if (frame.hasRemaining()) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			return;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		synchronized (ring) {
+			long sent = frameEnd - head;
+			if (sent > 0) {
+				sentSamples.addAndGet(sent);
+				head = frameEnd;
+			}
+			if (tail > head) {
+				oldestNanos = now;
+			}
+		}
+		sentFrames.incrementAndGet();
+		frameEnd = 0l;
+	}
+
+	/**
+	 * @return true if a frame of the buffered samples is ready to be written
+	 */
+	private boolean fillFrame(long now) {
+		synchronized (ring) {
+			long buffered = tail - head;
+			if (buffered == 0 || (buffered < batchSize && now - oldestNanos < TimeUnit.MILLISECONDS.toNanos(batchDelay))) {
+				return false;
+			}
+			int samples = (int) Math.min(buffered, (frame.capacity() - PushProtocol.LENGTH_SIZE - PushProtocol.HEADER_SIZE) / PushProtocol.SAMPLE_SIZE);
+			frame.clear();
+			PushProtocol.writeHeader(frame, serverId, samples);
+			byte[] slots = ring.array();
+			for (long index = head; index < head + samples; index++) {
+				frame.put(slots, (int) (index % capacity) * PushProtocol.SAMPLE_SIZE, PushProtocol.SAMPLE_SIZE);
+			}
+			frame.flip();
+			frameEnd = head + samples;
+			return true;
+		}
+	}
+
+	/**
+	 * @return nanoseconds until the next reconnection or batch is due
+	 */
+	private long nextWakeup(long now) {
+		if (channel == null) {
+			return nextAttempt - now;
+		}
+		if (!connected || frameEnd != 0l) {
+			return TimeUnit.SECONDS.toNanos(1);
+		}
+		synchronized (ring) {
+			if (tail == head) {
+				return TimeUnit.SECONDS.toNanos(1);
+			}
+			return oldestNanos + TimeUnit.MILLISECONDS.toNanos(batchDelay) - now;
+		}
+	}
+
+	private void disconnect(Exception e) {
+		if (connected) {
+			logger.warn("Lost connection to " + address + " " + e.getMessage());
+		}
+		close();
+		// resent whole on the next connection
+		frameEnd = 0l;
+		long jitter = ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+		nextAttempt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff + jitter);
+		backoff = Math.min(maxBackoff, backoff * 2);
+	}
+
+	private void close() {
+		connected = false;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.error("Unable to close push connection " + e.getMessage());
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * @return true while connected to the receiver
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * @return the number of samples waiting to be sent
+	 */
+	public long getBuffered() {
+		if (ring == null) {
+			return 0l;
+		}
+		synchronized (ring) {
+			return tail - head;
+		}
+	}
+
+	/**
+	 * @return the number of samples dropped because the buffer was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of samples written to the receiver
+	 */
+	public long getSentSamples() {
+		return sentSamples.get();
+	}
+
+	/**
+	 * @return the number of frames written to the receiver
+	 */
+	public long getSentFrames() {
+		return sentFrames.get();
+	}
+
+	/**
+	 * @return the number of successful connections
+	 */
+	public long getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @param target the target to set, host:port
+	 */
+	public void setTarget(String target) {
+		this.target = target;
+	}
+
+	/**
+	 * @param serverId the serverId to set
+	 */
+	public void setServerId(long serverId) {
+		this.serverId = serverId;
+	}
+
+	/**
+	 * @param batchSize the batchSize to set
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param batchDelay the batchDelay to set
+	 */
+	public void setBatchDelay(long batchDelay) {
+		this.batchDelay = batchDelay;
+	}
+
+	/**
+	 * @param capacity the capacity to set
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param minBackoff the minBackoff to set
+	 */
+	public void setMinBackoff(long minBackoff) {
+		this.minBackoff = minBackoff;
+	}
+
+	/**
+	 * @param maxBackoff the maxBackoff to set
+	 */
+	public void setMaxBackoff(long maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+}
@@ -0,0 +1,20 @@
+package com.karens.coding.server.stats.push;
+
+import com.karens.coding.server.stats.health.MetricRecord;
+
+/**
+ * Notified by the {@link PushReceiver} of every sample received from an agent
+ * @author karen
+ *
+ */
+public interface PushListener {
+
+	/**
+	 * Called on the receiving thread, must not block
+	 * @param serverId id of the pushing server
+	 * @param sequence sequence number of the sample on that server
+	 * @param sampleTimestamp in milliseconds since the epoch
+	 * @param record values of the sample, reused for the next sample: copy what must be kept
+	 */
+	void onSample(long serverId, long sequence, long sampleTimestamp, MetricRecord record);
+}
@@ -0,0 +1,105 @@
+package com.karens.coding.server.stats.push;
+
+import java.nio.ByteBuffer;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+
+/**
+ * Binary frames pushed by the {@link PushAgent} to the {@link PushReceiver}, big-endian:
+ * <pre>
+ * int    length of the rest of the frame
+ * short  version
+ * int    schema hash of the metrics
+ * long   serverId
+ * int    number of samples
+ * sample * number of samples
+ * </pre>
+ * Every sample has the same size: sequence, timestamp and presence bits as longs, then one long per
+ * {@link Metric} in declaration order, the raw bits of the double for the fractional ones, 0 when not collected.
+ * @author karen
+ *
+ */
+public final class PushProtocol {
+
+	public static final short VERSION = 1;
+
+	/** Bytes of the length prefix */
+	public static final int LENGTH_SIZE = 4;
+
+	/** Bytes of the frame header after the length prefix */
+	public static final int HEADER_SIZE = 2 + 4 + 8 + 4;
+
+	private static final Metric[] SCHEMA = Metric.values();
+
+	/** Bytes of one sample */
+	public static final int SAMPLE_SIZE = 8 * (3 + SCHEMA.length);
+
+	/** Frames longer than this are rejected, the agent never sends more samples per frame than fit in it */
+	public static final int MAX_FRAME_SIZE = 1 << 20;
+
+	/** Samples per frame at most */
+	public static final int MAX_SAMPLES = (MAX_FRAME_SIZE - HEADER_SIZE) / SAMPLE_SIZE;
+
+	private PushProtocol() {
+	}
+
+	/**
+	 * Writes a sample at the position of the buffer
+	 * @param buffer
+	 * @param sequence
+	 * @param timestamp in milliseconds since the epoch
+	 * @param record
+	 */
+	public static void writeSample(ByteBuffer buffer, long sequence, long timestamp, MetricRecord record) {
+		buffer.putLong(sequence);
+		buffer.putLong(timestamp);
+		long present = 0l;
+		for (int index = 0; index < SCHEMA.length; index++) {
+			if (record.has(SCHEMA[index])) {
+				present |= 1l << index;
+			}
+		}
+		buffer.putLong(present);
+		for (Metric metric : SCHEMA) {
+			buffer.putLong(record.has(metric) ? record.getRaw(metric) : 0l);
+		}
+	}
+
+	/**
+	 * Reads the metrics of a sample whose sequence and timestamp have been read
+	 * @param buffer
+	 * @param record overwritten with the values of the sample
+	 */
+	public static void readMetrics(ByteBuffer buffer, MetricRecord record) {
+		long present = buffer.getLong();
+		record.clear();
+		for (int index = 0; index < SCHEMA.length; index++) {
+			long raw = buffer.getLong();
+			if ((present & (1l << index)) == 0) {
+				continue;
+			}
+			Metric metric = SCHEMA[index];
+			if (metric.isFractional()) {
+				record.setDouble(metric, Double.longBitsToDouble(raw));
+			}
+			else {
+				record.setLong(metric, raw);
+			}
+		}
+	}
+
+	/**
+	 * Writes the length prefix and the header of a frame
+	 * @param buffer
+	 * @param serverId
+	 * @param samples number of samples that follow
+	 */
+	public static void writeHeader(ByteBuffer buffer, long serverId, int samples) {
+		buffer.putInt(HEADER_SIZE + samples * SAMPLE_SIZE);
+		buffer.putShort(VERSION);
+		buffer.putInt(Metric.SCHEMA_HASH);
+		buffer.putLong(serverId);
+		buffer.putInt(samples);
+	}
+}
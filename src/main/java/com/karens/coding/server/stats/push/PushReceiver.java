@@ -0,0 +1,397 @@
+package com.karens.coding.server.stats.push;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+
+/**
+ * Receives the {@link PushProtocol} frames of the {@link PushAgent}s on one selector thread. Frames are
+ * decoded in place from the read buffer of each connection into a reused {@link MetricRecord}, nothing is
+ * copied into strings or JSON; the latest sample of every server is kept and handed to the {@link PushListener}s.
+ * A connection sending a malformed frame or another schema is closed.
+ * The connections and servers are bounded: connections past the maximum are closed when accepted, a frame of a new
+ * server past the maximum is rejected, and servers that pushed nothing for the expiry are forgotten.
+ * @author karen
+ *
+ */
+@Service("PushReceiver")
+public class PushReceiver {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(PushReceiver.class);
+
+	/** Port to listen on, 0 for any free port, negative to disable */
+	@Value("${serverstats.push.receiver.port:-1}")
+	private int port = -1;
+
+	/** Connections accepted at once, each holding a read buffer of up to a frame */
+	@Value("${serverstats.push.receiver.connections.max:1000}")
+	private int maxConnections = 1000;
+
+	/** Servers whose latest sample is kept */
+	@Value("${serverstats.push.receiver.servers.max:1000}")
+	private int maxServers = 1000;
+
+	/** Milliseconds after which a server that pushed nothing is forgotten */
+	@Value("${serverstats.push.receiver.expiry:300000}")
+	private long expiry = 300000;
+
+	@Autowired(required = false)
+	private List<PushListener> listeners = Collections.emptyList();
+
+	private final Map<Long, PushedServer> servers = new ConcurrentHashMap<Long, PushedServer>();
+
+	private final AtomicLong frames = new AtomicLong();
+	private final AtomicLong samples = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong refused = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+
+	private ServerSocketChannel server;
+	private Selector selector;
+	private Thread thread;
+	private volatile boolean running;
+
+	/** Only touched by the receiving thread */
+	private final MetricRecord record = new MetricRecord();
+
+	@PostConstruct
+	public void start() throws IOException {
+		if (port < 0) {
+			return;
+		}
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "server-stats-push-receiver");
+		thread.setDaemon(true);
+		thread.start();
+		logger.info("Receiving pushed samples on port " + getPort());
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void loop() {
+		long lastExpiry = System.currentTimeMillis();
+		while (running) {
+			try {
+				selector.select(1000);
+			} catch (IOException e) {
+				logger.error("Unable to select push connections " + e.getMessage());
+				break;
+			}
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				try {
+					if (key.isValid() && key.isAcceptable()) {
+						accept();
+					}
+					else if (key.isValid() && key.isReadable()) {
+						read(key);
+					}
+				} catch (IOException e) {
+					logger.warn("Closing push connection " + key.channel() + " " + e.getMessage());
+					close(key);
+				}
+			}
+			long now = System.currentTimeMillis();
+			if (now - lastExpiry >= 1000) {
+				expire(now);
+				lastExpiry = now;
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			close(key);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// stopping
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		// the selector also holds the key of the server socket
+		if (selector.keys().size() > maxConnections) {
+			refused.incrementAndGet();
+			logger.warn("Refusing push connection " + channel + ", " + maxConnections + " connections already open");
+			channel.close();
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(64 * 1024));
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer buffer = (ByteBuffer) key.attachment();
+		int read = channel.read(buffer);
+		if (read < 0) {
+			// a partial frame left in the buffer is dropped, the agent sends it again
+			close(key);
+			return;
+		}
+		buffer.flip();
+		while (buffer.remaining() >= PushProtocol.LENGTH_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt(start);
+			if (length < PushProtocol.HEADER_SIZE || length > PushProtocol.MAX_FRAME_SIZE) {
+				throw new IOException("Invalid frame length " + length);
+			}
+			if (buffer.remaining() < PushProtocol.LENGTH_SIZE + length) {
+				break;
+			}
+			buffer.position(start + PushProtocol.LENGTH_SIZE);
+			decode(buffer, length);
+			buffer.position(start + PushProtocol.LENGTH_SIZE + length);
+		}
+		buffer.compact();
+		if (!buffer.hasRemaining()) {
+			// the pending frame is larger than the buffer
+			ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, PushProtocol.LENGTH_SIZE + PushProtocol.MAX_FRAME_SIZE));
+			buffer.flip();
+			larger.put(buffer);
+			key.attach(larger);
+		}
+	}
+
+	private void decode(ByteBuffer buffer, int length) throws IOException {
+		short version = buffer.getShort();
+		int schemaHash = buffer.getInt();
+		if (version != PushProtocol.VERSION || schemaHash != Metric.SCHEMA_HASH) {
+			rejected.incrementAndGet();
+			throw new IOException("Unsupported frame version " + version + " or schema " + schemaHash);
+		}
+		long serverId = buffer.getLong();
+		int count = buffer.getInt();
+		if (PushProtocol.HEADER_SIZE + (long) count * PushProtocol.SAMPLE_SIZE != length) {
+			rejected.incrementAndGet();
+			throw new IOException("Frame of " + length + " bytes cannot hold " + count + " samples");
+		}
+		PushedServer pushed = servers.get(serverId);
+		if (pushed == null) {
+			if (servers.size() >= maxServers) {
+				expire(System.currentTimeMillis());
+			}
+			if (servers.size() >= maxServers) {
+				rejected.incrementAndGet();
+				throw new IOException("Unable to keep server " + serverId + ", " + maxServers + " servers already pushing");
+			}
+			pushed = new PushedServer(serverId);
+			servers.put(serverId, pushed);
+		}
+		for (int sample = 0; sample < count; sample++) {
+			long sequence = buffer.getLong();
+			long sampleTimestamp = buffer.getLong();
+			PushProtocol.readMetrics(buffer, record);
+			pushed.update(sequence, sampleTimestamp, record);
+			for (PushListener listener : listeners) {
+				try {
+					listener.onSample(serverId, sequence, sampleTimestamp, record);
+				} catch (Exception e) {
+					logger.error("Push listener " + listener.getClass().getSimpleName() + " failed " + e.getMessage());
+				}
+			}
+		}
+		frames.incrementAndGet();
+		samples.addAndGet(count);
+	}
+
+	/**
+	 * Forgets the servers that pushed nothing for the expiry
+	 * @param now wall clock time in milliseconds
+	 */
+	void expire(long now) {
+		Iterator<PushedServer> iterator = servers.values().iterator();
+		while (iterator.hasNext()) {
+			PushedServer pushed = iterator.next();
+			if (now - pushed.getReceivedTimestamp() > expiry) {
+				iterator.remove();
+				expired.incrementAndGet();
+				logger.info("Forgetting server " + pushed.getServerId() + ", nothing pushed since " + pushed.getReceivedTimestamp());
+			}
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			logger.error("Unable to close push connection " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the port listened on, -1 if disabled
+	 */
+	public int getPort() {
+		if (server == null) {
+			return -1;
+		}
+		try {
+			return ((InetSocketAddress) server.getLocalAddress()).getPort();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return true if listening
+	 */
+	public boolean isEnabled() {
+		return server != null;
+	}
+
+	/**
+	 * @param serverId
+	 * @return the latest sample pushed by the server, or null
+	 */
+	public PushedServer getServer(long serverId) {
+		return servers.get(serverId);
+	}
+
+	/**
+	 * @return the latest sample of every server, sorted by serverId
+	 */
+	public List<PushedServer> getServers() {
+		List<PushedServer> view = new ArrayList<PushedServer>(servers.values());
+		Collections.sort(view, new Comparator<PushedServer>() {
+			@Override
+			public int compare(PushedServer first, PushedServer second) {
+				return Long.compare(first.getServerId(), second.getServerId());
+			}
+		});
+		return view;
+	}
+
+	/**
+	 * @return a live view of the latest sample of every server, in no particular order
+	 */
+	public Collection<PushedServer> getServerView() {
+		return Collections.unmodifiableCollection(servers.values());
+	}
+
+	/**
+	 * @return the number of frames received
+	 */
+	public long getFrames() {
+		return frames.get();
+	}
+
+	/**
+	 * @return the number of samples received
+	 */
+	public long getSamples() {
+		return samples.get();
+	}
+
+	/**
+	 * @return the number of frames rejected for their version, schema or size, or for a server past the maximum
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the number of connections closed when accepted, past the maximum
+	 */
+	public long getRefused() {
+		return refused.get();
+	}
+
+	/**
+	 * @return the number of servers forgotten after the expiry
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+
+	/**
+	 * @param port the port to set
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * @param maxConnections the maxConnections to set
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @param maxServers the maxServers to set
+	 */
+	public void setMaxServers(int maxServers) {
+		this.maxServers = maxServers;
+	}
+
+	/**
+	 * @param expiry the expiry to set
+	 */
+	public void setExpiry(long expiry) {
+		this.expiry = expiry;
+	}
+
+	/**
+	 * @param listeners the listeners to set
+	 */
+	public void setListeners(List<PushListener> listeners) {
+		this.listeners = listeners;
+	}
+}
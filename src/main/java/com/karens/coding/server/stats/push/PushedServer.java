@@ -0,0 +1,96 @@
+package com.karens.coding.server.stats.push;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+
+/**
+ * Latest sample pushed by one server
+ * @author karen
+ *
+ */
+public final class PushedServer {
+
+	private final long serverId;
+
+	private long sequence;
+
+	private long sampleTimestamp;
+
+	private long receivedTimestamp;
+
+	private long samples;
+
+	private final MetricRecord record = new MetricRecord();
+
+	PushedServer(long serverId) {
+		this.serverId = serverId;
+		this.receivedTimestamp = System.currentTimeMillis();
+	}
+
+	synchronized void update(long sequence, long sampleTimestamp, MetricRecord record) {
+		this.sequence = sequence;
+		this.sampleTimestamp = sampleTimestamp;
+		this.receivedTimestamp = System.currentTimeMillis();
+		this.samples++;
+		this.record.copyFrom(record);
+	}
+
+	/**
+	 * @return the serverId
+	 */
+	public long getServerId() {
+		return serverId;
+	}
+
+	/**
+	 * @return the sequence of the latest sample
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the sampleTimestamp of the latest sample
+	 */
+	public synchronized long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @return the wall clock time the latest sample was received
+	 */
+	public synchronized long getReceivedTimestamp() {
+		return receivedTimestamp;
+	}
+
+	/**
+	 * @return the number of samples received from the server
+	 */
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Copies the latest sample without allocating
+	 * @param target receives the metrics of the latest sample
+	 */
+	public synchronized void copyRecord(MetricRecord target) {
+		target.copyFrom(record);
+	}
+
+	/**
+	 * @return the collected values of the latest sample, by metric name
+	 */
+	public synchronized Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+		for (Metric metric : Metric.values()) {
+			if (record.has(metric)) {
+				metrics.put(metric.getName(), metric.isFractional() ? (Object) record.getDouble(metric) : (Object) record.getLong(metric));
+			}
+		}
+		return metrics;
+	}
+}
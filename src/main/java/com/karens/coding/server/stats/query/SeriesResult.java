@@ -0,0 +1,68 @@
+package com.karens.coding.server.stats.query;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.karens.coding.server.stats.history.MetricSeries;
+
+/**
+ * Result of one selector of a batch query, in the order of the selectors
+ * @author karen
+ *
+ */
+@JsonInclude(Include.NON_NULL)
+public final class SeriesResult {
+
+	private final long serverId;
+	private final String metric;
+
+	/** 200, or the status the selector would have got on its own */
+	private final int statusCode;
+
+	/** Error message, null on success */
+	private final String message;
+
+	private final MetricSeries series;
+
+	public SeriesResult(long serverId, String metric, int statusCode, String message, MetricSeries series) {
+		this.serverId = serverId;
+		this.metric = metric;
+		this.statusCode = statusCode;
+		this.message = message;
+		this.series = series;
+	}
+
+	/**
+	 * @return the serverId
+	 */
+	public long getServerId() {
+		return serverId;
+	}
+
+	/**
+	 * @return the metric
+	 */
+	public String getMetric() {
+		return metric;
+	}
+
+	/**
+	 * @return the statusCode
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the series
+	 */
+	public MetricSeries getSeries() {
+		return series;
+	}
+}
@@ -0,0 +1,461 @@
+package com.karens.coding.server.stats.query;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.fleet.FleetAggregator;
+import com.karens.coding.server.stats.form.SeriesSelector;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.history.MetricSeries;
+
+/**
+ * Answers a batch of {@link SeriesSelector}s at once. Selectors reading the same tier of the same series are
+ * grouped, and those whose ranges overlap share a single read of the union, sliced for each of them. The reads
+ * of this server run in parallel on a bounded pool, a full pool making the request thread read; the reads of the
+ * fleet agents go out on the non-blocking client of the {@link FleetAggregator}. Each selector gets its own status,
+ * one failing does not fail the others.
+ * @author karen
+ *
+ */
+@Service("StatisticsQueryService")
+public class StatisticsQueryService {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(StatisticsQueryService.class);
+
+	/** Path of the history on the agents */
+	public static final String HISTORY_PATH = "/rest/server/statistics/history";
+
+	@Autowired
+	private MetricHistory metricHistory;
+
+	@Autowired(required = false)
+	private FleetAggregator fleetAggregator;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/** Id of this server */
+	@Value("${serverstats.server.id:0}")
+	private long serverId = 0l;
+
+	/** Threads reading the history of this server */
+	@Value("${serverstats.query.threads:4}")
+	private int threads = 4;
+
+	/** Reads waiting for a thread before the request threads read themselves */
+	@Value("${serverstats.query.queue.capacity:64}")
+	private int queueCapacity = 64;
+
+	/** Maximum number of selectors of one query */
+	@Value("${serverstats.query.selectors.max:500}")
+	private int maxSelectors = 500;
+
+	/** Milliseconds a query waits for its reads */
+	@Value("${serverstats.query.timeout:5000}")
+	private long timeout = 5000l;
+
+	private final AtomicLong selectors = new AtomicLong();
+	private final AtomicLong reads = new AtomicLong();
+
+	private ThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void start() {
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "server-stats-query-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param batch the selectors
+	 * @return one result per selector, in the same order
+	 * @throws IllegalArgumentException if there are more selectors than serverstats.query.selectors.max
+	 * @throws InterruptedException
+	 */
+	public List<SeriesResult> query(List<SeriesSelector> batch) throws InterruptedException {
+		if (batch.size() > maxSelectors) {
+			throw new IllegalArgumentException("At most " + maxSelectors + " selectors per query, got " + batch.size());
+		}
+		selectors.addAndGet(batch.size());
+		SeriesResult[] results = new SeriesResult[batch.size()];
+		Read[] readOf = new Read[batch.size()];
+
+		// selectors of the same tier of the same series, by key
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for (int index = 0; index < batch.size(); index++) {
+			SeriesSelector selector = batch.get(index);
+			long server = selector.getServerId() != null ? selector.getServerId() : serverId;
+			String key = keyOf(server, selector);
+			if (key == null) {
+				results[index] = invalid(server, selector);
+				continue;
+			}
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			group.add(index);
+		}
+
+		List<Read> pending = new ArrayList<Read>();
+		for (List<Integer> group : groups.values()) {
+			merge(batch, group, readOf, pending);
+		}
+		reads.addAndGet(pending.size());
+
+		// the timeout covers the inline read too
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		// the request thread takes the last read of this server instead of waiting idle
+		Read inline = null;
+		for (Read read : pending) {
+			if (read.remote) {
+				read.send();
+			}
+			else if (inline == null) {
+				inline = read;
+			}
+			else {
+				executor.execute(inline);
+				inline = read;
+			}
+		}
+		if (inline != null) {
+			inline.run();
+		}
+
+		for (Read read : pending) {
+			if (!read.done.await(Math.max(0l, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				read.expire();
+			}
+		}
+		for (int index = 0; index < results.length; index++) {
+			if (results[index] == null) {
+				SeriesSelector selector = batch.get(index);
+				results[index] = readOf[index].resultFor(from(selector), to(selector));
+			}
+		}
+		List<SeriesResult> answer = new ArrayList<SeriesResult>(results.length);
+		Collections.addAll(answer, results);
+		return answer;
+	}
+
+	/**
+	 * @return the key grouping the selectors reading the same data, or null if the selector cannot be read
+	 */
+	private String keyOf(long server, SeriesSelector selector) {
+		if (selector.getMetric() == null || selector.getMetric().isEmpty() || from(selector) > to(selector)) {
+			return null;
+		}
+		if (server == serverId) {
+			long tier = metricHistory.resolutionOf(selector.getMetric(), from(selector), selector.getResolution());
+			return tier < 0 ? null : server + "/" + selector.getMetric() + "/" + tier;
+		}
+		if (fleetAggregator == null || fleetAggregator.getAgent(server) == null) {
+			return null;
+		}
+		// without a resolution the agent picks the tier from the start of the range
+		return server + "/" + selector.getMetric() + (selector.getResolution() != null ? "/" + selector.getResolution() : "@" + from(selector));
+	}
+
+	private SeriesResult invalid(long server, SeriesSelector selector) {
+		if (selector.getMetric() == null || selector.getMetric().isEmpty()) {
+			return new SeriesResult(server, selector.getMetric(), 400, "A selector needs a metric", null);
+		}
+		if (from(selector) > to(selector)) {
+			return new SeriesResult(server, selector.getMetric(), 400, "The range starts after it ends", null);
+		}
+		if (server == serverId) {
+			return new SeriesResult(server, selector.getMetric(), 404,
+					"Unknown metric " + selector.getMetric() + ", available metrics are " + metricHistory.getMetricNames(), null);
+		}
+		return new SeriesResult(server, selector.getMetric(), 404, "No history of server " + server, null);
+	}
+
+	/**
+	 * Sorts the selectors of a group by start, and merges those whose ranges overlap into one read
+	 */
+	private void merge(final List<SeriesSelector> batch, List<Integer> group, Read[] readOf, List<Read> pending) {
+		Collections.sort(group, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Long.compare(from(batch.get(first)), from(batch.get(second)));
+			}
+		});
+		Read current = null;
+		for (Integer index : group) {
+			SeriesSelector selector = batch.get(index);
+			if (current != null && from(selector) <= current.to) {
+				current.to = Math.max(current.to, to(selector));
+			}
+			else {
+				long server = selector.getServerId() != null ? selector.getServerId() : serverId;
+				current = new Read(server, selector.getMetric(), from(selector), to(selector), selector.getResolution(), server != serverId);
+				if (!current.remote) {
+					// the tier of the group, whatever the start of the merged range
+					current.resolution = metricHistory.resolutionOf(selector.getMetric(), from(selector), selector.getResolution());
+				}
+				pending.add(current);
+			}
+			readOf[index] = current;
+		}
+	}
+
+	private static long from(SeriesSelector selector) {
+		return selector.getFrom() != null ? selector.getFrom() : 0l;
+	}
+
+	private static long to(SeriesSelector selector) {
+		return selector.getTo() != null ? selector.getTo() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param node serialized MetricSeries
+	 * @return MetricSeries
+	 */
+	static MetricSeries toSeries(JsonNode node) {
+		JsonNode timestampNodes = node.path("timestamps");
+		long[] timestamps = new long[timestampNodes.size()];
+		for (int index = 0; index < timestamps.length; index++) {
+			timestamps[index] = timestampNodes.get(index).asLong();
+		}
+		double[] values = toDoubles(node.get("values"), timestamps.length);
+		long[] counts = null;
+		if (node.hasNonNull("counts")) {
+			counts = new long[timestamps.length];
+			for (int index = 0; index < counts.length; index++) {
+				counts[index] = node.get("counts").path(index).asLong();
+			}
+		}
+		return new MetricSeries(node.path("metric").asText(), node.path("resolution").asLong(), timestamps, values,
+				toDoubles(node.get("min"), timestamps.length), toDoubles(node.get("max"), timestamps.length), counts);
+	}
+
+	private static double[] toDoubles(JsonNode node, int length) {
+		if (node == null || node.isNull()) {
+			return null;
+		}
+		double[] doubles = new double[length];
+		for (int index = 0; index < length; index++) {
+			doubles[index] = node.path(index).asDouble();
+		}
+		return doubles;
+	}
+
+	/**
+	 * @return the number of selectors answered
+	 */
+	public long getSelectors() {
+		return selectors.get();
+	}
+
+	/**
+	 * @return the number of reads done for them, after grouping and merging
+	 */
+	public long getReads() {
+		return reads.get();
+	}
+
+	/**
+	 * @param metricHistory the metricHistory to set
+	 */
+	public void setMetricHistory(MetricHistory metricHistory) {
+		this.metricHistory = metricHistory;
+	}
+
+	/**
+	 * @param fleetAggregator the fleetAggregator to set
+	 */
+	public void setFleetAggregator(FleetAggregator fleetAggregator) {
+		this.fleetAggregator = fleetAggregator;
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * @param threads the threads to set
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param timeout the timeout to set
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param maxSelectors the maxSelectors to set
+	 */
+	public void setMaxSelectors(int maxSelectors) {
+		this.maxSelectors = maxSelectors;
+	}
+
+	/**
+	 * One read of a series, shared by the selectors whose ranges it covers
+	 */
+	private final class Read implements Runnable, FutureCallback<HttpResponse> {
+		final long server;
+		final String metric;
+		final long from;
+		long to;
+		Long resolution;
+		final boolean remote;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile Future<HttpResponse> request;
+		volatile MetricSeries series;
+		volatile int statusCode = 504;
+		volatile String message = "No answer within " + timeout + " ms";
+
+		Read(long server, String metric, long from, long to, Long resolution, boolean remote) {
+			this.server = server;
+			this.metric = metric;
+			this.from = from;
+			this.to = to;
+			this.resolution = resolution;
+			this.remote = remote;
+		}
+
+		@Override
+		public void run() {
+			try {
+				series = metricHistory.query(metric, from, to, resolution);
+				if (series == null) {
+					answer(404, "Unknown metric " + metric);
+				}
+				else {
+					answer(200, null);
+				}
+			} catch (Exception e) {
+				logger.error("Unable to read the history of " + metric + " " + e.getMessage());
+				answer(500, "Unable to read the history of " + metric);
+			} finally {
+				done.countDown();
+			}
+		}
+
+		void send() {
+			StringBuilder path = new StringBuilder(HISTORY_PATH);
+			try {
+				path.append("?metric=").append(URLEncoder.encode(metric, "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			path.append("&from=").append(from).append("&to=").append(to);
+			if (resolution != null) {
+				path.append("&resolution=").append(resolution);
+			}
+			request = fleetAggregator.get(server, path.toString(), this);
+			if (request == null) {
+				answer(404, "No history of server " + server);
+				done.countDown();
+			}
+		}
+
+		void expire() {
+			Future<HttpResponse> pending = request;
+			if (pending != null) {
+				pending.cancel(true);
+			}
+		}
+
+		@Override
+		public void completed(HttpResponse response) {
+			try {
+				int status = response.getStatusLine().getStatusCode();
+				if (status != HttpStatus.SC_OK) {
+					EntityUtils.consumeQuietly(response.getEntity());
+					answer(502, "Server " + server + " answered HTTP " + status);
+					return;
+				}
+				JsonNode body = objectMapper.readTree(response.getEntity().getContent());
+				if (body.path("statusCode").asInt() != 200 || !body.hasNonNull("result")) {
+					answer(body.path("statusCode").asInt(502), body.path("message").asText());
+					return;
+				}
+				series = toSeries(body.get("result"));
+				answer(200, null);
+			} catch (Exception e) {
+				answer(502, "Unable to read the history of server " + server + " " + e.getMessage());
+			} finally {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public void failed(Exception e) {
+			answer(502, e.getClass().getSimpleName() + " " + e.getMessage());
+			done.countDown();
+		}
+
+		@Override
+		public void cancelled() {
+			done.countDown();
+		}
+
+		private void answer(int statusCode, String message) {
+			this.message = message;
+			this.statusCode = statusCode;
+		}
+
+		SeriesResult resultFor(long from, long to) {
+			int status = statusCode;
+			if (status != 200) {
+				return new SeriesResult(server, metric, status, message, null);
+			}
+			return new SeriesResult(server, metric, 200, null, series.slice(from, to));
+		}
+	}
+}
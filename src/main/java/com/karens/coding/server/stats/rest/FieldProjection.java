@@ -0,0 +1,61 @@
+package com.karens.coding.server.stats.rest;
+
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.karens.coding.server.stats.health.ServerStatistics;
+
+/**
+ * Serializes {@link ServerStatistics} with only the requested fields. The getters of the other
+ * fields are never called. The filter is attached through a mix-in on a copy of the application
+ * ObjectMapper, so every other serialization is left untouched.
+ * @author karen
+ *
+ */
+@Service("FieldProjection")
+public class FieldProjection {
+
+	/** Id of the filter of the statistics fields */
+	private static final String FILTER = "fields";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private ObjectMapper projectionMapper;
+
+	@PostConstruct
+	public void init() {
+		projectionMapper = objectMapper.copy().addMixIn(ServerStatistics.class, FilteredStatistics.class);
+	}
+
+	/**
+	 * @param value the response, holding the statistics at any depth
+	 * @param fields JSON fields of the statistics to write
+	 * @return the UTF-8 JSON
+	 * @throws JsonProcessingException
+	 */
+	public byte[] write(Object value, Set<String> fields) throws JsonProcessingException {
+		SimpleFilterProvider filters = new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields));
+		return projectionMapper.writer(filters).writeValueAsBytes(value);
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	@JsonFilter(FILTER)
+	private static abstract class FilteredStatistics {
+	}
+}
@@ -0,0 +1,64 @@
+package com.karens.coding.server.stats.rest;
+
+/**
+ * The {@link RestResponse} of one statistics snapshot, serialized once and shared by every request until the next sample.
+ * The body must not be modified.
+ * @author karen
+ *
+ */
+public final class SerializedSnapshot {
+
+	/** Sequence number of the snapshot */
+	private final long sequence;
+
+	/** Wall clock time of the sample, in milliseconds since the epoch */
+	private final long sampleTimestamp;
+
+	/** Strong entity tag, quoted */
+	private final String etag;
+
+	/** UTF-8 JSON of the response */
+	private final byte[] body;
+
+	public SerializedSnapshot(long sequence, long sampleTimestamp, String etag, byte[] body) {
+		this.sequence = sequence;
+		this.sampleTimestamp = sampleTimestamp;
+		this.etag = etag;
+		this.body = body;
+	}
+
+	/**
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the sampleTimestamp
+	 */
+	public long getSampleTimestamp() {
+		return sampleTimestamp;
+	}
+
+	/**
+	 * @return the etag
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * @return the body, shared and not to be modified
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the milliseconds elapsed since the sample
+	 */
+	public long getSampleAge() {
+		return Math.max(0l, System.currentTimeMillis() - sampleTimestamp);
+	}
+}
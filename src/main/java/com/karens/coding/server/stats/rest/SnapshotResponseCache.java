@@ -0,0 +1,73 @@
+package com.karens.coding.server.stats.rest;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Serializes the response of every snapshot once, on the sampling thread, so that the statistics
+ * requests only copy bytes. The entity tag is the sequence number of the snapshot prefixed with the start
+ * time of the process, a tag handed out before a restart never matches a snapshot taken after it.
+ * <p>
+ * The sampleAge in the body is the age at serialization; the current age goes in the Age header.
+ * @author karen
+ *
+ */
+@Service("SnapshotResponseCache")
+public class SnapshotResponseCache implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(SnapshotResponseCache.class);
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/** Distinguishes the sequence numbers of this process from those of previous runs */
+	private final String epoch = Long.toHexString(System.currentTimeMillis());
+
+	private final AtomicReference<SerializedSnapshot> latest = new AtomicReference<SerializedSnapshot>();
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		RestResponse response = new RestResponse();
+		response.setResult(snapshot);
+		response.setMessage("Success");
+		response.setStatusCode(200);
+		try {
+			latest.set(new SerializedSnapshot(snapshot.getSequence(), snapshot.getSampleTimestamp(), etag(snapshot.getSequence()),
+					objectMapper.writeValueAsBytes(response)));
+		} catch (JsonProcessingException e) {
+			logger.error("Unable to serialize statistics snapshot " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param sequence
+	 * @return the quoted strong entity tag of the snapshot
+	 */
+	public String etag(long sequence) {
+		return "\"" + epoch + "-" + sequence + "\"";
+	}
+
+	/**
+	 * @return the latest serialized snapshot, or null if nothing has been sampled yet
+	 */
+	public SerializedSnapshot getLatest() {
+		return latest.get();
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+}
@@ -0,0 +1,342 @@
+package com.karens.coding.server.stats.stream;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+/**
+ * Pushes every snapshot to the Server-Sent Events subscribers. The snapshot is serialized once per
+ * sample and the same payload is handed to every subscriber. Each subscriber holds at most one pending
+ * payload: a client still busy with the previous one only gets the newest, intermediate samples are
+ * dropped instead of queued.
+ * <p>
+ * A send blocks its thread until the client reads. A send still running after the send timeout marks a
+ * stalled client: it is unsubscribed and its sending thread interrupted, and the pool grows by one thread
+ * until that send returns so the other subscribers keep their threads. The emitter is completed once the
+ * send gives its thread back, the emitter being locked while it sends.
+ * <p>
+ * The pool grows for at most the configured number of stalled sends. Past it the stalled sends keep the threads
+ * of the live subscribers, and new subscribers are refused until enough of them have returned.
+ * @author karen
+ *
+ */
+@Service("StatisticsBroadcaster")
+public class StatisticsBroadcaster implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(StatisticsBroadcaster.class);
+
+	/** Name of the events sent to the subscribers */
+	public static final String EVENT_NAME = "statistics";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/** Milliseconds after which a subscription ends, clients reconnect on their own */
+	@Value("${serverstats.stream.timeout:1800000}")
+	private long timeout = 1800000l;
+
+	/** Number of threads writing to the subscribers */
+	@Value("${serverstats.stream.threads:4}")
+	private int threads = 4;
+
+	/** Milliseconds a single send may block before its subscriber is dropped */
+	@Value("${serverstats.stream.send.timeout:5000}")
+	private long sendTimeout = 5000l;
+
+	/** Stalled sends the pool grows for, new subscribers are refused past it */
+	@Value("${serverstats.stream.stalled.max:16}")
+	private int maxStalled = 16;
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	/** Last serialized snapshot, sent to new subscribers right away */
+	private final AtomicReference<Payload> latest = new AtomicReference<Payload>();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Number of threads held by the sends of dropped subscribers */
+	private int stalled;
+
+	private ThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void start() {
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "server-stats-stream-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	@PreDestroy
+	public void stop() {
+		for (Subscriber subscriber : subscribers) {
+			subscriber.emitter.complete();
+		}
+		subscribers.clear();
+		executor.shutdownNow();
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		Payload payload;
+		try {
+			payload = new Payload(snapshot.getSequence(), objectMapper.writeValueAsString(snapshot));
+		} catch (JsonProcessingException e) {
+			logger.error("Unable to serialize statistics snapshot " + e.getMessage());
+			return;
+		}
+		latest.set(payload);
+		long now = System.nanoTime();
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.stall(now)) {
+				subscribers.remove(subscriber);
+				resize(1);
+				logger.warn("Dropping a stream subscriber whose send has been blocked for more than " + sendTimeout + " ms");
+			}
+			else {
+				subscriber.offer(payload);
+			}
+		}
+	}
+
+	/**
+	 * Registers a new subscriber and sends it the latest snapshot
+	 * @return the emitter to return from the controller, or null if too many sends are stalled
+	 */
+	public SseEmitter subscribe() {
+		SseEmitter emitter = new SseEmitter(timeout);
+		if (!subscribe(emitter)) {
+			return null;
+		}
+		return emitter;
+	}
+
+	/**
+	 * @param emitter the emitter of the new subscriber
+	 * @return false if the subscriber was refused because too many sends are stalled
+	 */
+	boolean subscribe(SseEmitter emitter) {
+		if (getStalledCount() > maxStalled) {
+			logger.warn("Refusing a stream subscriber, more than " + maxStalled + " sends are stalled");
+			return false;
+		}
+		final Subscriber subscriber = new Subscriber(emitter);
+		Runnable remove = new Runnable() {
+			@Override
+			public void run() {
+				subscribers.remove(subscriber);
+			}
+		};
+		emitter.onCompletion(remove);
+		emitter.onTimeout(remove);
+		subscribers.add(subscriber);
+		Payload payload = latest.get();
+		if (payload != null) {
+			subscriber.offer(payload);
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps as many threads as configured for the live subscribers, on top of those blocked by stalled sends up to the maximum
+	 * @param delta change of the number of stalled sends
+	 */
+	private synchronized void resize(int delta) {
+		stalled += delta;
+		int size = threads + Math.min(stalled, maxStalled);
+		if (size > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(size);
+			executor.setCorePoolSize(size);
+		}
+		else {
+			executor.setCorePoolSize(size);
+			executor.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * @return the number of connected subscribers
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * @return the number of sends of dropped subscribers still blocked
+	 */
+	public synchronized int getStalledCount() {
+		return stalled;
+	}
+
+	/**
+	 * @return the number of payloads replaced before a slow subscriber could receive them
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * @param threads the threads to set
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param sendTimeout the sendTimeout to set
+	 */
+	public void setSendTimeout(long sendTimeout) {
+		this.sendTimeout = sendTimeout;
+	}
+
+	/**
+	 * @param maxStalled the maxStalled to set
+	 */
+	public void setMaxStalled(int maxStalled) {
+		this.maxStalled = maxStalled;
+	}
+
+	/**
+	 * A serialized snapshot, shared by all subscribers
+	 */
+	private static final class Payload {
+		final long sequence;
+		final String json;
+
+		Payload(long sequence, String json) {
+			this.sequence = sequence;
+			this.json = json;
+		}
+	}
+
+	/**
+	 * One connected client with its single pending payload
+	 */
+	private final class Subscriber implements Runnable {
+		final SseEmitter emitter;
+		final AtomicReference<Payload> pending = new AtomicReference<Payload>();
+		/** True while a send task is scheduled or running for this subscriber */
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		/** Start of the send in progress in nanoseconds, guarded by this */
+		private long sendStarted;
+		private Thread sender;
+		private boolean stalled;
+
+		Subscriber(SseEmitter emitter) {
+			this.emitter = emitter;
+		}
+
+		/**
+		 * Marks the subscriber stalled if its send in progress started more than the send timeout ago
+		 * @param now
+		 * @return true if the subscriber has just been marked stalled
+		 */
+		synchronized boolean stall(long now) {
+			if (sender == null || stalled || now - sendStarted < TimeUnit.MILLISECONDS.toNanos(sendTimeout)) {
+				return false;
+			}
+			stalled = true;
+			sender.interrupt();
+			return true;
+		}
+
+		synchronized void sending() {
+			sender = Thread.currentThread();
+			sendStarted = System.nanoTime();
+		}
+
+		/**
+		 * @return true if the subscriber was marked stalled during the send
+		 */
+		synchronized boolean sent() {
+			sender = null;
+			return stalled;
+		}
+
+		void offer(Payload payload) {
+			if (pending.getAndSet(payload) != null) {
+				dropped.incrementAndGet();
+			}
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Payload payload = pending.getAndSet(null);
+				if (payload == null) {
+					scheduled.set(false);
+					// a payload offered between the empty read and the reset would otherwise wait for the next sample
+					if (pending.get() != null && scheduled.compareAndSet(false, true)) {
+						continue;
+					}
+					return;
+				}
+				Exception failure = null;
+				sending();
+				try {
+					emitter.send(SseEmitter.event().id(Long.toString(payload.sequence)).name(EVENT_NAME).data(payload.json));
+				} catch (IOException | IllegalStateException e) {
+					// client went away
+					failure = e;
+				}
+				boolean timedOut = sent();
+				if (timedOut) {
+					// clears an interrupt the send did not consume
+					Thread.interrupted();
+					if (failure == null) {
+						failure = new IOException("Send blocked for more than " + sendTimeout + " ms");
+					}
+				}
+				if (failure != null) {
+					subscribers.remove(this);
+					pending.set(null);
+					emitter.completeWithError(failure);
+					if (timedOut) {
+						resize(-1);
+					}
+					return;
+				}
+			}
+		}
+	}
+}
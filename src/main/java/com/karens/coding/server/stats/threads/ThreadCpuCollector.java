@@ -0,0 +1,296 @@
+package com.karens.coding.server.stats.threads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.karens.coding.server.stats.health.StatisticsListener;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.utils.LongLongHashMap;
+
+/**
+ * Tracks the CPU time of every live thread between two samples and keeps the hottest ones.
+ * The CPU times are kept in two primitive maps swapped on every sample, and the hottest threads are
+ * selected with a bounded heap, so a sample costs one ThreadMXBean call per thread and no boxing.
+ * Thread names and stacks are only looked up for the threads that are asked for.
+ * @author karen
+ *
+ */
+@Service("ThreadCpuCollector")
+public class ThreadCpuCollector implements StatisticsListener {
+
+	/** Logger */
+	private static final Logger logger = LogManager.getLogger(ThreadCpuCollector.class);
+
+	private static final long MISSING = -1l;
+
+	/** Track the CPU time of the threads on every sample */
+	@Value("${serverstats.threads.enabled:true}")
+	private boolean enabled = true;
+
+	/** Number of hottest threads kept per sample */
+	@Value("${serverstats.threads.top.max:50}")
+	private int max = 50;
+
+	/** Number of stack frames returned per thread */
+	@Value("${serverstats.threads.stack.depth:8}")
+	private int stackDepth = 8;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/** CPU time by thread id, of the previous and of the current sample, only touched by the sampling thread */
+	private LongLongHashMap previous = new LongLongHashMap(256, MISSING);
+	private LongLongHashMap current = new LongLongHashMap(256, MISSING);
+	private long previousNanos = 0l;
+
+	/** Min-heap of the hottest threads of the sample being taken */
+	private long[] heapIds;
+	private long[] heapDeltas;
+
+	private final AtomicReference<HotThreads> latest = new AtomicReference<HotThreads>();
+
+	@PostConstruct
+	public void start() {
+		heapIds = new long[max];
+		heapDeltas = new long[max];
+		if (!threadBean.isThreadCpuTimeSupported()) {
+			logger.warn("Thread CPU time is not supported by this JVM, hot threads are not tracked");
+			enabled = false;
+			return;
+		}
+		if (enabled && !threadBean.isThreadCpuTimeEnabled()) {
+			threadBean.setThreadCpuTimeEnabled(true);
+		}
+	}
+
+	@Override
+	public void onSnapshot(StatisticsSnapshot snapshot) {
+		if (enabled) {
+			sample(snapshot.getSampleTimestamp());
+		}
+	}
+
+	/**
+	 * Reads the CPU time of every live thread and publishes the hottest ones since the previous sample
+	 * @param timestamp in milliseconds since the epoch
+	 */
+	public void sample(long timestamp) {
+		long nanos = System.nanoTime();
+		long[] ids = threadBean.getAllThreadIds();
+		boolean first = previousNanos == 0l;
+		int count = 0;
+		current.clear();
+		for (long id : ids) {
+			long cpuTime = threadBean.getThreadCpuTime(id);
+			if (cpuTime < 0) {
+				// the thread died meanwhile
+				continue;
+			}
+			current.put(id, cpuTime);
+			if (first) {
+				continue;
+			}
+			long before = previous.get(id);
+			// a thread started since the previous sample used all its time within the interval
+			long delta = before == MISSING ? cpuTime : cpuTime - before;
+			if (delta > 0) {
+				count = offer(count, id, delta);
+			}
+		}
+		LongLongHashMap swap = previous;
+		previous = current;
+		current = swap;
+		long elapsed = nanos - previousNanos;
+		previousNanos = nanos;
+		if (!first) {
+			latest.set(drain(count, timestamp, elapsed, ids.length));
+		}
+	}
+
+	/**
+	 * Adds a thread to the heap of the hottest threads, replacing the coolest one when full
+	 * @return the new number of threads in the heap
+	 */
+	private int offer(int count, long id, long delta) {
+		if (count < max) {
+			int index = count;
+			heapIds[index] = id;
+			heapDeltas[index] = delta;
+			// sift up
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (heapDeltas[parent] <= heapDeltas[index]) {
+					break;
+				}
+				swap(parent, index);
+				index = parent;
+			}
+			return count + 1;
+		}
+		if (count == 0 || delta <= heapDeltas[0]) {
+			return count;
+		}
+		heapIds[0] = id;
+		heapDeltas[0] = delta;
+		siftDown(0, count);
+		return count;
+	}
+
+	private void siftDown(int index, int count) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= count) {
+				return;
+			}
+			if (child + 1 < count && heapDeltas[child + 1] < heapDeltas[child]) {
+				child++;
+			}
+			if (heapDeltas[index] <= heapDeltas[child]) {
+				return;
+			}
+			swap(index, child);
+			index = child;
+		}
+	}
+
+	private void swap(int first, int second) {
+		long id = heapIds[first];
+		long delta = heapDeltas[first];
+		heapIds[first] = heapIds[second];
+		heapDeltas[first] = heapDeltas[second];
+		heapIds[second] = id;
+		heapDeltas[second] = delta;
+	}
+
+	/**
+	 * Empties the heap into arrays sorted hottest first
+	 */
+	private HotThreads drain(int count, long timestamp, long elapsed, int threadCount) {
+		long[] ids = new long[count];
+		long[] deltas = new long[count];
+		for (int index = count - 1; index >= 0; index--) {
+			ids[index] = heapIds[0];
+			deltas[index] = heapDeltas[0];
+			heapIds[0] = heapIds[index];
+			heapDeltas[0] = heapDeltas[index];
+			siftDown(0, index);
+		}
+		return new HotThreads(timestamp, elapsed, threadCount, ids, deltas);
+	}
+
+	/**
+	 * @param n number of threads
+	 * @return the hottest threads of the latest sample with their stack, hottest first
+	 */
+	public List<ThreadCpuUsage> getTop(int n) {
+		HotThreads hot = latest.get();
+		List<ThreadCpuUsage> result = new ArrayList<ThreadCpuUsage>();
+		if (hot == null || n <= 0) {
+			return result;
+		}
+		int count = Math.min(n, hot.ids.length);
+		ThreadInfo[] infos = threadBean.getThreadInfo(Arrays.copyOf(hot.ids, count), stackDepth);
+		for (int index = 0; index < count; index++) {
+			ThreadInfo info = infos[index];
+			if (info == null) {
+				// the thread ended since the sample
+				continue;
+			}
+			List<String> stack = new ArrayList<String>();
+			for (StackTraceElement element : info.getStackTrace()) {
+				stack.add(element.toString());
+			}
+			result.add(new ThreadCpuUsage(info.getThreadId(), info.getThreadName(), info.getThreadState().name(), info.getLockName(),
+					hot.deltas[index], (double) hot.deltas[index] / hot.elapsed, stack));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of live threads at the latest sample, or -1 before the second sample
+	 */
+	public int getThreadCount() {
+		HotThreads hot = latest.get();
+		return hot != null ? hot.threadCount : -1;
+	}
+
+	/**
+	 * @return the timestamp of the latest sample, or -1 before the second sample
+	 */
+	public long getSampleTimestamp() {
+		HotThreads hot = latest.get();
+		return hot != null ? hot.timestamp : -1l;
+	}
+
+	/**
+	 * @return the enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled the enabled to set
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * @param max the max to set
+	 */
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	/**
+	 * @return the stackDepth
+	 */
+	public int getStackDepth() {
+		return stackDepth;
+	}
+
+	/**
+	 * @param stackDepth the stackDepth to set
+	 */
+	public void setStackDepth(int stackDepth) {
+		this.stackDepth = stackDepth;
+	}
+
+	/**
+	 * Hottest threads of one sample, immutable once published
+	 */
+	private static final class HotThreads {
+		final long timestamp;
+		final long elapsed;
+		final int threadCount;
+		final long[] ids;
+		final long[] deltas;
+
+		HotThreads(long timestamp, long elapsed, int threadCount, long[] ids, long[] deltas) {
+			this.timestamp = timestamp;
+			this.elapsed = elapsed;
+			this.threadCount = threadCount;
+			this.ids = ids;
+			this.deltas = deltas;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.karens.coding.server.stats.threads;
+
+import java.util.List;
+
+/**
+ * CPU used by one thread between two samples of the {@link ThreadCpuCollector}
+ * @author karen
+ *
+ */
+public class ThreadCpuUsage {
+
+	/** Thread id */
+	private final long id;
+
+	/** Thread name */
+	private final String name;
+
+	/** Thread state when the stack was taken */
+	private final String state;
+
+	/** Lock the thread is waiting for, or null */
+	private final String lockName;
+
+	/** CPU time used during the interval in nanoseconds */
+	private final long cpuTime;
+
+	/** Share of one core used during the interval, in the [0.0,1.0] interval */
+	private final double cpuUsage;
+
+	/** Top frames of the stack, taken when the thread was asked for */
+	private final List<String> stack;
+
+	public ThreadCpuUsage(long id, String name, String state, String lockName, long cpuTime, double cpuUsage, List<String> stack) {
+		this.id = id;
+		this.name = name;
+		this.state = state;
+		this.lockName = lockName;
+		this.cpuTime = cpuTime;
+		this.cpuUsage = cpuUsage;
+		this.stack = stack;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the state
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * @return the lockName
+	 */
+	public String getLockName() {
+		return lockName;
+	}
+
+	/**
+	 * @return the cpuTime
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @return the cpuUsage
+	 */
+	public double getCpuUsage() {
+		return cpuUsage;
+	}
+
+	/**
+	 * @return the stack
+	 */
+	public List<String> getStack() {
+		return stack;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ThreadCpuUsage [id=" + id + ", name=" + name + ", state=" + state + ", cpuTime=" + cpuTime + ", cpuUsage=" + cpuUsage + "]";
+	}
+}
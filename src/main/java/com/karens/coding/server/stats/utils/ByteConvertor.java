@@ -1,7 +1,7 @@
 package com.karens.coding.server.stats.utils;
 
 /**
- * 
+ * Converts byte counts to binary units, on primitives only
  * @author karen
  *
  */
@@ -10,59 +10,46 @@ public class ByteConvertor {
 	/**
 	 * 
 	 * @param bytes
-	 * @return
+	 * @return the bytes in KB
 	 */
-	public static Double convertBytesToKilobytes(Long bytes) {
-		Double kilobytes = 0.0;
-		if (bytes != null) {
-			kilobytes = bytes/1024.00;
-		}
-		return kilobytes;
+	public static double convertBytesToKilobytes(long bytes) {
+		return bytes / 1024.00;
 	}
 	
 	/**
 	 * 
 	 * @param bytes
-	 * @return
+	 * @return the bytes in MB
 	 */
-	public static Double convertBytesToMegabytes(Long bytes) {
-		Double megabytes = 0.0;
-		if (bytes != null) {
-			megabytes = bytes/1048576.00;
-		}
-		return megabytes;
+	public static double convertBytesToMegabytes(long bytes) {
+		return bytes / 1048576.00;
 	}
 	
 	/**
 	 * 
 	 * @param bytes
-	 * @return
+	 * @return the bytes in GB
 	 */
-	public static Double convertBytesToGigabytes(Long bytes) {
-		Double gigabytes = 0.0;
-		if (bytes != null) {
-			gigabytes = bytes/1073741824.00;
-		}
-		return gigabytes;
+	public static double convertBytesToGigabytes(long bytes) {
+		return bytes / 1073741824.00;
 	}
 	
 	/**
 	 * 
 	 * @param bytes
-	 * @param unit
-	 * @return
+	 * @param unit kb, mb or gb, case insensitive
+	 * @return the bytes in the unit, the bytes themselves for any other unit
 	 */
-	public static Double convertBytesByType(Long bytes, String unit) {
-		Double convertedFreeSpace = Double.longBitsToDouble(bytes);
+	public static double convertBytesByType(long bytes, String unit) {
 		if (unit.equalsIgnoreCase("kb")) {
-			convertedFreeSpace = ByteConvertor.convertBytesToKilobytes(bytes);
+			return convertBytesToKilobytes(bytes);
 		}
 		else if (unit.equalsIgnoreCase("mb")) {
-			convertedFreeSpace = ByteConvertor.convertBytesToMegabytes(bytes);
+			return convertBytesToMegabytes(bytes);
 		}
 		else if (unit.equalsIgnoreCase("gb")) {
-			convertedFreeSpace = ByteConvertor.convertBytesToGigabytes(bytes);
-		}	
-		return convertedFreeSpace;
+			return convertBytesToGigabytes(bytes);
+		}
+		return bytes;
 	}
 }
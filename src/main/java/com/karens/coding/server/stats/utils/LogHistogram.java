@@ -0,0 +1,211 @@
+package com.karens.coding.server.stats.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative longs in logarithmic buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so a percentile is off by at most 12.5%. Recording is a few atomic
+ * increments and never allocates; any number of threads may record while others take snapshots.
+ * @author karen
+ *
+ */
+public final class LogHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Enough buckets for Long.MAX_VALUE */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value
+	 * @return the index of the bucket holding the value
+	 */
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) Math.max(0, value);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param bucket
+	 * @return the largest value of the bucket
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1l << (exponent - SUB_BUCKET_BITS);
+		long lower = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+		return lower + width - 1;
+	}
+
+	/**
+	 * @param value negative values are recorded as 0
+	 */
+	public void record(long value) {
+		long recorded = Math.max(0l, value);
+		counts.incrementAndGet(bucket(recorded));
+		count.incrementAndGet();
+		sum.addAndGet(recorded);
+		long current;
+		while (recorded > (current = max.get()) && !max.compareAndSet(current, recorded)) {
+			// retry
+		}
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of the recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Computes several percentiles from the live counts, without copying them.
+	 * Values recorded meanwhile may or may not be counted.
+	 * @param percentiles in [0,100], ascending
+	 * @param values receives the upper bound of the bucket holding each percentile, at most the max, 0 if empty
+	 */
+	public void percentiles(double[] percentiles, long[] values) {
+		long total = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			total += counts.get(bucket);
+		}
+		long highest = max.get();
+		int next = 0;
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS && next < percentiles.length && total > 0; bucket++) {
+			seen += counts.get(bucket);
+			while (next < percentiles.length && seen >= Math.max(1l, (long) Math.ceil(total * percentiles[next] / 100.0))) {
+				values[next++] = Math.min(highest, upperBound(bucket));
+			}
+		}
+		while (next < percentiles.length) {
+			values[next++] = total == 0 ? 0l : highest;
+		}
+	}
+
+	/**
+	 * Copies the counts. Values recorded meanwhile may or may not be in the snapshot.
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			copy[bucket] = counts.get(bucket);
+			total += copy[bucket];
+		}
+		return new Snapshot(copy, total, sum.get(), max.get());
+	}
+
+	/**
+	 * Consistent copy of a {@link LogHistogram}, serialized with its percentiles
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @param percentile in [0,100]
+		 * @return the upper bound of the bucket holding the percentile, at most the max, 0 if empty
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0l;
+			}
+			long rank = Math.max(1l, (long) Math.ceil(count * percentile / 100.0));
+			long seen = 0;
+			for (int bucket = 0; bucket < counts.length; bucket++) {
+				seen += counts[bucket];
+				if (seen >= rank) {
+					return Math.min(max, upperBound(bucket));
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * @return the count
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the sum
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return the max
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the mean, 0 if empty
+		 */
+		public double getMean() {
+			return count == 0 ? 0.0 : (double) sum / count;
+		}
+
+		/**
+		 * @return the median
+		 */
+		public long getP50() {
+			return getPercentile(50);
+		}
+
+		/**
+		 * @return the 90th percentile
+		 */
+		public long getP90() {
+			return getPercentile(90);
+		}
+
+		/**
+		 * @return the 99th percentile
+		 */
+		public long getP99() {
+			return getPercentile(99);
+		}
+
+		/**
+		 * @return the 99.9th percentile
+		 */
+		public long getP999() {
+			return getPercentile(99.9);
+		}
+	}
+}
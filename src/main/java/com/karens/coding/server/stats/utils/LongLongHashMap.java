@@ -0,0 +1,123 @@
+package com.karens.coding.server.stats.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long to long, with linear probing over primitive arrays.
+ * Nothing is boxed and {@link #clear()} keeps the arrays, so a map refilled on every sample stops allocating
+ * once it has grown to its working size. Entries cannot be removed one by one.
+ * <p>
+ * Not thread safe.
+ * @author karen
+ *
+ */
+public final class LongLongHashMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private final long missingValue;
+
+	private long[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int size = 0;
+	private int mask;
+
+	/**
+	 * @param expectedSize number of entries before the first resize
+	 * @param missingValue value returned by {@link #get(long)} for an absent key
+	 */
+	public LongLongHashMap(int expectedSize, long missingValue) {
+		this.missingValue = missingValue;
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15l;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	/**
+	 * @param key
+	 * @return the value, or the missing value
+	 */
+	public long get(long key) {
+		for (int index = hash(key) & mask; used[index]; index = (index + 1) & mask) {
+			if (keys[index] == key) {
+				return values[index];
+			}
+		}
+		return missingValue;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the map holds the key
+	 */
+	public boolean containsKey(long key) {
+		for (int index = hash(key) & mask; used[index]; index = (index + 1) & mask) {
+			if (keys[index] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, long value) {
+		int index = hash(key) & mask;
+		for (; used[index]; index = (index + 1) & mask) {
+			if (keys[index] == key) {
+				values[index] = value;
+				return;
+			}
+		}
+		used[index] = true;
+		keys[index] = key;
+		values[index] = value;
+		if (++size > keys.length * LOAD_FACTOR) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int index = 0; index < oldKeys.length; index++) {
+			if (oldUsed[index]) {
+				put(oldKeys[index], oldValues[index]);
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry and keeps the capacity
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(used, false);
+			size = 0;
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+}
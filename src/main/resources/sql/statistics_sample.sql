@@ -0,0 +1,23 @@
+-- Statistics samples written by StatisticsSampleWriter, valid for MySQL and H2 in MODE=MySQL
+-- The index is declared in the table so that running the script again is a no-op, MySQL has no CREATE INDEX IF NOT EXISTS
+CREATE TABLE IF NOT EXISTS statistics_sample (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    server_id BIGINT NOT NULL,
+    sample_sequence BIGINT NOT NULL,
+    sample_timestamp BIGINT NOT NULL,
+    free_space BIGINT,
+    total_space BIGINT,
+    usable_space BIGINT,
+    system_cpu_usage DOUBLE,
+    jvm_cpu_usage DOUBLE,
+    committed_virtual_memory_size BIGINT,
+    total_swap_space_size BIGINT,
+    free_swap_space_size BIGINT,
+    process_cpu_time BIGINT,
+    free_physical_memory_size BIGINT,
+    total_physical_memory_size BIGINT,
+    system_cpu_load DOUBLE,
+    process_cpu_load DOUBLE,
+    PRIMARY KEY (id),
+    INDEX idx_statistics_sample_server_time (server_id, sample_timestamp)
+);
@@ -0,0 +1,158 @@
+package com.karens.coding.server.stats.alert;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the evaluation of the alert rules and the batched notifications.
+ */
+public class AlertEngineTest extends TestCase {
+
+	private final List<List<Alert>> batches = Collections.synchronizedList(new ArrayList<List<Alert>>());
+
+	private AlertNotifier notifier;
+
+	@Override
+	protected void setUp() {
+		notifier = new AlertNotifier();
+		notifier.setBatchSize(2);
+		notifier.setInterval(50);
+		notifier.setSinks(Arrays.<AlertSink> asList(new AlertSink() {
+			@Override
+			public void send(List<Alert> alerts) {
+				batches.add(new ArrayList<Alert>(alerts));
+			}
+		}));
+		notifier.start();
+	}
+
+	@Override
+	protected void tearDown() {
+		notifier.stop();
+	}
+
+	private AlertEngine engine(String rules, int consecutive) {
+		AlertEngine engine = new AlertEngine();
+		engine.setRuleList(rules);
+		engine.setConsecutive(consecutive);
+		engine.setNotifier(notifier);
+		engine.start();
+		return engine;
+	}
+
+	private static StatisticsSnapshot snapshot(long sequence, double cpuLoad, long usableSpace) {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setSystemCpuLoad(cpuLoad);
+		statistics.setUsableSpace(usableSpace);
+		statistics.setTotalSpace(1000l);
+		return new StatisticsSnapshot(sequence, sequence * 1000l, statistics);
+	}
+
+	private void awaitSent(long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (notifier.getSent() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, notifier.getSent());
+	}
+
+	public void testFiresAndResolves() throws Exception {
+		AlertEngine engine = engine("cpu=avg(systemCpuLoad, 3s) > 0.5; disk = usableSpace < 5%", 1);
+		assertEquals(2, engine.getRules().size());
+		assertEquals(AlertState.INACTIVE, engine.getAlerts().get(0).getState());
+
+		double[] loads = { 0.2, 0.9, 0.9, 0.9, 0.1, 0.1 };
+		long[] spaces = { 500, 40, 40, 40, 40, 60 };
+		for (int index = 0; index < loads.length; index++) {
+			engine.onSnapshot(snapshot(index + 1, loads[index], spaces[index]));
+		}
+		awaitSent(4);
+
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (List<Alert> batch : batches) {
+			assertTrue(batch.size() <= 2);
+			alerts.addAll(batch);
+		}
+		// the average crosses 0.5 on the second sample, (0.2 + 0.9) / 2
+		assertEquals("cpu", alerts.get(0).getName());
+		assertEquals(AlertState.FIRING, alerts.get(0).getState());
+		assertEquals(2000l, alerts.get(0).getSince());
+		assertEquals(0.55, alerts.get(0).getValue(), 1e-9);
+
+		assertEquals("disk", alerts.get(1).getName());
+		assertEquals(AlertState.FIRING, alerts.get(1).getState());
+		assertEquals(2000l, alerts.get(1).getTimestamp());
+		assertEquals(0.04, alerts.get(1).getValue());
+
+		// and falls back on the sixth, (0.9 + 0.1 + 0.1) / 3
+		assertEquals("cpu", alerts.get(2).getName());
+		assertEquals(AlertState.RESOLVED, alerts.get(2).getState());
+		assertEquals(6000l, alerts.get(2).getSince());
+		assertEquals("disk", alerts.get(3).getName());
+		assertEquals(AlertState.RESOLVED, alerts.get(3).getState());
+
+		Alert cpu = engine.getAlerts().get(0);
+		assertEquals(AlertState.RESOLVED, cpu.getState());
+		assertEquals(1.1 / 3, cpu.getValue(), 1e-9);
+		assertEquals(6000l, cpu.getTimestamp());
+	}
+
+	public void testDoesNotFlapAroundTheThreshold() throws Exception {
+		AlertEngine engine = engine("cpu=systemCpuLoad > 0.5", 3);
+		// crosses the threshold on every other sample, then stays above it, then below
+		double[] loads = { 0.6, 0.4, 0.6, 0.4, 0.6, 0.6, 0.6, 0.4, 0.6, 0.4, 0.4, 0.4 };
+		for (int index = 0; index < loads.length; index++) {
+			engine.onSnapshot(snapshot(index + 1, loads[index], 500));
+			if (index == 3) {
+				assertEquals(AlertState.INACTIVE, engine.getAlerts().get(0).getState());
+			}
+		}
+		awaitSent(2);
+		Thread.sleep(100);
+		assertEquals(2, notifier.getSent());
+
+		List<Alert> alerts = new ArrayList<Alert>();
+		for (List<Alert> batch : batches) {
+			alerts.addAll(batch);
+		}
+		assertEquals(AlertState.FIRING, alerts.get(0).getState());
+		assertEquals(7000l, alerts.get(0).getTimestamp());
+		assertEquals(5000l, alerts.get(0).getSince());
+		assertEquals(AlertState.RESOLVED, alerts.get(1).getState());
+		assertEquals(12000l, alerts.get(1).getTimestamp());
+		assertEquals(10000l, alerts.get(1).getSince());
+	}
+
+	public void testSkipsMetricsNotCollected() throws Exception {
+		AlertEngine engine = engine("swap=freeSwapSpaceSize < 10%", 1);
+		engine.onSnapshot(snapshot(1, 0.1, 10));
+		assertEquals(AlertState.INACTIVE, engine.getAlerts().get(0).getState());
+		assertEquals(-1l, engine.getAlerts().get(0).getTimestamp());
+	}
+
+	public void testWritesJsonLines() throws Exception {
+		File file = File.createTempFile("alerts", ".json");
+		file.deleteOnExit();
+		FileAlertSink sink = new FileAlertSink();
+		sink.setFile(file.getPath());
+		sink.setObjectMapper(new ObjectMapper());
+		sink.send(Arrays.asList(new Alert("cpu", "systemCpuLoad > 0.5", AlertState.FIRING, 0.75, 0.5, 1000l, 1000l)));
+		sink.send(Arrays.asList(new Alert("cpu", "systemCpuLoad > 0.5", AlertState.RESOLVED, 0.25, 0.5, 2000l, 2000l)));
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0), lines.get(0).contains("\"state\":\"FIRING\""));
+		assertTrue(lines.get(1), lines.get(1).contains("\"value\":0.25"));
+	}
+}
@@ -0,0 +1,99 @@
+package com.karens.coding.server.stats.alert;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the parsing of the alert rules and their sliding windows.
+ */
+public class AlertRuleTest extends TestCase {
+
+	public void testParsesAggregations() {
+		AlertRule rule = AlertRule.parse("cpu", " avg(systemCpuLoad, 5m) > 0.9 ");
+		assertEquals(Metric.SYSTEM_CPU_LOAD, rule.getMetric());
+		assertEquals(300000l, rule.getWindow());
+		assertEquals(0.9, rule.getThreshold());
+		assertEquals("avg(systemCpuLoad, 5m) > 0.9", rule.getExpression());
+		assertTrue(rule.isBreached(0.95));
+		assertFalse(rule.isBreached(0.9));
+
+		rule = AlertRule.parse("memory", "freePhysicalMemorySize<=1e9");
+		assertEquals(0l, rule.getWindow());
+		assertTrue(rule.isBreached(1e9));
+	}
+
+	public void testComparesPercentagesToTheTotal() {
+		AlertRule rule = AlertRule.parse("disk", "usableSpace < 5%");
+		MetricRecord record = new MetricRecord();
+		record.setLong(Metric.USABLE_SPACE, 4l);
+		assertTrue(Double.isNaN(rule.valueOf(record)));
+		record.setLong(Metric.TOTAL_SPACE, 100l);
+		assertEquals(0.04, rule.valueOf(record));
+		assertTrue(rule.isBreached(rule.valueOf(record)));
+
+		assertEquals(0.5, AlertRule.parse("load", "processCpuLoad >= 50%").getThreshold());
+	}
+
+	public void testRejectsInvalidRules() {
+		String[] invalid = { "cpu > high", "median(systemCpuLoad, 5m) > 1", "avg(unknown, 1s) > 1", "totalSpace < 5%", "systemCpuLoad = 1" };
+		for (String expression : invalid) {
+			try {
+				AlertRule.parse("invalid", expression);
+				fail(expression);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testSlidesTheWindow() {
+		SlidingWindow avg = new SlidingWindow(SlidingWindow.Aggregation.AVG, 3000);
+		SlidingWindow min = new SlidingWindow(SlidingWindow.Aggregation.MIN, 3000);
+		SlidingWindow max = new SlidingWindow(SlidingWindow.Aggregation.MAX, 3000);
+		SlidingWindow last = new SlidingWindow(SlidingWindow.Aggregation.LAST, 0);
+		assertTrue(Double.isNaN(avg.value()));
+		double[] values = { 5, 1, 4, 2, 8, 3, 3, 7 };
+		for (int index = 0; index < values.length; index++) {
+			long timestamp = index * 1000l;
+			avg.add(timestamp, values[index]);
+			min.add(timestamp, values[index]);
+			max.add(timestamp, values[index]);
+			last.add(timestamp, values[index]);
+
+			// the window holds the last 3 values
+			double sum = 0;
+			double lowest = Double.MAX_VALUE;
+			double highest = -Double.MAX_VALUE;
+			for (int previous = Math.max(0, index - 2); previous <= index; previous++) {
+				sum += values[previous];
+				lowest = Math.min(lowest, values[previous]);
+				highest = Math.max(highest, values[previous]);
+			}
+			assertEquals(Math.min(index + 1, 3), avg.size());
+			assertEquals(sum / avg.size(), avg.value(), 1e-9);
+			assertEquals(lowest, min.value());
+			assertEquals(highest, max.value());
+			assertEquals(values[index], last.value());
+			assertEquals(1, last.size());
+		}
+
+		// a gap empties the window
+		avg.add(60000l, 10);
+		assertEquals(1, avg.size());
+		assertEquals(10.0, avg.value());
+	}
+
+	public void testGrowsToHoldTheWindow() {
+		SlidingWindow max = new SlidingWindow(SlidingWindow.Aggregation.MAX, 100000);
+		for (int index = 0; index < 1000; index++) {
+			max.add(index * 10l, index % 100 == 0 ? 1000 - index : index % 100);
+		}
+		assertEquals(1000, max.size());
+		assertEquals(1000.0, max.value());
+		max.add(100000l, 0);
+		assertEquals(1000, max.size());
+		assertEquals(900.0, max.value());
+	}
+}
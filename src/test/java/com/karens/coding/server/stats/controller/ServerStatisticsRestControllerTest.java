@@ -0,0 +1,79 @@
+package com.karens.coding.server.stats.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSampler;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.rest.SnapshotResponseCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the conditional requests of the latest statistics.
+ */
+public class ServerStatisticsRestControllerTest extends TestCase {
+
+	private SnapshotResponseCache cache;
+	private ServerStatisticsRestController controller;
+
+	@Override
+	protected void setUp() {
+		cache = new SnapshotResponseCache();
+		cache.setObjectMapper(new ObjectMapper());
+		controller = new ServerStatisticsRestController();
+		controller.setStatisticsSampler(new StatisticsSampler());
+		controller.setSnapshotResponseCache(cache);
+	}
+
+	private void publish(long sequence) {
+		cache.onSnapshot(new StatisticsSnapshot(sequence, System.currentTimeMillis(), new ServerStatistics(false)));
+	}
+
+	public void testAnswersNotModifiedToTheLatestEtag() {
+		publish(4);
+		String stale = cache.etag(4);
+		publish(5);
+		String etag = cache.etag(5);
+
+		ResponseEntity<?> full = controller.getServerDiskUsage(null, null);
+		assertEquals(HttpStatus.OK, full.getStatusCode());
+		assertEquals(etag, full.getHeaders().getETag());
+		assertTrue(((byte[]) full.getBody()).length > 0);
+
+		ResponseEntity<?> notModified = controller.getServerDiskUsage(null, etag);
+		assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+		assertNull(notModified.getBody());
+		assertEquals(etag, notModified.getHeaders().getETag());
+		assertNotNull(notModified.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+
+		ResponseEntity<?> weak = controller.getServerDiskUsage(null, "\"other\", W/" + etag);
+		assertEquals(HttpStatus.NOT_MODIFIED, weak.getStatusCode());
+
+		ResponseEntity<?> changed = controller.getServerDiskUsage(null, stale);
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertEquals(etag, changed.getHeaders().getETag());
+		assertNotNull(changed.getBody());
+	}
+
+	public void testMatchesEtagsWeakly() {
+		String etag = "\"abc-5\"";
+		assertFalse(ServerStatisticsRestController.matches(null, etag));
+		assertFalse(ServerStatisticsRestController.matches("", etag));
+		assertTrue(ServerStatisticsRestController.matches(etag, etag));
+		// a list, with spaces around the tags
+		assertTrue(ServerStatisticsRestController.matches("\"abc-3\" , \"abc-5\",\"abc-4\"", etag));
+		// the weak comparison ignores W/
+		assertTrue(ServerStatisticsRestController.matches("W/\"abc-5\"", etag));
+		assertTrue(ServerStatisticsRestController.matches("\"abc-4\", W/\"abc-5\"", etag));
+		assertTrue(ServerStatisticsRestController.matches("*", etag));
+		// a stale tag, an unquoted tag and a tag of another run
+		assertFalse(ServerStatisticsRestController.matches("\"abc-4\"", etag));
+		assertFalse(ServerStatisticsRestController.matches("W/\"abc-4\", \"abc-6\"", etag));
+		assertFalse(ServerStatisticsRestController.matches("abc-5", etag));
+		assertFalse(ServerStatisticsRestController.matches("\"abd-5\"", etag));
+	}
+}
@@ -0,0 +1,109 @@
+package com.karens.coding.server.stats.disk;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.history.MetricSeries;
+import com.karens.coding.server.stats.proc.ProcTree;
+
+/**
+ * Unit test for the block device figures recorded in the history, on the fixture files of src/test/resources/proc.
+ */
+public class DiskIoCollectorTest extends TestCase {
+
+	private static final long SECOND = 1000000000l;
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree("diskstats", "diskstats.next");
+		root = tree.getRoot();
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	public void testRecordsFiguresWithTheirMounts() throws Exception {
+		MetricHistory history = new MetricHistory();
+		DiskIoCollector collector = new DiskIoCollector();
+		collector.setRoot(root);
+		collector.setHistory(history);
+		collector.start();
+		collector.setMounts(Collections.singletonMap("8:1", Arrays.asList("/", "/boot")));
+
+		collector.sample(1000l, SECOND);
+		assertNull(history.query("disk.sda.utilization", 0, Long.MAX_VALUE));
+		tree.advance("diskstats");
+		collector.sample(3000l, 3 * SECOND);
+
+		MetricSeries utilization = history.query("disk.sda.utilization", 0, Long.MAX_VALUE);
+		assertEquals(1, utilization.getCount());
+		assertEquals(3000l, utilization.getTimestamps()[0]);
+		assertEquals(0.5, utilization.getValues()[0], 1e-9);
+		assertEquals(100.0, history.query("disk.sda.readsPerSecond", 0, Long.MAX_VALUE).getValues()[0], 1e-9);
+		// excluded by default
+		assertNull(history.query("disk.loop0.readsPerSecond", 0, Long.MAX_VALUE));
+
+		List<DiskIoUsage> devices = collector.getDevices();
+		assertEquals(3, devices.size());
+		assertEquals("sda", devices.get(0).getDevice());
+		assertTrue(devices.get(0).getMounts().isEmpty());
+		assertEquals("sda1", devices.get(1).getDevice());
+		assertEquals(Arrays.asList("/", "/boot"), devices.get(1).getMounts());
+		assertEquals(0.0, devices.get(1).getMetrics().get("utilization"), 1e-9);
+		assertNull(devices.get(2).getMetrics().get("writesPerSecond"));
+	}
+
+	public void testDropsTheSeriesOfRemovedDevices() throws Exception {
+		MetricHistory history = new MetricHistory();
+		DiskIoCollector collector = new DiskIoCollector();
+		collector.setRoot(root);
+		collector.setHistory(history);
+		collector.start();
+
+		collector.sample(1000l, SECOND);
+		tree.advance("diskstats");
+		collector.sample(3000l, 3 * SECOND);
+		assertNotNull(history.query("disk.sda1.utilization", 0, Long.MAX_VALUE));
+
+		tree.write("diskstats", "   8       0 sda 1200 10 24000 900 2300 20 46000 3600 1 3500 4500\n");
+		collector.sample(4000l, 4 * SECOND);
+		assertNull(history.query("disk.sda1.utilization", 0, Long.MAX_VALUE));
+		assertNull(history.query("disk.nvme0n1.writesPerSecond", 0, Long.MAX_VALUE));
+		assertEquals(2, history.query("disk.sda.utilization", 0, Long.MAX_VALUE).getCount());
+		assertEquals(1, collector.getDevices().size());
+	}
+
+	public void testMapsDevicesToTheirMountPoints() throws Exception {
+		tree.write("self/mountinfo", "23 28 0:22 / /proc rw,relatime - proc proc rw\n"
+				+ "29 1 8:1 / / rw,relatime shared:1 - ext4 /dev/sda1 rw\n"
+				+ "30 29 8:1 /home /srv/my\\040files rw,relatime shared:1 - ext4 /dev/sda1 rw\n"
+				+ "31 29 253:0 / /var rw,relatime shared:2 - xfs /dev/mapper/vg-var rw\n");
+		Map<String, List<String>> mounts = DiskIoCollector.mountsByDevice(tree.file("self/mountinfo"));
+		assertEquals(Arrays.asList("/", "/srv/my files"), mounts.get("8:1"));
+		assertEquals(Arrays.asList("/var"), mounts.get("253:0"));
+		assertEquals("a\\b\\9", DiskIoCollector.unescape("a\\134b\\9"));
+
+		DiskIoCollector collector = new DiskIoCollector();
+		collector.setRoot(root);
+		collector.setHistory(new MetricHistory());
+		collector.start();
+		collector.onSnapshot(new StatisticsSnapshot(1, 1000l, new ServerStatistics(false)));
+		List<DiskIoUsage> devices = collector.getDevices();
+		assertEquals("sda1", devices.get(1).getDevice());
+		assertEquals(Arrays.asList("/", "/srv/my files"), devices.get(1).getMounts());
+		assertTrue(devices.get(0).getMounts().isEmpty());
+	}
+}
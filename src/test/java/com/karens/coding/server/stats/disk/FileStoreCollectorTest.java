@@ -0,0 +1,192 @@
+package com.karens.coding.server.stats.disk;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the parallel file store probes.
+ */
+public class FileStoreCollectorTest extends TestCase {
+
+	private static Callable<List<FileStore>> listing(final FileStore... stores) {
+		return new Callable<List<FileStore>>() {
+			@Override
+			public List<FileStore> call() {
+				return Arrays.asList(stores);
+			}
+		};
+	}
+
+	public void testReportsHangingMountsAsStale() throws Exception {
+		FakeStore local = new FakeStore("/", "/dev/sda1", 1000l);
+		FakeStore nfs = new FakeStore("/mnt/nfs", "server:/export", 5000l);
+		FileStoreCollector collector = new FileStoreCollector(200l);
+
+		Map<String, FileStoreUsage> usages = collector.collect(listing(local, nfs));
+		assertEquals(Arrays.asList("/", "/mnt/nfs"), Arrays.asList(usages.keySet().toArray()));
+		assertEquals(1000l, usages.get("/").getTotalSpace());
+		assertEquals(500l, usages.get("/").getUsableSpace());
+		assertFalse(usages.get("/").isStale());
+		assertEquals(5000l, usages.get("/mnt/nfs").getTotalSpace());
+
+		nfs.hang = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		usages = collector.collect(listing(local, nfs));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertFalse(usages.get("/").isStale());
+		FileStoreUsage hanging = usages.get("/mnt/nfs");
+		assertTrue(hanging.isStale());
+		assertEquals(5000l, hanging.getTotalSpace());
+
+		// the hanging probe is not waited for nor started again
+		start = System.currentTimeMillis();
+		usages = collector.collect(listing(local, nfs));
+		assertTrue(System.currentTimeMillis() - start < 150);
+		assertTrue(usages.get("/mnt/nfs").isStale());
+		assertEquals(2, nfs.probes);
+
+		nfs.total = 6000l;
+		nfs.hang.countDown();
+		Thread.sleep(50);
+		usages = collector.collect(listing(nfs));
+		assertEquals(1, usages.size());
+		assertFalse(usages.get("/mnt/nfs").isStale());
+		assertEquals(6000l, usages.get("/mnt/nfs").getTotalSpace());
+	}
+
+	public void testFailedProbeHasNoValues() {
+		FakeStore broken = new FakeStore("/broken", "none", -1l);
+		FileStoreUsage usage = new FileStoreCollector(200l).collect(listing(broken)).get("/broken");
+		assertTrue(usage.isStale());
+		assertEquals(-1l, usage.getTotalSpace());
+		assertEquals(-1l, usage.getSampleTimestamp());
+	}
+
+	public void testReportsTheLastMountsWhileTheListingHangs() throws Exception {
+		FakeStore local = new FakeStore("/", "/dev/sda1", 1000l);
+		final FakeStore nfs = new FakeStore("/mnt/nfs", "server:/export", 5000l);
+		FileStoreCollector collector = new FileStoreCollector(200l);
+		collector.collect(listing(local, nfs));
+
+		// listing the mounts stats them, a stale mount hangs it
+		final CountDownLatch hang = new CountDownLatch(1);
+		final AtomicInteger listings = new AtomicInteger();
+		Callable<List<FileStore>> hanging = new Callable<List<FileStore>>() {
+			@Override
+			public List<FileStore> call() throws Exception {
+				listings.incrementAndGet();
+				hang.await();
+				return Arrays.<FileStore> asList(nfs);
+			}
+		};
+		long start = System.currentTimeMillis();
+		Map<String, FileStoreUsage> usages = collector.collect(hanging);
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertEquals(Arrays.asList("/", "/mnt/nfs"), Arrays.asList(usages.keySet().toArray()));
+		assertFalse(usages.get("/").isStale());
+		assertEquals(1000l, usages.get("/").getTotalSpace());
+
+		// the hanging listing is not waited for nor started again
+		start = System.currentTimeMillis();
+		usages = collector.collect(hanging);
+		assertTrue(System.currentTimeMillis() - start < 150);
+		assertEquals(2, usages.size());
+		assertEquals(1, listings.get());
+
+		hang.countDown();
+		Thread.sleep(50);
+		usages = collector.collect(hanging);
+		assertEquals(Arrays.asList("/mnt/nfs"), Arrays.asList(usages.keySet().toArray()));
+		assertEquals(1, listings.get());
+	}
+
+	private static final class FakeStore extends FileStore {
+		final String mount;
+		final String name;
+		volatile long total;
+		volatile CountDownLatch hang;
+		volatile int probes;
+
+		FakeStore(String mount, String name, long total) {
+			this.mount = mount;
+			this.name = name;
+			this.total = total;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public String type() {
+			return "fake";
+		}
+
+		@Override
+		public boolean isReadOnly() {
+			return false;
+		}
+
+		@Override
+		public long getTotalSpace() throws IOException {
+			probes++;
+			if (hang != null) {
+				try {
+					hang.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (total < 0) {
+				throw new IOException("Input/output error");
+			}
+			return total;
+		}
+
+		@Override
+		public long getUsableSpace() {
+			return total / 2;
+		}
+
+		@Override
+		public long getUnallocatedSpace() {
+			return total / 2;
+		}
+
+		@Override
+		public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+			return false;
+		}
+
+		@Override
+		public boolean supportsFileAttributeView(String name) {
+			return false;
+		}
+
+		@Override
+		public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+			return null;
+		}
+
+		@Override
+		public Object getAttribute(String attribute) {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return mount + " (" + name + ")";
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.karens.coding.server.stats.fleet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the fleet aggregator, polling stub agents on the loopback interface.
+ */
+public class FleetAggregatorTest extends TestCase {
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private String base;
+	private FleetAggregator aggregator;
+
+	@Override
+	protected void setUp() throws IOException {
+		serverExecutor = Executors.newFixedThreadPool(32);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(serverExecutor);
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	protected void tearDown() {
+		if (aggregator != null) {
+			aggregator.stop();
+		}
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	private FleetAggregator aggregator(String agents, long timeout, int maxRequests) {
+		aggregator = new FleetAggregator();
+		aggregator.setObjectMapper(new ObjectMapper());
+		aggregator.setAgentList(agents);
+		// polled by hand
+		aggregator.setInterval(60000l);
+		aggregator.setTimeout(timeout);
+		aggregator.setMaxRequests(maxRequests);
+		aggregator.start();
+		return aggregator;
+	}
+
+	public void testMergesAgentsByServerId() throws Exception {
+		final AtomicInteger notModified = new AtomicInteger();
+		server.createContext("/up/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("\"1-7\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					notModified.incrementAndGet();
+					exchange.getResponseHeaders().set("ETag", "\"1-7\"");
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+				exchange.getResponseHeaders().set("ETag", "\"1-7\"");
+				send(exchange, 200, "{\"message\":\"Success\",\"statusCode\":200,\"result\":{\"sequence\":7,\"usableSpace\":1000}}");
+			}
+		});
+		server.createContext("/slow/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					// stopping
+				}
+				send(exchange, 200, "{}");
+			}
+		});
+		server.createContext("/sampling/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "{\"message\":\"No statistics sampled yet\",\"statusCode\":503,\"result\":null}");
+			}
+		});
+		int closedPort;
+		ServerSocket socket = new ServerSocket(0);
+		closedPort = socket.getLocalPort();
+		socket.close();
+
+		aggregator(" 3=" + base + "/up/, 1=" + base + "/slow,2=" + base + "/sampling,4=http://127.0.0.1:" + closedPort, 300l, 8);
+		assertTrue(aggregator.isEnabled());
+		assertFalse(aggregator.getAgent(3).isUp());
+
+		long start = System.nanoTime();
+		assertTrue(aggregator.poll().await(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+
+		FleetView fleet = aggregator.getFleet();
+		assertEquals(4, fleet.getAgents().size());
+		assertEquals(1, fleet.getUp());
+		assertEquals(3, fleet.getDown());
+		assertEquals(1l, fleet.getAgents().get(0).getServerId());
+		AgentStatus up = aggregator.getAgent(3);
+		assertTrue(up.isUp());
+		assertEquals(1000, up.getStatistics().get("usableSpace").asLong());
+		assertTrue(aggregator.getAgent(1).getError().contains("300"));
+		assertTrue(aggregator.getAgent(2).getError().contains("503"));
+		assertNotNull(aggregator.getAgent(4).getError());
+		assertNull(aggregator.getAgent(4).getStatistics());
+
+		// the unchanged agent answers 304 and keeps its statistics
+		assertTrue(aggregator.poll().await(5, TimeUnit.SECONDS));
+		assertEquals(1, notModified.get());
+		assertTrue(aggregator.getAgent(3).isUp());
+		assertEquals(7, aggregator.getAgent(3).getStatistics().get("sequence").asLong());
+	}
+
+	public void testBoundsRequestsInFlight() throws Exception {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int current = inFlight.incrementAndGet();
+				while (true) {
+					int max = maxInFlight.get();
+					if (current <= max || maxInFlight.compareAndSet(max, current)) {
+						break;
+					}
+				}
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					// stopping
+				}
+				inFlight.decrementAndGet();
+				send(exchange, 200, "{\"message\":\"Success\",\"statusCode\":200,\"result\":{}}");
+			}
+		});
+		StringBuilder agents = new StringBuilder();
+		for (int serverId = 1; serverId <= 30; serverId++) {
+			agents.append(serverId).append('=').append(base).append("/agent").append(serverId).append(',');
+		}
+		aggregator(agents.toString(), 1000l, 4);
+
+		for (int round = 0; round < 2; round++) {
+			assertTrue(aggregator.poll().await(10, TimeUnit.SECONDS));
+		}
+		assertEquals(30, aggregator.getFleet().getUp());
+		assertTrue(maxInFlight.get() <= 4);
+		assertEquals(0, aggregator.getSkipped());
+	}
+
+	public void testRejectsInvalidAgentUrls() {
+		for (String agents : new String[] { "1=127.0.0.1:8080", "1=ftp://host/", "1=http://host name/" }) {
+			try {
+				aggregator(agents, 1000l, 4);
+				fail(agents + " accepted");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith("Agent 1="));
+			}
+		}
+		aggregator = null;
+	}
+
+	public void testReleasesTheRequestSlotWhenASendFails() throws Exception {
+		aggregator(1 + "=" + base + "/agent1", 1000l, 1);
+		// requests can no longer be executed on the closed client
+		aggregator.stop();
+		for (int round = 0; round < 2; round++) {
+			CountDownLatch done = aggregator.poll();
+			assertEquals(0, done.getCount());
+			assertFalse(aggregator.getAgent(1).isUp());
+			assertTrue(aggregator.getAgent(1).getError().startsWith("Unable to send the request"));
+		}
+		assertEquals(0, aggregator.getSkipped());
+	}
+
+	public void testGetTakesARequestSlot() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// stopping
+				}
+				send(exchange, 200, "{}");
+			}
+		});
+		aggregator(1 + "=" + base + "/agent1", 5000l, 1);
+		RecordingCallback first = new RecordingCallback();
+		assertNotNull(aggregator.get(1, "/history", first));
+
+		// the only slot is taken, the second request fails without being sent
+		RecordingCallback second = new RecordingCallback();
+		assertTrue(aggregator.get(1, "/history", second).isDone());
+		assertTrue(second.done.await(5, TimeUnit.SECONDS));
+		assertTrue(second.failure instanceof IOException);
+		assertNull(aggregator.get(2, "/history", second));
+
+		release.countDown();
+		assertTrue(first.done.await(5, TimeUnit.SECONDS));
+		assertEquals(200, first.status);
+		RecordingCallback third = new RecordingCallback();
+		aggregator.get(1, "/history", third);
+		assertTrue(third.done.await(5, TimeUnit.SECONDS));
+		assertEquals(200, third.status);
+	}
+
+	/**
+	 * Records the outcome of a request
+	 */
+	private static final class RecordingCallback implements FutureCallback<HttpResponse> {
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile int status;
+		volatile Exception failure;
+
+		@Override
+		public void completed(HttpResponse response) {
+			status = response.getStatusLine().getStatusCode();
+			EntityUtils.consumeQuietly(response.getEntity());
+			done.countDown();
+		}
+
+		@Override
+		public void failed(Exception e) {
+			failure = e;
+			done.countDown();
+		}
+
+		@Override
+		public void cancelled() {
+			done.countDown();
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
@@ -0,0 +1,69 @@
+package com.karens.coding.server.stats.gc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the garbage collection monitor.
+ */
+public class GarbageCollectionMonitorTest extends TestCase {
+
+	public void testRecordsPausesAndPoolUsage() {
+		GarbageCollectionMonitor monitor = new GarbageCollectionMonitor();
+		String heapPool = null;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPool = pool.getName();
+				break;
+			}
+		}
+		assertNotNull(heapPool);
+		Map<String, MemoryUsage> before = new HashMap<String, MemoryUsage>();
+		Map<String, MemoryUsage> after = new HashMap<String, MemoryUsage>();
+		before.put(heapPool, new MemoryUsage(0, 3000, 4096, -1));
+		after.put(heapPool, new MemoryUsage(0, 1000, 4096, -1));
+		monitor.record("unknown collector", 12, before, after);
+		monitor.record("unknown collector", 3, before, after);
+
+		monitor.sample(1000);
+		GarbageCollectionStatistics statistics = monitor.getLatest();
+		assertEquals(2, statistics.getPauses().getCount());
+		assertEquals(12, statistics.getPauses().getMax());
+		assertTrue(statistics.getAllocationRate() < 0);
+		for (GarbageCollectionStatistics.PoolUsage pool : statistics.getPools()) {
+			if (pool.getName().equals(heapPool)) {
+				assertEquals(3000, pool.getUsedBeforeGc());
+				assertEquals(1000, pool.getUsedAfterGc());
+				assertEquals(4000, pool.getReclaimed());
+			}
+		}
+	}
+
+	public void testMeasuresAllocationRate() throws Exception {
+		GarbageCollectionMonitor monitor = new GarbageCollectionMonitor();
+		monitor.start();
+		try {
+			monitor.sample(1000);
+			long sink = 0;
+			for (int i = 0; i < 2000; i++) {
+				sink += new byte[16384].length;
+			}
+			assertTrue(sink > 0);
+			// let the notifications of the collections triggered meanwhile arrive
+			Thread.sleep(100);
+			monitor.sample(2000);
+			GarbageCollectionStatistics statistics = monitor.getLatest();
+			assertTrue(statistics.getAllocationRate() > 0);
+			assertTrue(statistics.getAllocatedBytes() > 0);
+			assertFalse(statistics.getCollectors().isEmpty());
+		} finally {
+			monitor.stop();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.karens.coding.server.stats.health;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.proc.ProcStatistics;
+import com.karens.coding.server.stats.proc.ProcTree;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the primitive metric record and its JSON adapter.
+ */
+public class ServerStatisticsTest extends TestCase {
+
+	public void testRecordSlots() {
+		assertEquals(Metric.values().length, Metric.LONG_SLOTS + Metric.DOUBLE_SLOTS);
+		MetricRecord record = new MetricRecord();
+		assertFalse(record.has(Metric.USABLE_SPACE));
+		record.setLong(Metric.USABLE_SPACE, 42l);
+		record.setDouble(Metric.SYSTEM_CPU_LOAD, 0.5);
+		assertTrue(record.has(Metric.USABLE_SPACE));
+		assertEquals(42l, record.getLong(Metric.USABLE_SPACE));
+		assertEquals(0.5, record.getDouble(Metric.SYSTEM_CPU_LOAD));
+		assertEquals(Double.doubleToRawLongBits(0.5), record.getRaw(Metric.SYSTEM_CPU_LOAD));
+		record.remove(Metric.USABLE_SPACE);
+		assertFalse(record.has(Metric.USABLE_SPACE));
+		try {
+			record.getDouble(Metric.USABLE_SPACE);
+			fail("long metric read as a double");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testKeepsJsonShape() throws Exception {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setFreeSpace(2147483648l);
+		statistics.setTotalSpace(4294967296l);
+		statistics.setUsableSpace(1073741824l);
+		statistics.setSystemCpuLoad(0.25);
+
+		JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsBytes(statistics));
+		List<String> names = new ArrayList<String>();
+		for (Iterator<String> iterator = json.fieldNames(); iterator.hasNext();) {
+			names.add(iterator.next());
+		}
+		assertEquals(25, names.size());
+		assertEquals("freeSpace", names.get(0));
+		assertEquals("usableSpaceAsGigabytes", names.get(11));
+		assertEquals("store", names.get(24));
+		assertEquals(2147483648l, json.get("freeSpace").asLong());
+		assertEquals(2097152.0, json.get("freeSpaceAsKilobytes").asDouble());
+		assertEquals(4096.0, json.get("totalSpaceAsMegabytes").asDouble());
+		assertEquals(1.0, json.get("usableSpaceAsGigabytes").asDouble());
+		assertEquals(0.25, json.get("systemCpuLoad").asDouble());
+		assertTrue(json.get("processCpuLoad").isNull());
+	}
+
+	public void testReadsTheLatestProcSampleWithoutAdvancingIt() throws Exception {
+		ProcTree tree = new ProcTree("stat", "stat.next", "meminfo", "loadavg", "self/stat", "self/stat.next");
+		try {
+			ProcStatistics proc = new ProcStatistics(tree.getRoot());
+			ServerStatistics statistics = new ServerStatistics(false);
+			assertFalse(statistics.getProcStatistics(proc));
+			assertNull(statistics.getSystemCpuLoad());
+
+			proc.sample();
+			tree.advance("stat");
+			tree.advance("self/stat");
+			proc.sample();
+			// the statistics of a request read the sample, the next sample still measures from the previous one
+			for (int request = 0; request < 3; request++) {
+				statistics = new ServerStatistics(false);
+				assertTrue(statistics.getProcStatistics(proc));
+				assertEquals(0.5, statistics.getSystemCpuLoad(), 1e-9);
+				assertEquals(0.9, statistics.getCoreCpuLoads()[0], 1e-9);
+			}
+			assertEquals(6147400l * 1024, statistics.getTotalPhysicalMemorySize().longValue());
+		} finally {
+			tree.delete();
+		}
+	}
+}
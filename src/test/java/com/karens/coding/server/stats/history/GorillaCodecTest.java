@@ -0,0 +1,63 @@
+package com.karens.coding.server.stats.history;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the Gorilla style series encoding.
+ */
+public class GorillaCodecTest extends TestCase {
+
+	public void testRoundTripsLongs() {
+		long[] timestamps = { 1000, 2000, 3000, 3999, 5100, 5100, 100000, 100001, Long.MAX_VALUE / 2 };
+		long[] values = { 0, 0, 5, -5, Long.MAX_VALUE, Long.MIN_VALUE, 42, 42, -1 };
+		GorillaEncoder encoder = new GorillaEncoder(false, timestamps.length);
+		for (int i = 0; i < timestamps.length; i++) {
+			encoder.appendLong(timestamps[i], values[i]);
+		}
+		GorillaDecoder decoder = new GorillaDecoder(encoder.toByteArray());
+		assertFalse(decoder.isFractional());
+		assertEquals(timestamps.length, decoder.getCount());
+		for (int i = 0; i < timestamps.length; i++) {
+			assertTrue(decoder.next());
+			assertEquals(timestamps[i], decoder.getTimestamp());
+			assertEquals(values[i], decoder.getLong());
+		}
+		assertFalse(decoder.next());
+	}
+
+	public void testRoundTripsDoubles() {
+		double[] values = { 0.25, 0.25, 0.26, Double.NaN, -0.0, 1e300, Double.MIN_VALUE, Double.NEGATIVE_INFINITY, 0.5 };
+		GorillaEncoder encoder = new GorillaEncoder(true, values.length);
+		for (int i = 0; i < values.length; i++) {
+			encoder.appendDouble(1000l * i, values[i]);
+		}
+		GorillaDecoder decoder = new GorillaDecoder(encoder.toByteArray());
+		assertTrue(decoder.isFractional());
+		for (int i = 0; i < values.length; i++) {
+			assertTrue(decoder.next());
+			assertEquals(1000l * i, decoder.getTimestamp());
+			assertEquals(Double.doubleToRawLongBits(values[i]), decoder.getRaw());
+		}
+		assertFalse(decoder.next());
+	}
+
+	public void testCompressesSlowlyMovingSeries() {
+		Random random = new Random(7);
+		int points = 3600;
+		GorillaEncoder memory = new GorillaEncoder(false, points);
+		GorillaEncoder load = new GorillaEncoder(true, points);
+		long timestamp = 1500000000000l;
+		long free = 8l << 30;
+		for (int i = 0; i < points; i++) {
+			timestamp += 1000 + random.nextInt(5);
+			free += (random.nextInt(9) - 4) * 4096;
+			memory.appendLong(timestamp, free);
+			load.appendDouble(timestamp, i % 10 == 0 ? random.nextInt(100) / 100.0 : 0.25);
+		}
+		// 16 bytes per point for a fixed width timestamp and value
+		assertTrue(memory.getEncodedSize() * 4 < points * 16);
+		assertTrue(load.getEncodedSize() * 4 < points * 16);
+	}
+}
@@ -0,0 +1,74 @@
+package com.karens.coding.server.stats.history;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the rollup tiers of the metric history.
+ */
+public class MetricHistoryTest extends TestCase {
+
+	private MetricHistory history;
+
+	@Override
+	protected void setUp() {
+		history = new MetricHistory();
+		history.setCapacity(120);
+		history.setMinuteCapacity(60);
+		history.setHourCapacity(24);
+		// one sample per second for three hours, value is the minute of the day
+		for (long second = 0; second < 3 * 3600; second++) {
+			history.record("load", second * 1000, (double) (second / 60));
+		}
+	}
+
+	public void testFoldsSamplesIntoMinuteBuckets() {
+		MetricSeries series = history.query("load", 7200000, 7259999, 60000l);
+		assertEquals(60000, series.getResolution());
+		assertEquals(1, series.getCount());
+		assertEquals(7200000, series.getTimestamps()[0]);
+		assertEquals(60, series.getCounts()[0]);
+		assertEquals(120.0, series.getMin()[0], 0.0);
+		assertEquals(120.0, series.getValues()[0], 0.0);
+	}
+
+	public void testPicksCoarsestTierSatisfyingResolution() {
+		MetricSeries series = history.query("load", 0, Long.MAX_VALUE, 7200000l);
+		assertEquals(3600000, series.getResolution());
+		assertEquals(3, series.getCount());
+		assertEquals(60.0, series.getMin()[1], 0.0);
+		assertEquals(119.0, series.getMax()[1], 0.0);
+		assertEquals(3600, series.getCounts()[2]);
+		assertEquals(0, history.query("load", 0, Long.MAX_VALUE, 1000l).getResolution());
+	}
+
+	public void testPicksFinestTierCoveringRangeWithoutResolution() {
+		assertEquals(0, history.query("load", 3 * 3600000 - 60000, Long.MAX_VALUE).getResolution());
+		assertEquals(60000, history.query("load", 3 * 3600000 - 1800000, Long.MAX_VALUE).getResolution());
+		assertEquals(3600000, history.query("load", 0, Long.MAX_VALUE).getResolution());
+	}
+
+	public void testRemovesAMetric() {
+		history.record("network.eth9.receivedBytesPerSecond", 0l, 10.0);
+		assertTrue(history.remove("network.eth9.receivedBytesPerSecond"));
+		assertNull(history.query("network.eth9.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+		assertFalse(history.getMetricNames().contains("network.eth9.receivedBytesPerSecond"));
+		assertFalse(history.remove("network.eth9.receivedBytesPerSecond"));
+	}
+
+	public void testRejectsAMetricRecordedAsBothKinds() {
+		history.record("space", 0l, 100l);
+		try {
+			history.record("space", 1000l, 0.5);
+			fail("recorded a long metric as a double");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("space"));
+		}
+		try {
+			history.record("load", 1000l, 1l);
+			fail("recorded a double metric as a long");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("load"));
+		}
+		assertEquals(1, history.query("space", 0, Long.MAX_VALUE).getCount());
+	}
+}
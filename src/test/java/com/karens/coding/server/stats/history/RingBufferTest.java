@@ -0,0 +1,43 @@
+package com.karens.coding.server.stats.history;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the history rings.
+ */
+public class RingBufferTest extends TestCase {
+
+	public void testQueryBeforeWrapAround() {
+		LongRingBuffer ring = new LongRingBuffer(8);
+		for (int i = 0; i < 5; i++) {
+			ring.append(1000 + i * 10, i);
+		}
+		MetricSeries series = ring.query("m", 1010, 1030);
+		assertEquals(3, series.getCount());
+		assertEquals(1010, series.getTimestamps()[0]);
+		assertEquals(3.0, series.getValues()[2], 0.0);
+	}
+
+	public void testOverwritesOldestAfterWrapAround() {
+		DoubleRingBuffer ring = new DoubleRingBuffer(4);
+		for (int i = 0; i < 10; i++) {
+			ring.append(i, i / 10.0);
+		}
+		assertEquals(4, ring.size());
+		assertEquals(6, ring.getOldestTimestamp());
+		assertEquals(9, ring.getNewestTimestamp());
+		MetricSeries series = ring.query("m", 0, Long.MAX_VALUE);
+		assertEquals(4, series.getCount());
+		assertEquals(0.6, series.getValues()[0], 0.0);
+		assertEquals(0.9, series.getValues()[3], 0.0);
+		assertEquals(2, ring.query("m", 7, 8).getCount());
+		assertEquals(0, ring.query("m", 10, 20).getCount());
+	}
+
+	public void testClampsTimestampsGoingBackwards() {
+		LongRingBuffer ring = new LongRingBuffer(4);
+		ring.append(100, 1);
+		ring.append(90, 2);
+		assertEquals(2, ring.query("m", 100, 100).getCount());
+	}
+}
@@ -0,0 +1,139 @@
+package com.karens.coding.server.stats.history;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.karens.coding.server.stats.health.Metric;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the memory-mapped segment store.
+ */
+public class SegmentStoreTest extends TestCase {
+
+	private File directory;
+
+	private final List<SegmentStore> stores = new ArrayList<SegmentStore>();
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("segments", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() {
+		for (SegmentStore store : stores) {
+			store.stop();
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private SegmentStore newStore() {
+		SegmentStore store = new SegmentStore();
+		store.setDirectory(directory.getAbsolutePath());
+		store.setRecords(4);
+		store.setRetention(3);
+		store.recover();
+		stores.add(store);
+		return store;
+	}
+
+	/** Slots of the metrics set by {@link #record(long, double)} */
+	private static final long PRESENT = 1l << Metric.USABLE_SPACE.ordinal() | 1l << Metric.SYSTEM_CPU_LOAD.ordinal();
+
+	private static long[] record(long usableSpace, double systemCpuLoad) {
+		long[] values = new long[Metric.values().length];
+		values[Metric.USABLE_SPACE.ordinal()] = usableSpace;
+		values[Metric.SYSTEM_CPU_LOAD.ordinal()] = Double.doubleToRawLongBits(systemCpuLoad);
+		return values;
+	}
+
+	public void testRotatesAndExpiresSegments() throws Exception {
+		SegmentStore store = newStore();
+		for (int i = 0; i < 14; i++) {
+			store.append(1000 + i, PRESENT, record(i, i / 100.0));
+		}
+		store.awaitCompaction();
+		assertEquals(3, directory.listFiles().length);
+		MetricSeries series = store.query(Metric.USABLE_SPACE, 0, Long.MAX_VALUE);
+		assertEquals(10, series.getCount());
+		assertEquals(1004, series.getTimestamps()[0]);
+		assertEquals(13.0, series.getValues()[9], 0.0);
+	}
+
+	public void testSkipsMissingValues() throws Exception {
+		SegmentStore store = newStore();
+		store.append(1000, PRESENT, record(1, 0.5));
+		assertEquals(0, store.query(Metric.FREE_SPACE, 0, Long.MAX_VALUE).getCount());
+		assertEquals(0.5, store.query(Metric.SYSTEM_CPU_LOAD, 0, Long.MAX_VALUE).getValues()[0], 0.0);
+	}
+
+	public void testRecoversAfterRestart() throws Exception {
+		SegmentStore store = newStore();
+		for (int i = 0; i < 6; i++) {
+			store.append(2000 + i, PRESENT, record(i, i / 10.0));
+		}
+		store.awaitCompaction();
+
+		SegmentStore reopened = newStore();
+		MetricSeries series = reopened.query(Metric.SYSTEM_CPU_LOAD, 2002, 2004);
+		assertEquals(3, series.getCount());
+		assertEquals(0.4, series.getValues()[2], 0.0);
+
+		// appends continue in the partially filled segment
+		reopened.append(2006, PRESENT, record(6, 0.6));
+		reopened.append(2007, PRESENT, record(7, 0.7));
+		reopened.append(2008, PRESENT, record(8, 0.8));
+		reopened.awaitCompaction();
+		assertEquals(3, directory.listFiles().length);
+		assertEquals(9, reopened.query(Metric.USABLE_SPACE, 0, Long.MAX_VALUE).getCount());
+	}
+
+	public void testSealsFullSegmentsCompressed() throws Exception {
+		SegmentStore store = newStore();
+		for (int i = 0; i < 9; i++) {
+			store.append(3000 + i * 1000, PRESENT, record(500 + i, i / 8.0));
+		}
+		// queryable whether or not the full segments are sealed yet
+		assertEquals(9, store.query(Metric.USABLE_SPACE, 0, Long.MAX_VALUE).getCount());
+		store.awaitCompaction();
+		int compressed = 0;
+		for (File file : directory.listFiles()) {
+			if (file.getName().endsWith(".gor")) {
+				compressed++;
+			}
+		}
+		assertEquals(2, compressed);
+		MetricSeries series = store.query(Metric.SYSTEM_CPU_LOAD, 4000, 9000);
+		assertEquals(6, series.getCount());
+		assertEquals(4000, series.getTimestamps()[0]);
+		assertEquals(0.75, series.getValues()[5], 0.0);
+
+		SegmentStore reopened = newStore();
+		assertEquals(9, reopened.query(Metric.USABLE_SPACE, 0, Long.MAX_VALUE).getCount());
+		assertEquals(508.0, reopened.query(Metric.USABLE_SPACE, 11000, 11000).getValues()[0], 0.0);
+	}
+
+	public void testKeepsEveryBitPatternApartFromMissingValues() throws Exception {
+		SegmentStore store = newStore();
+		store.append(1000, PRESENT, record(Long.MIN_VALUE, -0.0));
+		// only the usable space is available
+		store.append(2000, 1l << Metric.USABLE_SPACE.ordinal(), record(7, 0.5));
+		MetricSeries space = store.query(Metric.USABLE_SPACE, 0, Long.MAX_VALUE);
+		assertEquals(2, space.getCount());
+		assertEquals((double) Long.MIN_VALUE, space.getValues()[0], 0.0);
+		MetricSeries load = store.query(Metric.SYSTEM_CPU_LOAD, 0, Long.MAX_VALUE);
+		assertEquals(1, load.getCount());
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(load.getValues()[0]));
+	}
+}
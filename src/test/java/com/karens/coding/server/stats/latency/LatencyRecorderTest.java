@@ -0,0 +1,107 @@
+package com.karens.coding.server.stats.latency;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the endpoint latency recording.
+ */
+public class LatencyRecorderTest extends TestCase {
+
+	public void testRecordsByMethodAndPattern() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		for (int i = 1; i <= 100; i++) {
+			recorder.record("GET", "/rest/server/statistics", 0, TimeUnit.MILLISECONDS.toNanos(i), false);
+		}
+		recorder.record("POST", "/rest/server/statistics", 0, 5000, true);
+		assertSame(recorder.getEndpoint("GET", "/rest/server/statistics"), recorder.getEndpoint("GET", "/rest/server/statistics"));
+
+		List<LatencyStatistics> statistics = recorder.getStatistics();
+		assertEquals(2, statistics.size());
+		for (LatencyStatistics endpoint : statistics) {
+			if (endpoint.getEndpoint().equals("GET /rest/server/statistics")) {
+				assertEquals(100, endpoint.getLatency().getCount());
+				assertEquals(0, endpoint.getErrors());
+				assertEquals(100000, endpoint.getLatency().getMax());
+				long p50 = endpoint.getLatency().getP50();
+				assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125);
+			}
+			else {
+				assertEquals("POST /rest/server/statistics", endpoint.getEndpoint());
+				assertEquals(1, endpoint.getErrors());
+				assertEquals(5, endpoint.getLatency().getMax());
+			}
+		}
+	}
+
+	public void testFoldsUnknownMethodsAndUnmappedRequests() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		for (int i = 0; i < 1000; i++) {
+			recorder.record("BOGUS" + i, "/rest/server/statistics", 0, 1000, false);
+			recorder.record("GET", LatencyInterceptor.UNMAPPED, 0, 1000, true);
+		}
+		recorder.record("GET", "/rest/server/statistics", 0, 1000, false);
+		assertSame(recorder.getEndpoint("get", "/rest/server/statistics"), recorder.getEndpoint("DELETE", LatencyInterceptor.UNMAPPED));
+
+		List<LatencyStatistics> statistics = recorder.getStatistics();
+		assertEquals(2, statistics.size());
+		for (LatencyStatistics endpoint : statistics) {
+			if (endpoint.getEndpoint().equals(LatencyRecorder.OTHER)) {
+				assertEquals(2000, endpoint.getLatency().getCount());
+				assertEquals(1000, endpoint.getErrors());
+			}
+			else {
+				assertEquals("GET /rest/server/statistics", endpoint.getEndpoint());
+				assertEquals(1, endpoint.getLatency().getCount());
+			}
+		}
+	}
+
+	public void testThroughputOverCompleteSeconds() {
+		ThroughputCounter counter = new ThroughputCounter();
+		long base = System.nanoTime();
+		long second = TimeUnit.SECONDS.toNanos(1);
+		for (int i = 0; i < 30; i++) {
+			counter.increment(base + 10 * second);
+			counter.increment(base + 11 * second);
+		}
+		// the second in progress is not counted
+		counter.increment(base + 12 * second);
+		double rate = counter.getRate(base + 12 * second);
+		assertTrue(rate > 0);
+		assertEquals(60.0 / Math.min(ThroughputCounter.WINDOW - 1, 12), rate, 60.0 / 11 - 60.0 / 12 + 1e-9);
+	}
+
+	public void testKeepsConcurrentIncrementsAcrossSecondBoundaries() throws Exception {
+		final ThroughputCounter counter = new ThroughputCounter();
+		final long base = System.nanoTime();
+		final int events = 200000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int index = 0; index < threads.length; index++) {
+			threads[index] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					// every thread crosses the same five second boundaries at about the same time
+					for (int event = 0; event < events; event++) {
+						counter.increment(base + TimeUnit.SECONDS.toNanos(5) * event / events);
+					}
+				}
+			});
+			threads[index].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(threads.length * events, counter.getCount(base + TimeUnit.SECONDS.toNanos(10)));
+	}
+}
@@ -0,0 +1,92 @@
+package com.karens.coding.server.stats.mybatis;
+
+import java.util.List;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.mybatis.domain.StatisticsSample;
+import com.karens.coding.server.stats.mybatis.mapper.StatisticsSampleMapper;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes samples through the real SqlMapConfig.xml into an in-memory H2 database in MySQL mode.
+ */
+public class StatisticsSampleWriterTest extends TestCase {
+
+	private SingleConnectionDataSource database;
+	private SqlSessionFactory sqlSessionFactory;
+
+	@Override
+	protected void setUp() throws Exception {
+		// the in-memory database lives as long as its only connection
+		database = new SingleConnectionDataSource("jdbc:h2:mem:" + getName() + ";MODE=MySQL", "sa", "", true);
+		// twice, the script must be rerunnable against an existing schema
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("sql/statistics_sample.sql"));
+		DatabasePopulatorUtils.execute(populator, database);
+		DatabasePopulatorUtils.execute(populator, database);
+		SqlSessionFactoryBean sessionFactory = new SqlSessionFactoryBean();
+		sessionFactory.setDataSource(database);
+		sessionFactory.setConfigLocation(new ClassPathResource("SqlMapConfig.xml"));
+		sqlSessionFactory = sessionFactory.getObject();
+	}
+
+	@Override
+	protected void tearDown() {
+		database.destroy();
+	}
+
+	private static StatisticsSnapshot snapshot(long sequence) {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setUsableSpace(1000 + sequence);
+		statistics.setSystemCpuUsage(sequence / 10.0);
+		return new StatisticsSnapshot(sequence, 5000 + sequence, statistics);
+	}
+
+	public void testFlushesBySizeAndOnClose() throws Exception {
+		StatisticsSampleWriter writer = new StatisticsSampleWriter(sqlSessionFactory, 7, 3, 60000, 100);
+		for (long sequence = 1; sequence <= 7; sequence++) {
+			writer.onSnapshot(snapshot(sequence));
+		}
+		// two full batches are written without waiting for the interval
+		for (int i = 0; i < 100 && writer.getWritten() < 6; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(6, writer.getWritten());
+		writer.close();
+		assertEquals(7, writer.getWritten());
+
+		List<StatisticsSample> samples = select(7, 0, Long.MAX_VALUE);
+		assertEquals(7, samples.size());
+		assertEquals(1001, samples.get(0).getUsableSpace().longValue());
+		assertEquals(0.7, samples.get(6).getSystemCpuUsage(), 0.0);
+		assertNull(samples.get(0).getTotalSwapSpaceSize());
+	}
+
+	public void testFlushesByInterval() throws Exception {
+		StatisticsSampleWriter writer = new StatisticsSampleWriter(sqlSessionFactory, 1, 100, 50, 100);
+		writer.onSnapshot(snapshot(1));
+		for (int i = 0; i < 100 && writer.getWritten() < 1; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, writer.getWritten());
+		writer.close();
+	}
+
+	private List<StatisticsSample> select(long serverId, long from, long to) {
+		SqlSession session = sqlSessionFactory.openSession();
+		try {
+			return session.getMapper(StatisticsSampleMapper.class).selectByServerBetween(serverId, from, to);
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.karens.coding.server.stats.network;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.history.MetricSeries;
+import com.karens.coding.server.stats.proc.ProcTree;
+
+/**
+ * Unit test for the network rates recorded in the history, on the fixture files of src/test/resources/proc/net.
+ */
+public class NetworkCollectorTest extends TestCase {
+
+	private static final long SECOND = 1000000000l;
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree("net/dev", "net/dev.next");
+		root = tree.getRoot();
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	public void testRecordsRatesOfLiveInterfaces() throws Exception {
+		MetricHistory history = new MetricHistory();
+		NetworkCollector collector = new NetworkCollector();
+		collector.setRoot(root);
+		collector.setHistory(history);
+		collector.start();
+		assertTrue(collector.isEnabled());
+
+		collector.sample(1000l, SECOND);
+		// no rate on the first sample
+		assertNull(history.query("network.eth0.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+
+		tree.advance("net/dev");
+		collector.sample(3000l, 3 * SECOND);
+		MetricSeries series = history.query("network.eth0.receivedBytesPerSecond", 0, Long.MAX_VALUE);
+		assertEquals(1, series.getCount());
+		assertEquals(3000l, series.getTimestamps()[0]);
+		assertEquals(1000000.0, series.getValues()[0], 1e-9);
+		assertEquals(2.0, history.query("network.eth0.transmitDropsPerSecond", 0, Long.MAX_VALUE).getValues()[0], 1e-9);
+		// gone and new interfaces have no rate
+		assertNull(history.query("network.docker0.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+		assertNull(history.query("network.wlan0.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+
+		List<NetworkInterfaceUsage> interfaces = collector.getInterfaces();
+		assertEquals(3, interfaces.size());
+		assertEquals("eth0", interfaces.get(1).getName());
+		assertEquals(500000.0, interfaces.get(1).getRates().get("transmittedBytes"), 1e-9);
+		assertNull(interfaces.get(2).getRates().get("receivedBytes"));
+	}
+
+	public void testDropsTheSeriesOfRemovedInterfaces() throws Exception {
+		MetricHistory history = new MetricHistory();
+		NetworkCollector collector = new NetworkCollector();
+		collector.setRoot(root);
+		collector.setHistory(history);
+		collector.start();
+
+		collector.sample(1000l, SECOND);
+		collector.sample(2000l, 2 * SECOND);
+		assertEquals(1, history.query("network.docker0.receivedBytesPerSecond", 0, Long.MAX_VALUE).getCount());
+
+		tree.advance("net/dev");
+		collector.sample(3000l, 3 * SECOND);
+		assertNull(history.query("network.docker0.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+		assertFalse(history.getMetricNames().contains("network.docker0.transmitDropsPerSecond"));
+		assertNotNull(history.query("network.eth0.receivedBytesPerSecond", 0, Long.MAX_VALUE));
+	}
+
+	public void testDisablesItselfWithoutProcNetDev() {
+		NetworkCollector collector = new NetworkCollector();
+		collector.setRoot(new File(root, "missing"));
+		collector.start();
+		assertFalse(collector.isEnabled());
+		assertTrue(collector.getInterfaces().isEmpty());
+	}
+}
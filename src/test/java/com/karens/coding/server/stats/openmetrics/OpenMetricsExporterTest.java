@@ -0,0 +1,345 @@
+package com.karens.coding.server.stats.openmetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.karens.coding.server.stats.alert.AlertEngine;
+import com.karens.coding.server.stats.alert.AlertNotifier;
+import com.karens.coding.server.stats.disk.DiskIoCollector;
+import com.karens.coding.server.stats.gc.GarbageCollectionMonitor;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSampler;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.latency.LatencyRecorder;
+import com.karens.coding.server.stats.network.NetworkCollector;
+import com.karens.coding.server.stats.proc.ProcStatistics;
+import com.karens.coding.server.stats.proc.ProcTree;
+import com.karens.coding.server.stats.processes.ProcessCollector;
+import com.karens.coding.server.stats.threads.ThreadCpuCollector;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the OpenMetrics writer and exposition.
+ */
+public class OpenMetricsExporterTest extends TestCase {
+
+	private static final byte[] NAME = OpenMetricsWriter.ascii("test");
+	private static final byte[] LABEL = OpenMetricsWriter.ascii("label");
+
+	private static String format(double value) {
+		OpenMetricsWriter writer = new OpenMetricsWriter(16);
+		writer.sample(NAME).value(value);
+		String line = writer.toString();
+		return line.substring(NAME.length + 1, line.length() - 1);
+	}
+
+	public void testFormatsNumbers() {
+		assertEquals("0", format(0.0));
+		assertEquals("42", format(42.0));
+		assertEquals("-7", format(-7.0));
+		assertEquals("0.5", format(0.5));
+		assertEquals("1.05", format(1.05));
+		assertEquals("0.333333333333333", format(1.0 / 3));
+		assertEquals("1792325145.123", format(1792325145123l / 1000.0));
+		assertEquals("123456.789", format(123456.789));
+		assertEquals("0.00123", format(0.00123));
+		assertEquals("1.5e-7", format(1.5e-7));
+		assertEquals("-2.5e20", format(-2.5e20));
+		assertEquals("1", format(0.9999999999999999));
+		assertEquals("NaN", format(Double.NaN));
+		assertEquals("+Inf", format(Double.POSITIVE_INFINITY));
+		assertEquals("-Inf", format(Double.NEGATIVE_INFINITY));
+
+		double[] values = { Math.PI, 1e-300, 6.02214076e23, 0.0001234, 98765.4321 };
+		for (double value : values) {
+			assertEquals(value, Double.parseDouble(format(value)), Math.abs(value) * 1e-14);
+		}
+
+		OpenMetricsWriter writer = new OpenMetricsWriter(16);
+		writer.sample(NAME).value(Long.MIN_VALUE);
+		writer.sample(NAME).value(Long.MAX_VALUE);
+		assertEquals("test " + Long.MIN_VALUE + "\ntest " + Long.MAX_VALUE + "\n", writer.toString());
+	}
+
+	public void testEscapesLabels() {
+		OpenMetricsWriter writer = new OpenMetricsWriter(16);
+		writer.family(NAME, OpenMetricsWriter.COUNTER, OpenMetricsWriter.ascii("A test"));
+		writer.total(NAME).label(LABEL, "a\"b\\c\nd").label(LABEL, 12).value(1l);
+		writer.sample(NAME).label(LABEL, "café € 😀").value(2l);
+		writer.eof();
+		assertEquals("# TYPE test counter\n# HELP test A test\ntest_total{label=\"a\\\"b\\\\c\\nd\",label=\"12\"} 1\n"
+				+ "test{label=\"café € 😀\"} 2\n# EOF\n", writer.toString());
+	}
+
+	public void testWritesWithoutAllocating() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		OpenMetricsWriter writer = new OpenMetricsWriter(16);
+		long allocated = 0;
+		for (int round = 0; round < 3; round++) {
+			long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			writer.reset();
+			for (int index = 0; index < 1000; index++) {
+				writer.sample(NAME).label(LABEL, "mount").label(LABEL, index).value(index / 7.0);
+			}
+			allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		}
+		// the first round grows the buffer, the next ones reuse it
+		assertTrue("Allocated " + allocated, allocated < 1024);
+	}
+
+	public void testExposesTheStatistics() {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setUsableSpace(4096);
+		statistics.setSystemCpuLoad(0.25);
+		statistics.setProcessCpuTime(1500000000l);
+		final StatisticsSnapshot snapshot = new StatisticsSnapshot(1, 1500l, statistics);
+
+		OpenMetricsExporter exporter = new OpenMetricsExporter();
+		exporter.setStatisticsSampler(new StatisticsSampler() {
+			@Override
+			public StatisticsSnapshot getLatest() {
+				return snapshot;
+			}
+		});
+		GarbageCollectionMonitor monitor = new GarbageCollectionMonitor();
+		monitor.sample(1500l);
+		exporter.setGarbageCollectionMonitor(monitor);
+		LatencyRecorder latencyRecorder = new LatencyRecorder();
+		latencyRecorder.record("GET", "/rest/server/statistics", 0l, 2000000l, false);
+		latencyRecorder.record("GET", "/rest/server/statistics", 0l, 4000000l, true);
+		exporter.setLatencyRecorder(latencyRecorder);
+		AlertEngine alertEngine = new AlertEngine();
+		alertEngine.setRuleList("cpu=systemCpuLoad > 0.2");
+		alertEngine.setConsecutive(1);
+		AlertNotifier notifier = new AlertNotifier();
+		notifier.setSinks(Collections.emptyList());
+		notifier.start();
+		alertEngine.setNotifier(notifier);
+		alertEngine.start();
+		alertEngine.onSnapshot(snapshot);
+		exporter.setAlertEngine(alertEngine);
+
+		String exposition = exporter.render();
+		notifier.stop();
+		for (String line : Arrays.asList(
+				"# TYPE serverstats_usable_space_bytes gauge",
+				"serverstats_usable_space_bytes 4096",
+				"serverstats_system_cpu_load_ratio 0.25",
+				"# TYPE serverstats_process_cpu_time_seconds counter",
+				"serverstats_process_cpu_time_seconds_total 1.5",
+				"serverstats_sample_timestamp_seconds 1.5",
+				"serverstats_http_request_seconds_count{endpoint=\"GET /rest/server/statistics\"} 2",
+				"serverstats_http_request_errors_total{endpoint=\"GET /rest/server/statistics\"} 1",
+				"serverstats_alert_firing{name=\"cpu\"} 1")) {
+			assertTrue(line + " in\n" + exposition, exposition.contains(line + "\n"));
+		}
+		assertFalse(exposition.contains("serverstats_free_space_bytes"));
+		assertTrue(exposition.contains("# TYPE serverstats_gc_collections counter\n"));
+		assertTrue(exposition.endsWith("\n# EOF\n"));
+
+		// every family is declared once
+		String[] lines = exposition.split("\n");
+		for (int index = 0; index < lines.length; index++) {
+			if (lines[index].startsWith("# TYPE ")) {
+				assertEquals(lines[index], exposition.indexOf(lines[index] + "\n"), exposition.lastIndexOf(lines[index] + "\n"));
+			}
+		}
+	}
+
+	public void testExposesTheCollectors() throws Exception {
+		ProcTree tree = new ProcTree("net/dev", "net/dev.next", "diskstats", "diskstats.next", "self/stat");
+		try {
+			tree.write("loadavg", "0.20 0.18 0.12 1/80 100\n");
+			tree.write("100/stat", "100 (java) S 1 100 100 0 -1 4194560 100 0 0 0 1000 200 0 0 20 0 40 0 500 2703360000 65536"
+					+ " 18446744073709551615 1 1 0 0 0 0 0 0 0 0 0 0 17 1 0 0 0 0 0\n");
+			MetricHistory history = new MetricHistory();
+			NetworkCollector networkCollector = new NetworkCollector();
+			networkCollector.setRoot(tree.getRoot());
+			networkCollector.setHistory(history);
+			networkCollector.start();
+			DiskIoCollector diskIoCollector = new DiskIoCollector();
+			diskIoCollector.setRoot(tree.getRoot());
+			diskIoCollector.setHistory(history);
+			diskIoCollector.start();
+			ProcessCollector processCollector = new ProcessCollector();
+			processCollector.setRoot(tree.getRoot());
+			processCollector.start();
+			ThreadCpuCollector threadCpuCollector = new ThreadCpuCollector();
+			threadCpuCollector.start();
+
+			networkCollector.sample(1000l, 1000000000l);
+			diskIoCollector.sample(1000l, 1000000000l);
+			processCollector.sample(1000l);
+			threadCpuCollector.sample(1000l);
+			tree.advance("net/dev");
+			tree.advance("diskstats");
+			networkCollector.sample(3000l, 3000000000l);
+			diskIoCollector.sample(3000l, 3000000000l);
+			processCollector.sample(3000l);
+			threadCpuCollector.sample(3000l);
+
+			OpenMetricsExporter exporter = new OpenMetricsExporter();
+			exporter.setStatisticsSampler(new StatisticsSampler() {
+				@Override
+				public StatisticsSnapshot getLatest() {
+					return null;
+				}
+			});
+			exporter.setNetworkCollector(networkCollector);
+			exporter.setDiskIoCollector(diskIoCollector);
+			exporter.setProcessCollector(processCollector);
+			exporter.setThreadCpuCollector(threadCpuCollector);
+			exporter.setTop(5);
+
+			String exposition = exporter.render();
+			processCollector.stop();
+			for (String line : Arrays.asList(
+					"# TYPE serverstats_network_received_bytes_per_second gauge",
+					"serverstats_network_received_bytes_per_second{interface=\"eth0\"} 1000000",
+					"serverstats_network_transmit_drops_per_second{interface=\"eth0\"} 2",
+					"# TYPE serverstats_disk_utilization_ratio gauge",
+					"serverstats_disk_utilization_ratio{device=\"sda\"} 0.5",
+					"serverstats_disk_reads_per_second{device=\"sda\"} 100",
+					"serverstats_disk_await_seconds{device=\"sda\"} 0.002",
+					"serverstats_processes 1",
+					"serverstats_process_resident_bytes{pid=\"100\",name=\"java\"} " + 65536 * ProcStatistics.PAGE_SIZE,
+					"# TYPE serverstats_process_cpu_ratio gauge",
+					"# TYPE serverstats_threads gauge")) {
+				assertTrue(line + " in\n" + exposition, exposition.contains(line + "\n"));
+			}
+			// the interfaces and devices without a rate yet are left out
+			assertFalse(exposition.contains("interface=\"wlan0\""));
+			assertTrue(exposition.contains("serverstats_thread_cpu_ratio{thread=\""));
+			assertTrue(exposition.endsWith("\n# EOF\n"));
+		} finally {
+			tree.delete();
+		}
+	}
+
+	public void testRendersWithoutAllocating() throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		ProcTree tree = new ProcTree("net/dev", "net/dev.next", "diskstats", "diskstats.next");
+		try {
+			MetricHistory history = new MetricHistory();
+			NetworkCollector networkCollector = new NetworkCollector();
+			networkCollector.setRoot(tree.getRoot());
+			networkCollector.setHistory(history);
+			networkCollector.start();
+			DiskIoCollector diskIoCollector = new DiskIoCollector();
+			diskIoCollector.setRoot(tree.getRoot());
+			diskIoCollector.setHistory(history);
+			diskIoCollector.start();
+			networkCollector.sample(1000l, 1000000000l);
+			diskIoCollector.sample(1000l, 1000000000l);
+			tree.advance("net/dev");
+			tree.advance("diskstats");
+			networkCollector.sample(3000l, 3000000000l);
+			diskIoCollector.sample(3000l, 3000000000l);
+
+			ServerStatistics statistics = new ServerStatistics(false);
+			statistics.setUsableSpace(4096);
+			statistics.setSystemCpuLoad(0.25);
+			final StatisticsSnapshot snapshot = new StatisticsSnapshot(1, 1500l, statistics);
+			OpenMetricsExporter exporter = new OpenMetricsExporter();
+			exporter.setStatisticsSampler(new StatisticsSampler() {
+				@Override
+				public StatisticsSnapshot getLatest() {
+					return snapshot;
+				}
+			});
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+			latencyRecorder.record("GET", "/rest/server/statistics", 0l, 2000000l, false);
+			exporter.setLatencyRecorder(latencyRecorder);
+			exporter.setNetworkCollector(networkCollector);
+			exporter.setDiskIoCollector(diskIoCollector);
+
+			long allocated = 0;
+			String exposition = null;
+			for (int round = 0; round < 3; round++) {
+				long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+				exposition = exporter.render();
+				allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+			}
+			assertTrue(exposition.contains("serverstats_disk_utilization_ratio{device=\"sda\"} 0.5\n"));
+			// once warmed up, the returned string and the list of endpoints
+			allocated -= exposition.length();
+			assertTrue("Allocated " + allocated, allocated < 512);
+		} finally {
+			tree.delete();
+		}
+	}
+
+	public void testWritesToAClientOutsideTheLock() throws Exception {
+		final OpenMetricsExporter exporter = new OpenMetricsExporter();
+		exporter.setStatisticsSampler(new StatisticsSampler() {
+			@Override
+			public StatisticsSnapshot getLatest() {
+				return null;
+			}
+		});
+		// a client that does not read
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+		final OutputStream client = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				received.write(b, off, len);
+			}
+		};
+		Thread slow = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					exporter.writeTo(client);
+				} catch (IOException e) {
+					// reported by the empty body
+				}
+			}
+		});
+		slow.start();
+		try {
+			assertTrue(writing.await(5, TimeUnit.SECONDS));
+			final String[] rendered = new String[1];
+			Thread scrape = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					rendered[0] = exporter.render();
+				}
+			});
+			scrape.start();
+			scrape.join(5000);
+			assertFalse(scrape.isAlive());
+			assertTrue(rendered[0].endsWith("# EOF\n"));
+		} finally {
+			release.countDown();
+			slow.join(5000);
+		}
+		assertEquals(exporter.render(), received.toString("UTF-8"));
+	}
+}
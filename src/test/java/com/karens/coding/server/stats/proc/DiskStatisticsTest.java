@@ -0,0 +1,109 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the block device figures, on the fixture files of src/test/resources/proc.
+ */
+public class DiskStatisticsTest extends TestCase {
+
+	private static final long SECOND = 1000000000l;
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree("diskstats", "diskstats.next");
+		root = tree.getRoot();
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	public void testHasNoFiguresOnFirstSample() throws Exception {
+		DiskStatistics disks = new DiskStatistics(root, "(loop|ram)[0-9]+");
+		disks.sample(SECOND);
+		assertEquals(4, disks.getDeviceCount());
+		assertEquals("loop0", disks.getDeviceName(0));
+		assertFalse(disks.isLive(0));
+		assertEquals("sda", disks.getDeviceName(1));
+		assertTrue(disks.isLive(1));
+		assertEquals("nvme0n1", disks.getDeviceName(3));
+		assertEquals("8:1", disks.getDeviceNumber(2));
+		assertEquals("259:0", disks.getDeviceNumber(3));
+		assertTrue(Double.isNaN(disks.getMetric(1, DiskMetric.READS_PER_SECOND)));
+		assertEquals("disk.sda1.await", disks.getMetricName(2, DiskMetric.AWAIT));
+	}
+
+	public void testComputesFiguresFromCounterDeltas() throws Exception {
+		DiskStatistics disks = new DiskStatistics(root, "(loop|ram)[0-9]+");
+		disks.sample(SECOND);
+		tree.advance("diskstats");
+		disks.sample(3 * SECOND);
+
+		assertEquals(100.0, disks.getMetric(1, DiskMetric.READS_PER_SECOND), 1e-9);
+		assertEquals(150.0, disks.getMetric(1, DiskMetric.WRITES_PER_SECOND), 1e-9);
+		assertEquals(4000.0 * DiskStatistics.SECTOR_SIZE / 2, disks.getMetric(1, DiskMetric.READ_BYTES_PER_SECOND), 1e-9);
+		assertEquals(6000.0 * DiskStatistics.SECTOR_SIZE / 2, disks.getMetric(1, DiskMetric.WRITTEN_BYTES_PER_SECOND), 1e-9);
+		// 1000 ms spent by 500 requests
+		assertEquals(2.0, disks.getMetric(1, DiskMetric.AWAIT), 1e-9);
+		// busy 1000 ms out of 2000
+		assertEquals(0.5, disks.getMetric(1, DiskMetric.UTILIZATION), 1e-9);
+
+		// idle
+		assertEquals(0.0, disks.getMetric(2, DiskMetric.READS_PER_SECOND), 1e-9);
+		assertEquals(0.0, disks.getMetric(2, DiskMetric.AWAIT), 1e-9);
+		assertEquals(0.0, disks.getMetric(2, DiskMetric.UTILIZATION), 1e-9);
+	}
+
+	public void testSkipsExcludedDevicesAndCountersGoingBackwards() throws Exception {
+		DiskStatistics disks = new DiskStatistics(root, "(loop|ram)[0-9]+");
+		disks.sample(SECOND);
+		tree.advance("diskstats");
+		disks.sample(3 * SECOND);
+
+		assertTrue(Double.isNaN(disks.getMetric(0, DiskMetric.READS_PER_SECOND)));
+		// the read counter of nvme0n1 was reset
+		assertTrue(disks.isLive(3));
+		assertTrue(Double.isNaN(disks.getMetric(3, DiskMetric.WRITES_PER_SECOND)));
+
+		DiskStatistics all = new DiskStatistics(root, "");
+		all.sample(SECOND);
+		assertTrue(all.isLive(0));
+	}
+
+	public void testDropsDevicesThatDisappear() throws Exception {
+		DiskStatistics disks = new DiskStatistics(root, "(loop|ram)[0-9]+");
+		disks.sample(SECOND);
+		// sda1 detached
+		tree.write("diskstats", "   7       0 loop0 100 0 800 10 0 0 0 0 0 10 10\n"
+				+ "   8       0 sda 1000 10 20000 500 2000 20 40000 3000 0 2500 3500\n"
+				+ " 259       0 nvme0n1 5000 0 100000 1000 6000 0 120000 4000 0 4000 5000\n");
+		disks.sample(2 * SECOND);
+		assertEquals(4, disks.getDeviceCount());
+		assertNull(disks.getDeviceName(2));
+		assertFalse(disks.isLive(2));
+		assertEquals(DiskMetric.values().length, disks.getEvictedMetricNames().size());
+		assertTrue(disks.getEvictedMetricNames().contains("disk.sda1.await"));
+		// the excluded loop0 is still listed, it keeps its slot
+		assertEquals("loop0", disks.getDeviceName(0));
+
+		// a new device takes the free slot
+		tree.write("diskstats", "   7       0 loop0 100 0 800 10 0 0 0 0 0 10 10\n"
+				+ "   8       0 sda 1000 10 20000 500 2000 20 40000 3000 0 2500 3500\n"
+				+ "   8      16 sdb 10 0 80 1 0 0 0 0 0 1 1\n"
+				+ " 259       0 nvme0n1 5000 0 100000 1000 6000 0 120000 4000 0 4000 5000\n");
+		disks.sample(3 * SECOND);
+		assertTrue(disks.getEvictedMetricNames().isEmpty());
+		assertEquals(4, disks.getDeviceCount());
+		assertEquals("sdb", disks.getDeviceName(2));
+		assertEquals("disk.sdb.utilization", disks.getMetricName(2, DiskMetric.UTILIZATION));
+		assertTrue(Double.isNaN(disks.getMetric(2, DiskMetric.READS_PER_SECOND)));
+		assertEquals(0.0, disks.getMetric(1, DiskMetric.READS_PER_SECOND), 1e-9);
+	}
+}
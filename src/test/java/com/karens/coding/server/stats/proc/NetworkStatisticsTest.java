@@ -0,0 +1,107 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the network interface rates, on the fixture files of src/test/resources/proc/net.
+ */
+public class NetworkStatisticsTest extends TestCase {
+
+	private static final long SECOND = 1000000000l;
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree("net/dev", "net/dev.next");
+		root = tree.getRoot();
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	private static int indexOf(NetworkStatistics network, String name) {
+		for (int index = 0; index < network.getInterfaceCount(); index++) {
+			if (name.equals(network.getInterfaceName(index))) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	public void testParsesInterfacesWithoutRatesOnFirstSample() throws Exception {
+		NetworkStatistics network = new NetworkStatistics(root);
+		network.sample(SECOND);
+		assertEquals(3, network.getInterfaceCount());
+		assertEquals("lo", network.getInterfaceName(0));
+		assertEquals("eth0", network.getInterfaceName(1));
+		assertEquals("docker0", network.getInterfaceName(2));
+		assertEquals(46033562l, network.getCounter(1, NetworkCounter.RECEIVED_BYTES));
+		assertEquals(5041l, network.getCounter(1, NetworkCounter.RECEIVED_PACKETS));
+		assertEquals(2l, network.getCounter(1, NetworkCounter.RECEIVE_ERRORS));
+		assertEquals(1l, network.getCounter(1, NetworkCounter.RECEIVE_DROPS));
+		assertEquals(768844l, network.getCounter(1, NetworkCounter.TRANSMITTED_BYTES));
+		assertEquals(4051l, network.getCounter(1, NetworkCounter.TRANSMITTED_PACKETS));
+		assertTrue(Double.isNaN(network.getRate(1, NetworkCounter.RECEIVED_BYTES)));
+		assertEquals("network.eth0.receivedBytesPerSecond", network.getMetricName(1, NetworkCounter.RECEIVED_BYTES));
+		assertEquals("network.eth0.transmitDropsPerSecond", network.getMetricName(1, NetworkCounter.TRANSMIT_DROPS));
+	}
+
+	public void testComputesRatesFromCounterDeltas() throws Exception {
+		NetworkStatistics network = new NetworkStatistics(root);
+		network.sample(SECOND);
+		tree.advance("net/dev");
+		network.sample(3 * SECOND);
+
+		int eth0 = indexOf(network, "eth0");
+		assertEquals(1000000.0, network.getRate(eth0, NetworkCounter.RECEIVED_BYTES), 1e-9);
+		assertEquals(1000.0, network.getRate(eth0, NetworkCounter.RECEIVED_PACKETS), 1e-9);
+		assertEquals(2.0, network.getRate(eth0, NetworkCounter.RECEIVE_ERRORS), 1e-9);
+		assertEquals(0.0, network.getRate(eth0, NetworkCounter.RECEIVE_DROPS), 1e-9);
+		assertEquals(500000.0, network.getRate(eth0, NetworkCounter.TRANSMITTED_BYTES), 1e-9);
+		assertEquals(500.0, network.getRate(eth0, NetworkCounter.TRANSMITTED_PACKETS), 1e-9);
+		assertEquals(0.0, network.getRate(eth0, NetworkCounter.TRANSMIT_ERRORS), 1e-9);
+		assertEquals(2.0, network.getRate(eth0, NetworkCounter.TRANSMIT_DROPS), 1e-9);
+		assertEquals(1000.0, network.getRate(indexOf(network, "lo"), NetworkCounter.RECEIVED_BYTES), 1e-9);
+	}
+
+	public void testTracksInterfacesComingAndGoing() throws Exception {
+		NetworkStatistics network = new NetworkStatistics(root);
+		network.sample(SECOND);
+		assertTrue(network.getEvictedMetricNames().isEmpty());
+		tree.advance("net/dev");
+		network.sample(2 * SECOND);
+
+		// docker0 is dropped, wlan0 was listed before it was
+		assertEquals(4, network.getInterfaceCount());
+		assertEquals(-1, indexOf(network, "docker0"));
+		assertFalse(network.isLive(2));
+		assertNull(network.getInterfaceName(2));
+		assertEquals(NetworkCounter.values().length, network.getEvictedMetricNames().size());
+		assertTrue(network.getEvictedMetricNames().contains("network.docker0.receivedBytesPerSecond"));
+		int wlan0 = indexOf(network, "wlan0");
+		assertTrue(network.isLive(wlan0));
+		// a new interface has no rate yet
+		assertTrue(Double.isNaN(network.getRate(wlan0, NetworkCounter.RECEIVED_BYTES)));
+		assertEquals(1000l, network.getCounter(wlan0, NetworkCounter.RECEIVED_BYTES));
+
+		network.sample(3 * SECOND);
+		assertTrue(network.getEvictedMetricNames().isEmpty());
+		assertEquals(0.0, network.getRate(wlan0, NetworkCounter.RECEIVED_BYTES), 1e-9);
+
+		// docker0 comes back in the free slot, as a new interface, and wlan0 goes
+		tree.copy("net/dev");
+		network.sample(4 * SECOND);
+		assertEquals(4, network.getInterfaceCount());
+		assertEquals(2, indexOf(network, "docker0"));
+		assertEquals("network.docker0.receivedBytesPerSecond", network.getMetricName(2, NetworkCounter.RECEIVED_BYTES));
+		assertTrue(Double.isNaN(network.getRate(2, NetworkCounter.RECEIVED_BYTES)));
+		assertEquals(-1, indexOf(network, "wlan0"));
+		assertTrue(network.getEvictedMetricNames().contains("network.wlan0.receivedBytesPerSecond"));
+	}
+}
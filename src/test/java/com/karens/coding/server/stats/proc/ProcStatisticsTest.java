@@ -0,0 +1,88 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the /proc collector, on the fixture files of src/test/resources/proc.
+ */
+public class ProcStatisticsTest extends TestCase {
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree("stat", "stat.next", "meminfo", "loadavg", "self/stat", "self/stat.next");
+		root = tree.getRoot();
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	public void testParsesMemoryAndLoad() throws Exception {
+		ProcStatistics proc = new ProcStatistics(root);
+		proc.sample();
+		assertEquals(6147400l * 1024, proc.getMemTotal());
+		assertEquals(5212140l * 1024, proc.getMemFree());
+		assertEquals(5636552l * 1024, proc.getMemAvailable());
+		assertEquals(42840l * 1024, proc.getBuffers());
+		assertEquals(588272l * 1024, proc.getCached());
+		assertEquals(2097148l * 1024, proc.getSwapTotal());
+		assertEquals(2097000l * 1024, proc.getSwapFree());
+		assertEquals(1.28, proc.getLoadAverage1(), 1e-9);
+		assertEquals(0.78, proc.getLoadAverage5(), 1e-9);
+		assertEquals(0.56, proc.getLoadAverage15(), 1e-9);
+		assertEquals(4, proc.getRunningTasks());
+		assertEquals(74, proc.getTotalTasks());
+	}
+
+	public void testParsesProcessAfterParenthesesInName() throws Exception {
+		ProcStatistics proc = new ProcStatistics(root);
+		proc.sample();
+		assertEquals(300 * (1000000000l / ProcStatistics.TICKS_PER_SECOND), proc.getProcessCpuTime());
+		assertEquals(31, proc.getProcessThreads());
+		assertEquals(2703360000l, proc.getProcessVirtualSize());
+		assertEquals(65536l * ProcStatistics.PAGE_SIZE, proc.getProcessResidentSize());
+		assertTrue(Double.isNaN(proc.getProcessCpuLoad()));
+	}
+
+	public void testComputesUtilizationFromTickDeltas() throws Exception {
+		ProcStatistics proc = new ProcStatistics(root);
+		proc.sample();
+		assertEquals(2, proc.getCores());
+		// since boot on the first sample
+		assertEquals(13500.0 / 94000, proc.getSystemCpuLoad(), 1e-9);
+
+		tree.advance("stat");
+		tree.advance("self/stat");
+		proc.sample();
+		assertEquals(0.5, proc.getSystemCpuLoad(), 1e-9);
+		assertEquals(0.9, proc.getCoreCpuLoad(0), 1e-9);
+		assertEquals(0.1, proc.getCoreCpuLoad(1), 1e-9);
+		assertEquals(2, proc.getCoreCpuLoads().length);
+		assertEquals(20.0 / 400, proc.getProcessCpuLoad(), 1e-9);
+	}
+
+	public void testFallsBackWhenTheHostHasNoConstant() {
+		assertEquals(4096l, ProcStatistics.hostConstant("NO_SUCH_CONSTANT", 4096l));
+		assertTrue(ProcStatistics.PAGE_SIZE >= 4096l);
+		assertTrue(ProcStatistics.TICKS_PER_SECOND > 0l);
+	}
+
+	public void testRefusesToReadAgainWithoutAFile() throws Exception {
+		ProcFile file = new ProcFile(64);
+		try {
+			file.read();
+			fail("read without a file");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("read(Path)"));
+		}
+		assertTrue(file.read(new File(root, "loadavg").toPath()));
+		assertEquals(1.28, file.nextDouble(), 1e-9);
+		file.close();
+	}
+}
@@ -0,0 +1,117 @@
+package com.karens.coding.server.stats.proc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * A /proc tree in a temporary directory, for the tests of the collectors reading /proc. Files are copied from
+ * the fixtures of src/test/resources/proc or written by the test, and rewritten in place since the collectors
+ * keep them open.
+ */
+public final class ProcTree {
+
+	private final File root;
+
+	/**
+	 * @param fixtures paths under src/test/resources/proc to copy, such as self/stat
+	 * @throws IOException
+	 */
+	public ProcTree(String... fixtures) throws IOException {
+		root = File.createTempFile("proc", "");
+		root.delete();
+		root.mkdirs();
+		for (String name : fixtures) {
+			copy(name);
+		}
+	}
+
+	/**
+	 * @return the root of the tree, to read instead of /proc
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * @param name path in the tree
+	 * @return the file
+	 */
+	public File file(String name) {
+		return new File(root, name);
+	}
+
+	/**
+	 * Copies a fixture at the same path in the tree, in place if the file exists
+	 * @param name path under src/test/resources/proc
+	 * @throws IOException
+	 */
+	public void copy(String name) throws IOException {
+		InputStream input = ProcTree.class.getResourceAsStream("/proc/" + name);
+		if (input == null) {
+			throw new IOException("No fixture " + name);
+		}
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				content.write(buffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		File file = file(name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.toByteArray());
+	}
+
+	/**
+	 * Writes a file, in place if it exists
+	 * @param name path in the tree
+	 * @param content
+	 * @throws IOException
+	 */
+	public void write(String name, String content) throws IOException {
+		File file = file(name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Rewrites a file in place with the content of the same file suffixed with .next
+	 * @param name path in the tree
+	 * @throws IOException
+	 */
+	public void advance(String name) throws IOException {
+		Files.write(file(name).toPath(), Files.readAllBytes(file(name + ".next").toPath()));
+	}
+
+	/**
+	 * Deletes a file or a directory with its content, such as the directory of an exited process
+	 * @param name path in the tree
+	 */
+	public void delete(String name) {
+		delete(file(name));
+	}
+
+	/**
+	 * Deletes the whole tree
+	 */
+	public void delete() {
+		delete(root);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,173 @@
+package com.karens.coding.server.stats.processes;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.karens.coding.server.stats.proc.ProcStatistics;
+import com.karens.coding.server.stats.proc.ProcTree;
+
+/**
+ * Unit test for the process table, on a /proc tree written in a temporary directory.
+ */
+public class ProcessTableTest extends TestCase {
+
+	private static final long SECOND = 1000000000l;
+
+	private ProcTree tree;
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		tree = new ProcTree();
+		root = tree.getRoot();
+		loadavg(200);
+		stat(1, "systemd", 100, 50, 1, 1, 3000);
+		stat(100, "java", 1000, 200, 40, 500, 65536);
+		stat(200, "bash", 10, 5, 1, 900, 1000);
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.delete();
+	}
+
+	/**
+	 * Rewrites /proc/loadavg in place, the table keeps it open
+	 */
+	private void loadavg(long lastPid) throws Exception {
+		tree.write("loadavg", "0.20 0.18 0.12 1/80 " + lastPid + "\n");
+	}
+
+	private void stat(long pid, String name, long utime, long stime, long threads, long startTime, long rssPages) throws Exception {
+		tree.write(pid + "/stat", pid + " (" + name + ") S 1 " + pid + " " + pid + " 0 -1 4194560 100 0 0 0 " + utime + " " + stime
+				+ " 0 0 20 0 " + threads + " 0 " + startTime + " 2703360000 " + rssPages + " 18446744073709551615 1 1 0 0 0 0 0 0 0 0 0 0 17 1 0 0 0 0 0\n");
+	}
+
+	private static ProcessUsage find(List<ProcessUsage> processes, long pid) {
+		for (ProcessUsage process : processes) {
+			if (process.getPid() == pid) {
+				return process;
+			}
+		}
+		return null;
+	}
+
+	public void testComputesCpuFromTickDeltas() throws Exception {
+		ProcessTable table = new ProcessTable(root, 10);
+		try {
+			assertNull(table.scan(1000l, SECOND));
+			// 150 ticks in 2 seconds, 75% of one core
+			stat(100, "java", 1100, 250, 42, 500, 70000);
+			stat(200, "bash", 12, 5, 1, 900, 1000);
+			ProcessTop top = table.scan(3000l, 3 * SECOND);
+			assertEquals(3, top.getProcessCount());
+			assertEquals(3000l, top.getTimestamp());
+
+			List<ProcessUsage> cpu = top.get(ProcessSort.CPU, 10);
+			assertEquals(3, cpu.size());
+			ProcessUsage java = cpu.get(0);
+			assertEquals(100, java.getPid());
+			assertEquals("java", java.getName());
+			assertEquals("S", java.getState());
+			assertEquals(1, java.getPpid());
+			assertEquals(0.75, java.getCpuUsage(), 1e-9);
+			assertEquals(1350 * 1000 / ProcStatistics.TICKS_PER_SECOND, java.getCpuTime());
+			assertEquals(70000 * ProcStatistics.PAGE_SIZE, java.getResidentSize());
+			assertEquals(2703360000l, java.getVirtualSize());
+			assertEquals(42, java.getThreads());
+			assertEquals(200, cpu.get(1).getPid());
+			assertEquals(0.01, cpu.get(1).getCpuUsage(), 1e-9);
+			assertEquals(0.0, cpu.get(2).getCpuUsage(), 1e-9);
+
+			assertEquals(1, top.get(ProcessSort.CPU, 1).size());
+			assertEquals(100, top.get(ProcessSort.RSS, 1).get(0).getPid());
+			assertEquals(1, top.get(ProcessSort.RSS, 3).get(1).getPid());
+			assertEquals(100, top.get(ProcessSort.THREADS, 3).get(0).getPid());
+		} finally {
+			table.close();
+		}
+	}
+
+	public void testKeepsOnlyTheTopProcessesOfEachOrder() throws Exception {
+		ProcessTable table = new ProcessTable(root, 2);
+		try {
+			table.scan(1000l, SECOND);
+			ProcessTop top = table.scan(2000l, 2 * SECOND);
+			assertEquals(3, top.getProcessCount());
+			List<ProcessUsage> rss = top.get(ProcessSort.RSS, 10);
+			assertEquals(2, rss.size());
+			assertEquals(100, rss.get(0).getPid());
+			assertEquals(1, rss.get(1).getPid());
+		} finally {
+			table.close();
+		}
+	}
+
+	public void testListsTheDirectoryOnlyWhenPidsWereHandedOut() throws Exception {
+		ProcessTable table = new ProcessTable(root, 10);
+		try {
+			table.scan(1000l, SECOND);
+			// the last pid has not moved, the new directory is not looked for
+			stat(300, "make", 50, 50, 1, 1000, 2000);
+			ProcessTop top = table.scan(2000l, 2 * SECOND);
+			assertEquals(3, top.getProcessCount());
+			assertNull(find(top.get(ProcessSort.CPU, 10), 300));
+
+			loadavg(300);
+			top = table.scan(3000l, 3 * SECOND);
+			assertEquals(4, top.getProcessCount());
+			ProcessUsage make = find(top.get(ProcessSort.CPU, 10), 300);
+			assertEquals("make", make.getName());
+			// started since the previous scan, all its ticks fall in the interval
+			assertEquals(1.0, make.getCpuUsage(), 1e-9);
+		} finally {
+			table.close();
+		}
+	}
+
+	public void testDropsExitedProcessesWithoutListing() throws Exception {
+		ProcessTable table = new ProcessTable(root, 10);
+		try {
+			table.scan(1000l, SECOND);
+			tree.delete("200");
+			ProcessTop top = table.scan(2000l, 2 * SECOND);
+			assertEquals(2, top.getProcessCount());
+			assertNull(find(top.get(ProcessSort.CPU, 10), 200));
+
+			// the freed slot is reused for a new process
+			loadavg(400);
+			stat(400, "sleep", 0, 0, 1, 1100, 100);
+			top = table.scan(3000l, 3 * SECOND);
+			assertEquals(3, top.getProcessCount());
+			assertEquals("sleep", find(top.get(ProcessSort.CPU, 10), 400).getName());
+		} finally {
+			table.close();
+		}
+	}
+
+	public void testDetectsReusedPidsAndRenames() throws Exception {
+		ProcessTable table = new ProcessTable(root, 10);
+		try {
+			table.scan(1000l, SECOND);
+			// pid 200 exited and was handed out again to a younger process
+			stat(200, "my (odd) name", 30, 20, 3, 950, 1000);
+			loadavg(200);
+			ProcessTop top = table.scan(2000l, 2 * SECOND);
+			ProcessUsage reused = find(top.get(ProcessSort.CPU, 10), 200);
+			assertEquals("my (odd) name", reused.getName());
+			assertEquals(0.5, reused.getCpuUsage(), 1e-9);
+			assertEquals(3, reused.getThreads());
+
+			// exec renames the process without a new pid
+			stat(100, "java-exec", 1000, 200, 40, 500, 65536);
+			top = table.scan(3000l, 3 * SECOND);
+			ProcessUsage renamed = find(top.get(ProcessSort.CPU, 10), 100);
+			assertEquals("java-exec", renamed.getName());
+			assertEquals(0.0, renamed.getCpuUsage(), 1e-9);
+		} finally {
+			table.close();
+		}
+	}
+}
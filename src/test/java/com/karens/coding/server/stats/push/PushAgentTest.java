@@ -0,0 +1,229 @@
+package com.karens.coding.server.stats.push;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.karens.coding.server.stats.health.Metric;
+import com.karens.coding.server.stats.health.MetricRecord;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the push agent and receiver over the loopback interface.
+ */
+public class PushAgentTest extends TestCase {
+
+	private PushReceiver receiver;
+	private PushAgent agent;
+
+	@Override
+	protected void tearDown() {
+		if (agent != null) {
+			agent.stop();
+		}
+		if (receiver != null) {
+			receiver.stop();
+		}
+	}
+
+	private static StatisticsSnapshot snapshot(long sequence) {
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setUsableSpace(1000 + sequence);
+		statistics.setSystemCpuLoad(sequence / 10.0);
+		return new StatisticsSnapshot(sequence, 5000 + sequence, statistics);
+	}
+
+	private PushReceiver receiver(int port) throws IOException {
+		receiver = new PushReceiver();
+		receiver.setPort(port);
+		receiver.start();
+		return receiver;
+	}
+
+	private PushAgent agent(int port, int batchSize, int capacity) throws IOException {
+		agent = new PushAgent();
+		agent.setTarget("127.0.0.1:" + port);
+		agent.setServerId(42);
+		agent.setBatchSize(batchSize);
+		agent.setBatchDelay(60000);
+		agent.setCapacity(capacity);
+		agent.setMinBackoff(20);
+		agent.setMaxBackoff(100);
+		agent.start();
+		return agent;
+	}
+
+	private static void await(long expected, PushReceiver receiver) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (receiver.getSamples() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, receiver.getSamples());
+	}
+
+	/**
+	 * The receiver may count the samples of a frame before the agent releases them from its buffer
+	 */
+	private static void awaitDrained(PushAgent agent) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (agent.getBuffered() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, agent.getBuffered());
+	}
+
+	public void testPushesBatches() throws Exception {
+		receiver(0);
+		agent(receiver.getPort(), 3, 100);
+		for (long sequence = 1; sequence <= 3; sequence++) {
+			agent.onSnapshot(snapshot(sequence));
+		}
+		await(3, receiver);
+		assertEquals(1, receiver.getFrames());
+
+		// a partial batch waits for the delay
+		agent.onSnapshot(snapshot(4));
+		agent.onSnapshot(snapshot(5));
+		Thread.sleep(100);
+		assertEquals(3, receiver.getSamples());
+		assertEquals(2, agent.getBuffered());
+
+		agent.onSnapshot(snapshot(6));
+		await(6, receiver);
+		assertEquals(2, receiver.getFrames());
+		awaitDrained(agent);
+
+		PushedServer server = receiver.getServer(42);
+		assertEquals(6, server.getSequence());
+		assertEquals(5006, server.getSampleTimestamp());
+		assertEquals(1006l, server.getMetrics().get("usableSpace"));
+		assertEquals(0.6, server.getMetrics().get("systemCpuLoad"));
+		assertFalse(server.getMetrics().containsKey("freeSpace"));
+	}
+
+	public void testBuffersWhileUnreachable() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+
+		agent(port, 1, 5);
+		for (long sequence = 1; sequence <= 8; sequence++) {
+			agent.onSnapshot(snapshot(sequence));
+		}
+		Thread.sleep(100);
+		assertFalse(agent.isConnected());
+		assertEquals(5, agent.getBuffered());
+		assertEquals(3, agent.getDropped());
+
+		receiver(port);
+		await(5, receiver);
+		assertEquals(8, receiver.getServer(42).getSequence());
+		awaitDrained(agent);
+		assertEquals(1, agent.getConnections());
+	}
+
+	public void testDecodesFramesSplitAcrossReads() throws Exception {
+		receiver(0);
+		ByteBuffer frame = ByteBuffer.allocate(PushProtocol.LENGTH_SIZE + PushProtocol.HEADER_SIZE + 2 * PushProtocol.SAMPLE_SIZE);
+		PushProtocol.writeHeader(frame, 7, 2);
+		MetricRecord record = new MetricRecord();
+		record.setLong(Metric.TOTAL_SPACE, 123l);
+		PushProtocol.writeSample(frame, 1, 100, record);
+		record.setDouble(Metric.PROCESS_CPU_LOAD, 0.5);
+		PushProtocol.writeSample(frame, 2, 200, record);
+		frame.flip();
+
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", receiver.getPort()));
+		try {
+			for (int split : new int[] { 3, 30, frame.limit() }) {
+				ByteBuffer part = frame.duplicate();
+				part.limit(split);
+				while (part.hasRemaining()) {
+					channel.write(part);
+				}
+				frame.position(split);
+				Thread.sleep(20);
+			}
+			await(2, receiver);
+			assertEquals(2, receiver.getServer(7).getSequence());
+			assertEquals(123l, receiver.getServer(7).getMetrics().get("totalSpace"));
+			assertEquals(0.5, receiver.getServer(7).getMetrics().get("processCpuLoad"));
+
+			// another schema closes the connection
+			ByteBuffer invalid = ByteBuffer.allocate(PushProtocol.LENGTH_SIZE + PushProtocol.HEADER_SIZE);
+			invalid.putInt(PushProtocol.HEADER_SIZE).putShort(PushProtocol.VERSION).putInt(Metric.SCHEMA_HASH + 1).putLong(7).putInt(0).flip();
+			channel.write(invalid);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (receiver.getRejected() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, receiver.getRejected());
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void push(SocketChannel channel, long serverId) throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(PushProtocol.LENGTH_SIZE + PushProtocol.HEADER_SIZE + PushProtocol.SAMPLE_SIZE);
+		PushProtocol.writeHeader(frame, serverId, 1);
+		MetricRecord record = new MetricRecord();
+		record.setLong(Metric.TOTAL_SPACE, serverId);
+		PushProtocol.writeSample(frame, 1, 100, record);
+		frame.flip();
+		while (frame.hasRemaining()) {
+			channel.write(frame);
+		}
+	}
+
+	public void testBoundsConnectionsAndServers() throws Exception {
+		receiver = new PushReceiver();
+		receiver.setPort(0);
+		receiver.setMaxConnections(2);
+		receiver.setMaxServers(2);
+		receiver.setExpiry(60000);
+		receiver.start();
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", receiver.getPort());
+
+		SocketChannel first = SocketChannel.open(address);
+		SocketChannel second = SocketChannel.open(address);
+		SocketChannel third = SocketChannel.open(address);
+		try {
+			push(first, 1);
+			push(second, 2);
+			await(2, receiver);
+
+			// past the connections, closed when accepted
+			third.socket().setSoTimeout(5000);
+			assertEquals(-1, third.socket().getInputStream().read());
+			assertEquals(1, receiver.getRefused());
+
+			// past the servers, the frame is rejected and the connection closed
+			push(first, 3);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (receiver.getRejected() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, receiver.getRejected());
+			assertNull(receiver.getServer(3));
+			assertEquals(2, receiver.getServers().size());
+
+			// silent servers are forgotten, making room for new ones
+			receiver.setExpiry(0);
+			receiver.expire(System.currentTimeMillis() + 1);
+			assertEquals(2, receiver.getExpired());
+			assertTrue(receiver.getServers().isEmpty());
+			push(second, 3);
+			await(3, receiver);
+			assertEquals(3l, receiver.getServer(3).getMetrics().get("totalSpace"));
+		} finally {
+			first.close();
+			second.close();
+			third.close();
+		}
+	}
+}
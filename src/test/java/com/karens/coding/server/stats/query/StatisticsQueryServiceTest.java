@@ -0,0 +1,153 @@
+package com.karens.coding.server.stats.query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.fleet.FleetAggregator;
+import com.karens.coding.server.stats.form.SeriesSelector;
+import com.karens.coding.server.stats.history.MetricHistory;
+import com.karens.coding.server.stats.history.MetricSeries;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the batch queries, on the local history and on a stub agent.
+ */
+public class StatisticsQueryServiceTest extends TestCase {
+
+	private StatisticsQueryService service;
+	private MetricHistory history;
+
+	@Override
+	protected void setUp() {
+		history = new MetricHistory();
+		history.setCapacity(120);
+		history.setMinuteCapacity(60);
+		history.setHourCapacity(24);
+		// one sample per second for ten minutes
+		for (long second = 0; second < 600; second++) {
+			history.record("load", second * 1000, (double) second);
+			history.record("space", second * 1000, 1000l - second);
+		}
+		service = new StatisticsQueryService();
+		service.setMetricHistory(history);
+		service.setObjectMapper(new ObjectMapper());
+		service.start();
+	}
+
+	@Override
+	protected void tearDown() {
+		service.stop();
+	}
+
+	public void testMergesOverlappingReads() throws Exception {
+		List<SeriesResult> results = service.query(Arrays.asList(
+				new SeriesSelector(null, "load", 500000l, 520000l, null),
+				new SeriesSelector(0l, "load", 510000l, 540000l, null),
+				new SeriesSelector(null, "load", 500000l, 520000l, null),
+				new SeriesSelector(null, "load", 590000l, null, null),
+				new SeriesSelector(null, "space", 500000l, 520000l, null),
+				new SeriesSelector(null, "load", 0l, null, 60000l)));
+		assertEquals(6, results.size());
+		// the first three share one read, the next three read on their own
+		assertEquals(4, service.getReads());
+		assertEquals(6, service.getSelectors());
+
+		MetricSeries first = results.get(0).getSeries();
+		assertEquals(200, results.get(0).getStatusCode());
+		assertEquals(21, first.getCount());
+		assertEquals(500000l, first.getTimestamps()[0]);
+		assertEquals(520.0, first.getValues()[20]);
+		assertEquals(31, results.get(1).getSeries().getCount());
+		assertEquals(510.0, results.get(1).getSeries().getValues()[0]);
+		assertEquals(21, results.get(2).getSeries().getCount());
+		assertEquals(10, results.get(3).getSeries().getCount());
+		assertEquals(500.0, results.get(4).getSeries().getValues()[0]);
+		assertEquals("space", results.get(4).getMetric());
+
+		MetricSeries minutes = results.get(5).getSeries();
+		assertEquals(60000l, minutes.getResolution());
+		assertEquals(10, minutes.getCount());
+		assertEquals(29.5, minutes.getValues()[0]);
+	}
+
+	public void testAnswersEachSelector() throws Exception {
+		List<SeriesResult> results = service.query(Arrays.asList(
+				new SeriesSelector(null, "unknown", null, null, null),
+				new SeriesSelector(null, null, null, null, null),
+				new SeriesSelector(null, "load", 20l, 10l, null),
+				new SeriesSelector(99l, "load", null, null, null),
+				new SeriesSelector(null, "load", 599000l, null, null)));
+		assertEquals(404, results.get(0).getStatusCode());
+		assertEquals(400, results.get(1).getStatusCode());
+		assertEquals(400, results.get(2).getStatusCode());
+		assertEquals(404, results.get(3).getStatusCode());
+		assertEquals("No history of server 99", results.get(3).getMessage());
+		assertEquals(200, results.get(4).getStatusCode());
+		assertEquals(1, results.get(4).getSeries().getCount());
+		assertEquals(1, service.getReads());
+
+		service.setMaxSelectors(2);
+		try {
+			service.query(Arrays.asList(new SeriesSelector(), new SeriesSelector(), new SeriesSelector()));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testReadsTheHistoryOfAgents() throws Exception {
+		final List<String> queries = new CopyOnWriteArrayList<String>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				queries.add(exchange.getRequestURI().getPath() + "?" + exchange.getRequestURI().getQuery());
+				byte[] body = ("{\"message\":\"Success\",\"statusCode\":200,\"result\":{\"metric\":\"load\",\"resolution\":60000,"
+						+ "\"timestamps\":[0,60000,120000],\"values\":[1.5,2.5,3.5],\"min\":[1,2,3],\"max\":[2,3,4],\"counts\":[60,60,60]}}")
+						.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		FleetAggregator aggregator = new FleetAggregator();
+		aggregator.setObjectMapper(new ObjectMapper());
+		aggregator.setAgentList("7=http://127.0.0.1:" + server.getAddress().getPort());
+		aggregator.setInterval(60000l);
+		aggregator.start();
+		try {
+			service.setFleetAggregator(aggregator);
+			List<SeriesResult> results = service.query(Arrays.asList(
+					new SeriesSelector(7l, "load", 0l, 60000l, 60000l),
+					new SeriesSelector(7l, "load", 60000l, 120000l, 60000l),
+					new SeriesSelector(null, "load", 599000l, null, null)));
+			assertEquals(Arrays.asList("/rest/server/statistics/history?metric=load&from=0&to=120000&resolution=60000"), queries);
+			assertEquals(200, results.get(0).getStatusCode());
+			assertEquals(7l, results.get(0).getServerId());
+			MetricSeries first = results.get(0).getSeries();
+			assertEquals(2, first.getCount());
+			assertEquals(60000l, first.getResolution());
+			assertEquals(2.5, first.getValues()[1]);
+			assertEquals(60l, first.getCounts()[1]);
+			MetricSeries second = results.get(1).getSeries();
+			assertEquals(2, second.getCount());
+			assertEquals(4.0, second.getMax()[1]);
+			assertEquals(1, results.get(2).getSeries().getCount());
+		} finally {
+			aggregator.stop();
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.karens.coding.server.stats.rest;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsCollector;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the field projection of the statistics.
+ */
+public class FieldProjectionTest extends TestCase {
+
+	public void testResolvesFieldsAndGroups() {
+		Set<String> fields = StatisticsCollector.resolveFields("systemCpuLoad, disk");
+		assertEquals("systemCpuLoad", fields.iterator().next());
+		assertTrue(fields.contains("usableSpaceAsGigabytes"));
+		assertEquals(EnumSet.of(StatisticsCollector.OPERATING_SYSTEM, StatisticsCollector.DISK), StatisticsCollector.collectorsOf(fields));
+		assertEquals(EnumSet.of(StatisticsCollector.OPERATING_SYSTEM), StatisticsCollector.collectorsOf(StatisticsCollector.resolveFields("memory")));
+		try {
+			StatisticsCollector.resolveFields("usableSpace,bogus");
+			fail("unknown field accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("bogus"));
+		}
+		for (String blank : new String[] { "", " ", ", ," }) {
+			try {
+				StatisticsCollector.resolveFields(blank);
+				fail("no field accepted");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith("No field"));
+			}
+		}
+	}
+
+	public void testWritesOnlyRequestedFields() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		FieldProjection projection = new FieldProjection();
+		projection.setObjectMapper(objectMapper);
+		projection.init();
+
+		ServerStatistics statistics = new ServerStatistics(EnumSet.of(StatisticsCollector.DISK));
+		assertEquals(EnumSet.of(StatisticsCollector.DISK), statistics.getCollectors());
+		assertTrue(statistics.getUsableSpace() > 0);
+		assertNull(statistics.getSystemCpuLoad());
+		assertTrue(statistics.getStore().isEmpty());
+
+		RestResponse response = new RestResponse();
+		response.setResult(new StatisticsSnapshot(3, 1000, statistics));
+		response.setStatusCode(200);
+		JsonNode result = objectMapper.readTree(projection.write(response, StatisticsCollector.resolveFields("usableSpace,totalSpace"))).get("result");
+		assertEquals(3, result.get("sequence").asLong());
+		assertEquals(statistics.getUsableSpace().longValue(), result.get("usableSpace").asLong());
+		assertTrue(result.has("totalSpace"));
+		assertFalse(result.has("freeSpace"));
+		assertFalse(result.has("store"));
+
+		// the application mapper still writes every field
+		JsonNode full = objectMapper.readTree(objectMapper.writeValueAsBytes(response)).get("result");
+		assertTrue(full.has("freeSpace"));
+		int count = 0;
+		for (Iterator<String> names = result.fieldNames(); names.hasNext(); names.next()) {
+			count++;
+		}
+		// sequence, sampleTimestamp, sampleAge and the two fields
+		assertEquals(5, count);
+	}
+}
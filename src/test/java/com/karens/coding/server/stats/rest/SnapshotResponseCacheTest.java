@@ -0,0 +1,38 @@
+package com.karens.coding.server.stats.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the pre-serialized statistics responses.
+ */
+public class SnapshotResponseCacheTest extends TestCase {
+
+	public void testSerializesOncePerSnapshot() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		SnapshotResponseCache cache = new SnapshotResponseCache();
+		cache.setObjectMapper(objectMapper);
+		assertNull(cache.getLatest());
+
+		ServerStatistics statistics = new ServerStatistics(false);
+		statistics.setSystemCpuUsage(0.25);
+		cache.onSnapshot(new StatisticsSnapshot(7, System.currentTimeMillis(), statistics));
+		SerializedSnapshot first = cache.getLatest();
+		assertEquals(7, first.getSequence());
+		assertEquals(cache.etag(7), first.getEtag());
+		assertTrue(first.getEtag().startsWith("\"") && first.getEtag().endsWith("-7\""));
+		assertSame(first, cache.getLatest());
+
+		JsonNode json = objectMapper.readTree(first.getBody());
+		assertEquals(200, json.get("statusCode").asInt());
+		assertEquals(7, json.get("result").get("sequence").asLong());
+		assertEquals(0.25, json.get("result").get("systemCpuUsage").asDouble());
+
+		cache.onSnapshot(new StatisticsSnapshot(8, System.currentTimeMillis(), statistics));
+		assertFalse(first.getEtag().equals(cache.getLatest().getEtag()));
+	}
+}
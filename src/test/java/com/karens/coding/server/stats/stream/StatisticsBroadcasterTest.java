@@ -0,0 +1,262 @@
+package com.karens.coding.server.stats.stream;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karens.coding.server.stats.health.ServerStatistics;
+import com.karens.coding.server.stats.health.StatisticsSnapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the broadcaster, on emitters recording what they are sent instead of writing to a client.
+ */
+public class StatisticsBroadcasterTest extends TestCase {
+
+	private static final Pattern ID = Pattern.compile("id:(\\d+)");
+
+	private StatisticsBroadcaster broadcaster;
+
+	@Override
+	protected void setUp() {
+		broadcaster = new StatisticsBroadcaster();
+		broadcaster.setObjectMapper(new ObjectMapper());
+		broadcaster.setThreads(1);
+	}
+
+	@Override
+	protected void tearDown() {
+		broadcaster.stop();
+	}
+
+	private void publish(long sequence) {
+		broadcaster.onSnapshot(new StatisticsSnapshot(sequence, sequence * 1000, new ServerStatistics(false)));
+	}
+
+	private static void await(RecordingEmitter emitter, int sends) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (emitter.sequences.size() < sends && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(sends, emitter.sequences.size());
+	}
+
+	private static void awaitSequence(RecordingEmitter emitter, long sequence) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!emitter.sequences.contains(sequence) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(emitter.sequences.contains(sequence));
+	}
+
+	private static void awaitCompleted(RecordingEmitter emitter) throws InterruptedException {
+		assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+	}
+
+	public void testSendsOnlyTheLatestPayloadToABusySubscriber() throws Exception {
+		broadcaster.setSendTimeout(60000);
+		broadcaster.start();
+		RecordingEmitter emitter = new RecordingEmitter();
+		emitter.gate = new CountDownLatch(1);
+		broadcaster.subscribe(emitter);
+
+		publish(1);
+		assertTrue(emitter.blocked.await(5, TimeUnit.SECONDS));
+		// the first send is in progress, each of these replaces the pending one
+		publish(2);
+		publish(3);
+		publish(4);
+		emitter.gate.countDown();
+
+		await(emitter, 2);
+		assertEquals(Long.valueOf(1), emitter.sequences.get(0));
+		assertEquals(Long.valueOf(4), emitter.sequences.get(1));
+		assertEquals(2, broadcaster.getDropped());
+		assertEquals(1, broadcaster.getSubscriberCount());
+	}
+
+	public void testSendsTheLatestPayloadOnSubscription() throws Exception {
+		broadcaster.start();
+		publish(7);
+		RecordingEmitter emitter = new RecordingEmitter();
+		broadcaster.subscribe(emitter);
+		await(emitter, 1);
+		assertEquals(Long.valueOf(7), emitter.sequences.get(0));
+	}
+
+	public void testUnsubscribesOnCompletionAndTimeout() throws Exception {
+		broadcaster.start();
+		RecordingEmitter completed = new RecordingEmitter();
+		RecordingEmitter timedOut = new RecordingEmitter();
+		broadcaster.subscribe(completed);
+		broadcaster.subscribe(timedOut);
+		assertEquals(2, broadcaster.getSubscriberCount());
+
+		completed.completionCallback.run();
+		assertEquals(1, broadcaster.getSubscriberCount());
+		timedOut.timeoutCallback.run();
+		assertEquals(0, broadcaster.getSubscriberCount());
+
+		publish(1);
+		Thread.sleep(50);
+		assertTrue(completed.sequences.isEmpty());
+		assertTrue(timedOut.sequences.isEmpty());
+	}
+
+	public void testUnsubscribesOnSendError() throws Exception {
+		broadcaster.start();
+		RecordingEmitter failing = new RecordingEmitter();
+		failing.failure = new IOException("Broken pipe");
+		RecordingEmitter healthy = new RecordingEmitter();
+		broadcaster.subscribe(failing);
+		broadcaster.subscribe(healthy);
+
+		publish(1);
+		awaitCompleted(failing);
+		assertSame(failing.failure, failing.error);
+		await(healthy, 1);
+		assertEquals(1, broadcaster.getSubscriberCount());
+
+		publish(2);
+		await(healthy, 2);
+		assertTrue(failing.sequences.isEmpty());
+	}
+
+	public void testDropsAStalledSubscriberWithoutDelayingTheOthers() throws Exception {
+		broadcaster.setSendTimeout(50);
+		broadcaster.start();
+		// a client that stopped reading, its send ignores interrupts like a blocking socket write
+		RecordingEmitter slow = new RecordingEmitter();
+		slow.gate = new CountDownLatch(1);
+		slow.uninterruptible = true;
+		RecordingEmitter fast = new RecordingEmitter();
+		broadcaster.subscribe(slow);
+		broadcaster.subscribe(fast);
+
+		publish(1);
+		assertTrue(slow.blocked.await(5, TimeUnit.SECONDS));
+		// the only thread is held by the slow send, the fast subscriber waits behind it
+		Thread.sleep(100);
+		publish(2);
+		assertEquals(1, broadcaster.getSubscriberCount());
+		awaitSequence(fast, 2);
+		publish(3);
+		awaitSequence(fast, 3);
+
+		// the stalled send returns at last, its emitter is completed and gets nothing more
+		slow.gate.countDown();
+		awaitCompleted(slow);
+		assertNotNull(slow.error);
+		assertEquals(1, slow.sequences.size());
+	}
+
+	public void testRefusesSubscribersPastTheStalledMaximum() throws Exception {
+		broadcaster.setSendTimeout(50);
+		broadcaster.setMaxStalled(1);
+		broadcaster.start();
+		RecordingEmitter first = new RecordingEmitter();
+		first.gate = new CountDownLatch(1);
+		first.uninterruptible = true;
+		RecordingEmitter second = new RecordingEmitter();
+		second.gate = new CountDownLatch(1);
+		second.uninterruptible = true;
+		broadcaster.subscribe(first);
+		publish(1);
+		assertTrue(first.blocked.await(5, TimeUnit.SECONDS));
+		// gets the latest payload, behind the blocked send on the only thread
+		broadcaster.subscribe(second);
+		Thread.sleep(100);
+		// the first stalled send gets a thread added, the second send blocks it
+		publish(2);
+		assertTrue(second.blocked.await(5, TimeUnit.SECONDS));
+		assertEquals(1, broadcaster.getStalledCount());
+		assertTrue(broadcaster.subscribe(new RecordingEmitter()));
+		Thread.sleep(100);
+		// past the maximum the pool does not grow and new subscribers are refused
+		publish(3);
+		assertEquals(2, broadcaster.getStalledCount());
+		assertFalse(broadcaster.subscribe(new RecordingEmitter()));
+		assertEquals(1, broadcaster.getSubscriberCount());
+
+		first.gate.countDown();
+		second.gate.countDown();
+		awaitCompleted(first);
+		awaitCompleted(second);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (broadcaster.getStalledCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, broadcaster.getStalledCount());
+		RecordingEmitter late = new RecordingEmitter();
+		assertTrue(broadcaster.subscribe(late));
+		await(late, 1);
+		assertEquals(Long.valueOf(3), late.sequences.get(0));
+	}
+
+	/**
+	 * Records the sequences sent, optionally blocking the first send or failing every send
+	 */
+	private static final class RecordingEmitter extends SseEmitter {
+		final List<Long> sequences = new CopyOnWriteArrayList<Long>();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch completed = new CountDownLatch(1);
+		CountDownLatch gate;
+		boolean uninterruptible;
+		IOException failure;
+		volatile Throwable error;
+		Runnable completionCallback;
+		Runnable timeoutCallback;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+			StringBuilder event = new StringBuilder();
+			for (DataWithMediaType data : builder.build()) {
+				event.append(data.getData());
+			}
+			Matcher matcher = ID.matcher(event);
+			assertTrue(matcher.find());
+			sequences.add(Long.valueOf(matcher.group(1)));
+			if (gate != null && blocked.getCount() > 0) {
+				blocked.countDown();
+				while (true) {
+					try {
+						gate.await();
+						return;
+					} catch (InterruptedException e) {
+						if (!uninterruptible) {
+							throw new IOException(e);
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public synchronized void completeWithError(Throwable ex) {
+			error = ex;
+			completed.countDown();
+		}
+
+		@Override
+		public synchronized void onCompletion(Runnable callback) {
+			completionCallback = callback;
+		}
+
+		@Override
+		public synchronized void onTimeout(Runnable callback) {
+			timeoutCallback = callback;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.karens.coding.server.stats.threads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the hot threads collector.
+ */
+public class ThreadCpuCollectorTest extends TestCase {
+
+	private volatile boolean spinning = true;
+	/** Iterations of the busy thread, read by the test thread once it ended */
+	private volatile long spun;
+
+	public void testFindsBusyThread() throws Exception {
+		ThreadCpuCollector collector = new ThreadCpuCollector();
+		collector.setMax(3);
+		collector.start();
+		Thread busy = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long counter = 0;
+				while (spinning) {
+					counter++;
+				}
+				spun = counter;
+			}
+		}, "server-stats-test-busy");
+		busy.setDaemon(true);
+		collector.sample(System.currentTimeMillis());
+		assertTrue(collector.getTop(3).isEmpty());
+		busy.start();
+		// until the busy thread got scheduled for a while, whatever else runs on the machine
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		for (int i = 0; i < 100 && threadBean.getThreadCpuTime(busy.getId()) < 100000000l; i++) {
+			Thread.sleep(50);
+		}
+		collector.sample(System.currentTimeMillis());
+		// stacks are taken on request, only for threads still alive
+		List<ThreadCpuUsage> top = collector.getTop(20);
+		spinning = false;
+		busy.join(1000);
+
+		assertTrue(spun != 0);
+		assertTrue(top.size() <= 3);
+		ThreadCpuUsage found = null;
+		for (ThreadCpuUsage usage : top) {
+			if (usage.getId() == busy.getId()) {
+				found = usage;
+			}
+		}
+		assertNotNull(found);
+		assertEquals("server-stats-test-busy", found.getName());
+		assertTrue(found.getCpuTime() >= 100000000l);
+		assertFalse(found.getStack().isEmpty());
+		for (int i = 1; i < top.size(); i++) {
+			assertTrue(top.get(i - 1).getCpuTime() >= top.get(i).getCpuTime());
+		}
+	}
+}
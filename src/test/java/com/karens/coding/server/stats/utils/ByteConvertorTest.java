@@ -0,0 +1,17 @@
+package com.karens.coding.server.stats.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the byte conversions.
+ */
+public class ByteConvertorTest extends TestCase {
+
+	public void testConvertsByUnit() {
+		assertEquals(2.0, ByteConvertor.convertBytesByType(2048l, "KB"));
+		assertEquals(1.5, ByteConvertor.convertBytesByType(1572864l, "mb"));
+		assertEquals(0.25, ByteConvertor.convertBytesByType(268435456l, "gb"));
+		// any other unit keeps the bytes
+		assertEquals(270553174016.0, ByteConvertor.convertBytesByType(270553174016l, "b"));
+	}
+}
@@ -0,0 +1,34 @@
+package com.karens.coding.server.stats.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the logarithmic histogram.
+ */
+public class LogHistogramTest extends TestCase {
+
+	public void testBucketsCoverTheirValues() {
+		long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE };
+		for (long value : values) {
+			int bucket = LogHistogram.bucket(value);
+			assertTrue(value <= LogHistogram.upperBound(bucket));
+			assertTrue(bucket == 0 || value > LogHistogram.upperBound(bucket - 1));
+		}
+	}
+
+	public void testPercentilesWithinBucketPrecision() {
+		LogHistogram histogram = new LogHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		LogHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500500, snapshot.getSum());
+		assertEquals(1000, snapshot.getMax());
+		assertEquals(500.5, snapshot.getMean(), 0.0);
+		assertTrue(snapshot.getP50() >= 500 && snapshot.getP50() <= 500 * 1.125);
+		assertTrue(snapshot.getP99() >= 990 && snapshot.getP99() <= 1000);
+		assertEquals(1000, snapshot.getPercentile(100));
+		assertEquals(0, new LogHistogram().snapshot().getP99());
+	}
+}
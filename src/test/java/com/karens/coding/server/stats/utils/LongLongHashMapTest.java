@@ -0,0 +1,29 @@
+package com.karens.coding.server.stats.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the primitive long to long map.
+ */
+public class LongLongHashMapTest extends TestCase {
+
+	public void testGrowsAndClears() {
+		LongLongHashMap map = new LongLongHashMap(4, -1l);
+		for (long key = 0; key < 5000; key++) {
+			map.put(key * 7919, key);
+		}
+		assertEquals(5000, map.size());
+		for (long key = 0; key < 5000; key++) {
+			assertEquals(key, map.get(key * 7919));
+		}
+		assertEquals(-1l, map.get(3));
+		map.put(7919, 42);
+		assertEquals(42, map.get(7919));
+		assertEquals(5000, map.size());
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(7919));
+		assertEquals(-1l, map.get(7919));
+	}
+}